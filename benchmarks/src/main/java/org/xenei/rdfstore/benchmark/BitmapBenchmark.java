@@ -0,0 +1,158 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.util.Arrays;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xenei.rdfstore.mem.ContainerBitmap;
+import org.xenei.rdfstore.mem.MemBitmap;
+import org.xenei.rdfstore.store.Bitmap;
+
+/**
+ * Benchmarks the {@link Bitmap} implementations at several densities. The
+ * bitmaps cover {@link #RANGE} bits and the density is the fraction of the
+ * bits that are set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmapBenchmark {
+
+    /**
+     * The number of bits covered by the bitmaps.
+     */
+    public static final int RANGE = 1 << 20;
+
+    /**
+     * The number of bits probed by {@link #contains}.
+     */
+    private static final int PROBES = 1 << 12;
+
+    @Param({ "MemBitmap", "ContainerBitmap" })
+    public String impl;
+
+    @Param({ "0.0001", "0.01", "0.1", "0.5" })
+    public double density;
+
+    private Supplier<Bitmap> supplier;
+    private long[] bits;
+    private long[] probes;
+    private int probe;
+    private Bitmap left;
+    private Bitmap right;
+
+    /**
+     * Gets the supplier of an implementation.
+     *
+     * @param impl the simple class name of the implementation.
+     * @return the supplier of empty bitmaps.
+     */
+    static Supplier<Bitmap> supplier(String impl) {
+        switch (impl) {
+        case "MemBitmap":
+            return MemBitmap::new;
+        case "ContainerBitmap":
+            return ContainerBitmap::new;
+        default:
+            throw new IllegalArgumentException("Unknown bitmap " + impl);
+        }
+    }
+
+    /**
+     * Selects the bits of a bitmap.
+     *
+     * @param random the source of randomness.
+     * @param density the fraction of the bits to select.
+     * @return the selected bits in increasing order.
+     */
+    static long[] bits(Random random, double density) {
+        int count = 0;
+        long[] result = new long[Math.max(1, (int) (RANGE * density * 1.1))];
+        for (int i = 0; i < RANGE; i++) {
+            if (random.nextDouble() < density) {
+                if (count == result.length) {
+                    result = Arrays.copyOf(result, count * 2);
+                }
+                result[count++] = i;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+
+    private Bitmap create(long[] values) {
+        Bitmap result = supplier.get();
+        for (long bit : values) {
+            result.set(bit);
+        }
+        return result;
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        supplier = supplier(impl);
+        bits = bits(random, density);
+        left = create(bits);
+        right = create(bits(random, density));
+        probes = new long[PROBES];
+        for (int i = 0; i < PROBES; i++) {
+            probes[i] = random.nextInt(RANGE);
+        }
+    }
+
+    /**
+     * Builds a bitmap bit by bit. The time is for all the bits.
+     *
+     * @return the bitmap.
+     */
+    @Benchmark
+    public Bitmap set() {
+        return create(bits);
+    }
+
+    @Benchmark
+    public boolean contains() {
+        probe = (probe + 1) & (PROBES - 1);
+        return left.contains(probes[probe]);
+    }
+
+    @Benchmark
+    public Bitmap intersection() {
+        return Bitmap.intersection(supplier, left, right);
+    }
+
+    @Benchmark
+    public Bitmap xor() {
+        return Bitmap.xor(supplier, left, right);
+    }
+
+    /**
+     * Iterates over all the bits of a bitmap.
+     *
+     * @param blackhole consumes the bits.
+     */
+    @Benchmark
+    public void iterator(Blackhole blackhole) {
+        PrimitiveIterator.OfLong iter = left.iterator();
+        while (iter.hasNext()) {
+            blackhole.consume(iter.nextLong());
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.ReadWrite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xenei.rdfstore.mem.ChunkedLongList;
+import org.xenei.rdfstore.mem.MemLongList;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.LongList;
+
+/**
+ * Benchmarks {@link LongList#get} and {@link LongList#set} of the memory lists.
+ * The operations run in a transaction that is held for the whole iteration,
+ * as they do when called by the stores.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LongListBenchmark {
+
+    private static final int INDEXES = 1 << 12;
+
+    /**
+     * The populated list and the indexes to access.
+     */
+    @State(Scope.Thread)
+    public static class Data {
+        @Param({ "MemLongList", "ChunkedLongList" })
+        public String impl;
+
+        @Param({ "10000", "1000000" })
+        public int size;
+
+        LongList<Long> list;
+        private long[] indexes;
+        private int next;
+
+        private static LongList<Long> create(String impl) {
+            switch (impl) {
+            case "MemLongList":
+                return new MemLongList<>();
+            case "ChunkedLongList":
+                return new ChunkedLongList<>();
+            default:
+                throw new IllegalArgumentException("Unknown list " + impl);
+            }
+        }
+
+        @Setup
+        public void setup() {
+            list = create(impl);
+            list.begin(ReadWrite.WRITE);
+            for (long i = 0; i < size; i++) {
+                list.add(i);
+            }
+            list.commit();
+            Random random = new Random(42);
+            indexes = new long[INDEXES];
+            for (int i = 0; i < INDEXES; i++) {
+                indexes[i] = random.nextInt(size);
+            }
+        }
+
+        long nextIndex() {
+            next = (next + 1) & (INDEXES - 1);
+            return indexes[next];
+        }
+    }
+
+    /**
+     * The read transaction for {@link #get}.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+        private Data data;
+
+        @Setup(Level.Iteration)
+        public void begin(Data data) {
+            this.data = data;
+            data.list.begin(ReadWrite.READ);
+        }
+
+        @TearDown(Level.Iteration)
+        public void end() {
+            data.list.end();
+        }
+    }
+
+    /**
+     * The write transaction for {@link #set}. The changes are aborted.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private Data data;
+
+        @Setup(Level.Iteration)
+        public void begin(Data data) {
+            this.data = data;
+            data.list.begin(ReadWrite.WRITE);
+        }
+
+        @TearDown(Level.Iteration)
+        public void abort() {
+            data.list.abort();
+        }
+    }
+
+    @Benchmark
+    public Long get(Reader reader) {
+        return reader.data.list.get(reader.data.nextIndex());
+    }
+
+    @Benchmark
+    public void set(Writer writer) {
+        long idx = writer.data.nextIndex();
+        writer.data.list.set(new IdxData<>(idx, idx + 1));
+    }
+
+    /**
+     * A set outside of a transaction commits on its own, as a register in
+     * autocommit mode does.
+     */
+    @Benchmark
+    public void autocommitSet(Data data) {
+        long idx = data.nextIndex();
+        data.list.set(new IdxData<>(idx, idx + 1));
+    }
+}
@@ -0,0 +1,279 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.io.PrintStream;
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.Query;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.query.ResultSet;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.Quad;
+import org.xenei.rdfstore.jena.Dataset;
+import org.xenei.rdfstore.mem.MemQuads;
+
+/**
+ * An end to end benchmark that loads LUBM shaped data, see
+ * {@link LubmGenerator}, through the Jena {@link Dataset} and runs a fixed
+ * SPARQL query mix through ARQ.
+ * <p>
+ * The report gives the load throughput, the latency percentiles of each
+ * query, the number of results of each query and the heap and off heap buffers
+ * used after loading and after the queries. The same arguments produce the same data and
+ * results, so the reports of different releases can be compared.
+ * </p>
+ * <p>
+ * Arguments, all optional:
+ * </p>
+ * <ul>
+ * <li>{@code --universities=N} the number of universities, default 1.</li>
+ * <li>{@code --seed=N} the seed of the generator, default 0.</li>
+ * <li>{@code --batch=N} the number of triples loaded per transaction, default
+ * 100000.</li>
+ * <li>{@code --warmup=N} the number of untimed runs of each query, default
+ * 5.</li>
+ * <li>{@code --runs=N} the number of timed runs of each query, default
+ * 20.</li>
+ * <li>{@code --query=Qn} only run the named query.</li>
+ * </ul>
+ * <p>
+ * The queries are those of LUBM rewritten to use the explicit classes of the
+ * data, as the store does no inference.
+ * </p>
+ */
+public class LubmBenchmark {
+
+    private static final String PREFIX = "PREFIX rdf: <http://www.w3.org/1999/02/22-rdf-syntax-ns#>\n"
+            + "PREFIX ub: <" + LubmGenerator.UB + ">\n";
+
+    private int universities = 1;
+    private long seed = 0;
+    private int batch = 100000;
+    private int warmup = 5;
+    private int runs = 20;
+    private String only;
+
+    private final PrintStream out;
+
+    /**
+     * Constructor.
+     *
+     * @param out the stream to report to.
+     */
+    public LubmBenchmark(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Gets the query mix.
+     *
+     * @return the queries by name, in the order they are run.
+     */
+    public static Map<String, String> queries() {
+        String univ0 = "<" + LubmGenerator.university(0).getURI() + ">";
+        String dept0 = "<" + LubmGenerator.department(0, 0).getURI() + ">";
+        Map<String, String> result = new LinkedHashMap<>();
+        result.put("Q1", "SELECT ?x WHERE { ?x rdf:type ub:GraduateStudent . ?x ub:takesCourse <"
+                + LubmGenerator.entity(0, 0, "GraduateCourse", 0).getURI() + "> }");
+        result.put("Q2", "SELECT ?x ?y ?z WHERE { ?x rdf:type ub:GraduateStudent . ?y rdf:type ub:University . "
+                + "?z rdf:type ub:Department . ?x ub:memberOf ?z . ?z ub:subOrganizationOf ?y . "
+                + "?x ub:undergraduateDegreeFrom ?y }");
+        result.put("Q3", "SELECT ?x WHERE { ?x rdf:type ub:Publication . ?x ub:publicationAuthor <"
+                + LubmGenerator.entity(0, 0, "AssistantProfessor", 0).getURI() + "> }");
+        result.put("Q4", "SELECT ?x ?y1 ?y2 ?y3 WHERE { ?x rdf:type ub:FullProfessor . ?x ub:worksFor " + dept0
+                + " . ?x ub:name ?y1 . ?x ub:emailAddress ?y2 . ?x ub:telephone ?y3 }");
+        result.put("Q5", "SELECT ?x WHERE { ?x ub:memberOf " + dept0 + " }");
+        result.put("Q6", "SELECT ?x WHERE { ?x rdf:type ub:UndergraduateStudent }");
+        result.put("Q7", "SELECT ?x ?y WHERE { ?x rdf:type ub:UndergraduateStudent . ?y rdf:type ub:Course . "
+                + "?x ub:takesCourse ?y . <" + LubmGenerator.entity(0, 0, "AssociateProfessor", 0).getURI()
+                + "> ub:teacherOf ?y }");
+        result.put("Q8", "SELECT ?x ?y ?z WHERE { ?x rdf:type ub:UndergraduateStudent . ?y rdf:type ub:Department . "
+                + "?x ub:memberOf ?y . ?y ub:subOrganizationOf " + univ0 + " . ?x ub:emailAddress ?z }");
+        result.put("Q9", "SELECT ?x ?y ?z WHERE { ?x rdf:type ub:GraduateStudent . ?y rdf:type ub:FullProfessor . "
+                + "?z rdf:type ub:GraduateCourse . ?x ub:advisor ?y . ?y ub:teacherOf ?z . ?x ub:takesCourse ?z }");
+        result.put("Q10", "SELECT ?x WHERE { ?x rdf:type ub:UndergraduateStudent } LIMIT 10");
+        result.put("Q11", "SELECT ?x WHERE { ?x rdf:type ub:ResearchGroup . ?x ub:subOrganizationOf ?y . "
+                + "?y ub:subOrganizationOf " + univ0 + " }");
+        result.put("Q12", "SELECT ?x ?y WHERE { ?x rdf:type ub:FullProfessor . ?x ub:headOf ?y . "
+                + "?y rdf:type ub:Department . ?y ub:subOrganizationOf " + univ0 + " }");
+        result.put("Q13", "SELECT ?x WHERE { ?x ub:undergraduateDegreeFrom " + univ0 + " }");
+        result.put("Q14", "SELECT (COUNT(?x) AS ?count) WHERE { ?x rdf:type ub:UndergraduateStudent }");
+        return result;
+    }
+
+    /**
+     * Parses the arguments.
+     *
+     * @param args the arguments.
+     * @return this benchmark.
+     */
+    public LubmBenchmark configure(String... args) {
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Arguments have the form --name=value: " + arg);
+            }
+            String name = arg.substring(2, eq);
+            String value = arg.substring(eq + 1);
+            switch (name) {
+            case "universities":
+                universities = Integer.parseInt(value);
+                break;
+            case "seed":
+                seed = Long.parseLong(value);
+                break;
+            case "batch":
+                batch = Integer.parseInt(value);
+                break;
+            case "warmup":
+                warmup = Integer.parseInt(value);
+                break;
+            case "runs":
+                runs = Integer.parseInt(value);
+                break;
+            case "query":
+                only = value;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown argument " + arg);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Gets the heap in use after garbage collection.
+     *
+     * @return the used heap in bytes.
+     */
+    private static long usedHeap() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return memory.getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Gets the memory used by the direct and mapped buffers. Stores such as the
+     * {@link org.xenei.rdfstore.mem.OffHeapNodeStore} keep their data there so it
+     * is not in the used heap.
+     *
+     * @return the buffer memory in bytes.
+     */
+    private static long bufferMemory() {
+        long result = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            result += pool.getMemoryUsed();
+        }
+        return result;
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    /**
+     * Gets a percentile of sorted values by the nearest rank method.
+     *
+     * @param sorted the values in increasing order.
+     * @param percentile the percentile, 0 to 100.
+     * @return the value.
+     */
+    static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+
+    /**
+     * Loads the data into the dataset.
+     *
+     * @param dataset the dataset.
+     * @return the number of triples loaded.
+     */
+    long load(Dataset dataset) {
+        long[] pending = { 0 };
+        dataset.begin(TxnType.WRITE);
+        long count = new LubmGenerator(universities, seed).generate(triple -> {
+            dataset.add(Quad.defaultGraphIRI, triple.getSubject(), triple.getPredicate(), triple.getObject());
+            if (++pending[0] == batch) {
+                dataset.commit();
+                dataset.begin(TxnType.WRITE);
+                pending[0] = 0;
+            }
+        });
+        dataset.commit();
+        return count;
+    }
+
+    /**
+     * Runs a query once.
+     *
+     * @param dataset the dataset.
+     * @param query the query.
+     * @return the number of results.
+     */
+    static long execute(org.apache.jena.query.Dataset dataset, Query query) {
+        dataset.begin(TxnType.READ);
+        try (QueryExecution exec = QueryExecutionFactory.create(query, dataset)) {
+            ResultSet results = exec.execSelect();
+            long count = 0;
+            while (results.hasNext()) {
+                results.next();
+                count++;
+            }
+            return count;
+        } finally {
+            dataset.end();
+        }
+    }
+
+    /**
+     * Runs the benchmark and writes the report.
+     */
+    public void run() {
+        out.printf("LUBM universities=%d seed=%d batch=%d warmup=%d runs=%d%n", universities, seed, batch, warmup,
+                runs);
+        Dataset dsg = new Dataset(new MemQuads());
+        long start = System.nanoTime();
+        long triples = load(dsg);
+        long elapsed = System.nanoTime() - start;
+        out.printf("load: %d triples in %.1f ms, %.0f triples/s, heap %.1f MB, off heap %.1f MB%n", triples,
+                millis(elapsed), triples / (elapsed / 1e9), usedHeap() / 1e6, bufferMemory() / 1e6);
+
+        org.apache.jena.query.Dataset dataset = DatasetFactory.wrap(dsg);
+        out.printf("%-5s %10s %10s %10s %10s %10s%n", "query", "results", "p50 ms", "p90 ms", "p99 ms", "max ms");
+        for (Map.Entry<String, String> entry : queries().entrySet()) {
+            if (only != null && !only.equals(entry.getKey())) {
+                continue;
+            }
+            Query query = QueryFactory.create(PREFIX + entry.getValue());
+            long results = 0;
+            for (int i = 0; i < warmup; i++) {
+                results = execute(dataset, query);
+            }
+            long[] latencies = new long[runs];
+            for (int i = 0; i < runs; i++) {
+                long begin = System.nanoTime();
+                results = execute(dataset, query);
+                latencies[i] = System.nanoTime() - begin;
+            }
+            Arrays.sort(latencies);
+            out.printf("%-5s %10d %10.3f %10.3f %10.3f %10.3f%n", entry.getKey(), results,
+                    millis(percentile(latencies, 50)), millis(percentile(latencies, 90)),
+                    millis(percentile(latencies, 99)), millis(latencies[latencies.length - 1]));
+        }
+        out.printf("heap after queries %.1f MB, off heap %.1f MB%n", usedHeap() / 1e6, bufferMemory() / 1e6);
+    }
+
+    public static void main(String[] args) {
+        new LubmBenchmark(System.out).configure(args).run();
+    }
+}
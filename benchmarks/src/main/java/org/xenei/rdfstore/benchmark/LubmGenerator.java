@@ -0,0 +1,260 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.vocabulary.RDF;
+
+/**
+ * Generates data shaped like the Lehigh University Benchmark (LUBM).
+ * <p>
+ * Each university has departments, each department has faculty, students,
+ * courses, research groups and publications, using the class and property
+ * names of the univ-bench ontology and the URI scheme of the LUBM generator.
+ * The counts are drawn from the ranges of the LUBM generator, scaled down, and
+ * the same seed and number of universities always produce the same triples in
+ * the same order.
+ * </p>
+ */
+public class LubmGenerator {
+
+    /**
+     * The namespace of the univ-bench ontology.
+     */
+    public static final String UB = "http://swat.cse.lehigh.edu/onto/univ-bench.owl#";
+
+    public static final Node TYPE = RDF.type.asNode();
+    public static final Node UNIVERSITY = ub("University");
+    public static final Node DEPARTMENT = ub("Department");
+    public static final Node RESEARCH_GROUP = ub("ResearchGroup");
+    public static final Node FULL_PROFESSOR = ub("FullProfessor");
+    public static final Node ASSOCIATE_PROFESSOR = ub("AssociateProfessor");
+    public static final Node ASSISTANT_PROFESSOR = ub("AssistantProfessor");
+    public static final Node LECTURER = ub("Lecturer");
+    public static final Node UNDERGRADUATE_STUDENT = ub("UndergraduateStudent");
+    public static final Node GRADUATE_STUDENT = ub("GraduateStudent");
+    public static final Node COURSE = ub("Course");
+    public static final Node GRADUATE_COURSE = ub("GraduateCourse");
+    public static final Node PUBLICATION = ub("Publication");
+
+    public static final Node NAME = ub("name");
+    public static final Node EMAIL = ub("emailAddress");
+    public static final Node TELEPHONE = ub("telephone");
+    public static final Node SUB_ORGANIZATION_OF = ub("subOrganizationOf");
+    public static final Node WORKS_FOR = ub("worksFor");
+    public static final Node HEAD_OF = ub("headOf");
+    public static final Node MEMBER_OF = ub("memberOf");
+    public static final Node TEACHER_OF = ub("teacherOf");
+    public static final Node TAKES_COURSE = ub("takesCourse");
+    public static final Node TEACHING_ASSISTANT_OF = ub("teachingAssistantOf");
+    public static final Node ADVISOR = ub("advisor");
+    public static final Node PUBLICATION_AUTHOR = ub("publicationAuthor");
+    public static final Node UNDERGRADUATE_DEGREE_FROM = ub("undergraduateDegreeFrom");
+    public static final Node MASTERS_DEGREE_FROM = ub("mastersDegreeFrom");
+    public static final Node DOCTORAL_DEGREE_FROM = ub("doctoralDegreeFrom");
+
+    private final int universities;
+    private final Random random;
+    private Consumer<Triple> sink;
+    private long count;
+
+    /**
+     * Constructor.
+     *
+     * @param universities the number of universities.
+     * @param seed the seed of the random counts and links.
+     */
+    public LubmGenerator(int universities, long seed) {
+        this.universities = universities;
+        this.random = new Random(seed);
+    }
+
+    private static Node ub(String localName) {
+        return NodeFactory.createURI(UB + localName);
+    }
+
+    /**
+     * Gets the URI of a university.
+     *
+     * @param university the university number.
+     * @return the URI.
+     */
+    public static Node university(int university) {
+        return NodeFactory.createURI("http://www.University" + university + ".edu");
+    }
+
+    /**
+     * Gets the URI of a department.
+     *
+     * @param university the university number.
+     * @param department the department number.
+     * @return the URI.
+     */
+    public static Node department(int university, int department) {
+        return NodeFactory.createURI("http://www.Department" + department + ".University" + university + ".edu");
+    }
+
+    /**
+     * Gets the URI of an entity of a department, for example
+     * {@code entity(0, 0, "GraduateCourse", 0)}.
+     *
+     * @param university the university number.
+     * @param department the department number.
+     * @param kind the kind of entity.
+     * @param number the entity number.
+     * @return the URI.
+     */
+    public static Node entity(int university, int department, String kind, int number) {
+        return NodeFactory.createURI(department(university, department).getURI() + "/" + kind + number);
+    }
+
+    private int between(int min, int max) {
+        return min + random.nextInt(max - min + 1);
+    }
+
+    private void emit(Node s, Node p, Node o) {
+        sink.accept(Triple.create(s, p, o));
+        count++;
+    }
+
+    private void literal(Node s, Node p, String value) {
+        emit(s, p, NodeFactory.createLiteral(value, XSDDatatype.XSDstring));
+    }
+
+    /**
+     * Generates the triples.
+     *
+     * @param sink receives the triples.
+     * @return the number of triples generated.
+     */
+    public long generate(Consumer<Triple> sink) {
+        this.sink = sink;
+        count = 0;
+        for (int u = 0; u < universities; u++) {
+            Node university = university(u);
+            emit(university, TYPE, UNIVERSITY);
+            literal(university, NAME, "University" + u);
+            int departments = between(15, 25);
+            for (int d = 0; d < departments; d++) {
+                generateDepartment(u, d);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generates a department.
+     */
+    private void generateDepartment(int u, int d) {
+        Node department = department(u, d);
+        emit(department, TYPE, DEPARTMENT);
+        literal(department, NAME, "Department" + d);
+        emit(department, SUB_ORGANIZATION_OF, university(u));
+
+        int groups = between(10, 20);
+        for (int i = 0; i < groups; i++) {
+            Node group = entity(u, d, "ResearchGroup", i);
+            emit(group, TYPE, RESEARCH_GROUP);
+            emit(group, SUB_ORGANIZATION_OF, department);
+        }
+
+        List<Node> courses = new ArrayList<>();
+        List<Node> graduateCourses = new ArrayList<>();
+        List<Node> professors = new ArrayList<>();
+        int faculty = 0;
+        faculty += faculty(u, d, "FullProfessor", FULL_PROFESSOR, between(7, 10), 15, courses, graduateCourses,
+                professors);
+        faculty += faculty(u, d, "AssociateProfessor", ASSOCIATE_PROFESSOR, between(10, 14), 10, courses,
+                graduateCourses, professors);
+        faculty += faculty(u, d, "AssistantProfessor", ASSISTANT_PROFESSOR, between(8, 11), 5, courses,
+                graduateCourses, professors);
+        faculty += faculty(u, d, "Lecturer", LECTURER, between(5, 7), 0, courses, graduateCourses, null);
+        emit(entity(u, d, "FullProfessor", 0), HEAD_OF, department);
+
+        int undergraduates = faculty * between(8, 14);
+        for (int i = 0; i < undergraduates; i++) {
+            Node student = entity(u, d, "UndergraduateStudent", i);
+            person(student, UNDERGRADUATE_STUDENT, "UndergraduateStudent" + i, department, MEMBER_OF);
+            int taken = between(2, 4);
+            for (int c = 0; c < taken; c++) {
+                emit(student, TAKES_COURSE, courses.get(random.nextInt(courses.size())));
+            }
+            if (random.nextInt(5) == 0) {
+                emit(student, ADVISOR, professors.get(random.nextInt(professors.size())));
+            }
+        }
+
+        int graduates = faculty * between(3, 4);
+        for (int i = 0; i < graduates; i++) {
+            Node student = entity(u, d, "GraduateStudent", i);
+            person(student, GRADUATE_STUDENT, "GraduateStudent" + i, department, MEMBER_OF);
+            emit(student, UNDERGRADUATE_DEGREE_FROM, university(random.nextInt(universities)));
+            int taken = between(1, 3);
+            for (int c = 0; c < taken; c++) {
+                emit(student, TAKES_COURSE, graduateCourses.get(random.nextInt(graduateCourses.size())));
+            }
+            emit(student, ADVISOR, professors.get(random.nextInt(professors.size())));
+            if (random.nextInt(4) == 0) {
+                emit(student, TEACHING_ASSISTANT_OF, courses.get(random.nextInt(courses.size())));
+            }
+        }
+    }
+
+    /**
+     * Generates the faculty of one kind.
+     *
+     * @return the number of faculty generated.
+     */
+    private int faculty(int u, int d, String kind, Node type, int number, int maxPublications, List<Node> courses,
+            List<Node> graduateCourses, List<Node> professors) {
+        Node department = department(u, d);
+        for (int i = 0; i < number; i++) {
+            Node member = entity(u, d, kind, i);
+            person(member, type, kind + i, department, WORKS_FOR);
+            literal(member, TELEPHONE, String.format("xxx-xxx-%04d", random.nextInt(10000)));
+            emit(member, UNDERGRADUATE_DEGREE_FROM, university(random.nextInt(universities)));
+            emit(member, MASTERS_DEGREE_FROM, university(random.nextInt(universities)));
+            emit(member, DOCTORAL_DEGREE_FROM, university(random.nextInt(universities)));
+            int taught = between(1, 2);
+            for (int c = 0; c < taught; c++) {
+                Node course = entity(u, d, "Course", courses.size());
+                emit(course, TYPE, COURSE);
+                literal(course, NAME, "Course" + courses.size());
+                emit(member, TEACHER_OF, course);
+                courses.add(course);
+            }
+            if (professors != null) {
+                professors.add(member);
+                int graduateTaught = between(1, 2);
+                for (int c = 0; c < graduateTaught; c++) {
+                    Node course = entity(u, d, "GraduateCourse", graduateCourses.size());
+                    emit(course, TYPE, GRADUATE_COURSE);
+                    literal(course, NAME, "GraduateCourse" + graduateCourses.size());
+                    emit(member, TEACHER_OF, course);
+                    graduateCourses.add(course);
+                }
+            }
+            int publications = maxPublications == 0 ? 0 : between(maxPublications / 2, maxPublications);
+            for (int p = 0; p < publications; p++) {
+                Node publication = NodeFactory.createURI(member.getURI() + "/Publication" + p);
+                emit(publication, TYPE, PUBLICATION);
+                literal(publication, NAME, "Publication" + p);
+                emit(publication, PUBLICATION_AUTHOR, member);
+            }
+        }
+        return number;
+    }
+
+    private void person(Node person, Node type, String name, Node department, Node membership) {
+        emit(person, TYPE, type);
+        literal(person, NAME, name);
+        literal(person, EMAIL, name + "@" + department.getURI().substring("http://www.".length()));
+        emit(person, membership, department);
+    }
+}
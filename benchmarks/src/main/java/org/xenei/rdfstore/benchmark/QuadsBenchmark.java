@@ -0,0 +1,88 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xenei.rdfstore.mem.MemQuads;
+import org.xenei.rdfstore.store.AbstractQuads;
+import org.xenei.rdfstore.store.Quads.IdxQuad;
+
+/**
+ * Benchmarks {@link AbstractQuads#find} on synthetic data for each of the 16
+ * shapes of bound and unbound positions, see
+ * {@link SyntheticData#pattern(Quad, int)}. The patterns are taken from the
+ * stored quads so every pattern has a match.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuadsBenchmark {
+
+    private static final int PATTERNS = 1 << 10;
+    static final long SEED = 42;
+
+    @Param({ "10000", "100000" })
+    public int size;
+
+    @Param({ "0", "1", "2", "3", "4", "5", "6", "7", "8", "9", "10", "11", "12", "13", "14", "15" })
+    public int shape;
+
+    private AbstractQuads quads;
+    private Quad[] patterns;
+    private int next;
+
+    @Setup
+    public void setup() {
+        quads = new MemQuads();
+        SyntheticData data = new SyntheticData(size, SEED);
+        List<Quad> loaded = new ArrayList<>(size);
+        quads.begin(TxnType.WRITE);
+        for (int i = 0; i < size; i++) {
+            Quad quad = data.next();
+            quads.register(quad);
+            loaded.add(quad);
+        }
+        quads.commit();
+        patterns = new Quad[PATTERNS];
+        for (int i = 0; i < PATTERNS; i++) {
+            patterns[i] = SyntheticData.pattern(loaded.get((int) ((i * 7919L) % size)), shape);
+        }
+    }
+
+    /**
+     * Finds and reads all the quads that match a pattern.
+     *
+     * @param blackhole consumes the quads.
+     */
+    @Benchmark
+    public void find(Blackhole blackhole) {
+        next = (next + 1) & (PATTERNS - 1);
+        ExtendedIterator<IdxQuad> iter = quads.find(patterns[next], idx -> idx);
+        try {
+            while (iter.hasNext()) {
+                blackhole.consume(iter.next());
+            }
+        } finally {
+            iter.close();
+        }
+    }
+}
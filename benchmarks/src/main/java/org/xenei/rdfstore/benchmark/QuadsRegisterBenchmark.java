@@ -0,0 +1,67 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.TxnType;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xenei.rdfstore.mem.MemQuads;
+import org.xenei.rdfstore.store.AbstractQuads;
+
+/**
+ * Benchmarks {@link AbstractQuads#register} into a store that already holds
+ * synthetic data. The quads are registered in a write transaction that is
+ * held for the iteration and aborted at its end.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QuadsRegisterBenchmark {
+
+    @Param({ "0", "10000", "100000" })
+    public int size;
+
+    private AbstractQuads quads;
+    private SyntheticData data;
+
+    @Setup
+    public void setup() {
+        quads = new MemQuads();
+        SyntheticData existing = new SyntheticData(size, QuadsBenchmark.SEED);
+        quads.begin(TxnType.WRITE);
+        for (int i = 0; i < size; i++) {
+            quads.register(existing.next());
+        }
+        quads.commit();
+    }
+
+    @Setup(Level.Iteration)
+    public void begin() {
+        data = new SyntheticData(Math.max(size, 10000), QuadsBenchmark.SEED + 1);
+        quads.begin(TxnType.WRITE);
+    }
+
+    @TearDown(Level.Iteration)
+    public void abort() {
+        quads.abort();
+    }
+
+    @Benchmark
+    public long register() {
+        return quads.register(data.next());
+    }
+}
@@ -0,0 +1,72 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.util.Random;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Generates reproducible quads. The graphs and predicates are few and the
+ * subjects and objects many, as in most RDF data, so the bitmaps of the
+ * graphs and predicates are dense and those of the subjects and objects
+ * sparse.
+ */
+public class SyntheticData {
+
+    private final Node[] graphs;
+    private final Node[] predicates;
+    private final int subjects;
+    private final int objects;
+    private final Random random;
+
+    /**
+     * Constructor.
+     *
+     * @param size the number of quads the data is sized for.
+     * @param seed the seed of the random quads.
+     */
+    public SyntheticData(int size, long seed) {
+        graphs = new Node[10];
+        for (int i = 0; i < graphs.length; i++) {
+            graphs[i] = NodeFactory.createURI("http://example.com/graph/" + i);
+        }
+        predicates = new Node[20];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = NodeFactory.createURI("http://example.com/predicate/" + i);
+        }
+        subjects = Math.max(1, size / 10);
+        objects = Math.max(1, size / 4);
+        random = new Random(seed);
+    }
+
+    /**
+     * Creates the next random quad. The same seed produces the same quads.
+     *
+     * @return the quad.
+     */
+    public Quad next() {
+        Node g = graphs[random.nextInt(graphs.length)];
+        Node s = NodeFactory.createURI("http://example.com/subject/" + random.nextInt(subjects));
+        Node p = predicates[random.nextInt(predicates.length)];
+        int o = random.nextInt(objects);
+        Node object = (o & 1) == 0 ? NodeFactory.createURI("http://example.com/subject/" + (o % subjects))
+                : NodeFactory.createLiteral("value " + o);
+        return Quad.create(g, s, p, object);
+    }
+
+    /**
+     * Creates a pattern from a quad. Bit 3 of the shape binds the graph, bit 2
+     * the subject, bit 1 the predicate and bit 0 the object; the positions that
+     * are not bound are {@link Node#ANY}.
+     *
+     * @param quad the quad.
+     * @param shape the bound positions, 0 to 15.
+     * @return the pattern.
+     */
+    public static Quad pattern(Quad quad, int shape) {
+        return Quad.create((shape & 8) == 0 ? Node.ANY : quad.getGraph(),
+                (shape & 4) == 0 ? Node.ANY : quad.getSubject(), (shape & 2) == 0 ? Node.ANY : quad.getPredicate(),
+                (shape & 1) == 0 ? Node.ANY : quad.getObject());
+    }
+}
@@ -0,0 +1,122 @@
+package org.xenei.rdfstore.benchmark;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.jena.query.ReadWrite;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xenei.rdfstore.mem.TrieStore;
+import org.xenei.rdfstore.store.Store;
+
+/**
+ * Benchmarks {@link TrieStore#register} and {@link TrieStore#get} with URI like
+ * keys that share long prefixes.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TrieStoreBenchmark {
+
+    private static final int KEYS = 1 << 12;
+
+    private static String key(long i) {
+        return "http://example.com/resource/" + (i % 97) + "/item" + i;
+    }
+
+    /**
+     * The populated store and the keys to read.
+     */
+    @State(Scope.Thread)
+    public static class Data {
+        @Param({ "10000", "1000000" })
+        public int size;
+
+        TrieStore<String> store;
+        private String[] existing;
+        private int next;
+
+        @Setup
+        public void setup() {
+            store = new TrieStore<>();
+            store.begin(ReadWrite.WRITE);
+            for (int i = 0; i < size; i++) {
+                store.register(key(i));
+            }
+            store.commit();
+            Random random = new Random(42);
+            existing = new String[KEYS];
+            for (int i = 0; i < KEYS; i++) {
+                existing[i] = key(random.nextInt(size));
+            }
+        }
+
+        String nextKey() {
+            next = (next + 1) & (KEYS - 1);
+            return existing[next];
+        }
+    }
+
+    /**
+     * The read transaction for {@link #get}.
+     */
+    @State(Scope.Thread)
+    public static class Reader {
+        private Data data;
+
+        @Setup(Level.Iteration)
+        public void begin(Data data) {
+            this.data = data;
+            data.store.begin(ReadWrite.READ);
+        }
+
+        @TearDown(Level.Iteration)
+        public void end() {
+            data.store.end();
+        }
+    }
+
+    /**
+     * The write transaction for {@link #register}. The new keys are aborted.
+     */
+    @State(Scope.Thread)
+    public static class Writer {
+        private Data data;
+        private long key;
+
+        @Setup(Level.Iteration)
+        public void begin(Data data) {
+            this.data = data;
+            key = data.size;
+            data.store.begin(ReadWrite.WRITE);
+        }
+
+        @TearDown(Level.Iteration)
+        public void abort() {
+            data.store.abort();
+        }
+    }
+
+    @Benchmark
+    public long get(Reader reader) {
+        return reader.data.store.get(reader.data.nextKey());
+    }
+
+    @Benchmark
+    public Store.Result register(Writer writer) {
+        return writer.data.store.register(key(writer.key++));
+    }
+}
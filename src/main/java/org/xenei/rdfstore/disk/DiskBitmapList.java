@@ -0,0 +1,539 @@
+package org.xenei.rdfstore.disk;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xenei.rdfstore.store.Bitmap;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.LongList;
+import org.xenei.rdfstore.txn.ReaderPins;
+import org.xenei.rdfstore.txn.TxnHandler;
+import org.xenei.rdfstore.txn.TxnId;
+
+/**
+ * A LongList of bitmaps stored on disk.
+ * <p>
+ * The bitmaps are appended to segment files that are memory mapped. Each record
+ * is the list index followed by the bitmap serialized by {@link MappedBitmap}.
+ * A {@link MappedLongList} maps the list index to the offset of the current
+ * record. Reading a bitmap returns a {@code MappedBitmap} over the mapped
+ * record so no data is copied.
+ * </p>
+ * <p>
+ * Bitmaps changed in a write transaction are kept on the heap and appended on
+ * commit, the record they replace becomes garbage. Each segment tracks the
+ * number of live bytes. When a full segment falls below the compaction ratio,
+ * the next commit copies its live records to the current segment. Compaction
+ * therefore runs in the write transaction of the owner of the list and never
+ * takes a lock of its own.
+ * </p>
+ * <p>
+ * A read transaction pins the generation that was committed when it began. A
+ * compacted segment is retired and its file is only deleted once no reader
+ * that could still hold an offset into it remains.
+ * </p>
+ */
+public class DiskBitmapList implements LongList<Bitmap>, AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(DiskBitmapList.class);
+
+    /**
+     * The default size of a segment file.
+     */
+    public static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+    /**
+     * The default live ratio below which a segment is compacted.
+     */
+    public static final double DEFAULT_COMPACT_RATIO = 0.5;
+
+    private static final String INDEX_FILE = "index.dat";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".dat";
+    /**
+     * The segment header: the write position and the number of live bytes.
+     */
+    private static final int HEADER_SIZE = 2 * Long.BYTES;
+    private static final int POS_WRITE = 0;
+    private static final int POS_LIVE = Long.BYTES;
+    /**
+     * The record header: the list index.
+     */
+    private static final int RECORD_HEADER = Long.BYTES;
+
+    private final Path dir;
+    private final int segmentSize;
+    private final double compactRatio;
+    private final MappedLongList<Long> index;
+    private final TxnHandler txnHandler;
+    /**
+     * The mapped segments by segment number, {@code null} if the segment does not
+     * exist. Only the writer changes it, a larger array is published as a copy.
+     */
+    private volatile AtomicReferenceArray<MappedByteBuffer> segments;
+    private int current;
+    /**
+     * {@code true} if the next commit should compact the segments below the
+     * compaction ratio.
+     */
+    private volatile boolean compactionDue;
+    private volatile long generation;
+    private final ReaderPins pins;
+    /**
+     * The segments retired by compaction, by the generation that retired them.
+     */
+    private final TreeMap<Long, List<Integer>> retired;
+
+    /**
+     * Opens or creates a list with the default segment size and compaction ratio.
+     *
+     * @param dir the directory for the files of the list.
+     * @throws IOException on error.
+     */
+    public DiskBitmapList(Path dir) throws IOException {
+        this(dir, DEFAULT_SEGMENT_SIZE, DEFAULT_COMPACT_RATIO);
+    }
+
+    /**
+     * Opens or creates a list.
+     *
+     * @param dir the directory for the files of the list.
+     * @param segmentSize the size of a new segment file.
+     * @param compactRatio the live ratio below which a segment is compacted, 0
+     * disables compaction.
+     * @throws IOException on error.
+     */
+    public DiskBitmapList(Path dir, int segmentSize, double compactRatio) throws IOException {
+        if (segmentSize <= HEADER_SIZE) {
+            throw new IllegalArgumentException("Segment size must be greater than " + HEADER_SIZE);
+        }
+        this.dir = Files.createDirectories(dir);
+        this.segmentSize = segmentSize;
+        this.compactRatio = compactRatio;
+        this.index = new MappedLongList<>(dir.resolve(INDEX_FILE), MappedLongList.Codec.LONG);
+        this.segments = new AtomicReferenceArray<>(4);
+        this.current = -1;
+        this.pins = new ReaderPins();
+        this.retired = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                String name = path.getFileName().toString();
+                int number = Integer
+                        .parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+                map(number, path, Files.size(path));
+                current = Math.max(current, number);
+            }
+        }
+        // a segment left by a crash before its file was deleted is compacted again.
+        this.compactionDue = true;
+        this.txnHandler = new TxnHandler(() -> "DiskBitmapList", this::prepareBegin, this::execCommit,
+                this::execAbort, this::execEnd);
+        index.setTxnId(txnHandler);
+    }
+
+    @Override
+    public void setTxnId(TxnId prefix) {
+        txnHandler.setTxnId(prefix);
+    }
+
+    // ** SEGMENTS
+
+    private Path segmentPath(int number) {
+        return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private MappedByteBuffer map(int number, Path path, long size) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE)) {
+            MappedByteBuffer segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            AtomicReferenceArray<MappedByteBuffer> mapped = segments;
+            if (number >= mapped.length()) {
+                AtomicReferenceArray<MappedByteBuffer> grown = new AtomicReferenceArray<>(
+                        Math.max(number + 1, mapped.length() * 2));
+                for (int i = 0; i < mapped.length(); i++) {
+                    grown.set(i, mapped.get(i));
+                }
+                grown.set(number, segment);
+                segments = grown;
+            } else {
+                mapped.set(number, segment);
+            }
+            return segment;
+        }
+    }
+
+    private MappedByteBuffer newSegment(int minSize) {
+        int number = current + 1;
+        try {
+            MappedByteBuffer segment = map(number, segmentPath(number), Math.max(segmentSize, HEADER_SIZE + minSize));
+            segment.putLong(POS_WRITE, HEADER_SIZE);
+            segment.putLong(POS_LIVE, 0);
+            current = number;
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static int segmentNumber(long offset) {
+        return (int) (offset >>> 32);
+    }
+
+    private static int position(long offset) {
+        return (int) offset;
+    }
+
+    private static int recordSize(ByteBuffer segment, int pos) {
+        return RECORD_HEADER + MappedBitmap.byteSize(segment.getInt(pos + RECORD_HEADER));
+    }
+
+    /**
+     * Appends a record to the current segment, starting a new segment if there is
+     * not enough space.
+     *
+     * @param idx the list index.
+     * @param bitmap the bitmap.
+     * @param dirty the segments that have been changed.
+     * @return the offset of the record.
+     */
+    private long append(long idx, Bitmap bitmap, BitSet dirty) {
+        int size = RECORD_HEADER + MappedBitmap.byteSize(bitmap);
+        MappedByteBuffer segment = current < 0 ? null : segments.get(current);
+        if (segment == null || segment.capacity() - segment.getLong(POS_WRITE) < size) {
+            segment = newSegment(size);
+        }
+        int pos = (int) segment.getLong(POS_WRITE);
+        segment.putLong(pos, idx);
+        MappedBitmap.write(segment, pos + RECORD_HEADER, bitmap);
+        segment.putLong(POS_WRITE, pos + size);
+        segment.putLong(POS_LIVE, segment.getLong(POS_LIVE) + size);
+        dirty.set(current);
+        return ((long) current << 32) | pos;
+    }
+
+    /**
+     * Marks the record as garbage.
+     *
+     * @param offset the offset of the record.
+     * @param dirty the segments that have been changed.
+     */
+    private void release(long offset, BitSet dirty) {
+        int number = segmentNumber(offset);
+        MappedByteBuffer segment = segments.get(number);
+        segment.putLong(POS_LIVE, segment.getLong(POS_LIVE) - recordSize(segment, position(offset)));
+        dirty.set(number);
+    }
+
+    private boolean needsCompaction(int number) {
+        MappedByteBuffer segment = segments.get(number);
+        if (segment == null || number == current || isRetired(number)) {
+            return false;
+        }
+        long used = segment.getLong(POS_WRITE) - HEADER_SIZE;
+        return segment.getLong(POS_LIVE) < used * compactRatio;
+    }
+
+    // ** TRANSACTION FUNCTIONS
+
+    /**
+     * The bitmaps changed in the write transaction, a {@code null} bitmap is
+     * removed.
+     */
+    private TreeMap<Long, IdxData<Bitmap>> txnChanges;
+    private long txnCurrentItem;
+    /**
+     * The segments emptied by compaction in the write transaction.
+     */
+    private List<Integer> txnCompacted;
+
+    private void prepareBegin(ReadWrite readWrite) {
+        index.begin(readWrite);
+        if (readWrite == WRITE) {
+            reclaim();
+            txnChanges = new TreeMap<>();
+            txnCompacted = new ArrayList<>();
+            txnCurrentItem = index.size();
+        } else {
+            txnHandler.snapshot(pins.pin(() -> generation, Long::longValue));
+        }
+    }
+
+    private void execCommit() {
+        if (compactionDue && compactRatio > 0) {
+            compactSegments();
+        }
+        BitSet dirty = new BitSet();
+        for (Map.Entry<Long, IdxData<Bitmap>> entry : txnChanges.entrySet()) {
+            long idx = entry.getKey();
+            Long old = index.get(idx);
+            if (old != null) {
+                release(old, dirty);
+            }
+            Bitmap bitmap = entry.getValue().data;
+            if (bitmap == null || bitmap.isEmpty()) {
+                if (old != null) {
+                    index.remove(idx);
+                }
+            } else {
+                index.set(new IdxData<>(idx, append(idx, bitmap, dirty)));
+            }
+        }
+        for (int number = dirty.nextSetBit(0); number >= 0; number = dirty.nextSetBit(number + 1)) {
+            MappedByteBuffer segment = segments.get(number);
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        index.commit();
+        generation++;
+        for (Integer number : txnCompacted) {
+            retire(number);
+        }
+        boolean compact = false;
+        for (int number = dirty.nextSetBit(0); number >= 0 && !compact; number = dirty.nextSetBit(number + 1)) {
+            compact = needsCompaction(number);
+        }
+        compactionDue = compact;
+        clearTxn();
+        reclaim();
+    }
+
+    private void execAbort() {
+        index.abort();
+        clearTxn();
+    }
+
+    private void execEnd() {
+        index.end();
+        Long pinned = txnHandler.snapshot();
+        pins.unpin(pinned);
+    }
+
+    private void clearTxn() {
+        txnChanges = null;
+        txnCompacted = null;
+    }
+
+    /**
+     * Retires a compacted segment. It is deleted once no reader can see the
+     * generation before this commit.
+     *
+     * @param number the segment number.
+     */
+    private void retire(int number) {
+        MappedByteBuffer segment = segments.get(number);
+        // a left over file will be compacted again when the list is reopened.
+        segment.putLong(POS_LIVE, 0);
+        segment.force();
+        retired.computeIfAbsent(generation, k -> new ArrayList<>()).add(number);
+    }
+
+    private boolean isRetired(int number) {
+        return retired.values().stream().anyMatch(numbers -> numbers.contains(number));
+    }
+
+    /**
+     * Deletes the retired segments that no reader can see. Called by the writer.
+     */
+    private void reclaim() {
+        long oldest = pins.oldest();
+        Iterator<Map.Entry<Long, List<Integer>>> iter = retired.headMap(oldest, true).entrySet().iterator();
+        while (iter.hasNext()) {
+            iter.next().getValue().forEach(this::deleteSegment);
+            iter.remove();
+        }
+    }
+
+    private void deleteSegment(int number) {
+        segments.set(number, null);
+        try {
+            Files.deleteIfExists(segmentPath(number));
+        } catch (IOException e) {
+            LOG.warn("Unable to delete compacted segment {}: {}", segmentPath(number), e.getMessage());
+        }
+    }
+
+    // ** COMPACTION
+
+    /**
+     * Copies the live records of the segments below the compaction ratio to the
+     * current segment in the current write transaction, or in a transaction of
+     * its own if there is none. A list that belongs to a store should be
+     * compacted with {@link #compactOnCommit()} so that the work is done by the
+     * writer of the store. The segment files are deleted once no reader can see
+     * them.
+     *
+     * @return the number of segments compacted.
+     */
+    public int compact() {
+        if (compactRatio <= 0) {
+            return 0;
+        }
+        return txnHandler.doInTxn(WRITE, () -> {
+            compactSegments();
+            return txnCompacted.size();
+        });
+    }
+
+    /**
+     * Makes the next commit compact the segments below the compaction ratio.
+     */
+    public void compactOnCommit() {
+        compactionDue = true;
+    }
+
+    private void compactSegments() {
+        AtomicReferenceArray<MappedByteBuffer> mapped = segments;
+        for (int number = 0; number < mapped.length(); number++) {
+            if (needsCompaction(number) && !txnCompacted.contains(number)) {
+                compactSegment(number);
+            }
+        }
+    }
+
+    private void compactSegment(int number) {
+        MappedByteBuffer segment = segments.get(number);
+        int end = (int) segment.getLong(POS_WRITE);
+        int pos = HEADER_SIZE;
+        while (pos < end) {
+            int size = recordSize(segment, pos);
+            long idx = segment.getLong(pos);
+            Long offset = index.get(idx);
+            if (offset != null && offset == (((long) number << 32) | pos)) {
+                // the record is copied to the transaction so it is appended on commit.
+                if (!txnChanges.containsKey(idx)) {
+                    txnChanges.put(idx, new IdxData<>(idx, new MappedBitmap(segment, pos + RECORD_HEADER)));
+                }
+            }
+            pos += size;
+        }
+        txnCompacted.add(number);
+    }
+
+    // ** LONG LIST
+
+    @Override
+    public IdxData<Bitmap> add(Bitmap data) {
+        return txnHandler.doInTxn(WRITE, () -> {
+            IdxData<Bitmap> idxData = new IdxData<>(txnCurrentItem, data);
+            set(idxData);
+            return idxData;
+        });
+    }
+
+    @Override
+    public long size() {
+        return txnHandler.doInTxn(READ, () -> {
+            return txnHandler.transactionMode() == WRITE ? Math.max(txnCurrentItem, index.size()) : index.size();
+        });
+    }
+
+    @Override
+    public void set(IdxData<Bitmap> data) {
+        txnHandler.doInTxn(WRITE, () -> {
+            txnChanges.put(data.idx, data);
+            if (data.idx >= txnCurrentItem) {
+                txnCurrentItem = data.idx + 1;
+            }
+        });
+    }
+
+    @Override
+    public Bitmap get(long idx) {
+        return txnHandler.doInTxn(READ, () -> {
+            if (txnChanges != null && txnHandler.transactionMode() == WRITE) {
+                IdxData<Bitmap> changed = txnChanges.get(idx);
+                if (changed != null) {
+                    return changed.data;
+                }
+            }
+            Long offset = index.get(idx);
+            if (offset == null) {
+                return null;
+            }
+            return new MappedBitmap(segments.get(segmentNumber(offset)), position(offset) + RECORD_HEADER);
+        });
+    }
+
+    @Override
+    public void remove(long idx) {
+        set(new IdxData<>(idx, null));
+    }
+
+    /**
+     * An iterator over the bitmaps visible to the current thread. For a reader the
+     * iterator must be used before the transaction ends.
+     */
+    @Override
+    public ExtendedIterator<IdxData<Bitmap>> iterator() {
+        return index.iterator().mapWith(data -> new IdxData<>(data.idx,
+                new MappedBitmap(segments.get(segmentNumber(data.data)), position(data.data) + RECORD_HEADER)));
+    }
+
+    /**
+     * Gets the number of segment files.
+     *
+     * @return the number of segments.
+     */
+    public int segmentCount() {
+        AtomicReferenceArray<MappedByteBuffer> mapped = segments;
+        int result = 0;
+        for (int i = 0; i < mapped.length(); i++) {
+            if (mapped.get(i) != null) {
+                result++;
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void begin(ReadWrite readWrite) {
+        txnHandler.begin(readWrite);
+    }
+
+    @Override
+    public void commit() {
+        txnHandler.commit();
+    }
+
+    @Override
+    public void abort() {
+        txnHandler.abort();
+    }
+
+    @Override
+    public void end() {
+        txnHandler.end();
+    }
+
+    /**
+     * Deletes the retired segments and closes the files.
+     *
+     * @throws IOException on error.
+     */
+    @Override
+    public void close() throws IOException {
+        retired.values().forEach(numbers -> numbers.forEach(this::deleteSegment));
+        retired.clear();
+        index.close();
+    }
+}
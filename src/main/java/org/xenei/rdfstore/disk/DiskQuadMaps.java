@@ -0,0 +1,135 @@
+package org.xenei.rdfstore.disk;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+import org.xenei.rdfstore.store.AbstractQuads;
+import org.xenei.rdfstore.store.Idx;
+
+/**
+ * The quad maps stored as {@link DiskBitmapList}s, one directory per index.
+ * <p>
+ * The maps hold the ids of the nodes and quads, so they are only valid together
+ * with the dictionary and quad store that assigned them. Those stores are kept
+ * in memory and are persisted by the checkpoint and write-ahead log of the
+ * quads, which rebuild the maps as well. Maps left in a directory can therefore
+ * not be opened, they are rebuilt with {@link #rebuild(Path)}.
+ * </p>
+ */
+public class DiskQuadMaps extends AbstractQuads.QuadMaps implements AutoCloseable {
+
+    private final DiskBitmapList[] lists;
+
+    /**
+     * Creates the quad maps with the default segment size.
+     *
+     * @param dir the directory for the maps.
+     * @return the quad maps.
+     * @throws IOException on error.
+     * @throws IllegalStateException if the directory contains maps.
+     */
+    public static DiskQuadMaps open(Path dir) throws IOException {
+        return open(dir, DiskBitmapList.DEFAULT_SEGMENT_SIZE, DiskBitmapList.DEFAULT_COMPACT_RATIO);
+    }
+
+    /**
+     * Creates the quad maps.
+     *
+     * @param dir the directory for the maps.
+     * @param segmentSize the size of a new segment file.
+     * @param compactRatio the live ratio below which a segment is compacted.
+     * @return the quad maps.
+     * @throws IOException on error.
+     * @throws IllegalStateException if the directory contains maps.
+     */
+    public static DiskQuadMaps open(Path dir, int segmentSize, double compactRatio) throws IOException {
+        DiskQuadMaps result = new DiskQuadMaps(dir, segmentSize, compactRatio);
+        for (DiskBitmapList list : result.lists) {
+            if (list.size() > 0) {
+                result.close();
+                throw new IllegalStateException(String.format(
+                        "%s contains maps without their dictionary and quad store, rebuild them from the checkpoint",
+                        dir));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Deletes the maps in the directory and creates empty maps with the default
+     * segment size. The quads that use them reload the maps from their checkpoint
+     * and write-ahead log.
+     *
+     * @param dir the directory for the maps.
+     * @return the quad maps.
+     * @throws IOException on error.
+     */
+    public static DiskQuadMaps rebuild(Path dir) throws IOException {
+        return rebuild(dir, DiskBitmapList.DEFAULT_SEGMENT_SIZE, DiskBitmapList.DEFAULT_COMPACT_RATIO);
+    }
+
+    /**
+     * Deletes the maps in the directory and creates empty maps. The quads that use
+     * them reload the maps from their checkpoint and write-ahead log.
+     *
+     * @param dir the directory for the maps.
+     * @param segmentSize the size of a new segment file.
+     * @param compactRatio the live ratio below which a segment is compacted.
+     * @return the quad maps.
+     * @throws IOException on error.
+     */
+    public static DiskQuadMaps rebuild(Path dir, int segmentSize, double compactRatio) throws IOException {
+        for (Idx idx : Idx.values()) {
+            Path mapDir = mapDir(dir, idx);
+            if (Files.exists(mapDir)) {
+                try (Stream<Path> paths = Files.walk(mapDir)) {
+                    for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                        Files.delete(path);
+                    }
+                }
+            }
+        }
+        return new DiskQuadMaps(dir, segmentSize, compactRatio);
+    }
+
+    private static Path mapDir(Path dir, Idx idx) {
+        return dir.resolve(idx.name().toLowerCase());
+    }
+
+    private DiskQuadMaps(Path dir, int segmentSize, double compactRatio) throws IOException {
+        this(lists(dir, segmentSize, compactRatio));
+    }
+
+    private static DiskBitmapList[] lists(Path dir, int segmentSize, double compactRatio) throws IOException {
+        DiskBitmapList[] lists = new DiskBitmapList[Idx.values().length];
+        for (Idx idx : Idx.values()) {
+            lists[idx.ordinal()] = new DiskBitmapList(mapDir(dir, idx), segmentSize, compactRatio);
+        }
+        return lists;
+    }
+
+    private DiskQuadMaps(DiskBitmapList[] lists) {
+        super(lists[Idx.G.ordinal()], lists[Idx.S.ordinal()], lists[Idx.P.ordinal()], lists[Idx.O.ordinal()]);
+        this.lists = lists;
+    }
+
+    /**
+     * Makes the next write transaction of the quads compact the segments of all
+     * the maps, so the compaction is done by the writer of the quads.
+     */
+    public void compact() {
+        for (DiskBitmapList list : lists) {
+            list.compactOnCommit();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (DiskBitmapList list : lists) {
+            list.close();
+        }
+    }
+}
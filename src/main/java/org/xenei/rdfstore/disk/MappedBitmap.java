@@ -0,0 +1,334 @@
+package org.xenei.rdfstore.disk;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+
+import org.xenei.rdfstore.store.Bitmap;
+
+/**
+ * A read only bitmap over a serialized bitmap in a buffer, usually a mapped
+ * file region. The pages are read from the buffer as they are needed so
+ * creating the bitmap does not copy the data.
+ * <p>
+ * The serialized form is the number of pages followed by the page keys, sorted
+ * as unsigned integers, and then the page words.
+ * </p>
+ */
+public class MappedBitmap implements Bitmap {
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int keysPos;
+    private final int wordsPos;
+    private long cardinality = -1;
+
+    /**
+     * Constructor.
+     *
+     * @param buffer the buffer containing the serialized bitmap.
+     * @param pos the position of the serialized bitmap in the buffer.
+     */
+    public MappedBitmap(ByteBuffer buffer, int pos) {
+        this.buffer = buffer;
+        this.size = buffer.getInt(pos);
+        this.keysPos = pos + Integer.BYTES;
+        this.wordsPos = keysPos + size * Integer.BYTES;
+    }
+
+    /**
+     * Calculates the number of bytes needed to serialize the bitmap.
+     *
+     * @param bitmap the bitmap.
+     * @return the number of bytes.
+     */
+    public static int byteSize(Bitmap bitmap) {
+        return byteSize(countPages(bitmap));
+    }
+
+    /**
+     * Counts the pages returned by the cursor of the bitmap, implementations
+     * may count pages differently in {@link Bitmap#pageCount()}.
+     *
+     * @param bitmap the bitmap.
+     * @return the number of pages.
+     */
+    private static int countPages(Bitmap bitmap) {
+        int count = 0;
+        Cursor cursor = bitmap.cursor();
+        if (cursor.key() != NO_INDEX) {
+            do {
+                count++;
+            } while (cursor.advance());
+        }
+        return count;
+    }
+
+    /**
+     * Calculates the number of bytes needed to serialize a bitmap.
+     *
+     * @param pageCount the number of pages in the bitmap.
+     * @return the number of bytes.
+     */
+    public static int byteSize(int pageCount) {
+        return Integer.BYTES + pageCount * (Integer.BYTES + Long.BYTES);
+    }
+
+    /**
+     * Serializes the bitmap.
+     *
+     * @param buffer the buffer to write to.
+     * @param pos the position to write at.
+     * @param bitmap the bitmap to write.
+     * @return the number of bytes written.
+     */
+    public static int write(ByteBuffer buffer, int pos, Bitmap bitmap) {
+        int count = countPages(bitmap);
+        buffer.putInt(pos, count);
+        int keyPos = pos + Integer.BYTES;
+        int wordPos = keyPos + count * Integer.BYTES;
+        Cursor cursor = bitmap.cursor();
+        for (int i = 0; i < count; i++) {
+            buffer.putInt(keyPos + i * Integer.BYTES, (int) cursor.key());
+            buffer.putLong(wordPos + i * Long.BYTES, cursor.word());
+            cursor.advance();
+        }
+        return byteSize(count);
+    }
+
+    private int key(int i) {
+        return buffer.getInt(keysPos + i * Integer.BYTES);
+    }
+
+    private long word(int i) {
+        return buffer.getLong(wordsPos + i * Long.BYTES);
+    }
+
+    /**
+     * Finds the first position at or after {@code from} whose key is greater than
+     * or equal to the target.
+     *
+     * @param from the position to start from.
+     * @param target the unsigned key to search for.
+     * @return the position or {@code size} if all keys are less than the target.
+     */
+    private int search(int from, long target) {
+        int low = from;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (Integer.toUnsignedLong(key(mid)) < target) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private int find(int key) {
+        int pos = search(0, Integer.toUnsignedLong(key));
+        return pos < size && key(pos) == key ? pos : -1;
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("MappedBitmap is read only");
+    }
+
+    @Override
+    public long pageCount() {
+        return size;
+    }
+
+    @Override
+    public long cardinality() {
+        if (cardinality < 0) {
+            long result = 0;
+            for (int i = 0; i < size; i++) {
+                result += Long.bitCount(word(i));
+            }
+            cardinality = result;
+        }
+        return cardinality;
+    }
+
+    @Override
+    public long getWord(int key) {
+        int pos = find(key);
+        return pos < 0 ? 0L : word(pos);
+    }
+
+    @Override
+    public long ceilingKey(long key) {
+        if (key > MAX_UNSIGNED_INT) {
+            return NO_INDEX;
+        }
+        int pos = search(0, key);
+        return pos < size ? Integer.toUnsignedLong(key(pos)) : NO_INDEX;
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            int pos = 0;
+
+            @Override
+            public long key() {
+                return pos < size ? Integer.toUnsignedLong(MappedBitmap.this.key(pos)) : NO_INDEX;
+            }
+
+            @Override
+            public long word() {
+                return pos < size ? MappedBitmap.this.word(pos) : 0L;
+            }
+
+            @Override
+            public boolean advance() {
+                if (pos < size) {
+                    pos++;
+                }
+                return pos < size;
+            }
+
+            @Override
+            public boolean advanceTo(long target) {
+                if (pos < size && Integer.toUnsignedLong(MappedBitmap.this.key(pos)) < target) {
+                    pos = search(pos, target);
+                }
+                return pos < size;
+            }
+        };
+    }
+
+    @Override
+    public Integer firstKey() {
+        return size == 0 ? null : Integer.valueOf(key(0));
+    }
+
+    @Override
+    public Integer higherKey(Integer key) {
+        long next = ceilingKey(Integer.toUnsignedLong(key) + 1);
+        return next == NO_INDEX ? null : Integer.valueOf((int) next);
+    }
+
+    @Override
+    public Entry get(Integer key) {
+        int pos = find(key);
+        return pos < 0 ? null : new Entry(key, word(pos));
+    }
+
+    @Override
+    public Entry firstEntry() {
+        return size == 0 ? null : new Entry(key(0), word(0));
+    }
+
+    @Override
+    public Entry lastEntry() {
+        return size == 0 ? null : new Entry(key(size - 1), word(size - 1));
+    }
+
+    @Override
+    public Iterator<Entry> entries() {
+        return new Iterator<Entry>() {
+            int pos = 0;
+
+            @Override
+            public boolean hasNext() {
+                return pos < size;
+            }
+
+            @Override
+            public Entry next() {
+                if (pos >= size) {
+                    throw new NoSuchElementException();
+                }
+                Entry result = new Entry(key(pos), word(pos));
+                pos++;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long lowest() {
+        if (size == 0) {
+            return NO_INDEX;
+        }
+        return Integer.toUnsignedLong(key(0)) * PAGE_SIZE + Long.numberOfTrailingZeros(word(0));
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            int pos = -1;
+            long bits = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (bits == 0) {
+                    if (++pos >= size) {
+                        return false;
+                    }
+                    bits = word(pos);
+                }
+                return true;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long result = Integer.toUnsignedLong(key(pos)) * PAGE_SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public void put(Integer key, Entry entry) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear() {
+        throw readOnly();
+    }
+
+    @Override
+    public void remove(Integer key) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setWord(int key, long word) {
+        throw readOnly();
+    }
+
+    @Override
+    public void append(int key, long word) {
+        throw readOnly();
+    }
+
+    @Override
+    public void set(long bitIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void clear(long bitIndex) {
+        throw readOnly();
+    }
+
+    @Override
+    public void xor(Bitmap other) {
+        throw readOnly();
+    }
+}
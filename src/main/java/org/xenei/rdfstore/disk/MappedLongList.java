@@ -0,0 +1,721 @@
+package org.xenei.rdfstore.disk;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.LongList;
+import org.xenei.rdfstore.txn.ReaderPins;
+import org.xenei.rdfstore.txn.TxnHandler;
+import org.xenei.rdfstore.txn.TxnId;
+
+/**
+ * A LongList that stores fixed width records in a memory mapped file.
+ * <p>
+ * The file starts with a header followed by segments of
+ * {@code 1 << segmentShift} records. Each segment is mapped separately when it
+ * is first used so the list grows by mapping the next segment and opening an
+ * existing file only reads the header. A record is a flag byte followed by the
+ * item written by the {@link Codec}; a record with a zero flag is empty.
+ * </p>
+ * <p>
+ * Changes made in a write transaction are kept on the heap. On commit the new
+ * records are first written to a journal file that is forced to the storage
+ * device, then written to the mapped segments, and the segments and the header
+ * are forced. The journal is then emptied. A journal that is complete when the
+ * list is opened is written again, so a crash leaves either all or none of a
+ * commit.
+ * </p>
+ * <p>
+ * A read transaction pins the version that was committed when it began. The
+ * values a commit replaces are kept until no reader that began before the
+ * commit remains, so a reader sees the same list until it ends and does not wait
+ * for the writer.
+ * </p>
+ *
+ * @param <T> the type to store.
+ */
+public class MappedLongList<T> implements LongList<T>, AutoCloseable {
+
+    /**
+     * Converts items to and from fixed width records.
+     *
+     * @param <T> the type of item.
+     */
+    public interface Codec<T> {
+        /**
+         * A codec for {@code Long} values.
+         */
+        Codec<Long> LONG = new Codec<Long>() {
+            @Override
+            public int width() {
+                return Long.BYTES;
+            }
+
+            @Override
+            public void write(ByteBuffer buffer, int pos, Long item) {
+                buffer.putLong(pos, item);
+            }
+
+            @Override
+            public Long read(ByteBuffer buffer, int pos) {
+                return buffer.getLong(pos);
+            }
+        };
+
+        /**
+         * Creates a codec for byte buffers of a fixed size.
+         *
+         * @param width the number of bytes in each buffer.
+         * @return the codec.
+         */
+        static Codec<ByteBuffer> bytes(int width) {
+            return new Codec<ByteBuffer>() {
+                @Override
+                public int width() {
+                    return width;
+                }
+
+                @Override
+                public void write(ByteBuffer buffer, int pos, ByteBuffer item) {
+                    for (int i = 0; i < width; i++) {
+                        buffer.put(pos + i, item.get(i));
+                    }
+                }
+
+                @Override
+                public ByteBuffer read(ByteBuffer buffer, int pos) {
+                    ByteBuffer result = ByteBuffer.allocate(width);
+                    for (int i = 0; i < width; i++) {
+                        result.put(i, buffer.get(pos + i));
+                    }
+                    return result;
+                }
+            };
+        }
+
+        /**
+         * Gets the number of bytes written for each item.
+         *
+         * @return the width of the item.
+         */
+        int width();
+
+        /**
+         * Writes the item.
+         *
+         * @param buffer the buffer to write to.
+         * @param pos the position to write at.
+         * @param item the item.
+         */
+        void write(ByteBuffer buffer, int pos, T item);
+
+        /**
+         * Reads an item.
+         *
+         * @param buffer the buffer to read from.
+         * @param pos the position to read from.
+         * @return the item.
+         */
+        T read(ByteBuffer buffer, int pos);
+    }
+
+    /**
+     * The default number of bits of the index used for the position in the
+     * segment.
+     */
+    public static final int DEFAULT_SEGMENT_SHIFT = 16;
+
+    private static final Logger LOG = LoggerFactory.getLogger(MappedLongList.class);
+
+    private static final long MAGIC = 0x52444653544c4c31L; // RDFSTLL1
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+    private static final int POS_MAGIC = 0;
+    private static final int POS_VERSION = 8;
+    private static final int POS_WIDTH = 12;
+    private static final int POS_SHIFT = 16;
+    private static final int POS_NEXT_IDX = 24;
+    private static final int POS_ITEM_COUNT = 32;
+
+    private static final long JOURNAL_MAGIC = 0x52444653544c4a31L; // RDFSTLJ1
+    /**
+     * The journal header: the magic number, the number of records, the next index
+     * and the item count after the commit.
+     */
+    private static final int JOURNAL_HEADER = 3 * Long.BYTES + Integer.BYTES;
+    private static final String JOURNAL_SUFFIX = ".journal";
+
+    private final FileChannel channel;
+    private final FileChannel journal;
+    private final Codec<T> codec;
+    private final int recordSize;
+    private final int segmentShift;
+    private final long segmentMask;
+    private final MappedByteBuffer header;
+    private final TxnHandler txnHandler;
+    /**
+     * The mapped segments. Segments are mapped and the array is replaced by a
+     * larger copy while holding the lock of the list, readers see either array.
+     */
+    private volatile AtomicReferenceArray<MappedByteBuffer> segments;
+    /**
+     * Held for writing while a commit changes the mapped records, readers
+     * validate their reads against it.
+     */
+    private final StampedLock recordLock;
+    private volatile Version committed;
+    private final ReaderPins pins;
+    /**
+     * The values replaced by each commit, by the generation of the commit. Kept
+     * while a reader that began before the commit remains.
+     */
+    private final ConcurrentSkipListMap<Long, Map<Long, T>> replaced;
+
+    /**
+     * A committed version of the list.
+     */
+    private static final class Version {
+        final long generation;
+        final long nextIdx;
+        final long itemCount;
+
+        Version(long generation, long nextIdx, long itemCount) {
+            this.generation = generation;
+            this.nextIdx = nextIdx;
+            this.itemCount = itemCount;
+        }
+    }
+
+    /**
+     * Opens or creates a list with the default segment size.
+     *
+     * @param path the file to store the list in.
+     * @param codec the codec for the items.
+     * @throws IOException on error.
+     */
+    public MappedLongList(Path path, Codec<T> codec) throws IOException {
+        this(path, codec, DEFAULT_SEGMENT_SHIFT);
+    }
+
+    /**
+     * Opens or creates a list. When an existing file is opened the segment size
+     * is read from the file.
+     *
+     * @param path the file to store the list in.
+     * @param codec the codec for the items.
+     * @param segmentShift the number of bits of the index used for the position
+     * in a segment of a new file.
+     * @throws IOException on error.
+     */
+    public MappedLongList(Path path, Codec<T> codec, int segmentShift) throws IOException {
+        this.codec = codec;
+        this.recordSize = codec.width() + 1;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        boolean exists = channel.size() >= HEADER_SIZE;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+        if (exists) {
+            if (header.getLong(POS_MAGIC) != MAGIC || header.getInt(POS_VERSION) != VERSION) {
+                channel.close();
+                throw new IOException(path + " is not a LongList file");
+            }
+            if (header.getInt(POS_WIDTH) != codec.width()) {
+                channel.close();
+                throw new IOException(String.format("%s has records of %s bytes, codec writes %s bytes", path,
+                        header.getInt(POS_WIDTH), codec.width()));
+            }
+            segmentShift = header.getInt(POS_SHIFT);
+        } else {
+            header.putLong(POS_MAGIC, MAGIC);
+            header.putInt(POS_VERSION, VERSION);
+            header.putInt(POS_WIDTH, codec.width());
+            header.putInt(POS_SHIFT, segmentShift);
+            header.putLong(POS_NEXT_IDX, 0);
+            header.putLong(POS_ITEM_COUNT, 0);
+            header.force();
+        }
+        if ((((long) recordSize) << segmentShift) > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IllegalArgumentException("Segment too large: " + recordSize + " bytes << " + segmentShift);
+        }
+        this.segmentShift = segmentShift;
+        this.segmentMask = (1L << segmentShift) - 1;
+        this.segments = new AtomicReferenceArray<>(4);
+        this.recordLock = new StampedLock();
+        this.pins = new ReaderPins();
+        this.replaced = new ConcurrentSkipListMap<>();
+        this.journal = FileChannel.open(path.resolveSibling(path.getFileName() + JOURNAL_SUFFIX),
+                StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        recover(path);
+        this.committed = new Version(0, header.getLong(POS_NEXT_IDX), header.getLong(POS_ITEM_COUNT));
+        this.txnHandler = new TxnHandler(() -> "MappedLongList", this::prepareBegin, this::execCommit,
+                this::execAbort, this::unpin);
+    }
+
+    @Override
+    public void setTxnId(TxnId prefix) {
+        txnHandler.setTxnId(prefix);
+    }
+
+    private static void checkIndex(long idx) {
+        if (idx < 0) {
+            throw new IllegalArgumentException("Index may not be less than zero");
+        }
+    }
+
+    /**
+     * Gets the mapped segment, mapping it if necessary. Mapping a segment past the
+     * end of the file extends the file.
+     *
+     * @param segmentNo the segment number.
+     * @return the segment.
+     */
+    private MappedByteBuffer segment(int segmentNo) {
+        AtomicReferenceArray<MappedByteBuffer> current = segments;
+        MappedByteBuffer segment = segmentNo < current.length() ? current.get(segmentNo) : null;
+        if (segment != null) {
+            return segment;
+        }
+        synchronized (this) {
+            current = segments;
+            if (segmentNo >= current.length()) {
+                AtomicReferenceArray<MappedByteBuffer> grown = new AtomicReferenceArray<>(
+                        Math.max(segmentNo + 1, current.length() * 2));
+                for (int i = 0; i < current.length(); i++) {
+                    grown.set(i, current.get(i));
+                }
+                segments = grown;
+                current = grown;
+            }
+            segment = current.get(segmentNo);
+            if (segment == null) {
+                long size = ((long) recordSize) << segmentShift;
+                try {
+                    segment = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE + segmentNo * size, size);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                current.set(segmentNo, segment);
+            }
+            return segment;
+        }
+    }
+
+    private int segmentNumber(long idx) {
+        long segmentNo = idx >>> segmentShift;
+        if (segmentNo > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Index too large: " + idx);
+        }
+        return (int) segmentNo;
+    }
+
+    private int position(long idx) {
+        return (int) (idx & segmentMask) * recordSize;
+    }
+
+    /**
+     * Reads the item in the mapped record.
+     *
+     * @param idx the index of the item.
+     * @return the item or {@code null} if there is no item.
+     */
+    private T readRecord(long idx) {
+        ByteBuffer segment = segment(segmentNumber(idx));
+        int pos = position(idx);
+        return segment.get(pos) == 0 ? null : codec.read(segment, pos + 1);
+    }
+
+    /**
+     * Reads the item as it was in a committed version. The record is read before
+     * the replaced values are checked: a commit saves the values it replaces
+     * before it changes a record, so a reader that reads a changed record finds
+     * the value of its version in the replaced values.
+     *
+     * @param idx the index of the item.
+     * @param version the version.
+     * @return the item or {@code null} if there is no item.
+     */
+    private T readCommitted(long idx, Version version) {
+        if (idx >= version.nextIdx) {
+            return null;
+        }
+        long stamp = recordLock.tryOptimisticRead();
+        T result = readRecord(idx);
+        if (!recordLock.validate(stamp)) {
+            stamp = recordLock.readLock();
+            try {
+                result = readRecord(idx);
+            } finally {
+                recordLock.unlockRead(stamp);
+            }
+        }
+        for (Map<Long, T> values : replaced.tailMap(version.generation, false).values()) {
+            if (values.containsKey(idx)) {
+                return values.get(idx);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the version visible to the current thread. A writer reads the records
+     * directly, it is the only thread that changes them.
+     *
+     * @return the version.
+     */
+    private Version version() {
+        Version version = txnHandler.snapshot();
+        return version == null ? committed : version;
+    }
+
+    // ** JOURNAL
+
+    /**
+     * Writes the records of a complete journal to the file and empties the
+     * journal. An incomplete journal was left by a crash before any record was
+     * changed and is discarded.
+     *
+     * @param path the list file.
+     * @throws IOException on error.
+     */
+    private void recover(Path path) throws IOException {
+        long size = journal.size();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer buffer = size > Integer.MAX_VALUE ? null : ByteBuffer.allocate((int) size);
+        if (buffer != null) {
+            int read = 0;
+            while (read >= 0 && buffer.hasRemaining()) {
+                read = journal.read(buffer, buffer.position());
+            }
+            buffer.flip();
+        }
+        if (buffer == null || !isComplete(buffer)) {
+            LOG.warn("Discarding incomplete journal of {}", path);
+        } else {
+            int count = buffer.getInt(Long.BYTES);
+            int entry = Long.BYTES + recordSize;
+            BitSet dirty = new BitSet();
+            for (int i = 0; i < count; i++) {
+                int pos = JOURNAL_HEADER + i * entry;
+                long idx = buffer.getLong(pos);
+                int segmentNo = segmentNumber(idx);
+                ByteBuffer segment = segment(segmentNo);
+                int recordPos = position(idx);
+                for (int b = 0; b < recordSize; b++) {
+                    segment.put(recordPos + b, buffer.get(pos + Long.BYTES + b));
+                }
+                dirty.set(segmentNo);
+            }
+            force(dirty);
+            header.putLong(POS_NEXT_IDX, buffer.getLong(Long.BYTES + Integer.BYTES));
+            header.putLong(POS_ITEM_COUNT, buffer.getLong(2 * Long.BYTES + Integer.BYTES));
+            header.force();
+        }
+        journal.truncate(0);
+    }
+
+    private boolean isComplete(ByteBuffer buffer) {
+        if (buffer.limit() < JOURNAL_HEADER + Long.BYTES || buffer.getLong(0) != JOURNAL_MAGIC) {
+            return false;
+        }
+        int count = buffer.getInt(Long.BYTES);
+        long length = JOURNAL_HEADER + (long) count * (Long.BYTES + recordSize);
+        if (count < 0 || length + Long.BYTES > buffer.limit()) {
+            return false;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, (int) length);
+        return crc.getValue() == buffer.getLong((int) length);
+    }
+
+    private void force(BitSet dirty) {
+        AtomicReferenceArray<MappedByteBuffer> current = segments;
+        for (int i = dirty.nextSetBit(0); i >= 0; i = dirty.nextSetBit(i + 1)) {
+            current.get(i).force();
+        }
+    }
+
+    // ** TRANSACTION FUNCTIONS
+
+    /**
+     * The items changed in the write transaction, a {@code null} item is removed.
+     */
+    private TreeMap<Long, IdxData<T>> txnChanges;
+    private long txnCurrentItem;
+
+    private void prepareBegin(ReadWrite readWrite) {
+        if (readWrite == WRITE) {
+            txnChanges = new TreeMap<>();
+            txnCurrentItem = committed.nextIdx;
+        } else {
+            txnHandler.snapshot(pins.pin(() -> committed, v -> v.generation));
+        }
+    }
+
+    private void execCommit() {
+        Version version = committed;
+        long generation = version.generation + 1;
+        long itemCount = version.itemCount;
+        long nextIdx = Math.max(version.nextIdx, txnCurrentItem);
+        int entry = Long.BYTES + recordSize;
+        long length = JOURNAL_HEADER + (long) txnChanges.size() * entry;
+        if (length + Long.BYTES > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many changes in one transaction: " + txnChanges.size());
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) length + Long.BYTES);
+        Map<Long, T> old = new HashMap<>();
+        int pos = JOURNAL_HEADER;
+        for (Map.Entry<Long, IdxData<T>> change : txnChanges.entrySet()) {
+            long idx = change.getKey();
+            T previous = idx < version.nextIdx ? readRecord(idx) : null;
+            old.put(idx, previous);
+            T data = change.getValue().data;
+            buffer.putLong(pos, idx);
+            if (data == null) {
+                buffer.put(pos + Long.BYTES, (byte) 0);
+                if (previous != null) {
+                    itemCount--;
+                }
+            } else {
+                buffer.put(pos + Long.BYTES, (byte) 1);
+                codec.write(buffer, pos + Long.BYTES + 1, data);
+                if (previous == null) {
+                    itemCount++;
+                }
+            }
+            pos += entry;
+        }
+        buffer.putLong(0, JOURNAL_MAGIC);
+        buffer.putInt(Long.BYTES, txnChanges.size());
+        buffer.putLong(Long.BYTES + Integer.BYTES, nextIdx);
+        buffer.putLong(2 * Long.BYTES + Integer.BYTES, itemCount);
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, (int) length);
+        buffer.putLong((int) length, crc.getValue());
+        try {
+            while (buffer.hasRemaining()) {
+                journal.write(buffer, buffer.position());
+            }
+            journal.force(true);
+
+            // readers of older versions read the replaced values from here on.
+            replaced.put(generation, old);
+            BitSet dirty = new BitSet();
+            long stamp = recordLock.writeLock();
+            try {
+                for (pos = JOURNAL_HEADER; pos < length; pos += entry) {
+                    long idx = buffer.getLong(pos);
+                    int segmentNo = segmentNumber(idx);
+                    ByteBuffer segment = segment(segmentNo);
+                    int recordPos = position(idx);
+                    // the flag is written last so a torn record is empty.
+                    for (int b = 1; b < recordSize; b++) {
+                        segment.put(recordPos + b, buffer.get(pos + Long.BYTES + b));
+                    }
+                    segment.put(recordPos, buffer.get(pos + Long.BYTES));
+                    dirty.set(segmentNo);
+                }
+            } finally {
+                recordLock.unlockWrite(stamp);
+            }
+            force(dirty);
+            header.putLong(POS_NEXT_IDX, nextIdx);
+            header.putLong(POS_ITEM_COUNT, itemCount);
+            header.force();
+            journal.truncate(0);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        committed = new Version(generation, nextIdx, itemCount);
+        replaced.headMap(pins.oldest(), true).clear();
+        txnChanges = null;
+    }
+
+    private void execAbort() {
+        txnChanges = null;
+    }
+
+    private void unpin() {
+        Version version = txnHandler.snapshot();
+        pins.unpin(version.generation);
+    }
+
+    /**
+     * Adds the data item to the list.
+     *
+     * @param data the item to add.
+     */
+    @Override
+    public IdxData<T> add(T data) {
+        return txnHandler.doInTxn(WRITE, () -> {
+            IdxData<T> idxData = new IdxData<>(txnCurrentItem, data);
+            set(idxData);
+            return idxData;
+        });
+    }
+
+    /**
+     * returns the size of the list.
+     *
+     * @return the size of the list.
+     */
+    @Override
+    public long size() {
+        return txnHandler.doInTxn(READ, () -> {
+            return txnHandler.transactionMode() == WRITE ? txnCurrentItem : version().nextIdx;
+        });
+    }
+
+    /**
+     * Gets the number of items in the committed list.
+     *
+     * @return the number of non {@code null} items.
+     */
+    public long itemCount() {
+        return committed.itemCount;
+    }
+
+    @Override
+    public void set(IdxData<T> data) {
+        checkIndex(data.idx);
+        segmentNumber(data.idx);
+        txnHandler.doInTxn(WRITE, () -> {
+            txnChanges.put(data.idx, data);
+            if (data.idx >= txnCurrentItem) {
+                txnCurrentItem = data.idx + 1;
+            }
+        });
+    }
+
+    @Override
+    public T get(long idx) {
+        checkIndex(idx);
+        return txnHandler.doInTxn(READ, () -> {
+            if (txnChanges != null && txnHandler.transactionMode() == WRITE) {
+                IdxData<T> changed = txnChanges.get(idx);
+                if (changed != null) {
+                    return changed.data;
+                }
+                return idx < committed.nextIdx ? readRecord(idx) : null;
+            }
+            return readCommitted(idx, version());
+        });
+    }
+
+    /**
+     * Removes the item from the list.
+     *
+     * @param idx the index of the item to remove.
+     */
+    @Override
+    public void remove(long idx) {
+        set(new IdxData<>(idx, null));
+    }
+
+    /**
+     * An iterator over the items visible to the current thread. For a reader the
+     * iterator must be used before the transaction ends.
+     */
+    @Override
+    public ExtendedIterator<IdxData<T>> iterator() {
+        // the writer sees its own changes.
+        boolean writer = txnHandler.transactionMode() == WRITE;
+        TreeMap<Long, IdxData<T>> changes = writer ? txnChanges : null;
+        Version version = version();
+        long end = writer ? txnCurrentItem : version.nextIdx;
+        return WrappedIterator.create(new Iterator<IdxData<T>>() {
+            private final long limit = end;
+            private long idx = 0;
+            private IdxData<T> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && idx < limit) {
+                    T data;
+                    if (writer) {
+                        IdxData<T> changed = changes.get(idx);
+                        data = changed != null ? changed.data : idx < committed.nextIdx ? readRecord(idx) : null;
+                    } else {
+                        data = readCommitted(idx, version);
+                    }
+                    if (data != null) {
+                        next = new IdxData<>(idx, data);
+                    }
+                    idx++;
+                }
+                return next != null;
+            }
+
+            @Override
+            public IdxData<T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                IdxData<T> result = next;
+                next = null;
+                return result;
+            }
+        });
+    }
+
+    @Override
+    public void begin(ReadWrite readWrite) {
+        txnHandler.begin(readWrite);
+    }
+
+    @Override
+    public void commit() {
+        txnHandler.commit();
+    }
+
+    @Override
+    public void abort() {
+        txnHandler.abort();
+    }
+
+    @Override
+    public void end() {
+        txnHandler.end();
+    }
+
+    /**
+     * Closes the files. The mapped segments are released when they are garbage
+     * collected.
+     *
+     * @throws IOException on error.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            journal.close();
+        } finally {
+            channel.close();
+        }
+    }
+}
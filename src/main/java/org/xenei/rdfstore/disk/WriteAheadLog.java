@@ -0,0 +1,576 @@
+package org.xenei.rdfstore.disk;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.zip.CRC32;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.sparql.core.Quad;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.xenei.rdfstore.mem.OffHeapNodeStore;
+
+/**
+ * A write-ahead log of the quads registered and deleted by write transactions.
+ * <p>
+ * The operations of a write transaction are buffered on the heap by
+ * {@link #log(Op, Quad)}. When the transaction commits {@link #commit()} writes
+ * them to the file as a single frame, before the changes are applied to the
+ * stores. The frame is not forced to disk until the committing thread calls
+ * {@link #awaitDurable()}, which it does after it has released the write lock.
+ * </p>
+ * <p>
+ * The first thread to wait becomes the leader, it waits for the group commit
+ * window so that other writers can add their frames and then forces the file
+ * once for all of them. Threads that wait while the leader is forcing the file
+ * are covered by the next force.
+ * </p>
+ * <p>
+ * The frame of a transaction is written before the changes are published. If
+ * publishing fails the transaction is aborted and {@link #abort()} removes the
+ * frame, so it is not replayed. {@link #published()} marks the frame as
+ * committed once the changes are published.
+ * </p>
+ * <p>
+ * The header holds the number of bytes removed from the start of the log by
+ * {@link #truncate(long)}, so the values returned by {@link #position()} keep
+ * increasing across restarts. A frame is the length of the operations, the
+ * number of operations, the operations and a CRC32 of the operations. On open
+ * the frames are checked and a torn frame at the end of the file, left by a
+ * crash during a write, is removed.
+ * </p>
+ */
+public class WriteAheadLog implements AutoCloseable {
+    private static final Logger LOG = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    /**
+     * The operations that are logged.
+     */
+    public enum Op {
+        REGISTER, DELETE
+    }
+
+    /**
+     * The default group commit window in nanoseconds.
+     */
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private static final long MAGIC = 0x5244465354574131L; // RDFSTWA1
+    private static final int VERSION = 2;
+    /**
+     * The header: the magic number, the version, 4 unused bytes and the base.
+     */
+    private static final int HEADER_SIZE = 24;
+    private static final int BASE_POS = 16;
+    /**
+     * The frame header: the length of the operations and the number of
+     * operations.
+     */
+    private static final int FRAME_HEADER = 2 * Integer.BYTES;
+    private static final int FRAME_TRAILER = Long.BYTES;
+
+    private final Path path;
+    private FileChannel channel;
+    private final long groupCommitWindow;
+
+    /**
+     * The operations of the current write transaction.
+     */
+    private final ByteArrayOutputStream txnBytes;
+    private final DataOutputStream txnOut;
+    private int txnOps;
+    /**
+     * The position of the frame written for the current write transaction until
+     * the transaction is published, or -1.
+     */
+    private long txnFrame = -1;
+    private boolean replaying;
+
+    /**
+     * The number of bytes removed from the start of the log by
+     * {@link #truncate(long)}. Positions are counted from the start of the log
+     * as it was first created so that they only increase, the position in the
+     * file is the position less the base. It is kept in the header.
+     */
+    private long base;
+    /**
+     * The position at which the next frame is written.
+     */
+    private volatile long writtenPos;
+    /**
+     * The position up to which the file has been forced.
+     */
+    private long syncedPos;
+    private boolean syncing;
+    private long commitCount;
+    private long syncCount;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition synced = syncLock.newCondition();
+    /**
+     * The position each committing thread must wait for.
+     */
+    private final ThreadLocal<Long> pending = new ThreadLocal<>();
+
+    /**
+     * Opens or creates a log with the default group commit window.
+     *
+     * @param path the log file.
+     * @throws IOException on error.
+     */
+    public WriteAheadLog(Path path) throws IOException {
+        this(path, DEFAULT_GROUP_COMMIT_WINDOW);
+    }
+
+    /**
+     * Opens or creates a log.
+     *
+     * @param path the log file.
+     * @param groupCommitWindow the number of nanoseconds the first committer waits
+     * for other committers before forcing the file, 0 forces immediately.
+     * @throws IOException on error.
+     */
+    public WriteAheadLog(Path path, long groupCommitWindow) throws IOException {
+        if (groupCommitWindow < 0) {
+            throw new IllegalArgumentException("Group commit window may not be negative");
+        }
+        this.path = path;
+        this.groupCommitWindow = groupCommitWindow;
+        this.txnBytes = new ByteArrayOutputStream();
+        this.txnOut = new DataOutputStream(txnBytes);
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE);
+        if (channel.size() >= HEADER_SIZE) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            channel.read(header, 0);
+            if (header.getLong(0) != MAGIC || header.getInt(Long.BYTES) != VERSION) {
+                channel.close();
+                throw new IOException(path + " is not a write-ahead log file");
+            }
+            base = header.getLong(BASE_POS);
+            long end = scan();
+            if (end < channel.size()) {
+                LOG.warn("Removing {} bytes of incomplete transaction from {}", channel.size() - end, path);
+                channel.truncate(end);
+            }
+            writtenPos = base + end;
+        } else {
+            channel.truncate(0);
+            channel.write(header(0), 0);
+            channel.force(true);
+            writtenPos = HEADER_SIZE;
+        }
+        syncedPos = writtenPos;
+    }
+
+    // ** FRAMES
+
+    private static ByteBuffer header(long base) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(0, MAGIC);
+        header.putInt(Long.BYTES, VERSION);
+        header.putLong(BASE_POS, base);
+        return header;
+    }
+
+    /**
+     * Reads the frame at the position.
+     *
+     * @param pos the position of the frame in the file.
+     * @return the frame positioned at the number of operations with the limit at
+     * the end of the operations, or {@code null} if there is no complete frame at
+     * the position.
+     * @throws IOException on error.
+     */
+    private ByteBuffer readFrame(long pos) throws IOException {
+        long size = channel.size();
+        if (size - pos < FRAME_HEADER + FRAME_TRAILER) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(Integer.BYTES);
+        channel.read(header, pos);
+        int length = header.getInt(0);
+        if (length < 0 || size - pos - FRAME_HEADER - FRAME_TRAILER < length) {
+            return null;
+        }
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + length + FRAME_TRAILER);
+        while (frame.hasRemaining()) {
+            if (channel.read(frame, pos + Integer.BYTES + frame.position()) < 0) {
+                return null;
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), 0, Integer.BYTES + length);
+        if (crc.getValue() != frame.getLong(Integer.BYTES + length)) {
+            return null;
+        }
+        frame.position(0);
+        frame.limit(Integer.BYTES + length);
+        return frame;
+    }
+
+    /**
+     * Finds the end of the last complete frame.
+     *
+     * @return the position after the last complete frame.
+     * @throws IOException on error.
+     */
+    private long scan() throws IOException {
+        long pos = HEADER_SIZE;
+        ByteBuffer frame = readFrame(pos);
+        while (frame != null) {
+            pos += FRAME_HEADER + frame.limit() - Integer.BYTES + FRAME_TRAILER;
+            frame = readFrame(pos);
+        }
+        return pos;
+    }
+
+    private static void writeNode(DataOutputStream out, Node node) throws IOException {
+        byte[] record = OffHeapNodeStore.encode(node);
+        out.writeInt(record.length);
+        out.write(record);
+    }
+
+    private static Node readNode(ByteBuffer frame) {
+        int length = frame.getInt();
+        int end = frame.position() + length;
+        Node result = OffHeapNodeStore.decode(frame);
+        frame.position(end);
+        return result;
+    }
+
+    // ** LOGGING
+
+    /**
+     * Records an operation of the current write transaction. Operations are
+     * ignored while the log is being replayed.
+     *
+     * @param op the operation.
+     * @param quad the quad.
+     */
+    public void log(Op op, Quad quad) {
+        if (replaying) {
+            return;
+        }
+        try {
+            txnOut.writeByte(op.ordinal());
+            writeNode(txnOut, quad.getGraph());
+            writeNode(txnOut, quad.getSubject());
+            writeNode(txnOut, quad.getPredicate());
+            writeNode(txnOut, quad.getObject());
+            txnOps++;
+        } catch (IOException e) {
+            // a ByteArrayOutputStream does not throw.
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the operations of the current write transaction to the file. The
+     * file is not forced, the committing thread must call {@link #awaitDurable()}
+     * once it has released the write lock. The frame is removed by
+     * {@link #abort()} until {@link #published()} is called.
+     */
+    public void commit() {
+        if (txnOps == 0) {
+            return;
+        }
+        int length = txnBytes.size();
+        ByteBuffer frame = ByteBuffer.allocate(FRAME_HEADER + length + FRAME_TRAILER);
+        frame.putInt(length);
+        frame.putInt(txnOps);
+        frame.put(txnBytes.toByteArray());
+        CRC32 crc = new CRC32();
+        crc.update(frame.array(), Integer.BYTES, Integer.BYTES + length);
+        frame.putLong(crc.getValue());
+        frame.flip();
+        clear();
+        syncLock.lock();
+        try {
+            long pos = writtenPos;
+            txnFrame = pos;
+            while (frame.hasRemaining()) {
+                pos += channel.write(frame, pos - base);
+            }
+            writtenPos = pos;
+            commitCount++;
+            pending.set(pos);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Marks the frame written by {@link #commit()} as published, it is no longer
+     * removed by {@link #abort()}.
+     */
+    public void published() {
+        txnFrame = -1;
+    }
+
+    /**
+     * Discards the operations of the current write transaction. If the frame of
+     * the transaction has been written but not published it is removed from the
+     * file.
+     */
+    public void abort() {
+        clear();
+        if (txnFrame >= 0) {
+            removeFrame(txnFrame);
+            txnFrame = -1;
+        }
+    }
+
+    /**
+     * Removes the frame at the position, and every frame after it, from the file.
+     * The writer holds the write lock so the frame is the last one written.
+     *
+     * @param start the position of the frame.
+     */
+    private void removeFrame(long start) {
+        syncLock.lock();
+        try {
+            // the leader releases the lock while it forces the channel.
+            while (syncing) {
+                synced.awaitUninterruptibly();
+            }
+            channel.truncate(start - base);
+            channel.force(true);
+            writtenPos = start;
+            syncedPos = start;
+            commitCount--;
+            pending.remove();
+            synced.signalAll();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void clear() {
+        txnBytes.reset();
+        txnOps = 0;
+    }
+
+    /**
+     * Waits until the frame written by the last commit of this thread has been
+     * forced to disk. Does nothing if this thread has no frame waiting.
+     */
+    public void awaitDurable() {
+        Long target = pending.get();
+        if (target == null) {
+            return;
+        }
+        pending.remove();
+        syncLock.lock();
+        try {
+            while (syncedPos < target) {
+                if (syncing) {
+                    synced.awaitUninterruptibly();
+                } else {
+                    sync();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Forces the file as the leader of a group. Called with the sync lock held,
+     * the lock is released while waiting for the group and forcing the file.
+     */
+    private void sync() {
+        syncing = true;
+        long upTo = syncedPos;
+        syncLock.unlock();
+        try {
+            long deadline = System.nanoTime() + groupCommitWindow;
+            for (long remaining = groupCommitWindow; remaining > 0; remaining = deadline - System.nanoTime()) {
+                LockSupport.parkNanos(remaining);
+            }
+            upTo = writtenPos;
+            channel.force(false);
+        } catch (IOException e) {
+            upTo = syncedPos;
+            throw new UncheckedIOException(e);
+        } finally {
+            syncLock.lock();
+            syncing = false;
+            if (upTo > syncedPos) {
+                syncedPos = upTo;
+                syncCount++;
+            }
+            synced.signalAll();
+        }
+    }
+
+    // ** REPLAY
+
+    /**
+     * Passes the operations of every committed transaction in the log to the
+     * consumer, in commit order. Operations logged by the consumer are ignored.
+     *
+     * @param consumer the consumer of the operations.
+     * @return the number of transactions replayed.
+     */
+    public long replay(BiConsumer<Op, Quad> consumer) {
+        Op[] ops = Op.values();
+        long result = 0;
+        replaying = true;
+        try {
+            long pos = HEADER_SIZE;
+            long end = writtenPos - base;
+            while (pos < end) {
+                ByteBuffer frame = readFrame(pos);
+                if (frame == null) {
+                    throw new IOException(String.format("%s is corrupt at %s", path, pos));
+                }
+                pos += FRAME_HEADER + frame.limit() - Integer.BYTES + FRAME_TRAILER;
+                int count = frame.getInt();
+                for (int i = 0; i < count; i++) {
+                    Op op = ops[frame.get()];
+                    Node g = readNode(frame);
+                    Node s = readNode(frame);
+                    Node p = readNode(frame);
+                    Node o = readNode(frame);
+                    consumer.accept(op, Quad.create(g, s, p, o));
+                }
+                result++;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            replaying = false;
+        }
+        return result;
+    }
+
+    /**
+     * Gets the number of transactions written to the log since it was opened.
+     *
+     * @return the number of commits.
+     */
+    public long commitCount() {
+        syncLock.lock();
+        try {
+            return commitCount;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the number of times the log has been forced since it was opened.
+     *
+     * @return the number of syncs.
+     */
+    public long syncCount() {
+        syncLock.lock();
+        try {
+            return syncCount;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the size of the log file.
+     *
+     * @return the number of bytes in the log.
+     */
+    public long size() {
+        syncLock.lock();
+        try {
+            return writtenPos - base;
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Gets the position after the last frame written. A checkpoint that contains
+     * every transaction committed so far records this position so that the log
+     * can be truncated to it. Positions are not reset when the log is truncated
+     * or reopened.
+     *
+     * @return the position after the last frame.
+     */
+    public long position() {
+        return writtenPos;
+    }
+
+    /**
+     * Removes the frames before the position from the log. The remaining frames
+     * are copied to a new file that replaces the log, so a crash leaves either
+     * the old or the new log.
+     *
+     * @param position a position returned by {@link #position()}.
+     * @throws IOException on error.
+     */
+    public void truncate(long position) throws IOException {
+        syncLock.lock();
+        try {
+            // the leader releases the lock while it forces the channel.
+            while (syncing) {
+                synced.awaitUninterruptibly();
+            }
+            long from = position - base;
+            long end = writtenPos - base;
+            if (from <= HEADER_SIZE) {
+                return;
+            }
+            if (from > end) {
+                throw new IllegalArgumentException(String.format("Position %s is after the end of the log %s",
+                        position, writtenPos));
+            }
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                out.write(header(base + from - HEADER_SIZE), 0);
+                out.position(HEADER_SIZE);
+                for (long pos = from; pos < end;) {
+                    pos += channel.transferTo(pos, end - pos, out);
+                }
+                out.force(true);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            channel.close();
+            channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            base += from - HEADER_SIZE;
+            // the new file has been forced.
+            if (syncedPos < writtenPos) {
+                syncedPos = writtenPos;
+                synced.signalAll();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        syncLock.lock();
+        try {
+            channel.force(true);
+            channel.close();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+}
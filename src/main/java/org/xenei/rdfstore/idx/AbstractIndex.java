@@ -3,11 +3,13 @@ package org.xenei.rdfstore.idx;
 import static org.apache.jena.query.ReadWrite.READ;
 import static org.apache.jena.query.ReadWrite.WRITE;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.TreeMap;
 import java.util.function.Supplier;
 
@@ -18,18 +20,37 @@ import org.xenei.rdfstore.store.Index;
 import org.xenei.rdfstore.txn.TxnHandler;
 import org.xenei.rdfstore.txn.TxnId;
 
+/**
+ * An index of items to the bitmaps of the ids that have them.
+ * <p>
+ * The committed mapper is not changed. The first change in a write transaction
+ * copies the mapper, and a bitmap is copied the first time it is changed, so
+ * that commit only publishes the copy. A read transaction pins the mapper that
+ * was committed when it began.
+ * </p>
+ *
+ * @param <T> the type of the item.
+ */
 public class AbstractIndex<T> implements Index<T> {
 
-    private final Mapper<T> map;// Map<T, IdxData<Bitmap>> map;
+    private volatile Mapper<T> map;
     private final TxnHandler txnHandler;
     private Supplier<Bitmap> bitmapSupplier;
-    private Mapper<T> txnAddMap;
-    private Set<T> txnDelSet;
+    /**
+     * The copy of the mapper changed by the write transaction, {@code null}
+     * until the first change.
+     */
+    private Mapper<T> txnMap;
+    /**
+     * The items whose bitmaps have been copied in the write transaction.
+     */
+    private Set<T> txnCopied;
 
     public AbstractIndex(TxnId txnId, Supplier<Bitmap> bitmapSupplier, Mapper<T> map) {
         this.map = map;
         this.bitmapSupplier = bitmapSupplier;
-        txnHandler = new TxnHandler(txnId, this::prepareBegin, this::execCommit, this::execAbort, this::execEnd);
+        txnHandler = new TxnHandler(txnId, this::prepareBegin, this::execCommit, this::execAbort, () -> {
+        });
     }
 
     private static <T> void addAll(Mapper<T> from, Mapper<T> to) {
@@ -46,41 +67,53 @@ public class AbstractIndex<T> implements Index<T> {
     }
 
     void prepareBegin(ReadWrite readWrite) {
-        txnAddMap = new MapMapper<T>(new TreeMap<>());
-        txnDelSet = new HashSet<>();
+        txnHandler.snapshot(map);
     }
 
     void execCommit() {
-        map.putAll(txnAddMap);
-        txnDelSet.forEach(key -> {
-            map.remove(key);
-        });
-        txnAddMap = null;
-        txnDelSet = null;
+        if (txnMap != null) {
+            map = txnMap;
+        }
+        clearTxn();
     }
 
     void execAbort() {
-        txnAddMap = null;
-        txnDelSet = null;
+        clearTxn();
     }
 
-    void execEnd() {
-        txnAddMap = null;
-        txnDelSet = null;
+    private void clearTxn() {
+        txnMap = null;
+        txnCopied = null;
+    }
+
+    /**
+     * Gets the mapper of the write transaction, copying the committed mapper if
+     * this is the first change.
+     *
+     * @return the mapper of the write transaction.
+     */
+    private Mapper<T> writable() {
+        if (txnMap == null) {
+            txnMap = map.copy();
+            txnCopied = new HashSet<>();
+            txnHandler.snapshot(txnMap);
+        }
+        return txnMap;
     }
 
     @Override
     public Bitmap register(T item, long id) {
         return txnHandler.doInTxn(WRITE, () -> {
             checkIndex(id, Integer.MAX_VALUE);
-            IdxData<Bitmap> idx = txnAddMap.get(item);
-            if (idx == null && !txnDelSet.contains(item)) {
-                idx = map.get(item);
-            }
+            Mapper<T> mapper = writable();
+            IdxData<Bitmap> idx = mapper.get(item);
             if (idx == null) {
-                txnDelSet.remove(item);
                 idx = new IdxData<Bitmap>(id, bitmapSupplier.get());
-                txnAddMap.put(item, idx);
+                mapper.put(item, idx);
+                txnCopied.add(item);
+            } else if (txnCopied.add(item)) {
+                idx = new IdxData<Bitmap>(idx.idx, idx.data.copy(bitmapSupplier));
+                mapper.put(item, idx);
             }
             idx.data.set(id);
             return idx.data;
@@ -91,13 +124,19 @@ public class AbstractIndex<T> implements Index<T> {
     public void delete(T item, long id) {
         txnHandler.doInTxn(WRITE, () -> {
             checkIndex(id, Integer.MAX_VALUE);
-            IdxData<Bitmap> idx = map.get(item);
+            Mapper<T> mapper = writable();
+            IdxData<Bitmap> idx = mapper.get(item);
             if (idx == null) {
-                idx = txnAddMap.get(item);
+                return;
+            }
+            if (txnCopied.add(item)) {
+                idx = new IdxData<Bitmap>(idx.idx, idx.data.copy(bitmapSupplier));
+                mapper.put(item, idx);
             }
-            if (idx != null) {
-                txnDelSet.add(item);
-                txnAddMap.remove(item);
+            idx.data.clear(id);
+            if (idx.data.isEmpty()) {
+                mapper.remove(item);
+                txnCopied.remove(item);
             }
         });
     }
@@ -105,7 +144,8 @@ public class AbstractIndex<T> implements Index<T> {
     @Override
     public Bitmap get(T item) {
         return txnHandler.doInTxn(READ, () -> {
-            IdxData<Bitmap> idx = map.get(item);
+            Mapper<T> mapper = txnHandler.snapshot();
+            IdxData<Bitmap> idx = mapper.get(item);
             return idx == null ? bitmapSupplier.get() : idx.data;
         });
     }
@@ -113,7 +153,8 @@ public class AbstractIndex<T> implements Index<T> {
     @Override
     public long size() {
         return txnHandler.doInTxn(READ, () -> {
-            return map.size() + txnAddMap.size() - txnDelSet.size();
+            Mapper<T> mapper = txnHandler.snapshot();
+            return mapper.size();
         });
     }
 
@@ -149,6 +190,14 @@ public class AbstractIndex<T> implements Index<T> {
             addAll(other, this);
         }
 
+        /**
+         * Creates a mapper with the same entries that can be changed without
+         * changing this one.
+         *
+         * @return the copy.
+         */
+        Mapper<T> copy();
+
         void remove(T thing);
 
         Iterator<Map.Entry<T, IdxData<Bitmap>>> iterator();
@@ -190,6 +239,13 @@ public class AbstractIndex<T> implements Index<T> {
             wrapped.remove(thing);
         }
 
+        @Override
+        public Mapper<T> copy() {
+            return new MapMapper<T>(wrapped instanceof SortedMap
+                    ? new TreeMap<T, IdxData<Bitmap>>((SortedMap<T, IdxData<Bitmap>>) wrapped)
+                    : new HashMap<T, IdxData<Bitmap>>(wrapped));
+        }
+
         @Override
         public Iterator<Entry<T, IdxData<Bitmap>>> iterator() {
             return wrapped.entrySet().iterator();
@@ -10,11 +10,19 @@ import org.apache.jena.riot.system.PrefixMap;
 import org.apache.jena.riot.system.PrefixMapStd;
 import org.apache.jena.sparql.core.DatasetGraphTriplesQuads;
 import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.sparql.engine.main.QC;
+import org.apache.jena.sys.JenaSystem;
 import org.xenei.rdfstore.mem.MemQuads;
 import org.xenei.rdfstore.store.Idx;
 import org.xenei.rdfstore.store.Quads;
+import org.xenei.rdfstore.store.Quads.QuadCursorIterator;
 
 public class Dataset extends DatasetGraphTriplesQuads {
+    static {
+        // the count executor is registered with ARQ, which must be initialised first.
+        JenaSystem.init();
+    }
+
     private Quads quads;
     private PrefixMap prefixes;
 
@@ -22,9 +30,10 @@ public class Dataset extends DatasetGraphTriplesQuads {
         this(new MemQuads());
     }
 
-    Dataset(Quads quads) {
+    public Dataset(Quads quads) {
         this.quads = quads;
         prefixes = new PrefixMapStd();
+        QC.setFactory(getContext(), OpExecutorCount.FACTORY);
     }
 
     @Override
@@ -32,6 +41,34 @@ public class Dataset extends DatasetGraphTriplesQuads {
         return quads.listNodes(Idx.G);
     }
 
+    /**
+     * Gets the number of named graphs. The default graph is not counted.
+     *
+     * @return the number of named graphs that have quads.
+     */
+    @Override
+    public long size() {
+        long size = 0;
+        for (Iterator<Node> iter = listGraphNodes(); iter.hasNext();) {
+            if (!Quad.isDefaultGraph(iter.next())) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Gets the number of quads in a graph.
+     *
+     * @param graphNode the graph name, {@code null} or {@code Node.ANY} for all
+     * the graphs.
+     * @return the number of quads in the graph.
+     * @see Quads#size(Node)
+     */
+    public long size(Node graphNode) {
+        return quads.size(graphNode);
+    }
+
     @Override
     public PrefixMap prefixes() {
         return prefixes;
@@ -84,7 +121,7 @@ public class Dataset extends DatasetGraphTriplesQuads {
 
     @Override
     protected void addToDftGraph(Node s, Node p, Node o) {
-        quads.delete(Quad.create(Quad.defaultGraphNodeGenerated, s, p, o));
+        quads.register(Quad.create(Quad.defaultGraphNodeGenerated, s, p, o));
     }
 
     @Override
@@ -104,17 +141,18 @@ public class Dataset extends DatasetGraphTriplesQuads {
 
     @Override
     protected Iterator<Quad> findInDftGraph(Node s, Node p, Node o) {
-        return quads.find(Quad.create(Quad.defaultGraphNodeGenerated, s, p, o), quads::asQuad);
+        return new QuadCursorIterator<>(quads.cursor(Quad.create(Quad.defaultGraphNodeGenerated, s, p, o)),
+                quads::asQuad);
     }
 
     @Override
     protected Iterator<Quad> findInSpecificNamedGraph(Node g, Node s, Node p, Node o) {
-        return quads.find(Quad.create(g, s, p, o), quads::asQuad);
+        return new QuadCursorIterator<>(quads.cursor(Quad.create(g, s, p, o)), quads::asQuad);
     }
 
     @Override
     protected Iterator<Quad> findInAnyNamedGraphs(Node s, Node p, Node o) {
-        return quads.find(Quad.create(null, s, p, o), quads::asQuad);
+        return new QuadCursorIterator<>(quads.cursor(Quad.create(null, s, p, o)), quads::asQuad);
     }
 
     @Override
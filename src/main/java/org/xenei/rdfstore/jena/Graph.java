@@ -32,15 +32,28 @@ public class Graph extends GraphBase {
 
     @Override
     protected ExtendedIterator<Triple> graphBaseFind(Triple triplePattern) {
-        return quads.find(Quad.create(graphName, triplePattern), quads::asTriple);
+        return new Quads.QuadCursorIterator<>(quads.cursor(Quad.create(graphName, triplePattern)), quads::asTriple);
     }
 
     @Override
     protected int graphBaseSize() {
-        long size = quads.size();
+        long size = quads.size(graphName);
         return size > Integer.MAX_VALUE ? Integer.MAX_VALUE : (int) size;
     }
 
+    /**
+     * Counts the triples in this graph that match the pattern without reading
+     * them. Unlike {@link #size()} the count is not limited to
+     * {@code Integer.MAX_VALUE}.
+     *
+     * @param triplePattern the pattern, {@code Node.ANY} matches any node.
+     * @return the number of matching triples.
+     * @see Quads#count(Quad)
+     */
+    public long count(Triple triplePattern) {
+        return quads.count(Quad.create(graphName, triplePattern));
+    }
+
     /**
      * Add a triple to the triple store. The default implementation throws an
      * AddDeniedException; subclasses must override if they want to be able to add
@@ -0,0 +1,134 @@
+package org.xenei.rdfstore.jena;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.OpBGP;
+import org.apache.jena.sparql.algebra.op.OpGraph;
+import org.apache.jena.sparql.algebra.op.OpGroup;
+import org.apache.jena.sparql.core.BasicPattern;
+import org.apache.jena.sparql.engine.ExecutionContext;
+import org.apache.jena.sparql.engine.QueryIterator;
+import org.apache.jena.sparql.engine.binding.BindingFactory;
+import org.apache.jena.sparql.engine.iterator.QueryIterSingleton;
+import org.apache.jena.sparql.engine.main.OpExecutor;
+import org.apache.jena.sparql.engine.main.OpExecutorFactory;
+import org.apache.jena.sparql.expr.Expr;
+import org.apache.jena.sparql.expr.ExprAggregator;
+import org.apache.jena.sparql.expr.NodeValue;
+import org.apache.jena.sparql.expr.aggregate.AggCount;
+import org.apache.jena.sparql.expr.aggregate.AggCountVar;
+import org.apache.jena.sparql.expr.aggregate.Aggregator;
+
+/**
+ * An ARQ executor that answers {@code COUNT} queries over a single triple
+ * pattern from the bitmaps of the store, see {@link Graph#count(Triple)},
+ * instead of reading every match.
+ * <p>
+ * Only a group without group keys and with a single {@code COUNT(*)} or
+ * {@code COUNT(?var)}, that is not {@code DISTINCT}, over a basic graph pattern
+ * with one triple pattern that does not repeat a variable, optionally in a
+ * {@code GRAPH} with a graph name, is answered this way. The graph must be a
+ * {@link Graph} and the group must not be joined to earlier bindings.
+ * Everything else is executed by the standard executor.
+ * </p>
+ * <p>
+ * The {@link Dataset} registers the {@link #FACTORY} in its context.
+ * </p>
+ */
+public class OpExecutorCount extends OpExecutor {
+
+    /**
+     * The factory to register with
+     * {@link org.apache.jena.sparql.engine.main.QC#setFactory}.
+     */
+    public static final OpExecutorFactory FACTORY = OpExecutorCount::new;
+
+    protected OpExecutorCount(ExecutionContext execCxt) {
+        super(execCxt);
+    }
+
+    @Override
+    protected QueryIterator execute(OpGroup opGroup, QueryIterator input) {
+        Triple pattern = countPattern(opGroup);
+        Graph graph = pattern == null ? null : graph(opGroup.getSubOp());
+        if (graph == null || !input.isJoinIdentity()) {
+            return super.execute(opGroup, input);
+        }
+        input.close();
+        long count = graph.count(pattern);
+        ExprAggregator aggregator = opGroup.getAggregators().get(0);
+        return QueryIterSingleton.create(
+                BindingFactory.binding(aggregator.getVar(), NodeValue.makeInteger(count).asNode()), execCxt);
+    }
+
+    /**
+     * Gets the graph the pattern of a group is matched against.
+     *
+     * @param op the operation the group is over.
+     * @return the graph or {@code null} if it is not a {@link Graph}.
+     */
+    private Graph graph(Op op) {
+        org.apache.jena.graph.Graph graph = execCxt.getActiveGraph();
+        if (op instanceof OpGraph) {
+            graph = execCxt.getDataset().getGraph(((OpGraph) op).getNode());
+        }
+        return graph instanceof Graph ? (Graph) graph : null;
+    }
+
+    /**
+     * Gets the basic graph pattern of the operation a group is over.
+     *
+     * @param op the operation.
+     * @return the basic graph pattern or {@code null} if the operation is not a
+     * basic graph pattern or a basic graph pattern in a named graph.
+     */
+    private static BasicPattern bgp(Op op) {
+        if (op instanceof OpGraph && ((OpGraph) op).getNode().isURI()) {
+            op = ((OpGraph) op).getSubOp();
+        }
+        return op instanceof OpBGP ? ((OpBGP) op).getPattern() : null;
+    }
+
+    /**
+     * Gets the triple pattern to count if the group can be answered from the
+     * bitmaps.
+     *
+     * @param opGroup the group.
+     * @return the pattern with the variables replaced by {@code Node.ANY} or
+     * {@code null} if the group must be executed.
+     */
+    static Triple countPattern(OpGroup opGroup) {
+        List<ExprAggregator> aggregators = opGroup.getAggregators();
+        BasicPattern bgp = bgp(opGroup.getSubOp());
+        if (!opGroup.getGroupVars().isEmpty() || aggregators.size() != 1 || bgp == null || bgp.size() != 1) {
+            return null;
+        }
+        Triple triple = bgp.get(0);
+        Set<Node> vars = new HashSet<>();
+        Node[] nodes = { triple.getSubject(), triple.getPredicate(), triple.getObject() };
+        for (int i = 0; i < nodes.length; i++) {
+            if (nodes[i].isVariable()) {
+                if (!vars.add(nodes[i])) {
+                    return null;
+                }
+                nodes[i] = Node.ANY;
+            }
+        }
+        Aggregator aggregator = aggregators.get(0).getAggregator();
+        if (aggregator instanceof AggCountVar) {
+            // COUNT(?var) only counts every match if the var is always bound.
+            Expr expr = aggregator.getExprList().get(0);
+            if (!expr.isVariable() || !vars.contains(expr.asVar())) {
+                return null;
+            }
+        } else if (!(aggregator instanceof AggCount)) {
+            return null;
+        }
+        return Triple.create(nodes[0], nodes[1], nodes[2]);
+    }
+}
@@ -0,0 +1,657 @@
+package org.xenei.rdfstore.mem;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.jena.query.ReadWrite;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.Store;
+import org.xenei.rdfstore.txn.ReaderPins;
+import org.xenei.rdfstore.txn.TxnHandler;
+import org.xenei.rdfstore.txn.TxnId;
+
+/**
+ * A store that locates items with an open addressing hash table of item ids.
+ * <p>
+ * The table only holds the {@code long} ids, linear probing is used to resolve
+ * collisions and removed ids leave a tombstone that is dropped when the table
+ * is rebuilt. The subclass stores the items by id and provides the hash and
+ * equality functions. Items are compared by a key that is created once per
+ * operation.
+ * </p>
+ * <p>
+ * The store is versioned. Each commit of a write transaction publishes a new
+ * generation and each id records the generation that added it and the
+ * generation that deleted it. A read transaction pins the generation that was
+ * committed when it began and only sees the ids that were live in that
+ * generation, so readers never see a commit part way through and do not wait
+ * for the writer. The writer sees its own changes. A deleted id is not reused
+ * until no reader has pinned a generation that can still see it.
+ * </p>
+ *
+ * @param <T> the type of item stored.
+ * @param <K> the type of the key used to hash and compare items.
+ */
+public abstract class AbstractHashStore<T, K> implements Store<T> {
+
+    protected static final int CHUNK_SHIFT = 10;
+    protected static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    protected static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    private static final long EMPTY = -1;
+    private static final long TOMBSTONE = -2;
+
+    private final TxnHandler txnHandler;
+
+    /**
+     * The generation stamps of each id, two per id: the generation that added
+     * the id and the generation that deleted it. A stamp of 0 means never. The
+     * deleted stamp is read before the added stamp and the added stamp is cleared
+     * first so that a reader never combines the stamps of two uses of an id.
+     */
+    private AtomicLongArray[] stamps;
+    /**
+     * The hash table of ids, {@code EMPTY} for an unused slot. Readers probe the
+     * table while the writer changes it, so a slot in use is never emptied and
+     * a new table is only published once it is complete.
+     */
+    private volatile long[] table;
+    /**
+     * The number of slots in the table that are not empty.
+     */
+    private long used;
+    /**
+     * The number of slots in the table that hold an id.
+     */
+    private long live;
+    /**
+     * The ids that may be reused.
+     */
+    private long[] free;
+    private int freeCount;
+    /**
+     * The ids deleted by committed transactions that readers may still see, and
+     * the generation that deleted each of them.
+     */
+    private long[] retired;
+    private long[] retiredGeneration;
+    private int retiredCount;
+    private long nextId;
+    /**
+     * The last committed version.
+     */
+    private volatile Version committed;
+    /**
+     * The number of readers that have pinned each generation.
+     */
+    private final ReaderPins pins;
+
+    /**
+     * Constructor.
+     *
+     * @param name the name of the store for the transaction id.
+     */
+    protected AbstractHashStore(String name) {
+        TxnId txnId = () -> name;
+        stamps = new AtomicLongArray[1];
+        long[] t = new long[1024];
+        Arrays.fill(t, EMPTY);
+        table = t;
+        free = new long[16];
+        retired = new long[16];
+        retiredGeneration = new long[16];
+        committed = new Version(0, 0);
+        pins = new ReaderPins();
+        txnHandler = new TxnHandler(txnId, this::prepareBegin, this::execCommit, this::execAbort, this::unpin);
+    }
+
+    @Override
+    public void setTxnId(TxnId prefix) {
+        txnHandler.setTxnId(prefix);
+    }
+
+    /**
+     * Creates the key for an item.
+     *
+     * @param item the item.
+     * @return the key.
+     */
+    protected abstract K key(T item);
+
+    /**
+     * Calculates the hash of a key.
+     *
+     * @param key the key.
+     * @return the hash.
+     */
+    protected abstract long hash(K key);
+
+    /**
+     * Calculates the hash of a stored item.
+     *
+     * @param id the id of the item.
+     * @return the hash, must be the same as the hash of the key of the item.
+     */
+    protected abstract long hashOf(long id);
+
+    /**
+     * Determines if the stored item matches the key.
+     *
+     * @param id the id of the item.
+     * @param key the key.
+     * @return {@code true} if the item has the key.
+     */
+    protected abstract boolean matches(long id, K key);
+
+    /**
+     * Stores the item. Any item previously stored with the id has been released.
+     *
+     * @param id the id for the item.
+     * @param item the item.
+     * @param key the key of the item.
+     */
+    protected abstract void write(long id, T item, K key);
+
+    /**
+     * Reads a stored item.
+     *
+     * @param id the id of the item.
+     * @return the item.
+     */
+    protected abstract T read(long id);
+
+    /**
+     * Called when an item is removed and its id is available for reuse. The
+     * default implementation does nothing.
+     *
+     * @param id the id of the item.
+     */
+    protected void release(long id) {
+    }
+
+    // ** TRANSACTION FUNCTIONS
+
+    /**
+     * A committed generation of the store.
+     */
+    private static final class Version {
+        final long generation;
+        final long count;
+
+        Version(long generation, long count) {
+            this.generation = generation;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The version of the write transaction, the generation it will commit.
+     */
+    private Version txnVersion;
+    /**
+     * The ids changed in the write transaction, may contain duplicates.
+     */
+    private long[] txnChanged;
+    private int txnChangedCount;
+    private long txnCount;
+
+    private void prepareBegin(ReadWrite readWrite) {
+        if (readWrite == WRITE) {
+            reclaim();
+            txnVersion = new Version(committed.generation + 1, 0);
+            txnHandler.snapshot(txnVersion);
+            txnChanged = new long[16];
+            txnChangedCount = 0;
+            txnCount = committed.count;
+        } else {
+            txnHandler.snapshot(pins.pin(() -> committed, v -> v.generation));
+        }
+    }
+
+    private void execCommit() {
+        long generation = txnVersion.generation;
+        for (int i = 0; i < txnChangedCount; i++) {
+            long id = txnChanged[i];
+            if (deleted(id) == generation) {
+                retire(id, generation);
+            }
+        }
+        committed = new Version(generation, txnCount);
+        clearTxn();
+    }
+
+    private void execAbort() {
+        long generation = txnVersion.generation;
+        for (int i = 0; i < txnChangedCount; i++) {
+            long id = txnChanged[i];
+            if (added(id) == generation) {
+                remove(id);
+            } else if (deleted(id) == generation) {
+                setStamp(id, 1, 0);
+            }
+        }
+        clearTxn();
+    }
+
+    private void unpin() {
+        Version version = txnHandler.snapshot();
+        pins.unpin(version.generation);
+    }
+
+    private void clearTxn() {
+        txnVersion = null;
+        txnChanged = null;
+        txnChangedCount = 0;
+    }
+
+    private void recordChange(long id) {
+        if (txnChangedCount == txnChanged.length) {
+            txnChanged = Arrays.copyOf(txnChanged, txnChangedCount * 2);
+        }
+        txnChanged[txnChangedCount++] = id;
+    }
+
+    /**
+     * Records an id deleted by the committed generation. It is removed once no
+     * reader can see it.
+     *
+     * @param id the id.
+     * @param generation the generation that deleted it.
+     */
+    private void retire(long id, long generation) {
+        if (retiredCount == retired.length) {
+            retired = Arrays.copyOf(retired, retiredCount * 2);
+            retiredGeneration = Arrays.copyOf(retiredGeneration, retiredCount * 2);
+        }
+        retired[retiredCount] = id;
+        retiredGeneration[retiredCount++] = generation;
+    }
+
+    /**
+     * Removes the retired ids that no reader can see so that they can be reused.
+     * The ids are retired in generation order.
+     */
+    private void reclaim() {
+        if (retiredCount == 0) {
+            return;
+        }
+        long oldest = pins.oldest();
+        int i = 0;
+        while (i < retiredCount && retiredGeneration[i] <= oldest) {
+            remove(retired[i++]);
+        }
+        if (i > 0) {
+            System.arraycopy(retired, i, retired, 0, retiredCount - i);
+            System.arraycopy(retiredGeneration, i, retiredGeneration, 0, retiredCount - i);
+            retiredCount -= i;
+        }
+    }
+
+    // ** STAMPS
+
+    private long getStamp(long id, int which) {
+        int chunk = (int) (id >>> CHUNK_SHIFT);
+        AtomicLongArray[] s = stamps;
+        return chunk < s.length && s[chunk] != null ? s[chunk].get((((int) id & CHUNK_MASK) << 1) + which) : 0;
+    }
+
+    private void setStamp(long id, int which, long generation) {
+        int chunk = (int) (id >>> CHUNK_SHIFT);
+        if (chunk >= stamps.length) {
+            stamps = Arrays.copyOf(stamps, Math.max(chunk + 1, stamps.length * 2));
+        }
+        if (stamps[chunk] == null) {
+            stamps[chunk] = new AtomicLongArray(CHUNK_SIZE * 2);
+        }
+        stamps[chunk].set((((int) id & CHUNK_MASK) << 1) + which, generation);
+    }
+
+    private long added(long id) {
+        return getStamp(id, 0);
+    }
+
+    private long deleted(long id) {
+        return getStamp(id, 1);
+    }
+
+    /**
+     * Determines if the id is live in a generation.
+     *
+     * @param id the id.
+     * @param generation the generation.
+     * @return {@code true} if the id is visible in the generation.
+     */
+    private boolean isVisible(long id, long generation) {
+        return visibleStamp(id, generation) != 0;
+    }
+
+    private long visibleStamp(long id, long generation) {
+        long deleted = deleted(id);
+        long added = added(id);
+        return added != 0 && added <= generation && (deleted == 0 || deleted > generation) ? added : 0;
+    }
+
+    /**
+     * Gets the generation that added the id if the id is visible to the current
+     * thread. The stamp changes whenever the id is reused, so the data of an id can
+     * be read without a lock by checking that the stamp is the same before and
+     * after the read.
+     *
+     * @param id the id.
+     * @return the generation that added the id or 0 if it is not visible.
+     */
+    protected long stamp(long id) {
+        return id >= 0 ? visibleStamp(id, generation()) : 0;
+    }
+
+    /**
+     * Gets the generation visible to the current thread.
+     *
+     * @return the generation.
+     */
+    private long generation() {
+        Version version = txnHandler.snapshot();
+        return version == null ? committed.generation : version.generation;
+    }
+
+    // ** HASH TABLE
+
+    /**
+     * Mixes the bits of a hash so that the low bits depend on all the input bits.
+     *
+     * @param h the hash.
+     * @return the mixed hash.
+     */
+    protected static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Finds the id of the key that is visible in a generation.
+     *
+     * @param key the key.
+     * @param generation the generation.
+     * @param ownDeletes if {@code true} ids deleted in the generation are also
+     * found, used by the writer to find its own deletes.
+     * @return the id or {@code NO_INDEX} if the key is not visible.
+     */
+    private long find(K key, long generation, boolean ownDeletes) {
+        long[] t = table;
+        int mask = t.length - 1;
+        int slot = (int) hash(key) & mask;
+        for (long id = t[slot]; id != EMPTY; id = t[slot]) {
+            if (id != TOMBSTONE && (isVisible(id, generation) || (ownDeletes && deleted(id) == generation))
+                    && matches(id, key)) {
+                return id;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return NO_INDEX;
+    }
+
+    private static void insert(long[] t, long id, long hash) {
+        int mask = t.length - 1;
+        int slot = (int) hash & mask;
+        while (t[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        t[slot] = id;
+    }
+
+    private void insert(long id) {
+        long[] t = table;
+        int mask = t.length - 1;
+        int slot = (int) hashOf(id) & mask;
+        while (t[slot] >= 0) {
+            slot = (slot + 1) & mask;
+        }
+        if (t[slot] == EMPTY) {
+            used++;
+        }
+        t[slot] = id;
+        live++;
+    }
+
+    /**
+     * Replaces the id in the table with a tombstone so that the probe sequences
+     * of readers are not broken.
+     *
+     * @param id the id.
+     */
+    private void removeFromTable(long id) {
+        long[] t = table;
+        int mask = t.length - 1;
+        int slot = (int) hashOf(id) & mask;
+        while (t[slot] != id) {
+            slot = (slot + 1) & mask;
+        }
+        t[slot] = TOMBSTONE;
+        live--;
+    }
+
+    /**
+     * Rebuilds the table if it is more than half used. The rebuilt table drops
+     * the tombstones and is only published once it is complete.
+     */
+    private void growIfNeeded() {
+        long[] old = table;
+        if ((used + 1) * 2 <= old.length) {
+            return;
+        }
+        int length = (live + 1) * 4 > old.length ? old.length * 2 : old.length;
+        long[] t = new long[length];
+        Arrays.fill(t, EMPTY);
+        for (long id : old) {
+            if (id >= 0) {
+                insert(t, id, hashOf(id));
+            }
+        }
+        used = live;
+        table = t;
+    }
+
+    /**
+     * Removes the item from the table and makes the id available for reuse.
+     *
+     * @param id the id.
+     */
+    private void remove(long id) {
+        removeFromTable(id);
+        setStamp(id, 0, 0);
+        setStamp(id, 1, 0);
+        release(id);
+        if (freeCount == free.length) {
+            free = Arrays.copyOf(free, freeCount * 2);
+        }
+        free[freeCount++] = id;
+    }
+
+    // ** STORE METHODS
+
+    @Override
+    public Result register(T item) {
+        K key = key(item);
+        return txnHandler.doInTxn(WRITE, () -> {
+            long generation = txnVersion.generation;
+            long id = find(key, generation, true);
+            if (id != NO_INDEX) {
+                if (deleted(id) == generation) {
+                    setStamp(id, 1, 0);
+                    txnCount++;
+                    return new Result(false, id);
+                }
+                return new Result(true, id);
+            }
+            id = freeCount > 0 ? free[--freeCount] : nextId++;
+            write(id, item, key);
+            setStamp(id, 0, generation);
+            growIfNeeded();
+            insert(id);
+            recordChange(id);
+            txnCount++;
+            return new Result(false, id);
+        });
+    }
+
+    @Override
+    public Result delete(T item) {
+        K key = key(item);
+        return txnHandler.doInTxn(WRITE, () -> {
+            long generation = txnVersion.generation;
+            long id = find(key, generation, false);
+            if (id == NO_INDEX) {
+                return NO_RESULT;
+            }
+            if (added(id) == generation) {
+                // no reader can see it.
+                remove(id);
+            } else {
+                setStamp(id, 1, generation);
+                recordChange(id);
+            }
+            txnCount--;
+            return new Result(true, id);
+        });
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The items are not removed if the write transaction aborts.
+     * </p>
+     */
+    @Override
+    public void load(Iterator<IdxData<T>> items) {
+        txnHandler.doInTxn(WRITE, () -> {
+            if (nextId != 0) {
+                throw new IllegalStateException("Items can only be loaded into an empty store");
+            }
+            long generation = txnVersion.generation;
+            while (items.hasNext()) {
+                IdxData<T> item = items.next();
+                write(item.idx, item.data, key(item.data));
+                setStamp(item.idx, 0, generation);
+                growIfNeeded();
+                insert(item.idx);
+                nextId = Math.max(nextId, item.idx + 1);
+                txnCount++;
+            }
+            // the gaps left by deleted items are reused.
+            for (long id = nextId - 1; id >= 0; id--) {
+                if (added(id) == 0) {
+                    if (freeCount == free.length) {
+                        free = Arrays.copyOf(free, freeCount * 2);
+                    }
+                    free[freeCount++] = id;
+                }
+            }
+        });
+    }
+
+    @Override
+    public T get(long idx) {
+        return txnHandler.doInTxn(READ, () -> {
+            long stamp = stamp(idx);
+            if (stamp == 0) {
+                return null;
+            }
+            T item = read(idx);
+            // the id was deleted and reused while it was read.
+            return stamp(idx) == stamp ? item : null;
+        });
+    }
+
+    @Override
+    public long get(T value) {
+        K key = key(value);
+        return txnHandler.doInTxn(READ, () -> {
+            return find(key, generation(), false);
+        });
+    }
+
+    @Override
+    public boolean contains(T item) {
+        return get(item) != NO_INDEX;
+    }
+
+    /**
+     * Determines if there is an item with the id in the store.
+     *
+     * @param idx the id of the item.
+     * @return {@code true} if the item exists.
+     */
+    public boolean contains(long idx) {
+        return idx >= 0 && isVisible(idx, generation());
+    }
+
+    @Override
+    public long size() {
+        return txnHandler.doInTxn(READ, () -> {
+            return txnHandler.transactionMode() == WRITE ? txnCount : ((Version) txnHandler.snapshot()).count;
+        });
+    }
+
+    /**
+     * An iterator over the items visible to the current thread. For a reader the
+     * iterator must be used before the transaction ends.
+     */
+    @Override
+    public Iterator<IdxData<T>> iterator() {
+        long generation = generation();
+        return new Iterator<IdxData<T>>() {
+            long id = 0;
+            long limit = nextId;
+            IdxData<T> next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && id < limit) {
+                    if (isVisible(id, generation)) {
+                        next = new IdxData<>(id, read(id));
+                    }
+                    id++;
+                }
+                return next != null;
+            }
+
+            @Override
+            public IdxData<T> next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                IdxData<T> result = next;
+                next = null;
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public void begin(ReadWrite readWrite) {
+        txnHandler.begin(readWrite);
+    }
+
+    @Override
+    public void commit() {
+        txnHandler.commit();
+    }
+
+    @Override
+    public void abort() {
+        txnHandler.abort();
+    }
+
+    @Override
+    public void end() {
+        txnHandler.end();
+    }
+}
@@ -0,0 +1,450 @@
+package org.xenei.rdfstore.mem;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.LongList;
+import org.xenei.rdfstore.txn.TxnHandler;
+import org.xenei.rdfstore.txn.TxnId;
+
+/**
+ * A LongList that stores the items in the fixed size chunks of a trie.
+ * <p>
+ * The chunks are the leaves of a trie of {@code CHUNK_SIZE} wide nodes. An
+ * index is split into {@code CHUNK_SHIFT} bit digits, one per level, so get and
+ * set take a step per level and the trie only grows a level when an index does
+ * not fit. A removed item is a {@code null} slot and a chunk without any items
+ * is released so sparse lists only allocate the chunks that are in use.
+ * </p>
+ * <p>
+ * A write transaction copies a node the first time it is changed, so a commit
+ * only copies the nodes on the path to each changed item. The committed nodes
+ * are never changed, a commit publishes a new root with the copied nodes in
+ * place of the committed ones. A read transaction pins the root that was
+ * committed when it began so it sees the same items until it ends and does not
+ * wait for the writer.
+ * </p>
+ *
+ * @param <T> the type to store.
+ */
+public class ChunkedLongList<T> implements LongList<T> {
+    /**
+     * The number of bits of the index used for the position in a node.
+     */
+    public static final int CHUNK_SHIFT = 6;
+    /**
+     * The number of slots in a node.
+     */
+    public static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    /**
+     * The mask for the position in a node.
+     */
+    public static final long CHUNK_MASK = CHUNK_SIZE - 1;
+    /**
+     * The largest index that can be stored.
+     */
+    public static final long MAX_ITEM_INDEX = (1L << (CHUNK_SHIFT * 8)) - 1;
+
+    private final TxnHandler txnHandler;
+    /**
+     * The last committed root.
+     */
+    private volatile Root committed;
+
+    /**
+     * Creates a ChunkedLongList.
+     */
+    public ChunkedLongList() {
+        this.committed = new Root(null, 0, 0, 0);
+        this.txnHandler = new TxnHandler(() -> "ChunkedLongList", this::prepareBegin, this::execCommit,
+                this::execAbort, () -> {
+                });
+    }
+
+    @Override
+    public void setTxnId(TxnId prefix) {
+        txnHandler.setTxnId(prefix);
+    }
+
+    private static void checkIndex(long idx) {
+        if (idx > MAX_ITEM_INDEX) {
+            throw new IllegalArgumentException("Index too large: " + idx + " Maximum value allowed: " + MAX_ITEM_INDEX);
+        }
+        if (idx < 0) {
+            throw new IllegalArgumentException("Index may not be less than zero");
+        }
+    }
+
+    private static int slot(long idx, int shift) {
+        return (int) ((idx >>> shift) & CHUNK_MASK);
+    }
+
+    /**
+     * Gets the first index that does not fit in a trie.
+     *
+     * @param shift the shift of the top node.
+     * @return the capacity of the trie.
+     */
+    private static long capacity(int shift) {
+        return 1L << (shift + CHUNK_SHIFT);
+    }
+
+    // ** TRANSACTION FUNCTIONS
+
+    /**
+     * A node of the trie. The slots of an internal node are nodes, those of a
+     * chunk are the items.
+     */
+    private static final class Node {
+        /**
+         * The write transaction that may change the node in place, nodes of a
+         * committed root are never changed.
+         */
+        final Object owner;
+        final Object[] slots;
+
+        Node(Object owner, Object[] slots) {
+            this.owner = owner;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * A committed version of the list. The nodes are not changed once the root
+     * is published.
+     */
+    private static final class Root {
+        /**
+         * The top node, {@code null} if the list has no items.
+         */
+        final Node top;
+        /**
+         * The shift of the digit for the top node, 0 if the top node is a chunk.
+         */
+        final int shift;
+        final long itemCount;
+        final long nextIdx;
+
+        Root(Node top, int shift, long itemCount, long nextIdx) {
+            this.top = top;
+            this.shift = shift;
+            this.itemCount = itemCount;
+            this.nextIdx = nextIdx;
+        }
+
+    }
+
+    /**
+     * Gets the chunk that holds an index.
+     *
+     * @param top the top node of the trie.
+     * @param shift the shift of the top node.
+     * @param idx the index.
+     * @return the chunk or {@code null} if it has no items.
+     */
+    private static Node chunk(Node top, int shift, long idx) {
+        if (idx >= capacity(shift)) {
+            return null;
+        }
+        Node node = top;
+        for (int s = shift; node != null && s > 0; s -= CHUNK_SHIFT) {
+            node = (Node) node.slots[slot(idx, s)];
+        }
+        return node;
+    }
+
+    /**
+     * The root the write transaction started from. It is a copy of the committed
+     * root so that only the writer has it pinned.
+     */
+    private Root txnBase;
+    /**
+     * The owner of the nodes copied in the write transaction.
+     */
+    private Object txnOwner;
+    private Node txnTop;
+    private int txnShift;
+    private long txnItemCount;
+    private long txnCurrentItem;
+
+    private void prepareBegin(ReadWrite readWrite) {
+        Root root = committed;
+        if (readWrite == WRITE) {
+            txnBase = new Root(root.top, root.shift, root.itemCount, root.nextIdx);
+            txnHandler.snapshot(txnBase);
+            txnOwner = new Object();
+            txnTop = root.top;
+            txnShift = root.shift;
+            txnItemCount = root.itemCount;
+            txnCurrentItem = root.nextIdx;
+        } else {
+            txnHandler.snapshot(root);
+        }
+    }
+
+    private void execCommit() {
+        committed = new Root(txnTop, txnShift, txnItemCount, Math.max(txnBase.nextIdx, txnCurrentItem));
+        clearTxn();
+    }
+
+    private void execAbort() {
+        clearTxn();
+    }
+
+    private void clearTxn() {
+        txnBase = null;
+        txnOwner = null;
+        txnTop = null;
+    }
+
+    /**
+     * Gets a node that may be modified in the write transaction, copying a
+     * committed node if this is the first change to it.
+     *
+     * @param node the node, may be {@code null}.
+     * @return the node for the transaction.
+     */
+    private Node writable(Node node) {
+        if (node == null) {
+            return new Node(txnOwner, new Object[CHUNK_SIZE]);
+        }
+        return node.owner == txnOwner ? node : new Node(txnOwner, node.slots.clone());
+    }
+
+    /**
+     * Gets the root visible to the current thread.
+     *
+     * @return the pinned root or the committed root outside of a transaction.
+     */
+    private Root root() {
+        Root root = txnHandler.snapshot();
+        return root == null ? committed : root;
+    }
+
+    /**
+     * Adds the data item to the list.
+     *
+     * @param data the item to add.
+     */
+    @Override
+    public IdxData<T> add(T data) {
+        return txnHandler.doInTxn(WRITE, () -> {
+            IdxData<T> idxData = new IdxData<>(txnCurrentItem, data);
+            set(idxData);
+            return idxData;
+        });
+    }
+
+    /**
+     * returns the size of the list.
+     *
+     * @return the size of the list.
+     */
+    @Override
+    public long size() {
+        return txnHandler.doInTxn(READ, () -> {
+            Root root = root();
+            return root == txnBase ? txnCurrentItem : root.nextIdx;
+        });
+    }
+
+    /**
+     * Gets the number of items in the committed list.
+     *
+     * @return the number of non {@code null} items.
+     */
+    public long itemCount() {
+        return committed.itemCount;
+    }
+
+    @Override
+    public void set(IdxData<T> data) {
+        checkIndex(data.idx);
+        txnHandler.doInTxn(WRITE, () -> {
+            long idx = data.idx;
+            if (idx >= txnCurrentItem) {
+                txnCurrentItem = idx + 1;
+            }
+            if (data.data == null && (txnTop == null || idx >= capacity(txnShift))) {
+                return;
+            }
+            if (txnTop == null) {
+                txnShift = 0;
+            }
+            while (idx >= capacity(txnShift)) {
+                if (txnTop != null) {
+                    Node top = new Node(txnOwner, new Object[CHUNK_SIZE]);
+                    top.slots[0] = txnTop;
+                    txnTop = top;
+                }
+                txnShift += CHUNK_SHIFT;
+            }
+            txnTop = writable(txnTop);
+            Node parent = null;
+            Node node = txnTop;
+            for (int s = txnShift; s > 0; s -= CHUNK_SHIFT) {
+                Node child = (Node) node.slots[slot(idx, s)];
+                if (child == null && data.data == null) {
+                    return;
+                }
+                child = writable(child);
+                node.slots[slot(idx, s)] = child;
+                parent = node;
+                node = child;
+            }
+            int pos = slot(idx, 0);
+            if (node.slots[pos] == null) {
+                if (data.data != null) {
+                    txnItemCount++;
+                }
+            } else if (data.data == null) {
+                txnItemCount--;
+            }
+            node.slots[pos] = data.data;
+            if (data.data == null && isEmpty(node)) {
+                if (parent == null) {
+                    txnTop = null;
+                } else {
+                    parent.slots[slot(idx, CHUNK_SHIFT)] = null;
+                }
+            }
+        });
+    }
+
+    private static boolean isEmpty(Node chunk) {
+        for (Object o : chunk.slots) {
+            if (o != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    @Override
+    public T get(long idx) {
+        checkIndex(idx);
+        return txnHandler.doInTxn(READ, () -> {
+            Root root = root();
+            // the writer sees the nodes it has copied in place of the committed ones.
+            Node chunk = root == txnBase ? chunk(txnTop, txnShift, idx) : chunk(root.top, root.shift, idx);
+            return chunk == null ? null : (T) chunk.slots[slot(idx, 0)];
+        });
+    }
+
+    /**
+     * Removes the item from the list.
+     *
+     * @param idx the index of the item to remove.
+     */
+    @Override
+    public void remove(long idx) {
+        set(new IdxData<>(idx, null));
+    }
+
+    @Override
+    public ExtendedIterator<IdxData<T>> iterator() {
+        Root root = root();
+        if (root == txnBase) {
+            return WrappedIterator.create(new ChunkIterator(txnTop, txnShift));
+        }
+        return WrappedIterator.create(new ChunkIterator(root.top, root.shift));
+    }
+
+    /**
+     * An iterator over the items in the chunks of a trie.
+     */
+    private class ChunkIterator implements Iterator<IdxData<T>> {
+        /**
+         * The nodes from the top to the current chunk.
+         */
+        private final Node[] path;
+        /**
+         * The position in each node of the path.
+         */
+        private final int[] pos;
+        private int level;
+        private IdxData<T> next;
+
+        ChunkIterator(Node top, int shift) {
+            this.path = new Node[shift / CHUNK_SHIFT + 1];
+            this.pos = new int[path.length];
+            this.path[0] = top;
+            this.level = top == null ? -1 : 0;
+        }
+
+        private long index() {
+            long idx = 0;
+            for (int p : pos) {
+                idx = (idx << CHUNK_SHIFT) | p;
+            }
+            return idx;
+        }
+
+        @SuppressWarnings("unchecked")
+        @Override
+        public boolean hasNext() {
+            while (next == null && level >= 0) {
+                if (pos[level] == CHUNK_SIZE) {
+                    level--;
+                    if (level >= 0) {
+                        pos[level]++;
+                    }
+                    continue;
+                }
+                Object o = path[level].slots[pos[level]];
+                if (level == path.length - 1) {
+                    if (o != null) {
+                        next = new IdxData<>(index(), (T) o);
+                    }
+                    pos[level]++;
+                } else if (o == null) {
+                    pos[level]++;
+                } else {
+                    level++;
+                    path[level] = (Node) o;
+                    pos[level] = 0;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public IdxData<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            IdxData<T> result = next;
+            next = null;
+            return result;
+        }
+    }
+
+    @Override
+    public void begin(ReadWrite readWrite) {
+        txnHandler.begin(readWrite);
+    }
+
+    @Override
+    public void commit() {
+        txnHandler.commit();
+    }
+
+    @Override
+    public void abort() {
+        txnHandler.abort();
+    }
+
+    @Override
+    public void end() {
+        txnHandler.end();
+    }
+
+}
@@ -0,0 +1,1152 @@
+package org.xenei.rdfstore.mem;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.Supplier;
+
+import org.xenei.rdfstore.store.Bitmap;
+
+/**
+ * A compressed bitmap that splits the index space into containers of 65536
+ * bits.
+ * <p>
+ * Each container picks the cheapest of three representations for its contents:
+ * <ul>
+ * <li>a sorted array of 16-bit values for sparse containers,</li>
+ * <li>a 1024 word bitset for dense containers, and</li>
+ * <li>a list of runs for containers made of long consecutive ranges.</li>
+ * </ul>
+ * The {@code Bitmap} page view (64-bit words keyed by unsigned integer) is
+ * computed from the containers on demand, so {@code Entry} objects returned
+ * from this bitmap are copies and changing them does not change the bitmap.
+ * </p>
+ * <p>
+ * A {@link #copy(Supplier) copy} shares the containers with this bitmap. A
+ * shared container is copied by whichever bitmap changes it first, so the cost
+ * of a change after a copy is the size of one container.
+ * </p>
+ */
+public class ContainerBitmap implements Bitmap {
+
+    /** The number of bits to shift a bit index to get the container key. */
+    static final int CONTAINER_SHIFT = 16;
+
+    /** The number of bits to shift a page key to get the container key. */
+    static final int PAGE_SHIFT = CONTAINER_SHIFT - DIVIDE_BY_64;
+
+    /** The number of 64-bit words in a container. */
+    static final int WORDS = 1 << PAGE_SHIFT;
+
+    /** The mask to get the word index within a container from a page key. */
+    static final int WORD_MASK = WORDS - 1;
+
+    /** The mask to get the low bits within a container from a bit index. */
+    static final int LOW_MASK = 0xFFFF;
+
+    /** The largest array container, beyond this a bitset is smaller. */
+    static final int MAX_ARRAY = 4096;
+
+    /** The largest run container, beyond this a bitset is smaller. */
+    static final int MAX_RUNS = 2048;
+
+    private int[] keys;
+    private Container[] containers;
+    /**
+     * The containers that may also be in another bitmap.
+     */
+    private boolean[] shared;
+    private int size;
+    private long cardinality;
+
+    /**
+     * Constructs an empty bitmap.
+     */
+    public ContainerBitmap() {
+        keys = new int[4];
+        containers = new Container[4];
+        shared = new boolean[4];
+        size = 0;
+        cardinality = 0;
+    }
+
+    private static int containerKey(long bitIndex) {
+        return (int) (bitIndex >>> CONTAINER_SHIFT);
+    }
+
+    private static int low(long bitIndex) {
+        return (int) bitIndex & LOW_MASK;
+    }
+
+    private static int pageKey(int containerKey, int word) {
+        return (containerKey << PAGE_SHIFT) | word;
+    }
+
+    /**
+     * Locates the container key.
+     *
+     * @param key the container key.
+     * @return the position of the container or {@code -(insertion point + 1)} if
+     * not found.
+     */
+    private int find(int key) {
+        return Arrays.binarySearch(keys, 0, size, key);
+    }
+
+    private void insert(int pos, int key, Container container) {
+        if (size == keys.length) {
+            int newLength = size + (size >> 1) + 1;
+            keys = Arrays.copyOf(keys, newLength);
+            containers = Arrays.copyOf(containers, newLength);
+            shared = Arrays.copyOf(shared, newLength);
+        }
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(containers, pos, containers, pos + 1, size - pos);
+        System.arraycopy(shared, pos, shared, pos + 1, size - pos);
+        keys[pos] = key;
+        containers[pos] = container;
+        shared[pos] = false;
+        size++;
+    }
+
+    private void delete(int pos) {
+        System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+        System.arraycopy(containers, pos + 1, containers, pos, size - pos - 1);
+        System.arraycopy(shared, pos + 1, shared, pos, size - pos - 1);
+        size--;
+        containers[size] = null;
+        shared[size] = false;
+    }
+
+    /**
+     * Gets the container at the position to change it, copying it if it is
+     * shared with another bitmap.
+     *
+     * @param pos the position of the container.
+     * @return the container.
+     */
+    private Container writable(int pos) {
+        if (shared[pos]) {
+            containers[pos] = containers[pos].copy();
+            shared[pos] = false;
+        }
+        return containers[pos];
+    }
+
+    @Override
+    public Bitmap copy(Supplier<Bitmap> supplier) {
+        ContainerBitmap result = new ContainerBitmap();
+        int length = Math.max(size, 4);
+        result.keys = Arrays.copyOf(keys, length);
+        result.containers = Arrays.copyOf(containers, length);
+        result.shared = new boolean[length];
+        Arrays.fill(result.shared, 0, size, true);
+        Arrays.fill(shared, 0, size, true);
+        result.size = size;
+        result.cardinality = cardinality;
+        return result;
+    }
+
+    /**
+     * Replaces the container at the position and adjusts the cardinality. Empty
+     * containers are removed.
+     */
+    private void update(int pos, Container before, int beforeCardinality, Container after) {
+        cardinality += after.cardinality() - beforeCardinality;
+        if (after.cardinality() == 0) {
+            delete(pos);
+        } else if (after != before) {
+            containers[pos] = after;
+        }
+    }
+
+    @Override
+    public void set(final long bitIndex) {
+        checkBitIndex(bitIndex);
+        int key = containerKey(bitIndex);
+        int pos = find(key);
+        if (pos < 0) {
+            pos = -pos - 1;
+            insert(pos, key, new ArrayContainer());
+        }
+        Container container = writable(pos);
+        int before = container.cardinality();
+        update(pos, container, before, container.add(low(bitIndex)));
+    }
+
+    @Override
+    public void clear(final long bitIndex) {
+        checkBitIndex(bitIndex);
+        int pos = find(containerKey(bitIndex));
+        if (pos >= 0) {
+            Container container = writable(pos);
+            int before = container.cardinality();
+            update(pos, container, before, container.remove(low(bitIndex)));
+        }
+    }
+
+    @Override
+    public boolean contains(final long bitIndex) {
+        checkBitIndex(bitIndex);
+        int pos = find(containerKey(bitIndex));
+        return pos >= 0 && containers[pos].contains(low(bitIndex));
+    }
+
+    @Override
+    public void setWord(int pageKey, long word) {
+        int key = pageKey >>> PAGE_SHIFT;
+        int pos = find(key);
+        if (pos < 0) {
+            if (word == 0) {
+                return;
+            }
+            pos = -pos - 1;
+            insert(pos, key, new ArrayContainer());
+        }
+        Container container = writable(pos);
+        int before = container.cardinality();
+        update(pos, container, before, container.setWord(pageKey & WORD_MASK, word));
+    }
+
+    @Override
+    public long getWord(int pageKey) {
+        int pos = find(pageKey >>> PAGE_SHIFT);
+        return pos < 0 ? 0L : containers[pos].word(pageKey & WORD_MASK);
+    }
+
+    @Override
+    public void append(int pageKey, long word) {
+        if (word == 0) {
+            return;
+        }
+        int key = pageKey >>> PAGE_SHIFT;
+        int pos = size - 1;
+        if (size == 0 || keys[pos] < key) {
+            pos = size;
+            insert(pos, key, new ArrayContainer());
+        } else if (keys[pos] > key) {
+            setWord(pageKey, word);
+            return;
+        }
+        Container container = writable(pos);
+        int before = container.cardinality();
+        update(pos, container, before, container.appendWord(pageKey & WORD_MASK, word));
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            int pos = 0;
+            int word = size == 0 ? -1 : containers[0].nextWord(0);
+
+            private boolean exhausted() {
+                pos = size;
+                word = -1;
+                return false;
+            }
+
+            @Override
+            public long key() {
+                return pos < size ? Integer.toUnsignedLong(pageKey(keys[pos], word)) : NO_INDEX;
+            }
+
+            @Override
+            public long word() {
+                return pos < size ? containers[pos].word(word) : 0L;
+            }
+
+            @Override
+            public boolean advance() {
+                if (pos >= size) {
+                    return false;
+                }
+                int next = word < WORD_MASK ? containers[pos].nextWord(word + 1) : -1;
+                if (next < 0) {
+                    if (++pos >= size) {
+                        return exhausted();
+                    }
+                    next = containers[pos].nextWord(0);
+                }
+                word = next;
+                return true;
+            }
+
+            @Override
+            public boolean advanceTo(long target) {
+                if (pos >= size) {
+                    return false;
+                }
+                if (key() >= target) {
+                    return true;
+                }
+                if (target > MAX_UNSIGNED_INT) {
+                    return exhausted();
+                }
+                int key = (int) (target >>> PAGE_SHIFT);
+                pos = MemBitmap.gallop(keys, pos, size, key);
+                if (pos >= size) {
+                    return exhausted();
+                }
+                int next = keys[pos] == key ? containers[pos].nextWord((int) target & WORD_MASK) : containers[pos].nextWord(0);
+                if (next < 0) {
+                    if (++pos >= size) {
+                        return exhausted();
+                    }
+                    next = containers[pos].nextWord(0);
+                }
+                word = next;
+                return true;
+            }
+        };
+    }
+
+    @Override
+    public long ceilingKey(long key) {
+        if (key > MAX_UNSIGNED_INT) {
+            return NO_INDEX;
+        }
+        int containerKey = (int) (key >>> PAGE_SHIFT);
+        int pos = find(containerKey);
+        if (pos >= 0) {
+            int next = containers[pos].nextWord((int) key & WORD_MASK);
+            if (next >= 0) {
+                return Integer.toUnsignedLong(pageKey(containerKey, next));
+            }
+            pos++;
+        } else {
+            pos = -pos - 1;
+        }
+        return pos < size ? Integer.toUnsignedLong(pageKey(keys[pos], containers[pos].nextWord(0))) : NO_INDEX;
+    }
+
+    @Override
+    public long pageCount() {
+        long result = 0;
+        for (int i = 0; i < size; i++) {
+            result += containers[i].wordCount();
+        }
+        return result;
+    }
+
+    @Override
+    public long cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public Integer firstKey() {
+        return size == 0 ? null : pageKey(keys[0], containers[0].nextWord(0));
+    }
+
+    @Override
+    public Integer higherKey(Integer key) {
+        long next = ceilingKey(Integer.toUnsignedLong(key) + 1);
+        return next == NO_INDEX ? null : Integer.valueOf((int) next);
+    }
+
+    @Override
+    public Entry get(Integer key) {
+        long word = getWord(key.intValue());
+        return word == 0 ? null : new Entry(key, word);
+    }
+
+    @Override
+    public Entry firstEntry() {
+        Integer key = firstKey();
+        return key == null ? null : get(key);
+    }
+
+    @Override
+    public Entry lastEntry() {
+        if (size == 0) {
+            return null;
+        }
+        int last = size - 1;
+        int word = containers[last].lastWord();
+        return new Entry(pageKey(keys[last], word), containers[last].word(word));
+    }
+
+    @Override
+    public Iterator<Entry> entries() {
+        return new Iterator<Entry>() {
+            Integer next = firstKey();
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Entry next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                Entry result = get(next);
+                next = higherKey(next);
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public void put(Integer key, Entry entry) {
+        setWord(key.intValue(), entry == null ? 0L : entry.bitmap());
+    }
+
+    @Override
+    public void remove(Integer key) {
+        setWord(key.intValue(), 0L);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(containers, 0, size, null);
+        Arrays.fill(shared, 0, size, false);
+        size = 0;
+        cardinality = 0;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public long lowest() {
+        if (size == 0) {
+            return NO_INDEX;
+        }
+        return (Integer.toUnsignedLong(keys[0]) << CONTAINER_SHIFT) + containers[0].first();
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            int pos = 0;
+            long offset;
+            PrimitiveIterator.OfInt values;
+
+            @Override
+            public boolean hasNext() {
+                while (values == null || !values.hasNext()) {
+                    if (pos >= size) {
+                        return false;
+                    }
+                    offset = Integer.toUnsignedLong(keys[pos]) << CONTAINER_SHIFT;
+                    values = containers[pos++].iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return offset + values.nextInt();
+            }
+        };
+    }
+
+    /**
+     * Converts any container to a run container where doing so reduces the memory
+     * used. Intended to be called after bulk updates, the containers are otherwise
+     * only converted to runs when an array container overflows.
+     */
+    public void runOptimize() {
+        for (int i = 0; i < size; i++) {
+            // a container is not changed by the conversion so a shared one is only
+            // replaced.
+            Container container = containers[i].runOptimize();
+            if (container != containers[i]) {
+                containers[i] = container;
+                shared[i] = false;
+            }
+        }
+    }
+
+    /**
+     * A 65536 bit segment of the bitmap. Mutating methods return the container
+     * that should replace this one, which may be {@code this}.
+     */
+    abstract static class Container {
+
+        abstract int cardinality();
+
+        abstract boolean contains(int low);
+
+        abstract Container add(int low);
+
+        abstract Container remove(int low);
+
+        /**
+         * Gets the 64-bit word at the word position.
+         *
+         * @param word the word position in the range [0,1023].
+         * @return the bits of the word.
+         */
+        abstract long word(int word);
+
+        /**
+         * Replaces the 64-bit word at the word position.
+         *
+         * @param word the word position in the range [0,1023].
+         * @param bits the new bits for the word.
+         * @return the container to replace this one.
+         */
+        abstract Container setWord(int word, long bits);
+
+        /**
+         * Sets the 64-bit word at a word position that is after the last word with
+         * any bits set.
+         *
+         * @param word the word position in the range [0,1023].
+         * @param bits the bits for the word.
+         * @return the container to replace this one.
+         */
+        Container appendWord(int word, long bits) {
+            return setWord(word, bits);
+        }
+
+        /**
+         * Finds the next word position that has a bit set.
+         *
+         * @param word the word position to start searching from.
+         * @return the word position or -1 if there are no more bits.
+         */
+        abstract int nextWord(int word);
+
+        /**
+         * Finds the last word position that has a bit set.
+         *
+         * @return the word position or -1 if the container is empty.
+         */
+        abstract int lastWord();
+
+        abstract int first();
+
+        abstract PrimitiveIterator.OfInt iterator();
+
+        abstract Container runOptimize();
+
+        /**
+         * Creates a copy of this container.
+         *
+         * @return the copy.
+         */
+        abstract Container copy();
+
+        int wordCount() {
+            int count = 0;
+            int word = nextWord(0);
+            while (word >= 0) {
+                count++;
+                word = word < WORD_MASK ? nextWord(word + 1) : -1;
+            }
+            return count;
+        }
+
+        /**
+         * Counts the runs of consecutive values in this container.
+         */
+        int runCount() {
+            int runs = 0;
+            int last = -2;
+            PrimitiveIterator.OfInt iter = iterator();
+            while (iter.hasNext()) {
+                int value = iter.nextInt();
+                if (value != last + 1) {
+                    runs++;
+                }
+                last = value;
+            }
+            return runs;
+        }
+
+        ArrayContainer toArray() {
+            ArrayContainer result = new ArrayContainer(cardinality());
+            PrimitiveIterator.OfInt iter = iterator();
+            while (iter.hasNext()) {
+                result.append(iter.nextInt());
+            }
+            return result;
+        }
+
+        BitsetContainer toBitset() {
+            BitsetContainer result = new BitsetContainer();
+            PrimitiveIterator.OfInt iter = iterator();
+            while (iter.hasNext()) {
+                result.add(iter.nextInt());
+            }
+            return result;
+        }
+
+        RunContainer toRuns() {
+            RunContainer result = new RunContainer(runCount());
+            PrimitiveIterator.OfInt iter = iterator();
+            while (iter.hasNext()) {
+                result.append(iter.nextInt());
+            }
+            return result;
+        }
+    }
+
+    /**
+     * A container of sorted 16-bit values.
+     */
+    static class ArrayContainer extends Container {
+        private char[] values;
+        private int count;
+
+        ArrayContainer() {
+            values = new char[4];
+            count = 0;
+        }
+
+        ArrayContainer(int capacity) {
+            values = new char[Math.max(capacity, 4)];
+            count = 0;
+        }
+
+        private int find(int low) {
+            return Arrays.binarySearch(values, 0, count, (char) low);
+        }
+
+        /**
+         * Finds the position of the first value greater than or equal to
+         * {@code low}.
+         */
+        private int lowerBound(int low) {
+            int pos = find(low);
+            return pos < 0 ? -pos - 1 : pos;
+        }
+
+        void append(int low) {
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.min(count * 2, MAX_ARRAY));
+            }
+            values[count++] = (char) low;
+        }
+
+        @Override
+        int cardinality() {
+            return count;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return find(low) >= 0;
+        }
+
+        @Override
+        Container add(int low) {
+            int pos = find(low);
+            if (pos >= 0) {
+                return this;
+            }
+            if (count == MAX_ARRAY) {
+                return (runCount() < MAX_RUNS ? toRuns() : toBitset()).add(low);
+            }
+            pos = -pos - 1;
+            if (count == values.length) {
+                values = Arrays.copyOf(values, Math.min(count * 2, MAX_ARRAY));
+            }
+            System.arraycopy(values, pos, values, pos + 1, count - pos);
+            values[pos] = (char) low;
+            count++;
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            int pos = find(low);
+            if (pos >= 0) {
+                System.arraycopy(values, pos + 1, values, pos, count - pos - 1);
+                count--;
+            }
+            return this;
+        }
+
+        @Override
+        long word(int word) {
+            long result = 0;
+            int end = (word + 1) << DIVIDE_BY_64;
+            for (int pos = lowerBound(word << DIVIDE_BY_64); pos < count && values[pos] < end; pos++) {
+                result |= Bitmap.getLongBit(values[pos]);
+            }
+            return result;
+        }
+
+        @Override
+        Container setWord(int word, long bits) {
+            int start = lowerBound(word << DIVIDE_BY_64);
+            int end = start;
+            int limit = (word + 1) << DIVIDE_BY_64;
+            while (end < count && values[end] < limit) {
+                end++;
+            }
+            int newCount = count - (end - start) + Long.bitCount(bits);
+            if (newCount > MAX_ARRAY) {
+                return toBitset().setWord(word, bits);
+            }
+            char[] result = newCount > values.length ? new char[Math.min(newCount * 2, MAX_ARRAY)] : values;
+            // move the tail first so the head is not overwritten when growing in place
+            System.arraycopy(values, end, result, newCount - (count - end), count - end);
+            if (result != values) {
+                System.arraycopy(values, 0, result, 0, start);
+            }
+            int pos = start;
+            long remaining = bits;
+            while (remaining != 0) {
+                result[pos++] = (char) ((word << DIVIDE_BY_64) + Long.numberOfTrailingZeros(remaining));
+                remaining &= remaining - 1;
+            }
+            values = result;
+            count = newCount;
+            return this;
+        }
+
+        @Override
+        Container appendWord(int word, long bits) {
+            if (count > 0 && values[count - 1] >>> DIVIDE_BY_64 >= word) {
+                return setWord(word, bits);
+            }
+            if (count + Long.bitCount(bits) > MAX_ARRAY) {
+                return (runCount() < MAX_RUNS ? toRuns() : toBitset()).appendWord(word, bits);
+            }
+            long remaining = bits;
+            while (remaining != 0) {
+                append((word << DIVIDE_BY_64) + Long.numberOfTrailingZeros(remaining));
+                remaining &= remaining - 1;
+            }
+            return this;
+        }
+
+        @Override
+        int nextWord(int word) {
+            int pos = lowerBound(word << DIVIDE_BY_64);
+            return pos < count ? values[pos] >>> DIVIDE_BY_64 : -1;
+        }
+
+        @Override
+        int lastWord() {
+            return count == 0 ? -1 : values[count - 1] >>> DIVIDE_BY_64;
+        }
+
+        @Override
+        int first() {
+            return values[0];
+        }
+
+        @Override
+        PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                int pos = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return pos < count;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (pos >= count) {
+                        throw new NoSuchElementException();
+                    }
+                    return values[pos++];
+                }
+            };
+        }
+
+        @Override
+        Container runOptimize() {
+            return runCount() * 2 < count ? toRuns() : this;
+        }
+
+        @Override
+        Container copy() {
+            ArrayContainer result = new ArrayContainer(0);
+            result.values = Arrays.copyOf(values, values.length);
+            result.count = count;
+            return result;
+        }
+    }
+
+    /**
+     * A container of 1024 64-bit words.
+     */
+    static class BitsetContainer extends Container {
+        private final long[] words;
+        private int count;
+
+        BitsetContainer() {
+            words = new long[WORDS];
+            count = 0;
+        }
+
+        @Override
+        int cardinality() {
+            return count;
+        }
+
+        @Override
+        boolean contains(int low) {
+            return (words[low >>> DIVIDE_BY_64] & Bitmap.getLongBit(low)) != 0;
+        }
+
+        @Override
+        Container add(int low) {
+            int word = low >>> DIVIDE_BY_64;
+            long before = words[word];
+            words[word] |= Bitmap.getLongBit(low);
+            if (before != words[word]) {
+                count++;
+            }
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            int word = low >>> DIVIDE_BY_64;
+            long before = words[word];
+            words[word] &= ~Bitmap.getLongBit(low);
+            if (before != words[word]) {
+                count--;
+            }
+            return count <= MAX_ARRAY ? toArray() : this;
+        }
+
+        @Override
+        long word(int word) {
+            return words[word];
+        }
+
+        @Override
+        Container setWord(int word, long bits) {
+            count += Long.bitCount(bits) - Long.bitCount(words[word]);
+            words[word] = bits;
+            return count <= MAX_ARRAY ? toArray() : this;
+        }
+
+        @Override
+        int nextWord(int word) {
+            for (int i = word; i < WORDS; i++) {
+                if (words[i] != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int lastWord() {
+            for (int i = WORDS - 1; i >= 0; i--) {
+                if (words[i] != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int first() {
+            int word = nextWord(0);
+            return (word << DIVIDE_BY_64) + Long.numberOfTrailingZeros(words[word]);
+        }
+
+        @Override
+        PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                int word = -1;
+                long bits = 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (bits == 0) {
+                        if (++word >= WORDS) {
+                            return false;
+                        }
+                        bits = words[word];
+                    }
+                    return true;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int result = (word << DIVIDE_BY_64) + Long.numberOfTrailingZeros(bits);
+                    bits &= bits - 1;
+                    return result;
+                }
+            };
+        }
+
+        @Override
+        Container runOptimize() {
+            return runCount() < MAX_RUNS ? toRuns() : this;
+        }
+
+        @Override
+        Container copy() {
+            BitsetContainer result = new BitsetContainer();
+            System.arraycopy(words, 0, result.words, 0, WORDS);
+            result.count = count;
+            return result;
+        }
+    }
+
+    /**
+     * A container of runs of consecutive values. Each run is stored as a start
+     * value and the number of additional values in the run.
+     */
+    static class RunContainer extends Container {
+        private char[] starts;
+        private char[] lengths;
+        private int runs;
+        private int count;
+
+        RunContainer(int capacity) {
+            starts = new char[Math.max(capacity, 1)];
+            lengths = new char[Math.max(capacity, 1)];
+            runs = 0;
+            count = 0;
+        }
+
+        private int end(int run) {
+            return starts[run] + lengths[run];
+        }
+
+        /**
+         * Finds the last run that starts at or before the value.
+         *
+         * @return the run index or -1 if the value is before the first run.
+         */
+        private int floorRun(int low) {
+            int pos = Arrays.binarySearch(starts, 0, runs, (char) low);
+            return pos >= 0 ? pos : -pos - 2;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > starts.length) {
+                int newLength = Math.max(capacity, starts.length * 2);
+                starts = Arrays.copyOf(starts, newLength);
+                lengths = Arrays.copyOf(lengths, newLength);
+            }
+        }
+
+        private void insertRun(int pos, int start, int length) {
+            ensureCapacity(runs + 1);
+            System.arraycopy(starts, pos, starts, pos + 1, runs - pos);
+            System.arraycopy(lengths, pos, lengths, pos + 1, runs - pos);
+            starts[pos] = (char) start;
+            lengths[pos] = (char) length;
+            runs++;
+        }
+
+        private void deleteRun(int pos) {
+            System.arraycopy(starts, pos + 1, starts, pos, runs - pos - 1);
+            System.arraycopy(lengths, pos + 1, lengths, pos, runs - pos - 1);
+            runs--;
+        }
+
+        /**
+         * Appends a value that is greater than any value in the container.
+         */
+        void append(int low) {
+            if (runs > 0 && end(runs - 1) + 1 == low) {
+                lengths[runs - 1]++;
+            } else {
+                insertRun(runs, low, 0);
+            }
+            count++;
+        }
+
+        @Override
+        int cardinality() {
+            return count;
+        }
+
+        @Override
+        boolean contains(int low) {
+            int run = floorRun(low);
+            return run >= 0 && low <= end(run);
+        }
+
+        @Override
+        Container add(int low) {
+            int run = floorRun(low);
+            if (run >= 0 && low <= end(run)) {
+                return this;
+            }
+            boolean extendsPrior = run >= 0 && end(run) + 1 == low;
+            boolean extendsNext = run + 1 < runs && starts[run + 1] == low + 1;
+            if (extendsPrior && extendsNext) {
+                lengths[run] += lengths[run + 1] + 2;
+                deleteRun(run + 1);
+            } else if (extendsPrior) {
+                lengths[run]++;
+            } else if (extendsNext) {
+                starts[run + 1]--;
+                lengths[run + 1]++;
+            } else {
+                if (runs == MAX_RUNS) {
+                    return (count < MAX_ARRAY ? toArray() : toBitset()).add(low);
+                }
+                insertRun(run + 1, low, 0);
+            }
+            count++;
+            return this;
+        }
+
+        @Override
+        Container remove(int low) {
+            int run = floorRun(low);
+            if (run < 0 || low > end(run)) {
+                return this;
+            }
+            int start = starts[run];
+            int end = end(run);
+            if (start == end) {
+                deleteRun(run);
+            } else if (low == start) {
+                starts[run]++;
+                lengths[run]--;
+            } else if (low == end) {
+                lengths[run]--;
+            } else {
+                if (runs == MAX_RUNS) {
+                    return (count <= MAX_ARRAY ? toArray() : toBitset()).remove(low);
+                }
+                lengths[run] = (char) (low - start - 1);
+                insertRun(run + 1, low + 1, end - low - 1);
+            }
+            count--;
+            return this;
+        }
+
+        @Override
+        long word(int word) {
+            int base = word << DIVIDE_BY_64;
+            int limit = base + Long.SIZE - 1;
+            int run = Math.max(floorRun(base), 0);
+            long result = 0;
+            for (; run < runs && starts[run] <= limit; run++) {
+                int from = Math.max(starts[run], base);
+                int to = Math.min(end(run), limit);
+                if (from <= to) {
+                    result |= (-1L >>> (Long.SIZE - 1 - (to - from))) << (from - base);
+                }
+            }
+            return result;
+        }
+
+        @Override
+        Container setWord(int word, long bits) {
+            return toBitset().setWord(word, bits);
+        }
+
+        @Override
+        Container appendWord(int word, long bits) {
+            if (runs > 0 && end(runs - 1) >>> DIVIDE_BY_64 >= word) {
+                return setWord(word, bits);
+            }
+            int base = word << DIVIDE_BY_64;
+            // the number of runs that start in the word
+            int newRuns = Long.bitCount(bits & ~(bits << 1));
+            if ((bits & 1L) != 0 && runs > 0 && end(runs - 1) + 1 == base) {
+                newRuns--;
+            }
+            if (runs + newRuns > MAX_RUNS) {
+                return toBitset().setWord(word, bits);
+            }
+            long remaining = bits;
+            while (remaining != 0) {
+                int start = Long.numberOfTrailingZeros(remaining);
+                int length = Long.numberOfTrailingZeros(~(remaining >>> start));
+                if (runs > 0 && end(runs - 1) + 1 == base + start) {
+                    lengths[runs - 1] += length;
+                } else {
+                    insertRun(runs, base + start, length - 1);
+                }
+                count += length;
+                remaining = start + length == Long.SIZE ? 0 : remaining & (-1L << (start + length));
+            }
+            return this;
+        }
+
+        @Override
+        int nextWord(int word) {
+            int base = word << DIVIDE_BY_64;
+            int run = Math.max(floorRun(base), 0);
+            for (; run < runs; run++) {
+                if (end(run) >= base) {
+                    return Math.max(starts[run], base) >>> DIVIDE_BY_64;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        int lastWord() {
+            return runs == 0 ? -1 : end(runs - 1) >>> DIVIDE_BY_64;
+        }
+
+        @Override
+        int first() {
+            return starts[0];
+        }
+
+        @Override
+        int runCount() {
+            return runs;
+        }
+
+        @Override
+        PrimitiveIterator.OfInt iterator() {
+            return new PrimitiveIterator.OfInt() {
+                int run = 0;
+                int next = runs == 0 ? 0 : starts[0];
+
+                @Override
+                public boolean hasNext() {
+                    return run < runs;
+                }
+
+                @Override
+                public int nextInt() {
+                    if (run >= runs) {
+                        throw new NoSuchElementException();
+                    }
+                    int result = next;
+                    if (next == end(run)) {
+                        run++;
+                        if (run < runs) {
+                            next = starts[run];
+                        }
+                    } else {
+                        next++;
+                    }
+                    return result;
+                }
+            };
+        }
+
+        @Override
+        Container runOptimize() {
+            return this;
+        }
+
+        @Override
+        Container copy() {
+            RunContainer result = new RunContainer(0);
+            result.starts = Arrays.copyOf(starts, starts.length);
+            result.lengths = Arrays.copyOf(lengths, lengths.length);
+            result.runs = runs;
+            result.count = count;
+            return result;
+        }
+    }
+}
@@ -1,72 +1,365 @@
 package org.xenei.rdfstore.mem;
 
+import java.util.Arrays;
 import java.util.Iterator;
-import java.util.TreeMap;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 
 import org.xenei.rdfstore.store.Bitmap;
 
 /**
  * Class to handle a large number of bitmaps.
+ * <p>
+ * The pages are stored in parallel arrays of keys and 64-bit words sorted by
+ * the unsigned value of the key. {@code Entry} objects are only created when
+ * requested and are copies of the page.
+ * </p>
  */
 public class MemBitmap implements Bitmap {
 
     /**
-     * A list of entries
+     * The page keys sorted as unsigned integers.
      */
-    TreeMap<Integer, Entry> entries = new TreeMap<Integer, Entry>(UNSIGNED_COMPARATOR);
+    private int[] keys;
+    /**
+     * The page words, in the same order as the keys.
+     */
+    private long[] words;
+    /**
+     * The number of pages in use.
+     */
+    private int size;
+    /**
+     * The number of bits enabled.
+     */
+    private long cardinality;
+
+    /**
+     * Constructs an empty bitmap.
+     */
+    public MemBitmap() {
+        keys = new int[4];
+        words = new long[4];
+        size = 0;
+        cardinality = 0;
+    }
+
+    /**
+     * Locates the page key using an unsigned binary search.
+     *
+     * @param key the page key.
+     * @return the position of the page or {@code -(insertion point + 1)} if not
+     * found.
+     */
+    private int find(int key) {
+        // most updates are to the last page.
+        if (size > 0 && keys[size - 1] == key) {
+            return size - 1;
+        }
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Integer.compareUnsigned(keys[mid], key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -(low + 1);
+    }
+
+    /**
+     * Finds the first position at or after {@code from} whose key is greater than
+     * or equal to the target. Galloping search: the step doubles until the target
+     * is passed and then a binary search is performed over the last step.
+     *
+     * @param keys the keys sorted as unsigned integers.
+     * @param from the position to start from.
+     * @param size the number of keys in use.
+     * @param target the unsigned key to search for.
+     * @return the position or {@code size} if all keys are less than the target.
+     */
+    static int gallop(int[] keys, int from, int size, long target) {
+        if (from >= size || Integer.toUnsignedLong(keys[from]) >= target) {
+            return from;
+        }
+        // keys[lo] < target and (hi == size or keys[hi] >= target)
+        int lo = from;
+        int step = 1;
+        int hi = from + 1;
+        while (hi < size && Integer.toUnsignedLong(keys[hi]) < target) {
+            lo = hi;
+            step <<= 1;
+            hi = lo + step;
+        }
+        if (hi > size) {
+            hi = size;
+        }
+        while (lo + 1 < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (Integer.toUnsignedLong(keys[mid]) < target) {
+                lo = mid;
+            } else {
+                hi = mid;
+            }
+        }
+        return hi;
+    }
+
+    private void insert(int pos, int key, long word) {
+        if (size == keys.length) {
+            int newLength = size + (size >> 1) + 1;
+            keys = Arrays.copyOf(keys, newLength);
+            words = Arrays.copyOf(words, newLength);
+        }
+        System.arraycopy(keys, pos, keys, pos + 1, size - pos);
+        System.arraycopy(words, pos, words, pos + 1, size - pos);
+        keys[pos] = key;
+        words[pos] = word;
+        size++;
+    }
+
+    private void delete(int pos) {
+        System.arraycopy(keys, pos + 1, keys, pos, size - pos - 1);
+        System.arraycopy(words, pos + 1, words, pos, size - pos - 1);
+        size--;
+    }
+
+    @Override
+    public long getWord(int key) {
+        int pos = find(key);
+        return pos < 0 ? 0L : words[pos];
+    }
+
+    @Override
+    public void setWord(int key, long word) {
+        int pos = find(key);
+        if (pos >= 0) {
+            cardinality += Long.bitCount(word) - Long.bitCount(words[pos]);
+            if (word == 0) {
+                delete(pos);
+            } else {
+                words[pos] = word;
+            }
+        } else if (word != 0) {
+            cardinality += Long.bitCount(word);
+            insert(-pos - 1, key, word);
+        }
+    }
+
+    @Override
+    public void append(int key, long word) {
+        if (word == 0) {
+            return;
+        }
+        if (size == 0 || Integer.compareUnsigned(keys[size - 1], key) < 0) {
+            cardinality += Long.bitCount(word);
+            insert(size, key, word);
+        } else {
+            setWord(key, word);
+        }
+    }
+
+    @Override
+    public Cursor cursor() {
+        return new Cursor() {
+            int pos = 0;
+
+            @Override
+            public long key() {
+                return pos < size ? Integer.toUnsignedLong(keys[pos]) : NO_INDEX;
+            }
+
+            @Override
+            public long word() {
+                return pos < size ? words[pos] : 0L;
+            }
+
+            @Override
+            public boolean advance() {
+                if (pos < size) {
+                    pos++;
+                }
+                return pos < size;
+            }
+
+            @Override
+            public boolean advanceTo(long target) {
+                pos = gallop(keys, pos, size, target);
+                return pos < size;
+            }
+        };
+    }
+
+    @Override
+    public long ceilingKey(long key) {
+        if (key > MAX_UNSIGNED_INT) {
+            return NO_INDEX;
+        }
+        int pos = find((int) key);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        return pos < size ? Integer.toUnsignedLong(keys[pos]) : NO_INDEX;
+    }
 
     @Override
     public Integer firstKey() {
-        return entries.firstKey();
+        return size == 0 ? null : Integer.valueOf(keys[0]);
     }
 
     @Override
     public Integer higherKey(Integer key) {
-        return entries.higherKey(key);
+        long next = ceilingKey(Integer.toUnsignedLong(key) + 1);
+        return next == NO_INDEX ? null : Integer.valueOf((int) next);
     }
 
     @Override
     public Entry get(Integer key) {
-        return entries.get(key);
+        int pos = find(key);
+        return pos < 0 ? null : new Entry(key, words[pos]);
     }
 
     @Override
     public Entry firstEntry() {
-        return entries.firstEntry().getValue();
+        return size == 0 ? null : new Entry(keys[0], words[0]);
+    }
+
+    @Override
+    public Entry lastEntry() {
+        return size == 0 ? null : new Entry(keys[size - 1], words[size - 1]);
     }
 
     @Override
     public Iterator<Entry> entries() {
-        return entries.values().iterator();
+        return new Iterator<Entry>() {
+            int pos = 0;
+
+            @Override
+            public boolean hasNext() {
+                return pos < size;
+            }
+
+            @Override
+            public Entry next() {
+                if (pos >= size) {
+                    throw new NoSuchElementException();
+                }
+                Entry result = new Entry(keys[pos], words[pos]);
+                pos++;
+                return result;
+            }
+        };
     }
 
     @Override
     public void put(Integer key, Entry entry) {
-        entries.put(key, entry);
+        setWord(key, entry == null ? 0L : entry.bitmap());
     }
 
     @Override
     public void clear() {
-        entries.clear();
+        size = 0;
+        cardinality = 0;
     }
 
     @Override
     public void remove(Integer key) {
-        entries.remove(key);
+        setWord(key, 0L);
     }
 
     @Override
     public boolean isEmpty() {
-        return entries.isEmpty();
+        return size == 0;
     }
 
     @Override
     public long pageCount() {
-        return entries.size();
+        return size;
     }
 
     @Override
-    public Entry lastEntry() {
-        return entries.lastEntry().getValue();
+    public long cardinality() {
+        return cardinality;
+    }
+
+    @Override
+    public boolean contains(final long bitIndex) {
+        checkBitIndex(bitIndex);
+        return (getWord((int) Bitmap.getLongIndex(bitIndex)) & Bitmap.getLongBit(bitIndex)) != 0;
+    }
+
+    @Override
+    public void set(final long bitIndex) {
+        checkBitIndex(bitIndex);
+        int key = (int) Bitmap.getLongIndex(bitIndex);
+        int pos = find(key);
+        if (pos >= 0) {
+            long before = words[pos];
+            words[pos] |= Bitmap.getLongBit(bitIndex);
+            if (before != words[pos]) {
+                cardinality++;
+            }
+        } else {
+            insert(-pos - 1, key, Bitmap.getLongBit(bitIndex));
+            cardinality++;
+        }
+    }
+
+    @Override
+    public void clear(final long bitIndex) {
+        checkBitIndex(bitIndex);
+        int pos = find((int) Bitmap.getLongIndex(bitIndex));
+        if (pos >= 0) {
+            long before = words[pos];
+            words[pos] &= ~Bitmap.getLongBit(bitIndex);
+            if (before != words[pos]) {
+                cardinality--;
+            }
+            if (words[pos] == 0) {
+                delete(pos);
+            }
+        }
+    }
+
+    @Override
+    public long lowest() {
+        if (size == 0) {
+            return NO_INDEX;
+        }
+        return Integer.toUnsignedLong(keys[0]) * PAGE_SIZE + Long.numberOfTrailingZeros(words[0]);
+    }
+
+    @Override
+    public PrimitiveIterator.OfLong iterator() {
+        return new PrimitiveIterator.OfLong() {
+            int pos = -1;
+            long bits = 0;
+
+            @Override
+            public boolean hasNext() {
+                while (bits == 0) {
+                    if (++pos >= size) {
+                        return false;
+                    }
+                    bits = words[pos];
+                }
+                return true;
+            }
+
+            @Override
+            public long nextLong() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                long result = Integer.toUnsignedLong(keys[pos]) * PAGE_SIZE + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                return result;
+            }
+        };
     }
 }
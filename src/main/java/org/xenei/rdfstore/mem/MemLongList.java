@@ -4,7 +4,9 @@ import static org.apache.jena.query.ReadWrite.READ;
 import static org.apache.jena.query.ReadWrite.WRITE;
 
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.NavigableSet;
+import java.util.NoSuchElementException;
 import java.util.TreeSet;
 
 import org.apache.jena.query.ReadWrite;
@@ -27,6 +29,7 @@ public class MemLongList<T> implements LongList<T> {
     private final TxnHandler txnHandler;
     private final ArrayList<NavigableSet<IdxData<T>>> pages;
     private long itemCount;
+    private long nextIdx;
 
     /**
      * Creates a LongList.
@@ -35,6 +38,7 @@ public class MemLongList<T> implements LongList<T> {
         this.pages = new ArrayList<NavigableSet<IdxData<T>>>();
         pages.add(new TreeSet<IdxData<T>>());
         this.itemCount = 0;
+        this.nextIdx = 0;
         this.txnHandler = new TxnHandler(() -> "LongList", this::prepareBegin, this::execCommit, this::execAbort,
                 this::execEnd);
     }
@@ -61,7 +65,7 @@ public class MemLongList<T> implements LongList<T> {
      */
     private static int getPageNumber(long idx) {
         checkIndex(idx);
-        return (int) idx / Integer.MAX_VALUE;
+        return (int) (idx / Integer.MAX_VALUE);
     }
 
     // ** TRANSACTION FUCNTIONS
@@ -71,7 +75,7 @@ public class MemLongList<T> implements LongList<T> {
 
     private void prepareBegin(ReadWrite readWrite) {
         txnPages = new TreeSet<IdxData<T>>();
-        txnCurrentItem = itemCount;
+        txnCurrentItem = nextIdx;
     }
 
     private void execCommit() {
@@ -80,33 +84,34 @@ public class MemLongList<T> implements LongList<T> {
         for (IdxData<T> data : txnPages) {
             int pageNo = getPageNumber(data.idx);
             if (pageNo != lastPage) {
-                page = pages.get(pageNo);
-                if (page == null) {
-                    page = new TreeSet<IdxData<T>>();
-                    pages.add(page);
+                while (pages.size() <= pageNo) {
+                    pages.add(new TreeSet<IdxData<T>>());
                 }
+                page = pages.get(pageNo);
             }
             lastPage = pageNo;
-            if (page.add(data)) {
-                if (data.data != null) {
+            // remove any existing entry so that the new data replaces it.
+            boolean existed = page.remove(data);
+            if (data.data != null) {
+                page.add(data);
+                if (!existed) {
                     itemCount++;
                 }
-            } else {
-                if (data.data == null) {
-                    itemCount--;
-                }
+            } else if (existed) {
+                itemCount--;
             }
         }
+        nextIdx = Math.max(nextIdx, txnCurrentItem);
     }
 
     private void execAbort() {
         txnPages = null;
-        txnCurrentItem = itemCount;
+        txnCurrentItem = nextIdx;
     }
 
     private void execEnd() {
         txnPages = null;
-        txnCurrentItem = itemCount;
+        txnCurrentItem = nextIdx;
     }
 
     /**
@@ -144,7 +149,11 @@ public class MemLongList<T> implements LongList<T> {
     @Override
     public void set(IdxData<T> data) {
         txnHandler.doInTxn(WRITE, () -> {
+            txnPages.remove(data);
             txnPages.add(data);
+            if (data.idx >= txnCurrentItem) {
+                txnCurrentItem = data.idx + 1;
+            }
         });
     }
 
@@ -160,7 +169,8 @@ public class MemLongList<T> implements LongList<T> {
             IdxData<T> searcher = new IdxData<>(idx, null);
             IdxData<T> result = txnPages.floor(searcher);
             if (result == null || result.idx != idx) {
-                NavigableSet<IdxData<T>> page = pages.get(getPageNumber(idx));
+                int pageNo = getPageNumber(idx);
+                NavigableSet<IdxData<T>> page = pageNo < pages.size() ? pages.get(pageNo) : null;
                 result = page == null ? null : page.floor(searcher);
                 return result == null ? null : (result.idx == idx) ? result.data : null;
             }
@@ -178,9 +188,70 @@ public class MemLongList<T> implements LongList<T> {
         set(new IdxData<>(idx, null));
     }
 
+    @SuppressWarnings({ "unchecked", "rawtypes" })
     @Override
     public ExtendedIterator<IdxData<T>> iterator() {
-        return WrappedIterator.create(new LongListIterator(pages.iterator()));
+        Iterator<IdxData<T>> committed = new LongListIterator(pages.iterator());
+        if (txnHandler.transactionMode() != WRITE) {
+            return WrappedIterator.create(committed);
+        }
+        return WrappedIterator.create(new TxnIterator(committed, txnPages.iterator()));
+    }
+
+    /**
+     * An iterator over the committed items merged with the changes of the write
+     * transaction.
+     */
+    private class TxnIterator implements Iterator<IdxData<T>> {
+        private final Iterator<IdxData<T>> committed;
+        private final Iterator<IdxData<T>> changes;
+        private IdxData<T> nextCommitted;
+        private IdxData<T> nextChange;
+        private IdxData<T> next;
+
+        TxnIterator(Iterator<IdxData<T>> committed, Iterator<IdxData<T>> changes) {
+            this.committed = committed;
+            this.changes = changes;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                if (nextCommitted == null && committed.hasNext()) {
+                    nextCommitted = committed.next();
+                }
+                if (nextChange == null && changes.hasNext()) {
+                    nextChange = changes.next();
+                }
+                if (nextChange == null) {
+                    next = nextCommitted;
+                    nextCommitted = null;
+                    break;
+                }
+                if (nextCommitted != null && nextCommitted.idx < nextChange.idx) {
+                    next = nextCommitted;
+                    nextCommitted = null;
+                } else {
+                    // the change replaces the committed item, a null item is removed.
+                    if (nextCommitted != null && nextCommitted.idx == nextChange.idx) {
+                        nextCommitted = null;
+                    }
+                    next = nextChange.data == null ? null : nextChange;
+                    nextChange = null;
+                }
+            }
+            return next != null;
+        }
+
+        @Override
+        public IdxData<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            IdxData<T> result = next;
+            next = null;
+            return result;
+        }
     }
 
     @Override
@@ -1,17 +1,40 @@
 package org.xenei.rdfstore.mem;
 
-import java.nio.ByteBuffer;
+import java.nio.file.Path;
 
+import org.xenei.rdfstore.disk.WriteAheadLog;
 import org.xenei.rdfstore.store.AbstractQuads;
 import org.xenei.rdfstore.store.Bitmap;
 
 public class MemQuads extends AbstractQuads {
 
     public MemQuads() {
-        super(new MemUriStore(), new TrieStore<ByteBuffer>(ByteBuffer::toString),
-                new QuadMaps(new MemLongList<Bitmap>(), new MemLongList<Bitmap>(), new MemLongList<Bitmap>(),
-                        new MemLongList<Bitmap>()));
+        this(null);
+    }
 
+    /**
+     * Constructor. The quads in the log are replayed so the store is restored to
+     * the last committed transaction.
+     *
+     * @param wal the log to record write transactions in, may be {@code null}.
+     */
+    public MemQuads(WriteAheadLog wal) {
+        this(null, wal);
     }
 
+    /**
+     * Constructor. The checkpoint is loaded and then the quads in the log are
+     * replayed so the store is restored to the last committed transaction.
+     *
+     * @param checkpoint the checkpoint file, may be {@code null} or not exist.
+     * @param wal the log to record write transactions in, may be {@code null}.
+     * @see #checkpoint(Path)
+     */
+    public MemQuads(Path checkpoint, WriteAheadLog wal) {
+        super(new MemUriStore(), new QuadHashStore(),
+                new QuadMaps(new ChunkedLongList<Bitmap>(), new ChunkedLongList<Bitmap>(),
+                        new ChunkedLongList<Bitmap>(), new ChunkedLongList<Bitmap>()),
+                ContainerBitmap::new, checkpoint, wal);
+
+    }
 }
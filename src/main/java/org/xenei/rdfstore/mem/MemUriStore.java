@@ -9,16 +9,27 @@ import org.xenei.rdfstore.idx.AbstractIndex;
 import org.xenei.rdfstore.store.AbstractUriStore;
 import org.xenei.rdfstore.store.Bitmap;
 import org.xenei.rdfstore.store.IdxData;
-import org.xenei.rdfstore.store.UriStore;
+import org.xenei.rdfstore.store.Store;
 
 public class MemUriStore extends AbstractUriStore {
 
     // public AbstractUriStore(Store<Node> store, Mapper<BigDecimal> numbers,
     // Mapper<String> languages, Supplier<Bitmap> bitmapSupplier ) {
 
+    /**
+     * Creates a MemUriStore that keeps the nodes in an {@link OffHeapNodeStore}.
+     */
     public MemUriStore() {
-        super(new TrieStore<Node>(UriStore::asString),
-                new AbstractIndex.MapMapper<BigDecimal>(new TreeMap<BigDecimal, IdxData<Bitmap>>()),
-                new AbstractIndex.MapMapper<String>(new HashMap<String, IdxData<Bitmap>>()), () -> new MemBitmap());
+        this(new OffHeapNodeStore());
+    }
+
+    /**
+     * Creates a MemUriStore.
+     *
+     * @param store the store for the nodes.
+     */
+    public MemUriStore(Store<Node> store) {
+        super(store, new AbstractIndex.MapMapper<BigDecimal>(new TreeMap<BigDecimal, IdxData<Bitmap>>()),
+                new AbstractIndex.MapMapper<String>(new HashMap<String, IdxData<Bitmap>>()), ContainerBitmap::new);
     }
 }
@@ -0,0 +1,281 @@
+package org.xenei.rdfstore.mem;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.apache.jena.datatypes.TypeMapper;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.out.NodeFmtLib;
+import org.apache.jena.sparql.util.NodeFactoryExtra;
+
+/**
+ * A store of nodes that keeps the serialized nodes outside of the Java heap.
+ * <p>
+ * Each node is serialized to a record and appended to a direct
+ * {@code ByteBuffer} arena. The offset of the record and the hash of the record
+ * are kept in chunked {@code long} arrays indexed by the node id and the reverse
+ * lookup uses the hash table of {@link AbstractHashStore}, comparing the
+ * serialized bytes. A {@code Node} is only created when a node is read.
+ * </p>
+ * <p>
+ * The space of deleted records is not reused.
+ * </p>
+ */
+public class OffHeapNodeStore extends AbstractHashStore<Node, byte[]> {
+
+    /**
+     * The default size of an arena.
+     */
+    public static final int DEFAULT_ARENA_SIZE = 1 << 20;
+
+    private static final byte URI = 1;
+    private static final byte BLANK = 2;
+    private static final byte LANG_LITERAL = 3;
+    private static final byte TYPED_LITERAL = 4;
+    /** Any other node, stored as N-Triples text. */
+    private static final byte OTHER = 5;
+
+    private final int arenaSize;
+    private ByteBuffer[] arenas;
+    private int arenaCount;
+    /**
+     * The offset of each record: the arena number in the high 32 bits and the
+     * position in the low 32 bits.
+     */
+    private long[][] offsets;
+    /**
+     * The hash of each record.
+     */
+    private long[][] hashes;
+
+    /**
+     * Constructor using the default arena size.
+     */
+    public OffHeapNodeStore() {
+        this(DEFAULT_ARENA_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param arenaSize the size of each arena in bytes. Records larger than this
+     * are placed in an arena of their own.
+     */
+    public OffHeapNodeStore(int arenaSize) {
+        super("OffHeapNodeStore");
+        if (arenaSize <= 0) {
+            throw new IllegalArgumentException("Arena size must be greater than 0");
+        }
+        this.arenaSize = arenaSize;
+        arenas = new ByteBuffer[4];
+        arenaCount = 0;
+        offsets = new long[1][];
+        hashes = new long[1][];
+    }
+
+    // ** SERIALIZATION
+
+    private static int putString(byte[] buffer, int pos, byte[] str) {
+        buffer[pos++] = (byte) (str.length >>> 24);
+        buffer[pos++] = (byte) (str.length >>> 16);
+        buffer[pos++] = (byte) (str.length >>> 8);
+        buffer[pos++] = (byte) str.length;
+        System.arraycopy(str, 0, buffer, pos, str.length);
+        return pos + str.length;
+    }
+
+    private static byte[] record(byte type, String... strings) {
+        byte[][] bytes = new byte[strings.length][];
+        int length = 1;
+        for (int i = 0; i < strings.length; i++) {
+            bytes[i] = strings[i].getBytes(StandardCharsets.UTF_8);
+            length += Integer.BYTES + bytes[i].length;
+        }
+        byte[] result = new byte[length];
+        result[0] = type;
+        int pos = 1;
+        for (byte[] str : bytes) {
+            pos = putString(result, pos, str);
+        }
+        return result;
+    }
+
+    /**
+     * Serializes the node.
+     *
+     * @param node the node.
+     * @return the record for the node.
+     */
+    public static byte[] encode(Node node) {
+        if (node.isURI()) {
+            return record(URI, node.getURI());
+        }
+        if (node.isBlank()) {
+            return record(BLANK, node.getBlankNodeLabel());
+        }
+        if (node.isLiteral()) {
+            String lang = node.getLiteralLanguage();
+            if (lang != null && !lang.isEmpty()) {
+                return record(LANG_LITERAL, node.getLiteralLexicalForm(), lang);
+            }
+            return record(TYPED_LITERAL, node.getLiteralLexicalForm(), node.getLiteralDatatypeURI());
+        }
+        return record(OTHER, NodeFmtLib.strNT(node));
+    }
+
+    /**
+     * Reads a string from the record.
+     *
+     * @param record the record, positioned at the string length.
+     * @return the string.
+     */
+    private static String getString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Creates the node from a record.
+     *
+     * @param record the record, positioned at the type.
+     * @return the node.
+     */
+    public static Node decode(ByteBuffer record) {
+        byte type = record.get();
+        switch (type) {
+        case URI:
+            return NodeFactory.createURI(getString(record));
+        case BLANK:
+            return NodeFactory.createBlankNode(getString(record));
+        case LANG_LITERAL:
+            return NodeFactory.createLiteral(getString(record), getString(record));
+        case TYPED_LITERAL:
+            String lex = getString(record);
+            return NodeFactory.createLiteral(lex, TypeMapper.getInstance().getSafeTypeByName(getString(record)));
+        case OTHER:
+            return NodeFactoryExtra.parseNode(getString(record));
+        default:
+            throw new IllegalStateException("Unknown node type: " + type);
+        }
+    }
+
+    // ** ARENA ACCESS
+
+    private static long getLong(long[][] chunks, long id) {
+        return chunks[(int) (id >>> CHUNK_SHIFT)][(int) id & CHUNK_MASK];
+    }
+
+    private static long[][] setLong(long[][] chunks, long id, long value) {
+        int chunk = (int) (id >>> CHUNK_SHIFT);
+        long[][] result = chunks;
+        if (chunk >= result.length) {
+            result = Arrays.copyOf(result, Math.max(chunk + 1, result.length * 2));
+        }
+        if (result[chunk] == null) {
+            result[chunk] = new long[CHUNK_SIZE];
+        }
+        result[chunk][(int) id & CHUNK_MASK] = value;
+        return result;
+    }
+
+    /**
+     * Gets the record for the node id.
+     *
+     * @param id the node id.
+     * @return a buffer positioned at the type with the limit at the end of the
+     * record.
+     */
+    private ByteBuffer getRecord(long id) {
+        long offset = getLong(offsets, id);
+        ByteBuffer record = arenas[(int) (offset >>> 32)].duplicate();
+        int pos = (int) offset;
+        record.limit(pos + Integer.BYTES + record.getInt(pos));
+        record.position(pos + Integer.BYTES);
+        return record;
+    }
+
+    /**
+     * Appends the record to the arenas.
+     *
+     * @param record the record.
+     * @return the offset of the record.
+     */
+    private long append(byte[] record) {
+        int needed = Integer.BYTES + record.length;
+        ByteBuffer arena = arenaCount == 0 ? null : arenas[arenaCount - 1];
+        if (arena == null || arena.remaining() < needed) {
+            arena = ByteBuffer.allocateDirect(Math.max(arenaSize, needed));
+            if (arenaCount == arenas.length) {
+                arenas = Arrays.copyOf(arenas, arenaCount * 2);
+            }
+            arenas[arenaCount++] = arena;
+        }
+        long offset = ((long) (arenaCount - 1) << 32) | arena.position();
+        arena.putInt(record.length);
+        arena.put(record);
+        return offset;
+    }
+
+    /**
+     * Gets the number of bytes allocated for arenas.
+     *
+     * @return the number of bytes allocated outside of the heap.
+     */
+    public long arenaBytes() {
+        long result = 0;
+        for (int i = 0; i < arenaCount; i++) {
+            result += arenas[i].capacity();
+        }
+        return result;
+    }
+
+    // ** HASH STORE
+
+    @Override
+    protected byte[] key(Node item) {
+        return encode(item);
+    }
+
+    @Override
+    protected long hash(byte[] key) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : key) {
+            h = (h ^ b) * 0x100000001b3L;
+        }
+        return mix(h);
+    }
+
+    @Override
+    protected long hashOf(long id) {
+        return getLong(hashes, id);
+    }
+
+    @Override
+    protected boolean matches(long id, byte[] key) {
+        ByteBuffer record = getRecord(id);
+        if (record.remaining() != key.length) {
+            return false;
+        }
+        int pos = record.position();
+        for (int i = 0; i < key.length; i++) {
+            if (record.get(pos + i) != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void write(long id, Node item, byte[] key) {
+        hashes = setLong(hashes, id, hash(key));
+        offsets = setLong(offsets, id, append(key));
+    }
+
+    @Override
+    protected Node read(long id) {
+        return decode(getRecord(id));
+    }
+}
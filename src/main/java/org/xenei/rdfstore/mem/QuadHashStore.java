@@ -0,0 +1,120 @@
+package org.xenei.rdfstore.mem;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.xenei.rdfstore.store.Idx;
+import org.xenei.rdfstore.store.QuadStore;
+
+/**
+ * A store of quads keyed by the four node ids.
+ * <p>
+ * The node ids are kept in chunked {@code long} arrays indexed by the quad id
+ * and the quad ids are kept in the open addressing hash table of
+ * {@link AbstractHashStore}. Registration, lookup and deletion hash the 32
+ * bytes of the quad directly so no key string or entry object is created.
+ * </p>
+ * <p>
+ * The node ids are written with ordered stores between the clearing and the
+ * setting of the id's stamp, so a reader that sees the same stamp before and
+ * after copying the ids has read a single quad.
+ * </p>
+ */
+public class QuadHashStore extends AbstractHashStore<ByteBuffer, ByteBuffer> implements QuadStore {
+
+    private static final int WIDTH = 4;
+
+    /**
+     * The node ids, {@code WIDTH} longs per quad id.
+     */
+    private AtomicLongArray[] data;
+
+    /**
+     * Constructor.
+     */
+    public QuadHashStore() {
+        super("QuadHashStore");
+        data = new AtomicLongArray[1];
+    }
+
+    private long getLong(long id, int pos) {
+        return data[(int) (id >>> CHUNK_SHIFT)].get(((int) id & CHUNK_MASK) * WIDTH + pos);
+    }
+
+    private static long hash(long g, long s, long p, long o) {
+        long h = g;
+        h = h * 0x9E3779B97F4A7C15L + s;
+        h = h * 0x9E3779B97F4A7C15L + p;
+        h = h * 0x9E3779B97F4A7C15L + o;
+        return mix(h);
+    }
+
+    @Override
+    protected ByteBuffer key(ByteBuffer item) {
+        return item;
+    }
+
+    @Override
+    protected long hash(ByteBuffer item) {
+        return hash(item.getLong(0), item.getLong(Long.BYTES), item.getLong(2 * Long.BYTES),
+                item.getLong(3 * Long.BYTES));
+    }
+
+    @Override
+    protected long hashOf(long id) {
+        return hash(getLong(id, 0), getLong(id, 1), getLong(id, 2), getLong(id, 3));
+    }
+
+    @Override
+    protected boolean matches(long id, ByteBuffer item) {
+        for (int i = 0; i < WIDTH; i++) {
+            if (getLong(id, i) != item.getLong(i * Long.BYTES)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    protected void write(long id, ByteBuffer item, ByteBuffer key) {
+        int chunk = (int) (id >>> CHUNK_SHIFT);
+        if (chunk >= data.length) {
+            data = Arrays.copyOf(data, Math.max(chunk + 1, data.length * 2));
+        }
+        if (data[chunk] == null) {
+            data[chunk] = new AtomicLongArray(CHUNK_SIZE * WIDTH);
+        }
+        int offset = ((int) id & CHUNK_MASK) * WIDTH;
+        for (int i = 0; i < WIDTH; i++) {
+            data[chunk].lazySet(offset + i, item.getLong(i * Long.BYTES));
+        }
+    }
+
+    @Override
+    protected ByteBuffer read(long id) {
+        ByteBuffer result = ByteBuffer.allocate(WIDTH * Long.BYTES);
+        for (int i = 0; i < WIDTH; i++) {
+            result.putLong(i * Long.BYTES, getLong(id, i));
+        }
+        return result;
+    }
+
+    @Override
+    public long get(long idx, Idx position) {
+        return getLong(idx, position.ordinal());
+    }
+
+    @Override
+    public boolean get(long idx, long[] ids) {
+        long stamp = stamp(idx);
+        if (stamp == 0) {
+            return false;
+        }
+        for (int i = 0; i < WIDTH; i++) {
+            ids[i] = getLong(idx, i);
+        }
+        // the id was deleted and reused while it was read.
+        return stamp(idx) == stamp;
+    }
+}
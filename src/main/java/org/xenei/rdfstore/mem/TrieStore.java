@@ -42,7 +42,7 @@ public class TrieStore<T> implements Store<T> {
      */
     public TrieStore(Function<T, String> keyFunc) {
         TxnId txnId = () -> "TrieStore";
-        lst = new MemLongList<T>();
+        lst = new ChunkedLongList<T>();
         trie = new PatriciaTrie<IdxData<T>>();
         deleted = new MemBitmap();
         this.keyFunc = keyFunc;
@@ -148,6 +148,37 @@ public class TrieStore<T> implements Store<T> {
         });
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The ids below the highest id loaded that are not loaded are reused by later
+     * registrations.
+     * </p>
+     */
+    @Override
+    public void load(Iterator<IdxData<T>> items) {
+        txnHandler.doInTxn(WRITE, () -> {
+            if (size() != 0) {
+                throw new IllegalStateException("Items can only be loaded into an empty store");
+            }
+            Bitmap loaded = new MemBitmap();
+            while (items.hasNext()) {
+                IdxData<T> item = items.next();
+                lst.set(item);
+                txnAdd.put(keyFunc.apply(item.data), item);
+                loaded.set(item.idx);
+            }
+            // the free ids are the ones in deleted xor txnUsed.
+            Bitmap free = new MemBitmap();
+            for (long id = lst.size() - 1; id >= 0; id--) {
+                if (!loaded.contains(id)) {
+                    free.set(id);
+                }
+            }
+            txnUsed = Bitmap.xor(() -> new MemBitmap(), deleted, free);
+        });
+    }
+
     @Override
     public boolean contains(T item) {
         return txnHandler.doInTxn(READ, () -> {
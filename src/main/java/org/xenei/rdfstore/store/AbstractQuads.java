@@ -3,22 +3,33 @@ package org.xenei.rdfstore.store;
 import static org.apache.jena.query.TxnType.READ;
 import static org.apache.jena.query.TxnType.WRITE;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.function.ToLongFunction;
 import java.util.function.Function;
+import java.util.function.Supplier;
 
 import org.apache.jena.graph.Node;
 import org.apache.jena.graph.Triple;
 import org.apache.jena.query.ReadWrite;
 import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.JenaTransactionException;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.util.iterator.ExtendedIterator;
 import org.apache.jena.util.iterator.NiceIterator;
-import org.apache.jena.util.iterator.WrappedIterator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.xenei.rdfstore.mem.MemBitmap;
+import org.xenei.rdfstore.disk.WriteAheadLog;
+import org.xenei.rdfstore.mem.ChunkedLongList;
 import org.xenei.rdfstore.mem.MemQuads;
 import org.xenei.rdfstore.txn.TxnController;
 import org.xenei.rdfstore.txn.TxnId;
@@ -26,12 +37,55 @@ import org.xenei.rdfstore.txn.TxnId;
 public class AbstractQuads implements Quads {
     private final UriStore uriStore;
     private final Store<ByteBuffer> store;
+    /**
+     * The store if it can read node ids without creating buffers, otherwise
+     * {@code null}.
+     */
+    private final QuadStore quadStore;
     private final LongList<Bitmap>[] maps;
+    /**
+     * The number of quads in each graph by graph node id. The counts are kept in
+     * memory and rebuilt from the graph bitmaps when the store is opened.
+     */
+    private final LongList<Long> graphCounts;
+    private final Supplier<Bitmap> bitmapSupplier;
 
     private final static Logger LOG = LoggerFactory.getLogger(MemQuads.class);
 
     private final TxnController txnController;
 
+    /**
+     * The log of the write transactions, {@code null} if the changes are not
+     * logged.
+     */
+    private final WriteAheadLog wal;
+
+    /**
+     * The node ids for each index whose bitmap has been copied for the current
+     * write transaction.
+     */
+    private Bitmap[] txnTouched;
+
+    /**
+     * {@code true} if {@link #prepareCommit()} has written the log of the current
+     * write transaction.
+     */
+    private boolean txnPrepared;
+
+    /**
+     * The default ratio between the two smallest bitmaps of a pattern above which
+     * the quads are probed instead of intersecting the bitmaps.
+     */
+    public static final double DEFAULT_PROBE_RATIO = 64.0;
+
+    private volatile double probeRatio = DEFAULT_PROBE_RATIO;
+
+    /**
+     * The position of the write-ahead log after the last committed transaction.
+     * Each transaction pins the position when it begins.
+     */
+    private volatile long walPosition;
+
     public static class QuadMaps {
         final LongList<Bitmap>[] maps;
 
@@ -48,44 +102,152 @@ public class AbstractQuads implements Quads {
         }
     }
 
+    public AbstractQuads(UriStore uriStore, Store<ByteBuffer> store, QuadMaps maps, Supplier<Bitmap> bitmapSupplier) {
+        this(uriStore, store, maps, bitmapSupplier, null);
+    }
+
+    /**
+     * Constructor. The committed transactions in the write-ahead log are replayed
+     * into the stores.
+     *
+     * @param uriStore the store for the nodes.
+     * @param store the store for the quads.
+     * @param maps the bitmaps of the quads for each node.
+     * @param bitmapSupplier the supplier of new bitmaps.
+     * @param wal the log to record write transactions in, may be {@code null}.
+     */
+    public AbstractQuads(UriStore uriStore, Store<ByteBuffer> store, QuadMaps maps, Supplier<Bitmap> bitmapSupplier,
+            WriteAheadLog wal) {
+        this(uriStore, store, maps, bitmapSupplier, null, wal);
+    }
+
+    /**
+     * Constructor. The empty stores are loaded from the checkpoint, if it exists,
+     * and then the committed transactions in the write-ahead log are replayed into
+     * the stores.
+     *
+     * @param uriStore the store for the nodes.
+     * @param store the store for the quads.
+     * @param maps the bitmaps of the quads for each node.
+     * @param bitmapSupplier the supplier of new bitmaps.
+     * @param checkpoint the checkpoint file to load, may be {@code null}.
+     * @param wal the log to record write transactions in, may be {@code null}.
+     * @see #checkpoint(Path)
+     */
     @SuppressWarnings("unchecked")
-    public AbstractQuads(UriStore uriStore, Store<ByteBuffer> store, QuadMaps maps) {
+    public AbstractQuads(UriStore uriStore, Store<ByteBuffer> store, QuadMaps maps, Supplier<Bitmap> bitmapSupplier,
+            Path checkpoint, WriteAheadLog wal) {
         TxnId txnId = () -> "Quads";
+        this.bitmapSupplier = bitmapSupplier;
         this.uriStore = uriStore;
         this.uriStore.setTxnId(txnId);
         this.store = store;
         this.store.setTxnId(txnId);
+        this.quadStore = store instanceof QuadStore ? (QuadStore) store : null;
         this.maps = new LongList[Idx.values().length];
 
         for (Idx idx : Idx.values()) {
             this.maps[idx.ordinal()] = maps.get(idx);
             this.maps[idx.ordinal()].setTxnId(TxnId.setParent(txnId, () -> "map" + idx.ordinal()));
         }
-        txnController = new TxnController(txnId, this::prepareBegin, this::commitF, this::abortF, this::endF);
+        this.graphCounts = new ChunkedLongList<>();
+        this.graphCounts.setTxnId(TxnId.setParent(txnId, () -> "graphCounts"));
+        this.walPosition = wal == null ? 0 : wal.position();
+        txnController = new TxnController(txnId, this::prepareBegin, this::writeLog, this::commitF, this::abortF,
+                this::endF);
+        this.wal = wal;
+        if (checkpoint != null && Files.exists(checkpoint)) {
+            txnController.doInTxn(WRITE, () -> {
+                try {
+                    Checkpoint.read(checkpoint, uriStore, store, this.maps, bitmapSupplier);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+        txnController.doInTxn(WRITE, () -> {
+            this.maps[Idx.G.ordinal()].iterator().forEachRemaining(data -> {
+                graphCounts.set(new IdxData<>(data.idx, data.data.cardinality()));
+            });
+        });
+        if (wal != null) {
+            txnController.doInTxn(WRITE, () -> {
+                wal.replay((op, quad) -> {
+                    if (op == WriteAheadLog.Op.REGISTER) {
+                        register(quad);
+                    } else {
+                        delete(quad);
+                    }
+                });
+            });
+        }
     }
 
     private void prepareBegin(ReadWrite readWrite) {
+        if (readWrite == ReadWrite.WRITE) {
+            if (txnController.transactionType() != TxnType.WRITE) {
+                // promoting a read transaction, the stores begin again as writers.
+                endF();
+            }
+            if (wal != null) {
+                wal.abort();
+            }
+            txnTouched = new Bitmap[maps.length];
+            for (int i = 0; i < maps.length; i++) {
+                txnTouched[i] = bitmapSupplier.get();
+            }
+        }
         Arrays.stream(maps).forEach(t -> t.begin(readWrite));
+        graphCounts.begin(readWrite);
         store.begin(readWrite); // should this be write
         uriStore.begin(readWrite); // should this be write?
+        txnController.snapshot(walPosition);
     }
 
+    /**
+     * Writes the log before the changes are published. This runs before the
+     * commit takes the system lock so readers do not wait for the log.
+     */
+    private void writeLog() {
+        if (wal != null && !txnPrepared) {
+            wal.commit();
+        }
+        txnPrepared = false;
+    }
+
+    /**
+     * Publishes the new versions of the stores.
+     */
     private void commitF() {
         Arrays.stream(maps).forEach(t -> t.commit());
+        graphCounts.commit();
         store.commit(); // should this be write
         uriStore.commit(); // should this be write?
+        if (wal != null) {
+            walPosition = wal.position();
+            wal.published();
+        }
+        txnTouched = null;
     }
 
     private void abortF() {
+        txnPrepared = false;
+        if (wal != null) {
+            wal.abort();
+        }
         Arrays.stream(maps).forEach(t -> t.abort());
+        graphCounts.abort();
         store.abort(); // should this be write
         uriStore.abort(); // should this be write?
+        txnTouched = null;
     }
 
     private void endF() {
         Arrays.stream(maps).forEach(t -> t.end());
+        graphCounts.end();
         store.end(); // should this be write
         uriStore.end(); // should this be write?
+        txnTouched = null;
     }
 
     @Override
@@ -94,12 +256,172 @@ public class AbstractQuads implements Quads {
             abort();
     }
 
+    /**
+     * Gets the bitmap for the node that may be modified in the current write
+     * transaction. The committed bitmap is copied the first time it is touched in
+     * a transaction so that readers and aborts do not see the changes. The copy
+     * shares the storage that is not changed where the bitmap supports it.
+     *
+     * @param idx the index the node is in.
+     * @param id the node id.
+     * @return the bitmap for the node in this transaction.
+     */
+    private Bitmap writableBitmap(Idx idx, long id) {
+        LongList<Bitmap> map = maps[idx.ordinal()];
+        Bitmap touched = txnTouched[idx.ordinal()];
+        Bitmap bitmap = map.get(id);
+        if (bitmap == null || !touched.contains(id)) {
+            bitmap = bitmap == null ? bitmapSupplier.get() : bitmap.copy(bitmapSupplier);
+            map.set(new IdxData<Bitmap>(id, bitmap));
+            touched.set(id);
+        }
+        return bitmap;
+    }
+
+    // ** BULK LOADING
+
+    /**
+     * Creates a bitmap for the bulk loader.
+     *
+     * @return a new bitmap.
+     */
+    Bitmap newBitmap() {
+        return bitmapSupplier.get();
+    }
+
+    /**
+     * Registers a node for the bulk loader. Must be called in a write transaction.
+     *
+     * @param node the node.
+     * @return the id of the node.
+     */
+    long registerNode(Node node) {
+        return uriStore.register(node);
+    }
+
+    /**
+     * Registers a quad whose nodes have been registered without adding it to the
+     * bitmaps. Must be called in a write transaction.
+     *
+     * @param quad the quad, the graph may not be the triple marker.
+     * @param ids the node ids of the quads by {@link Idx} ordinal.
+     * @param offset the position of the node ids of the quad in {@code ids}.
+     * @return the result of registering the quad in the store.
+     * @see BulkLoader
+     */
+    Store.Result registerEncoded(Quad quad, long[] ids, int offset) {
+        // the store may keep the buffer so every quad gets a new one.
+        ByteBuffer buffer = ByteBuffer.allocate(Idx.values().length * Long.BYTES);
+        for (Idx idx : Idx.values()) {
+            buffer.putLong(idx.bufferPos, ids[offset + idx.ordinal()]);
+        }
+        Store.Result result = store.register(buffer);
+        if (!result.existed && wal != null) {
+            wal.log(WriteAheadLog.Op.REGISTER, quad);
+        }
+        return result;
+    }
+
+    /**
+     * Adds the quads of a bitmap to the bitmap of a node. Must be called in a
+     * write transaction.
+     *
+     * @param idx the index the node is in.
+     * @param id the node id.
+     * @param quadIds the quads to add, may be used as the bitmap of the node.
+     * @see BulkLoader
+     */
+    void addToBitmap(Idx idx, long id, Bitmap quadIds) {
+        if (idx == Idx.G) {
+            addToGraphCount(id, quadIds.cardinality());
+        }
+        if (maps[idx.ordinal()].get(id) == null) {
+            maps[idx.ordinal()].set(new IdxData<Bitmap>(id, quadIds));
+            txnTouched[idx.ordinal()].set(id);
+            return;
+        }
+        Bitmap bitmap = writableBitmap(idx, id);
+        Bitmap.Cursor cursor = quadIds.cursor();
+        if (cursor.key() != Bitmap.NO_INDEX) {
+            do {
+                int key = (int) cursor.key();
+                bitmap.setWord(key, bitmap.getWord(key) | cursor.word());
+            } while (cursor.advance());
+        }
+    }
+
+    /**
+     * Writes the committed quads to a checkpoint file. The file is written in a
+     * read transaction so writers are not blocked, the transaction sees the
+     * version of the stores that was committed when it began and the log
+     * position of that version.
+     * <p>
+     * The file is written to a temporary file, forced to disk and then moved to
+     * the path. Once the move has been forced the write-ahead log is truncated to
+     * the transactions that are not in the checkpoint.
+     * </p>
+     *
+     * @param path the checkpoint file.
+     * @throws IOException on error.
+     */
+    public void checkpoint(Path path) throws IOException {
+        if (isInTransaction()) {
+            throw new IllegalStateException("A checkpoint can not be written in a transaction");
+        }
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        long position;
+        try {
+            position = txnController.doInTxn(READ, () -> {
+                try {
+                    Checkpoint.write(tmp, uriStore, store, maps);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                return txnController.<Long>snapshot();
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        // the move must be durable before the log is truncated.
+        Checkpoint.forceDirectory(path.toAbsolutePath().getParent());
+        if (wal != null) {
+            wal.truncate(position);
+        }
+    }
+
+    /**
+     * Gets the ratio between the two smallest bitmaps of a pattern above which
+     * find probes the quads of the smallest bitmap instead of intersecting the
+     * bitmaps.
+     *
+     * @return the probe ratio.
+     */
+    public double getProbeRatio() {
+        return probeRatio;
+    }
+
+    /**
+     * Sets the ratio between the two smallest bitmaps of a pattern above which
+     * find probes the quads of the smallest bitmap instead of intersecting the
+     * bitmaps. {@code Double.POSITIVE_INFINITY} disables probing.
+     *
+     * @param probeRatio the probe ratio, must be greater than 0.
+     * @see #DEFAULT_PROBE_RATIO
+     */
+    public void setProbeRatio(double probeRatio) {
+        if (!(probeRatio > 0)) {
+            throw new IllegalArgumentException("Probe ratio must be greater than 0");
+        }
+        this.probeRatio = probeRatio;
+    }
+
     // ** STANDARD CODE
 
     @Override
     public long register(Quad quad) {
 
-        return txnController.doInTxn(WRITE, () -> {
+        long index = txnController.doInTxn(WRITE, () -> {
             if (quad.isTriple()) {
                 return register(Quad.create(Quad.defaultGraphNodeGenerated, quad.asTriple()));
             }
@@ -107,15 +429,19 @@ public class AbstractQuads implements Quads {
             IdxQuad idxQ = new IdxQuad(uriStore, quad);
             Store.Result result = store.register(idxQ.buffer());
             if (!result.existed) {
+                if (wal != null) {
+                    wal.log(WriteAheadLog.Op.REGISTER, quad);
+                }
                 for (Idx idx : Idx.values()) {
-                    Bitmap bitmap = new MemBitmap();
-                    bitmap.set(result.index);
-                    maps[idx.ordinal()].set(new IdxData<Bitmap>(idxQ.get(idx), bitmap));
+                    writableBitmap(idx, idxQ.get(idx)).set(result.index);
                 }
+                addToGraphCount(idxQ.get(Idx.G), 1);
             }
 
             return result.index;
         });
+        awaitDurable();
+        return index;
     }
 
     @Override
@@ -123,15 +449,55 @@ public class AbstractQuads implements Quads {
         txnController.doInTxn(WRITE, () -> {
             if (quad.isTriple()) {
                 delete(Quad.create(Quad.defaultGraphNodeGenerated, quad.asTriple()));
+                return;
             }
             IdxQuad idxQ = new IdxQuad(uriStore, quad);
             Store.Result result = store.delete(idxQ.buffer());
             if (result.existed) {
+                if (wal != null) {
+                    wal.log(WriteAheadLog.Op.DELETE, quad);
+                }
                 for (Idx idx : Idx.values()) {
-                    maps[idx.ordinal()].remove(idxQ.get(idx));
+                    long id = idxQ.get(idx);
+                    Bitmap bitmap = writableBitmap(idx, id);
+                    bitmap.clear(result.index);
+                    if (bitmap.isEmpty()) {
+                        maps[idx.ordinal()].remove(id);
+                    }
                 }
+                addToGraphCount(idxQ.get(Idx.G), -1);
             }
         });
+        awaitDurable();
+    }
+
+    /**
+     * Changes the number of quads in a graph. Must be called in a write
+     * transaction.
+     *
+     * @param graphId the graph node id.
+     * @param delta the number of quads added, negative if quads were removed.
+     */
+    private void addToGraphCount(long graphId, long delta) {
+        Long count = graphCounts.get(graphId);
+        long newCount = (count == null ? 0 : count) + delta;
+        if (newCount == 0) {
+            graphCounts.remove(graphId);
+        } else {
+            graphCounts.set(new IdxData<>(graphId, newCount));
+        }
+    }
+
+    /**
+     * Waits for the log of the transaction committed by this thread to reach the
+     * disk. Called after the transaction lock has been released so that other
+     * writers can join the group commit.
+     */
+    @Override
+    public void awaitDurable() {
+        if (wal != null) {
+            wal.awaitDurable();
+        }
     }
 
     @Override
@@ -141,22 +507,41 @@ public class AbstractQuads implements Quads {
         });
     }
 
-    private Bitmap merge(Bitmap map, Node n, Idx idx) {
-        Bitmap bitmap = null;
-        if (n != null) {
-            long l = uriStore.get(n);
-            if (l <= Store.NO_INDEX) {
-                return bitmap;
-            }
-            bitmap = maps[idx.ordinal()].get(l);
-            if (map == null) {
-                return bitmap;
-            }
-            if (bitmap == null) {
-                return map;
+    @Override
+    public long size(Node graph) {
+        if (graph == null || graph == Node.ANY) {
+            return size();
+        }
+        return txnController.doInTxn(READ, () -> {
+            long id = uriStore.get(graph);
+            Long count = id <= Store.NO_INDEX ? null : graphCounts.get(id);
+            return count == null ? 0L : count;
+        });
+    }
+
+    /**
+     * Creates the plan to find the quads that match the pattern.
+     *
+     * @param quad the quad pattern, the graph may not be the triple marker.
+     * @return the plan for the pattern.
+     */
+    private FindPlan plan(Quad quad) {
+        List<FindPlan.Term> terms = new ArrayList<>(Idx.values().length);
+        for (Idx idx : Idx.values()) {
+            Node n = idx.from(quad);
+            if (n != null) {
+                long id = uriStore.get(n);
+                if (id <= Store.NO_INDEX) {
+                    return FindPlan.EMPTY;
+                }
+                Bitmap bitmap = maps[idx.ordinal()].get(id);
+                if (bitmap == null) {
+                    return FindPlan.EMPTY;
+                }
+                terms.add(new FindPlan.Term(idx, id, bitmap));
             }
         }
-        return Bitmap.intersection(() -> new MemBitmap(), map, bitmap);
+        return FindPlan.create(terms.toArray(new FindPlan.Term[terms.size()]));
     }
 
     @Override
@@ -176,21 +561,76 @@ public class AbstractQuads implements Quads {
         });
     }
 
+    @Override
+    public Triple asTriple(QuadCursor cursor) {
+        return txnController.doInTxn(READ, () -> {
+            return Triple.create(uriStore.get(cursor.s()), uriStore.get(cursor.p()), uriStore.get(cursor.o()));
+        });
+    }
+
+    @Override
+    public Quad asQuad(QuadCursor cursor) {
+        return txnController.doInTxn(READ, () -> {
+            return Quad.create(uriStore.get(cursor.g()), uriStore.get(cursor.s()), uriStore.get(cursor.p()),
+                    uriStore.get(cursor.o()));
+        });
+    }
+
+    @Override
+    public QuadCursor cursor(Quad quad) {
+        return txnController.doInTxn(READ, () -> {
+            if (quad.isTriple()) {
+                return cursor(Quad.create(Quad.defaultGraphNodeGenerated, quad.asTriple()));
+            }
+            FindPlan plan = plan(quad);
+            if (plan.isEmpty()) {
+                return QuadCursor.EMPTY;
+            }
+            if (plan.shouldProbe(probeRatio)) {
+                return new BitmapCursor(plan.probeBitmap(), plan);
+            }
+            // the cursor reads the quads after the transaction ends so they are
+            // checked against the plan.
+            Bitmap.Cursor ids = plan.cursor();
+            return ids == null || ids.key() == Bitmap.NO_INDEX ? QuadCursor.EMPTY
+                    : new BitmapCursor(BitmapMerge.iterator(ids), plan);
+        });
+    }
+
     @Override
     public <T> ExtendedIterator<T> find(Quad quad, Function<IdxQuad, T> mapper) {
         return txnController.doInTxn(READ, () -> {
             if (quad.isTriple()) {
                 return find(Quad.create(Quad.defaultGraphNodeGenerated, quad.asTriple()), mapper);
             }
-            Bitmap bitmap = null;
-            for (Idx idx : Idx.values()) {
-                Node n = idx.from(quad);
-                if (n != null) {
-                    bitmap = merge(bitmap, n, idx);
-                }
+            FindPlan plan = plan(quad);
+            if (plan.isEmpty()) {
+                return NiceIterator.emptyIterator();
             }
-            return bitmap == null ? NiceIterator.emptyIterator()
-                    : WrappedIterator.create(new IdxQuadIterator(this, bitmap)).mapWith(mapper);
+            if (plan.shouldProbe(probeRatio)) {
+                return plan.probe(this).mapWith(mapper);
+            }
+            Bitmap.Cursor ids = plan.cursor();
+            return ids == null || ids.key() == Bitmap.NO_INDEX ? NiceIterator.emptyIterator()
+                    : new IdxQuadIterator(this, BitmapMerge.iterator(ids)).filterKeep(q -> plan.matches(q::get))
+                            .mapWith(mapper);
+        });
+    }
+
+    @Override
+    public long count(Quad quad) {
+        return txnController.doInTxn(READ, () -> {
+            if (quad.isTriple()) {
+                return count(Quad.create(Quad.defaultGraphNodeGenerated, quad.asTriple()));
+            }
+            if (Idx.S.from(quad) == null && Idx.P.from(quad) == null && Idx.O.from(quad) == null) {
+                return size(quad.getGraph());
+            }
+            FindPlan plan = plan(quad);
+            if (plan.isEmpty()) {
+                return 0L;
+            }
+            return plan.terms.length == 0 ? store.size() : plan.count();
         });
     }
 
@@ -203,6 +643,85 @@ public class AbstractQuads implements Quads {
         return new IdxQuad(bb);
     }
 
+    /**
+     * A cursor over the quad ids in a bitmap. As the cursor advances the node ids of
+     * the quad are copied in one read from the {@code QuadStore} or from the stored
+     * quad buffer, so no objects are created and the positions never mix two quads.
+     */
+    private class BitmapCursor implements QuadCursor {
+        private final PrimitiveIterator.OfLong ids;
+        private final FindPlan plan;
+        private final ToLongFunction<Idx> reader;
+        private final long[] nodes;
+        private long id;
+
+        /**
+         * Constructor.
+         *
+         * @param bitmap the bitmap of quad ids.
+         * @param plan the plan to check the quads against.
+         */
+        BitmapCursor(Bitmap bitmap, FindPlan plan) {
+            this(bitmap.iterator(), plan);
+        }
+
+        /**
+         * Constructor.
+         *
+         * @param ids the quad ids.
+         * @param plan the plan to check the quads against.
+         */
+        BitmapCursor(PrimitiveIterator.OfLong ids, FindPlan plan) {
+            this.ids = ids;
+            this.plan = plan;
+            this.reader = this::get;
+            this.nodes = new long[Idx.values().length];
+            this.id = Store.NO_INDEX;
+        }
+
+        @Override
+        public boolean advance() {
+            while (ids.hasNext()) {
+                id = ids.nextLong();
+                if (read() && plan.matches(reader)) {
+                    return true;
+                }
+            }
+            id = Store.NO_INDEX;
+            return false;
+        }
+
+        /**
+         * Copies the node ids of the current quad so that every position is read
+         * from the same quad.
+         *
+         * @return {@code true} if the quad exists.
+         */
+        private boolean read() {
+            if (quadStore != null) {
+                return quadStore.get(id, nodes);
+            }
+            ByteBuffer buffer = store.get(id);
+            if (buffer == null) {
+                return false;
+            }
+            for (int i = 0; i < nodes.length; i++) {
+                nodes[i] = buffer.getLong(i * Long.BYTES);
+            }
+            return true;
+        }
+
+        @Override
+        public long id() {
+            return id;
+        }
+
+        @Override
+        public long get(Idx idx) {
+            return nodes[idx.ordinal()];
+        }
+    }
+
     @Override
     public Iterator<Node> listNodes(Idx idx) {
         return uriStore.iterator(IdxData.iterator(maps[idx.ordinal()].iterator()));
@@ -225,6 +744,21 @@ public class AbstractQuads implements Quads {
 
     @Override
     public void commit() {
+        publish();
+        awaitDurable();
+    }
+
+    @Override
+    public void prepareCommit() {
+        if (txnController.transactionMode() != ReadWrite.WRITE) {
+            throw new JenaTransactionException("WRITE mode transaction required");
+        }
+        writeLog();
+        txnPrepared = true;
+    }
+
+    @Override
+    public void publish() {
         txnController.commit();
     }
 
@@ -23,9 +23,37 @@ public class AbstractUriStore implements UriStore {
     private final LangIdx languages;
     private final TxnHandler txnHandler;
     private final Supplier<Bitmap> bitmapSupplier;
+    private final NodeCache cache;
+
+    /**
+     * The ids of the nodes deleted in the write transaction, {@code null} until
+     * the first delete.
+     */
+    private Bitmap txnDeleted;
+    /**
+     * Counts the invalidations of deleted ids. It is odd while a commit that
+     * deleted nodes is publishing. A reader only caches a node if the count is
+     * even and has not changed since it began, otherwise it could cache a node
+     * whose id is reused by the commit.
+     */
+    private volatile long deletes;
 
     public AbstractUriStore(Store<Node> store, Mapper<BigDecimal> numbers, Mapper<String> languages,
             Supplier<Bitmap> bitmapSupplier) {
+        this(store, numbers, languages, bitmapSupplier, NodeCache.DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param store the store for the nodes.
+     * @param numbers the mapper for the number index.
+     * @param languages the mapper for the language index.
+     * @param bitmapSupplier the supplier of bitmaps.
+     * @param cacheCapacity the number of decoded nodes to cache.
+     */
+    public AbstractUriStore(Store<Node> store, Mapper<BigDecimal> numbers, Mapper<String> languages,
+            Supplier<Bitmap> bitmapSupplier, int cacheCapacity) {
         TxnId txnId = () -> "URIs";
         this.store = store;
         this.numbers = new NumberIdx(bitmapSupplier, numbers);
@@ -34,6 +62,7 @@ public class AbstractUriStore implements UriStore {
         this.languages.setTxnId(txnId);
         this.store.setTxnId(txnId);
         this.bitmapSupplier = bitmapSupplier;
+        this.cache = new NodeCache(cacheCapacity);
         txnHandler = new TxnHandler(txnId, this::prepareBegin, this::execCommit, this::execAbort, this::execEnd);
     }
 
@@ -61,18 +90,49 @@ public class AbstractUriStore implements UriStore {
     }
 
     private void prepareBegin(ReadWrite readWrite) {
+        // read before the stores so that a reader that sees a count published
+        // after a commit also sees the commit.
+        txnHandler.snapshot(deletes);
         store.begin(readWrite);
         languages.begin(readWrite);
         numbers.begin(readWrite);
     }
 
     private void execCommit() {
+        Bitmap deleted = txnDeleted;
+        txnDeleted = null;
+        if (deleted == null) {
+            store.commit();
+            languages.commit();
+            numbers.commit();
+            return;
+        }
+        // ids of deleted nodes may be reused so remove them from the cache. The
+        // odd count stops readers caching the old nodes while the commit is
+        // published.
+        deletes++;
+        invalidate(deleted);
         store.commit();
         languages.commit();
         numbers.commit();
+        deletes++;
+    }
+
+    /**
+     * Removes the nodes from the cache.
+     *
+     * @param ids the ids of the nodes.
+     */
+    private void invalidate(Bitmap ids) {
+        PrimitiveIterator.OfLong iter = ids.iterator();
+        while (iter.hasNext()) {
+            cache.invalidate(iter.nextLong());
+        }
     }
 
     private void execAbort() {
+        // readers can not see the nodes added or deleted so the cache is valid.
+        txnDeleted = null;
         store.abort();
         languages.abort();
         numbers.abort();
@@ -90,23 +150,95 @@ public class AbstractUriStore implements UriStore {
             // String key = asString(node);
             Store.Result result = store.register(node);
             if (!result.existed) {
-                if (node.isLiteral()) {
-
-                    LiteralLabel label = node.getLiteral();
-                    if (label.isXML()) {
-                        BigDecimal d = NumberIdx.parse(label);
-                        if (d != null) {
-                            numbers.register(d, result.index);
-                        }
-                    } else {
-                        languages.register(node.getLiteral().language(), result.index);
-                    }
-                }
+                index(node, result.index);
             }
             return result.index;
         });
     }
 
+    @Override
+    public long delete(Node node) {
+        return txnHandler.doInTxn(WRITE, () -> {
+            Store.Result result = store.delete(node);
+            if (!result.existed) {
+                return Store.NO_INDEX;
+            }
+            unindex(node, result.index);
+            if (txnDeleted == null) {
+                txnDeleted = bitmapSupplier.get();
+            }
+            txnDeleted.set(result.index);
+            return result.index;
+        });
+    }
+
+    /**
+     * Adds a literal node to the number or language index.
+     *
+     * @param node the node.
+     * @param idx the id of the node.
+     */
+    private void index(Node node, long idx) {
+        if (node.isLiteral()) {
+
+            LiteralLabel label = node.getLiteral();
+            if (label.isXML()) {
+                BigDecimal d = NumberIdx.parse(label);
+                if (d != null) {
+                    numbers.register(d, idx);
+                }
+            } else {
+                languages.register(node.getLiteral().language(), idx);
+            }
+        }
+    }
+
+    /**
+     * Removes a literal node from the number or language index.
+     *
+     * @param node the node.
+     * @param idx the id of the node.
+     */
+    private void unindex(Node node, long idx) {
+        if (node.isLiteral()) {
+            LiteralLabel label = node.getLiteral();
+            if (label.isXML()) {
+                BigDecimal d = NumberIdx.parse(label);
+                if (d != null) {
+                    numbers.delete(d, idx);
+                }
+            } else {
+                languages.delete(label.language(), idx);
+            }
+        }
+    }
+
+    @Override
+    public Iterator<IdxData<Node>> nodes() {
+        return txnHandler.doInTxn(READ, () -> {
+            return store.iterator();
+        });
+    }
+
+    @Override
+    public void load(Iterator<IdxData<Node>> nodes) {
+        txnHandler.doInTxn(WRITE, () -> {
+            store.load(new Iterator<IdxData<Node>>() {
+                @Override
+                public boolean hasNext() {
+                    return nodes.hasNext();
+                }
+
+                @Override
+                public IdxData<Node> next() {
+                    IdxData<Node> result = nodes.next();
+                    index(result.data, result.idx);
+                    return result;
+                }
+            });
+        });
+    }
+
     @Override
     public long get(Node node) {
         return txnHandler.doInTxn(READ, () -> {
@@ -116,11 +248,38 @@ public class AbstractUriStore implements UriStore {
 
     @Override
     public Node get(long idx) {
+        Node node = cache.get(idx);
+        if (node != null) {
+            return node;
+        }
         return txnHandler.doInTxn(READ, () -> {
-            return store.get(idx);
+            Node result = store.get(idx);
+            // nodes added in a write transaction may be aborted so only cache committed
+            // nodes.
+            if (result != null && txnHandler.transactionMode() != WRITE) {
+                long pinned = txnHandler.<Long>snapshot();
+                if ((pinned & 1) == 0 && pinned == deletes) {
+                    cache.put(idx, result);
+                    // a commit that began after the check may have invalidated the id
+                    // before the put.
+                    if (pinned != deletes) {
+                        cache.invalidate(idx);
+                    }
+                }
+            }
+            return result;
         });
     }
 
+    /**
+     * Gets the cache of decoded nodes.
+     *
+     * @return the node cache.
+     */
+    public NodeCache getNodeCache() {
+        return cache;
+    }
+
     @Override
     public Iterator<Node> iterator(PrimitiveIterator.OfLong iter) {
         return new Iterator<Node>() {
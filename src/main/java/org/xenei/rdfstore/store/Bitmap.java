@@ -35,22 +35,10 @@ public interface Bitmap {
      * 
      * @param maps the bitmaps to calculate the union for.
      * @return a new bitmap.
+     * @see BitmapMerge#union(Supplier, Bitmap...)
      */
     public static Bitmap union(Supplier<Bitmap> supplier, Bitmap... maps) {
-        Bitmap result = supplier.get();
-        for (Bitmap map : maps) {
-            Integer key = map.firstKey();
-            while (key != null) {
-                Entry rEntry = result.get(key);
-                if (rEntry == null) {
-                    result.put(key, map.get(key));
-                } else {
-                    rEntry.union(map.get(key));
-                }
-                key = map.higherKey(key);
-            }
-        }
-        return result;
+        return BitmapMerge.union(supplier, maps);
     }
 
     public static void copyRemaining(Bitmap dest, Bitmap orig, Integer fromKey) {
@@ -60,45 +48,19 @@ public interface Bitmap {
         }
     }
 
+    /**
+     * Calculates the exclusive or of two bitmaps. Creates a new bitmap instance.
+     * 
+     * @param left the first bitmap, may be {@code null}.
+     * @param right the second bitmap, may be {@code null}.
+     * @return a new bitmap.
+     * @see BitmapMerge#xor(Supplier, Bitmap...)
+     */
     public static Bitmap xor(Supplier<Bitmap> supplier, Bitmap left, Bitmap right) {
-
-        Bitmap result = supplier.get();
         if (left == right) {
-            return result;
-        }
-        if (left == null && right != null) {
-            copyRemaining(result, right, right.isEmpty() ? null : right.firstKey());
-            return result;
-        }
-        if (left != null && right == null) {
-            copyRemaining(result, left, left.isEmpty() ? null : left.firstKey());
-            return result;
-        }
-        Integer leftPage = left == null || left.isEmpty() ? null : left.firstKey();
-        Integer rightPage = right == null || right.isEmpty() ? null : right.firstKey();
-        while (leftPage != null && rightPage != null) {
-            int i = Integer.compareUnsigned(leftPage, rightPage);
-            if (i < 0) {
-                result.put(leftPage, left.get(leftPage).clone());
-                leftPage = left.higherKey(leftPage);
-            } else if (i > 0) {
-                result.put(rightPage, right.get(rightPage).clone());
-                rightPage = right.higherKey(rightPage);
-            } else {
-                Entry leftEntry = left.get(leftPage);
-                Entry rightEntry = right.get(rightPage);
-                Entry newEntry = leftEntry.logical(rightEntry, xor);
-                if (!newEntry.isEmpty()) {
-                    result.put(leftPage, newEntry);
-                }
-                leftPage = left.higherKey(leftPage);
-                rightPage = right.higherKey(rightPage);
-            }
+            return supplier.get();
         }
-        copyRemaining(result, left, leftPage);
-        copyRemaining(result, right, rightPage);
-
-        return result;
+        return BitmapMerge.xor(supplier, left, right);
     }
 
     /**
@@ -106,54 +68,42 @@ public interface Bitmap {
      * 
      * @param maps the bit maps.
      * @return a bitmap containing the intersection.
+     * @see BitmapMerge#intersection(Supplier, Bitmap...)
      */
     public static Bitmap intersection(Supplier<Bitmap> supplier, Bitmap... maps) {
-        Bitmap result = supplier.get();
-        if (maps.length == 0) {
-            return result;
-        }
-        // check for any null entries
-        for (Bitmap m : maps) {
-            if (m == null) {
-                return result;
-            }
-        }
+        return BitmapMerge.intersection(supplier, maps);
+    }
 
-        Integer key = maps[0].firstKey();
-        for (Bitmap map : maps) {
-            Integer testKey = map.firstKey();
-            if (key > testKey) {
-                key = testKey;
-            }
-        }
-        Integer nextKey = null;
-        while (key != null) {
-            Entry entry = maps[0].get(key);
-            for (int i = 1; i < maps.length; i++) {
-                Integer testKey = maps[i].higherKey(key);
-                if (nextKey == null) {
-                    nextKey = testKey;
-                } else if (testKey != null) {
-                    nextKey = nextKey > testKey ? testKey : nextKey;
-                }
-                Entry other = maps[i].get(key);
-                if (other == null) {
-                    entry = null;
-                    break;
-                }
-                entry.intersection(other);
-            }
-            if (entry != null && !entry.isEmpty()) {
-                result.put(key, entry);
-            }
-            key = nextKey;
-            nextKey = null;
-        }
-        return result;
+    /**
+     * Creates a copy of the bitmap that can be changed without changing this one.
+     * The default implementation copies every page, an implementation may share
+     * its storage with the copy and only copy the parts that either one changes.
+     *
+     * @param supplier the supplier of the bitmap to copy into.
+     * @return the copy.
+     */
+    default Bitmap copy(Supplier<Bitmap> supplier) {
+        return union(supplier, this);
     }
 
     long pageCount();
 
+    /**
+     * Gets the number of enabled bits. Implementations should maintain this value
+     * as the bitmap changes so that it is cheap to call.
+     *
+     * @return the number of enabled bits.
+     */
+    default long cardinality() {
+        long result = 0;
+        Cursor cursor = cursor();
+        while (cursor.key() != NO_INDEX) {
+            result += Long.bitCount(cursor.word());
+            cursor.advance();
+        }
+        return result;
+    }
+
     Integer firstKey();
 
     Integer higherKey(Integer key);
@@ -172,6 +122,71 @@ public interface Bitmap {
 
     void remove(Integer key);
 
+    /**
+     * Gets the bits for a page without creating an {@code Entry}.
+     *
+     * @param key the page key as an unsigned integer.
+     * @return the bits for the page or 0 if the page does not exist.
+     */
+    default long getWord(int key) {
+        Entry entry = get(Integer.valueOf(key));
+        return entry == null ? 0L : entry.bitmap();
+    }
+
+    /**
+     * Sets the bits for a page. Setting the bits to 0 removes the page.
+     *
+     * @param key the page key as an unsigned integer.
+     * @param word the bits for the page.
+     */
+    default void setWord(int key, long word) {
+        if (word == 0) {
+            remove(Integer.valueOf(key));
+        } else {
+            put(Integer.valueOf(key), new Entry(key, word));
+        }
+    }
+
+    /**
+     * Finds the lowest page key that is greater than or equal to the key.
+     *
+     * @param key the page key to start from, as an unsigned value.
+     * @return the page key as an unsigned value or {@code NO_INDEX} if there is no
+     * such page.
+     */
+    default long ceilingKey(long key) {
+        if (key > MAX_UNSIGNED_INT || isEmpty()) {
+            return NO_INDEX;
+        }
+        Integer result = firstKey();
+        while (result != null && Integer.toUnsignedLong(result) < key) {
+            result = higherKey(result);
+        }
+        return result == null ? NO_INDEX : Integer.toUnsignedLong(result);
+    }
+
+    /**
+     * Appends a page to the bitmap. This is the bulk load path used when the pages
+     * are written in ascending key order. Implementations may fall back to
+     * {@link #setWord(int, long)} if the key is not greater than the last key.
+     *
+     * @param key the page key as an unsigned integer.
+     * @param word the bits for the page.
+     */
+    default void append(int key, long word) {
+        setWord(key, word);
+    }
+
+    /**
+     * Creates a cursor over the pages of this bitmap. The bitmap must not be
+     * modified while the cursor is in use.
+     *
+     * @return a cursor positioned on the first page.
+     */
+    default Cursor cursor() {
+        return new BitmapMerge.KeyCursor(this);
+    }
+
     default void xor(Bitmap other) {
         if (other == null) {
             return;
@@ -179,27 +194,12 @@ public interface Bitmap {
         if (this == other) {
             this.clear();
         } else {
-            Integer thisPage = this.isEmpty() ? null : this.firstKey();
-            Integer otherPage = other.isEmpty() ? null : other.firstKey();
-            while (thisPage != null && otherPage != null) {
-                int i = Integer.compareUnsigned(thisPage, otherPage);
-                if (i < 0) {
-                    thisPage = this.higherKey(thisPage);
-                } else if (i > 0) {
-                    this.put(otherPage, other.get(otherPage).clone());
-                    otherPage = other.higherKey(otherPage);
-                } else {
-                    Entry thisEntry = this.get(thisPage);
-                    Entry otherEntry = other.get(otherPage);
-                    thisEntry.bitMap ^= otherEntry.bitMap;
-                    if (thisEntry.isEmpty()) {
-                        this.remove(thisPage);
-                    }
-                    thisPage = this.higherKey(thisPage);
-                    otherPage = other.higherKey(otherPage);
-                }
+            long key = other.ceilingKey(0);
+            while (key != NO_INDEX) {
+                int page = (int) key;
+                setWord(page, getWord(page) ^ other.getWord(page));
+                key = other.ceilingKey(key + 1);
             }
-            copyRemaining(this, other, otherPage);
         }
     }
 
@@ -272,8 +272,7 @@ public interface Bitmap {
      */
     default boolean contains(final long bitIndex) {
         checkBitIndex(bitIndex);
-        Entry entry = get(Integer.valueOf((int) getLongIndex(bitIndex)));
-        return entry == null ? false : entry.contains(bitIndex);
+        return (getWord((int) getLongIndex(bitIndex)) & getLongBit(bitIndex)) != 0;
     }
 
     public boolean isEmpty();
@@ -313,13 +312,8 @@ public interface Bitmap {
      */
     default void set(final long bitIndex) {
         checkBitIndex(bitIndex);
-        Integer entryIndex = Integer.valueOf((int) getLongIndex(bitIndex));
-        Entry entry = get(entryIndex);
-        if (entry == null) {
-            entry = new Entry(entryIndex);
-            put(entryIndex, entry);
-        }
-        entry.set(bitIndex);
+        int key = (int) getLongIndex(bitIndex);
+        setWord(key, getWord(key) | getLongBit(bitIndex));
     }
 
     /**
@@ -335,13 +329,10 @@ public interface Bitmap {
      */
     default void clear(final long bitIndex) {
         checkBitIndex(bitIndex);
-        Integer entryIdx = Integer.valueOf((int) getLongIndex(bitIndex));
-        Entry entry = get(entryIdx);
-        if (entry != null) {
-            entry.clear(bitIndex);
-            if (entry.isEmpty()) {
-                remove(entryIdx);
-            }
+        int key = (int) getLongIndex(bitIndex);
+        long word = getWord(key);
+        if (word != 0) {
+            setWord(key, word & ~getLongBit(bitIndex));
         }
     }
 
@@ -465,6 +456,45 @@ public interface Bitmap {
         }
     }
 
+    /**
+     * A cursor over the non-empty pages of a bitmap in ascending unsigned key
+     * order.
+     */
+    public interface Cursor {
+        /**
+         * Gets the key of the current page.
+         *
+         * @return the unsigned page key or {@code NO_INDEX} if the cursor is
+         * exhausted.
+         */
+        long key();
+
+        /**
+         * Gets the bits of the current page.
+         *
+         * @return the bits of the current page.
+         */
+        long word();
+
+        /**
+         * Moves to the next page.
+         *
+         * @return {@code true} if the cursor is on a page, {@code false} if it is
+         * exhausted.
+         */
+        boolean advance();
+
+        /**
+         * Moves to the first page with a key greater than or equal to the target.
+         * Does not move if the cursor is already at or past the target.
+         *
+         * @param target the unsigned page key to move to.
+         * @return {@code true} if the cursor is on a page, {@code false} if it is
+         * exhausted.
+         */
+        boolean advanceTo(long target);
+    }
+
     class Iter implements PrimitiveIterator.OfLong {
         private Iterator<Entry> iterE;
         private Entry entry = null;
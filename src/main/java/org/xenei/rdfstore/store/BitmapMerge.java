@@ -0,0 +1,363 @@
+package org.xenei.rdfstore.store;
+
+import static org.xenei.rdfstore.store.Bitmap.NO_INDEX;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.function.Supplier;
+
+/**
+ * Streaming merge of bitmaps.
+ * <p>
+ * All of the operand bitmaps are walked together with {@link Bitmap.Cursor}s,
+ * the raw 64-bit words are combined and the result is written with
+ * {@link Bitmap#append(int, long)}. The operand bitmaps are never modified.
+ * </p>
+ */
+public final class BitmapMerge {
+
+    private BitmapMerge() {
+    }
+
+    /**
+     * Calculates the intersection of the bitmaps. Cursors that are behind skip
+     * ahead to the largest current key so pages that are not in every bitmap are
+     * not read.
+     *
+     * @param supplier the supplier of the result bitmap.
+     * @param maps the bitmaps to intersect. A {@code null} bitmap is treated as
+     * empty.
+     * @return a new bitmap containing the intersection.
+     * @see #intersectionCursor(Bitmap...)
+     */
+    public static Bitmap intersection(Supplier<Bitmap> supplier, Bitmap... maps) {
+        Bitmap result = supplier.get();
+        Bitmap.Cursor cursor = intersectionCursor(maps);
+        while (cursor.key() != NO_INDEX) {
+            result.append((int) cursor.key(), cursor.word());
+            cursor.advance();
+        }
+        return result;
+    }
+
+    /**
+     * Creates a cursor over the pages of the intersection of the bitmaps. The
+     * intersection is not calculated in advance, each call to
+     * {@link Bitmap.Cursor#advance()} only reads the pages up to the next page of
+     * the intersection, so a consumer that stops early does not pay for the rest.
+     * The bitmaps must not be modified while the cursor is in use.
+     *
+     * @param maps the bitmaps to intersect, the most selective first. A
+     * {@code null} bitmap is treated as empty.
+     * @return a cursor positioned on the first page of the intersection.
+     */
+    public static Bitmap.Cursor intersectionCursor(Bitmap... maps) {
+        if (maps.length == 0) {
+            return EMPTY;
+        }
+        Bitmap.Cursor[] cursors = new Bitmap.Cursor[maps.length];
+        for (int i = 0; i < maps.length; i++) {
+            if (maps[i] == null || maps[i].isEmpty()) {
+                return EMPTY;
+            }
+            cursors[i] = maps[i].cursor();
+        }
+        return cursors.length == 1 ? cursors[0] : new IntersectionCursor(cursors);
+    }
+
+    /**
+     * Counts the bits in the pages of a cursor. The cursor is exhausted when this
+     * returns.
+     *
+     * @param cursor the cursor positioned on the first page.
+     * @return the number of bits set.
+     */
+    public static long cardinality(Bitmap.Cursor cursor) {
+        long result = 0;
+        while (cursor.key() != NO_INDEX) {
+            result += Long.bitCount(cursor.word());
+            cursor.advance();
+        }
+        return result;
+    }
+
+    /**
+     * Creates an iterator over the bit indexes of the pages of a cursor. The
+     * pages are read from the cursor as the iterator reaches them.
+     *
+     * @param cursor the cursor positioned on the first page.
+     * @return the iterator.
+     */
+    public static PrimitiveIterator.OfLong iterator(Bitmap.Cursor cursor) {
+        return new CursorIterator(cursor);
+    }
+
+    /**
+     * Calculates the union of the bitmaps.
+     *
+     * @param supplier the supplier of the result bitmap.
+     * @param maps the bitmaps to combine. {@code null} bitmaps are ignored.
+     * @return a new bitmap containing the union.
+     */
+    public static Bitmap union(Supplier<Bitmap> supplier, Bitmap... maps) {
+        return combine(supplier, Bitmap.or, maps);
+    }
+
+    /**
+     * Calculates the exclusive or of the bitmaps.
+     *
+     * @param supplier the supplier of the result bitmap.
+     * @param maps the bitmaps to combine. {@code null} bitmaps are ignored.
+     * @return a new bitmap containing the exclusive or.
+     */
+    public static Bitmap xor(Supplier<Bitmap> supplier, Bitmap... maps) {
+        return combine(supplier, Bitmap.xor, maps);
+    }
+
+    /**
+     * Combines the bitmaps with a function where a page missing from a bitmap
+     * does not change the result, for example {@code or} and {@code xor}.
+     *
+     * @param supplier the supplier of the result bitmap.
+     * @param func the function to combine the words with.
+     * @param maps the bitmaps to combine. {@code null} bitmaps are ignored.
+     * @return a new bitmap.
+     */
+    private static Bitmap combine(Supplier<Bitmap> supplier, Bitmap.Logical func, Bitmap... maps) {
+        Bitmap result = supplier.get();
+        List<Bitmap.Cursor> active = new ArrayList<>(maps.length);
+        for (Bitmap map : maps) {
+            if (map != null && !map.isEmpty()) {
+                active.add(map.cursor());
+            }
+        }
+        while (!active.isEmpty()) {
+            long key = active.get(0).key();
+            for (int i = 1; i < active.size(); i++) {
+                key = Math.min(key, active.get(i).key());
+            }
+            long word = 0;
+            for (int i = active.size() - 1; i >= 0; i--) {
+                Bitmap.Cursor cursor = active.get(i);
+                if (cursor.key() == key) {
+                    word = func.apply(word, cursor.word());
+                    if (!cursor.advance()) {
+                        active.remove(i);
+                    }
+                }
+            }
+            if (word != 0) {
+                result.append((int) key, word);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * A cursor over any bitmap that uses {@link Bitmap#ceilingKey(long)} and
+     * {@link Bitmap#getWord(int)}.
+     */
+    static class KeyCursor implements Bitmap.Cursor {
+        private final Bitmap bitmap;
+        private long key;
+        private long word;
+
+        KeyCursor(Bitmap bitmap) {
+            this.bitmap = bitmap;
+            load(bitmap.ceilingKey(0));
+        }
+
+        private boolean load(long newKey) {
+            key = newKey;
+            word = key == NO_INDEX ? 0 : bitmap.getWord((int) key);
+            return key != NO_INDEX;
+        }
+
+        @Override
+        public long key() {
+            return key;
+        }
+
+        @Override
+        public long word() {
+            return word;
+        }
+
+        @Override
+        public boolean advance() {
+            return key != NO_INDEX && load(bitmap.ceilingKey(key + 1));
+        }
+
+        @Override
+        public boolean advanceTo(long target) {
+            if (key == NO_INDEX || key >= target) {
+                return key != NO_INDEX;
+            }
+            return load(bitmap.ceilingKey(target));
+        }
+    }
+
+    /**
+     * A cursor without any pages.
+     */
+    static final Bitmap.Cursor EMPTY = new Bitmap.Cursor() {
+        @Override
+        public long key() {
+            return NO_INDEX;
+        }
+
+        @Override
+        public long word() {
+            return 0;
+        }
+
+        @Override
+        public boolean advance() {
+            return false;
+        }
+
+        @Override
+        public boolean advanceTo(long target) {
+            return false;
+        }
+    };
+
+    /**
+     * A cursor over the pages that are in all of several cursors and whose
+     * words have bits in common.
+     */
+    private static class IntersectionCursor implements Bitmap.Cursor {
+        private final Bitmap.Cursor[] cursors;
+        private long key;
+        private long word;
+
+        IntersectionCursor(Bitmap.Cursor[] cursors) {
+            this.cursors = cursors;
+            seek();
+        }
+
+        /**
+         * Moves the cursors to the first common page at or after the key of the
+         * first cursor whose words have bits in common.
+         *
+         * @return {@code true} if there is such a page.
+         */
+        private boolean seek() {
+            long target = cursors[0].key();
+            if (target == NO_INDEX) {
+                return exhausted();
+            }
+            int matched = 1;
+            int i = 1;
+            while (true) {
+                if (matched == cursors.length) {
+                    long common = cursors[0].word();
+                    for (int j = 1; j < cursors.length && common != 0; j++) {
+                        common &= cursors[j].word();
+                    }
+                    if (common != 0) {
+                        key = target;
+                        word = common;
+                        return true;
+                    }
+                    if (!cursors[0].advance()) {
+                        return exhausted();
+                    }
+                    target = cursors[0].key();
+                    matched = 1;
+                    i = 1;
+                } else {
+                    if (!cursors[i].advanceTo(target)) {
+                        return exhausted();
+                    }
+                    if (cursors[i].key() == target) {
+                        matched++;
+                    } else {
+                        target = cursors[i].key();
+                        matched = 1;
+                    }
+                    i = (i + 1) % cursors.length;
+                }
+            }
+        }
+
+        private boolean exhausted() {
+            key = NO_INDEX;
+            word = 0;
+            return false;
+        }
+
+        @Override
+        public long key() {
+            return key;
+        }
+
+        @Override
+        public long word() {
+            return word;
+        }
+
+        @Override
+        public boolean advance() {
+            if (key == NO_INDEX) {
+                return false;
+            }
+            return cursors[0].advance() ? seek() : exhausted();
+        }
+
+        @Override
+        public boolean advanceTo(long target) {
+            if (key == NO_INDEX || key >= target) {
+                return key != NO_INDEX;
+            }
+            return cursors[0].advanceTo(target) ? seek() : exhausted();
+        }
+    }
+
+    /**
+     * An iterator over the bit indexes of the pages of a cursor.
+     */
+    private static class CursorIterator implements PrimitiveIterator.OfLong {
+        private final Bitmap.Cursor cursor;
+        private long offset;
+        private long bits;
+
+        CursorIterator(Bitmap.Cursor cursor) {
+            this.cursor = cursor;
+            load();
+        }
+
+        private void load() {
+            long key = cursor.key();
+            if (key == NO_INDEX) {
+                bits = 0;
+            } else {
+                offset = key * Long.SIZE;
+                bits = cursor.word();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (bits == 0) {
+                if (cursor.key() == NO_INDEX || !cursor.advance()) {
+                    return false;
+                }
+                load();
+            }
+            return true;
+        }
+
+        @Override
+        public long nextLong() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long result = offset + Long.numberOfTrailingZeros(bits);
+            bits &= bits - 1;
+            return result;
+        }
+    }
+}
@@ -0,0 +1,308 @@
+package org.xenei.rdfstore.store;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.JenaTransactionException;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Loads a large number of quads in a single write transaction.
+ * <p>
+ * The quads are collected in batches. The nodes of a batch are registered once
+ * each and the quads are registered by their node ids. The node and quad id
+ * pairs of the new quads are then sorted for each index so that the bitmap of
+ * each node is built in one pass by appending pages, and merged into the
+ * bitmap of the node once per batch instead of once per quad.
+ * </p>
+ * <p>
+ * If the loader is started outside of a transaction it begins a write
+ * transaction and commits it in {@link #finish()}. If it is started in a write
+ * transaction the caller commits.
+ * </p>
+ */
+public class BulkLoader implements StreamRDF {
+
+    /**
+     * The default number of quads in a batch.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 1 << 18;
+
+    private static final Idx[] INDEXES = Idx.values();
+
+    private final AbstractQuads quads;
+    private final int batchSize;
+    private final Quad[] batch;
+    private int batchCount;
+    /**
+     * The node ids of the batch.
+     */
+    private final Map<Node, Long> dictionary;
+    /**
+     * The node id and quad id pairs of the new quads of the batch, for each
+     * index.
+     */
+    private final long[][] pairs;
+    private int pairCount;
+    private boolean started;
+    private boolean ownTxn;
+    private long loaded;
+
+    /**
+     * Constructor using the default batch size.
+     *
+     * @param quads the quads to load into.
+     */
+    public BulkLoader(AbstractQuads quads) {
+        this(quads, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param quads the quads to load into.
+     * @param batchSize the number of quads in a batch.
+     */
+    public BulkLoader(AbstractQuads quads, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be greater than 0");
+        }
+        this.quads = quads;
+        this.batchSize = batchSize;
+        this.batch = new Quad[batchSize];
+        this.dictionary = new HashMap<>();
+        this.pairs = new long[INDEXES.length][2 * batchSize];
+    }
+
+    /**
+     * Loads the quads. The transaction is aborted if the iterator throws an
+     * exception.
+     *
+     * @param iter the quads to load.
+     * @return the number of quads that were added.
+     */
+    public long load(Iterator<Quad> iter) {
+        start();
+        try {
+            while (iter.hasNext()) {
+                quad(iter.next());
+            }
+        } catch (RuntimeException e) {
+            abort();
+            throw e;
+        }
+        finish();
+        return loaded;
+    }
+
+    /**
+     * Gets the number of quads added by the loader.
+     *
+     * @return the number of quads that were not already in the store.
+     */
+    public long loaded() {
+        return loaded;
+    }
+
+    @Override
+    public void start() {
+        if (started) {
+            return;
+        }
+        if (!quads.isInTransaction()) {
+            quads.begin(TxnType.WRITE);
+            ownTxn = true;
+        } else if (quads.transactionMode() != ReadWrite.WRITE) {
+            throw new JenaTransactionException("WRITE mode transaction required");
+        }
+        started = true;
+        loaded = 0;
+    }
+
+    @Override
+    public void triple(Triple triple) {
+        quad(Quad.create(Quad.defaultGraphNodeGenerated, triple));
+    }
+
+    @Override
+    public void quad(Quad quad) {
+        if (!started) {
+            throw new IllegalStateException("The loader has not been started");
+        }
+        batch[batchCount++] = quad.isTriple() ? Quad.create(Quad.defaultGraphNodeGenerated, quad.asTriple()) : quad;
+        if (batchCount == batchSize) {
+            flush();
+        }
+    }
+
+    @Override
+    public void base(String base) {
+        // not used
+    }
+
+    @Override
+    public void prefix(String prefix, String iri) {
+        // not used
+    }
+
+    @Override
+    public void finish() {
+        if (!started) {
+            return;
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            abort();
+            throw e;
+        }
+        started = false;
+        if (ownTxn) {
+            ownTxn = false;
+            quads.commit();
+            quads.end();
+        }
+    }
+
+    /**
+     * Discards the quads in the batch and aborts the transaction if the loader
+     * started it.
+     */
+    private void abort() {
+        Arrays.fill(batch, 0, batchCount, null);
+        batchCount = 0;
+        dictionary.clear();
+        started = false;
+        if (ownTxn) {
+            ownTxn = false;
+            quads.abort();
+            quads.end();
+        }
+    }
+
+    private long encode(Node node) {
+        Long id = dictionary.get(node);
+        if (id == null) {
+            id = quads.registerNode(node);
+            dictionary.put(node, id);
+        }
+        return id;
+    }
+
+    /**
+     * Registers the quads of the batch and adds the new quads to the bitmaps.
+     */
+    private void flush() {
+        pairCount = 0;
+        long[] ids = new long[INDEXES.length];
+        for (int i = 0; i < batchCount; i++) {
+            Quad quad = batch[i];
+            for (Idx idx : INDEXES) {
+                ids[idx.ordinal()] = encode(idx.from(quad));
+            }
+            Store.Result result = quads.registerEncoded(quad, ids, 0);
+            if (!result.existed) {
+                for (Idx idx : INDEXES) {
+                    pairs[idx.ordinal()][2 * pairCount] = ids[idx.ordinal()];
+                    pairs[idx.ordinal()][2 * pairCount + 1] = result.index;
+                }
+                pairCount++;
+            }
+            batch[i] = null;
+        }
+        batchCount = 0;
+        dictionary.clear();
+        for (Idx idx : INDEXES) {
+            long[] idxPairs = pairs[idx.ordinal()];
+            sortPairs(idxPairs, pairCount);
+            buildBitmaps(idxPairs, pairCount, quads::newBitmap, (bitmap, nodeId) -> {
+                quads.addToBitmap(idx, nodeId, bitmap);
+            });
+        }
+        loaded += pairCount;
+    }
+
+    /**
+     * Builds the bitmap of each node from the sorted pairs.
+     *
+     * @param pairs the node id and quad id pairs sorted by node id then quad id.
+     * @param count the number of pairs.
+     * @param supplier the supplier of new bitmaps.
+     * @param consumer accepts the bitmap and the id of each node.
+     */
+    static void buildBitmaps(long[] pairs, int count, Supplier<Bitmap> supplier, ObjLongConsumer<Bitmap> consumer) {
+        int i = 0;
+        while (i < count) {
+            long nodeId = pairs[2 * i];
+            Bitmap bitmap = supplier.get();
+            long key = pairs[2 * i + 1] / Bitmap.PAGE_SIZE;
+            long word = 0;
+            for (; i < count && pairs[2 * i] == nodeId; i++) {
+                long quadId = pairs[2 * i + 1];
+                long quadKey = quadId / Bitmap.PAGE_SIZE;
+                if (quadKey != key) {
+                    bitmap.append((int) key, word);
+                    key = quadKey;
+                    word = 0;
+                }
+                word |= 1L << (quadId % Bitmap.PAGE_SIZE);
+            }
+            bitmap.append((int) key, word);
+            consumer.accept(bitmap, nodeId);
+        }
+    }
+
+    private static boolean greater(long[] pairs, int a, int b) {
+        int cmp = Long.compare(pairs[2 * a], pairs[2 * b]);
+        return cmp > 0 || (cmp == 0 && pairs[2 * a + 1] > pairs[2 * b + 1]);
+    }
+
+    private static void swap(long[] pairs, int a, int b) {
+        long node = pairs[2 * a];
+        long quad = pairs[2 * a + 1];
+        pairs[2 * a] = pairs[2 * b];
+        pairs[2 * a + 1] = pairs[2 * b + 1];
+        pairs[2 * b] = node;
+        pairs[2 * b + 1] = quad;
+    }
+
+    private static void siftDown(long[] pairs, int root, int count) {
+        int parent = root;
+        for (int child = 2 * parent + 1; child < count; child = 2 * parent + 1) {
+            if (child + 1 < count && greater(pairs, child + 1, child)) {
+                child++;
+            }
+            if (!greater(pairs, child, parent)) {
+                return;
+            }
+            swap(pairs, parent, child);
+            parent = child;
+        }
+    }
+
+    /**
+     * Sorts pairs of longs in place by the first then the second value. A heap
+     * sort is used so no memory is allocated.
+     *
+     * @param pairs the pairs.
+     * @param count the number of pairs.
+     */
+    static void sortPairs(long[] pairs, int count) {
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(pairs, i, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            swap(pairs, 0, end);
+            siftDown(pairs, 0, end);
+        }
+    }
+}
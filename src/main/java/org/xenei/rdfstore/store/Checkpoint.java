@@ -0,0 +1,259 @@
+package org.xenei.rdfstore.store;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.CheckedOutputStream;
+
+import org.apache.jena.graph.Node;
+import org.xenei.rdfstore.mem.OffHeapNodeStore;
+
+/**
+ * Reads and writes the checkpoint file of an {@link AbstractQuads}.
+ * <p>
+ * The file is a header followed by the nodes, the quads and the bitmaps of the
+ * four indexes, each section is a list of records that starts with the id and
+ * ends with {@code -1}. The file ends with a CRC32 of the contents. The ids
+ * are written so that the loader can place each item directly without
+ * registering it again.
+ * </p>
+ */
+final class Checkpoint {
+
+    private static final long MAGIC = 0x52444653544350L; // RDFSTCP
+    private static final int VERSION = 1;
+    private static final long END = -1;
+    private static final int QUAD_WIDTH = Idx.values().length;
+
+    private Checkpoint() {
+    }
+
+    /**
+     * Writes the committed contents of the stores. The file is forced to disk
+     * before this returns. Must be called in a transaction.
+     *
+     * @param path the file to write.
+     * @param uriStore the node store.
+     * @param store the quad store.
+     * @param maps the bitmaps for each index.
+     * @throws IOException on error.
+     */
+    static void write(Path path, UriStore uriStore, Store<ByteBuffer> store, LongList<Bitmap>[] maps)
+            throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+        try (DataOutputStream out = new DataOutputStream(checked)) {
+            out.writeLong(MAGIC);
+            out.writeInt(VERSION);
+
+            Iterator<IdxData<Node>> nodes = uriStore.nodes();
+            while (nodes.hasNext()) {
+                IdxData<Node> node = nodes.next();
+                byte[] record = OffHeapNodeStore.encode(node.data);
+                out.writeLong(node.idx);
+                out.writeInt(record.length);
+                out.write(record);
+            }
+            out.writeLong(END);
+
+            Iterator<IdxData<ByteBuffer>> quads = store.iterator();
+            while (quads.hasNext()) {
+                IdxData<ByteBuffer> quad = quads.next();
+                out.writeLong(quad.idx);
+                for (int i = 0; i < QUAD_WIDTH; i++) {
+                    out.writeLong(quad.data.getLong(i * Long.BYTES));
+                }
+            }
+            out.writeLong(END);
+
+            for (LongList<Bitmap> map : maps) {
+                Iterator<IdxData<Bitmap>> bitmaps = map.iterator();
+                while (bitmaps.hasNext()) {
+                    IdxData<Bitmap> bitmap = bitmaps.next();
+                    out.writeLong(bitmap.idx);
+                    out.writeInt(pageCount(bitmap.data));
+                    Bitmap.Cursor cursor = bitmap.data.cursor();
+                    if (cursor.key() != Bitmap.NO_INDEX) {
+                        do {
+                            out.writeInt((int) cursor.key());
+                            out.writeLong(cursor.word());
+                        } while (cursor.advance());
+                    }
+                }
+                out.writeLong(END);
+            }
+            out.flush();
+            out.writeLong(checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+    }
+
+    /**
+     * Forces the directory entries of the directory to disk so that a file moved
+     * into it survives a crash.
+     *
+     * @param dir the directory.
+     * @throws IOException on error.
+     */
+    static void forceDirectory(Path dir) throws IOException {
+        try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Windows can not open a directory, its moves are durable once they
+            // return.
+            if (!System.getProperty("os.name").startsWith("Windows")) {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Counts the pages returned by the cursor of the bitmap.
+     *
+     * @param bitmap the bitmap.
+     * @return the number of pages.
+     */
+    private static int pageCount(Bitmap bitmap) {
+        int count = 0;
+        Bitmap.Cursor cursor = bitmap.cursor();
+        if (cursor.key() != Bitmap.NO_INDEX) {
+            do {
+                count++;
+            } while (cursor.advance());
+        }
+        return count;
+    }
+
+    /**
+     * Loads the stores from a checkpoint. The stores must be empty and this must
+     * be called in a write transaction.
+     *
+     * @param path the file to read.
+     * @param uriStore the node store.
+     * @param store the quad store.
+     * @param maps the bitmaps for each index.
+     * @param bitmapSupplier the supplier of new bitmaps.
+     * @throws IOException on error.
+     */
+    static void read(Path path, UriStore uriStore, Store<ByteBuffer> store, LongList<Bitmap>[] maps,
+            Supplier<Bitmap> bitmapSupplier) throws IOException {
+        CheckedInputStream checked = new CheckedInputStream(
+                new BufferedInputStream(Files.newInputStream(path), 1 << 16), new CRC32());
+        try (DataInputStream in = new DataInputStream(checked)) {
+            if (in.readLong() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(path + " is not a checkpoint file");
+            }
+            try {
+                uriStore.load(new Section<Node>(in) {
+                    @Override
+                    Node read(long idx) throws IOException {
+                        byte[] record = new byte[in.readInt()];
+                        in.readFully(record);
+                        return OffHeapNodeStore.decode(ByteBuffer.wrap(record));
+                    }
+                });
+
+                store.load(new Section<ByteBuffer>(in) {
+                    @Override
+                    ByteBuffer read(long idx) throws IOException {
+                        ByteBuffer quad = ByteBuffer.allocate(QUAD_WIDTH * Long.BYTES);
+                        for (int i = 0; i < QUAD_WIDTH; i++) {
+                            quad.putLong(i * Long.BYTES, in.readLong());
+                        }
+                        return quad;
+                    }
+                });
+
+                for (LongList<Bitmap> map : maps) {
+                    Section<Bitmap> bitmaps = new Section<Bitmap>(in) {
+                        @Override
+                        Bitmap read(long idx) throws IOException {
+                            Bitmap bitmap = bitmapSupplier.get();
+                            for (int pages = in.readInt(); pages > 0; pages--) {
+                                int key = in.readInt();
+                                bitmap.append(key, in.readLong());
+                            }
+                            return bitmap;
+                        }
+                    };
+                    while (bitmaps.hasNext()) {
+                        map.set(bitmaps.next());
+                    }
+                }
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            long crc = checked.getChecksum().getValue();
+            if (in.readLong() != crc) {
+                throw new IOException(path + " is corrupt");
+            }
+        }
+    }
+
+    /**
+     * An iterator over the records of a section of the file.
+     *
+     * @param <T> the type of the item in the record.
+     */
+    private abstract static class Section<T> implements Iterator<IdxData<T>> {
+        private final DataInputStream in;
+        private long next;
+
+        Section(DataInputStream in) {
+            this.in = in;
+            this.next = Long.MIN_VALUE;
+        }
+
+        /**
+         * Reads the item of a record.
+         *
+         * @param idx the id of the record.
+         * @return the item.
+         * @throws IOException on error.
+         */
+        abstract T read(long idx) throws IOException;
+
+        @Override
+        public boolean hasNext() {
+            if (next == Long.MIN_VALUE) {
+                try {
+                    next = in.readLong();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return next != END;
+        }
+
+        @Override
+        public IdxData<T> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            long idx = next;
+            next = Long.MIN_VALUE;
+            try {
+                return new IdxData<>(idx, read(idx));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.xenei.rdfstore.store;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.function.ToLongFunction;
+
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.xenei.rdfstore.store.Quads.IdxQuad;
+import org.xenei.rdfstore.store.Quads.IdxQuadIterator;
+
+/**
+ * The plan to find the quads that match a pattern.
+ * <p>
+ * The bitmaps of the bound positions are ordered by cardinality so that the
+ * intersection starts with the most selective position and stops as soon as
+ * the running result is empty.
+ * </p>
+ * <p>
+ * When the smallest bitmap is much smaller than the others the plan can instead
+ * probe: read each quad in the smallest bitmap and check the other positions
+ * directly.
+ * </p>
+ */
+class FindPlan {
+
+    /**
+     * A plan for a pattern that can not match any quad.
+     */
+    static final FindPlan EMPTY = new FindPlan(new Term[0], true);
+
+    /**
+     * A bound position of the pattern.
+     */
+    static class Term {
+        /** The position in the quad. */
+        final Idx idx;
+        /** The node id. */
+        final long id;
+        /** The bitmap of quads that have the node in the position. */
+        final Bitmap bitmap;
+        /** The cardinality of the bitmap when the plan was made. */
+        final long cardinality;
+
+        Term(Idx idx, long id, Bitmap bitmap) {
+            this.idx = idx;
+            this.id = id;
+            this.bitmap = bitmap;
+            this.cardinality = bitmap.cardinality();
+        }
+    }
+
+    /**
+     * The bound terms, smallest cardinality first.
+     */
+    final Term[] terms;
+    private final boolean empty;
+
+    private FindPlan(Term[] terms, boolean empty) {
+        this.terms = terms;
+        this.empty = empty;
+    }
+
+    /**
+     * Creates a plan from the bound terms.
+     *
+     * @param terms the bound terms in any order.
+     * @return the plan.
+     */
+    static FindPlan create(Term... terms) {
+        Term[] sorted = terms.clone();
+        for (Term term : sorted) {
+            if (term.cardinality == 0) {
+                return EMPTY;
+            }
+        }
+        Arrays.sort(sorted, Comparator.comparingLong(t -> t.cardinality));
+        return new FindPlan(sorted, false);
+    }
+
+    /**
+     * Determines if the plan can not match any quad.
+     *
+     * @return {@code true} if no quad can match.
+     */
+    boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * Determines if probing the quads is expected to be cheaper than intersecting
+     * the bitmaps.
+     *
+     * @param ratio the minimum ratio between the second smallest and the smallest
+     * cardinality for probing to be used.
+     * @return {@code true} if the quads should be probed.
+     */
+    boolean shouldProbe(double ratio) {
+        return !empty && terms.length > 1 && terms[1].cardinality >= terms[0].cardinality * ratio;
+    }
+
+    /**
+     * Iterates over the quads in the smallest bitmap and keeps those that match
+     * the other terms.
+     *
+     * @param quads the quads to read the quad ids from.
+     * @return an iterator over the matching quads.
+     */
+    ExtendedIterator<IdxQuad> probe(Quads quads) {
+        return WrappedIterator.create(new IdxQuadIterator(quads, terms[0].bitmap))
+                .filterKeep(quad -> matches(quad::get));
+    }
+
+    /**
+     * Gets the bitmap to probe.
+     *
+     * @return the bitmap with the smallest cardinality.
+     */
+    Bitmap probeBitmap() {
+        return terms[0].bitmap;
+    }
+
+    /**
+     * Determines if the quad matches all the terms. The quads found from the plan
+     * may be read after the transaction that made it has ended, by which time the
+     * quad id may belong to a quad that is not in the bitmaps, so every term is
+     * checked.
+     *
+     * @param quad the function to read the node id for a position of the quad.
+     * @return {@code true} if the quad matches.
+     */
+    boolean matches(ToLongFunction<Idx> quad) {
+        for (int i = 0; i < terms.length; i++) {
+            if (quad.applyAsLong(terms[i].idx) != terms[i].id) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a cursor over the intersection of the bitmaps of the terms, starting
+     * from the smallest. The intersection is calculated as the cursor advances so
+     * nothing is materialised, see {@link BitmapMerge#intersectionCursor}.
+     *
+     * @return a cursor over the pages of quad ids that match all the terms or
+     * {@code null} if there are no bound terms.
+     */
+    Bitmap.Cursor cursor() {
+        if (empty) {
+            return BitmapMerge.EMPTY;
+        }
+        if (terms.length == 0) {
+            return null;
+        }
+        Bitmap[] bitmaps = new Bitmap[terms.length];
+        for (int i = 0; i < terms.length; i++) {
+            bitmaps[i] = terms[i].bitmap;
+        }
+        return BitmapMerge.intersectionCursor(bitmaps);
+    }
+
+    /**
+     * Counts the quads that match all the terms. The cardinality of a single term
+     * is known from the plan, otherwise the bits of the intersection are counted
+     * as the intersection is calculated.
+     *
+     * @return the number of quads that match all the terms, {@code 0} if there
+     * are no bound terms.
+     */
+    long count() {
+        if (empty || terms.length == 0) {
+            return 0;
+        }
+        return terms.length == 1 ? terms[0].cardinality : BitmapMerge.cardinality(cursor());
+    }
+}
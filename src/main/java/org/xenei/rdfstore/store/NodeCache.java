@@ -0,0 +1,193 @@
+package org.xenei.rdfstore.store;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.jena.graph.Node;
+
+/**
+ * A bounded cache of node id to {@code Node}.
+ * <p>
+ * The cache is set associative: an id can only be stored in one of the
+ * {@value #WAYS} slots of the set selected by its hash. When the set is full
+ * the slot to replace is selected with the clock algorithm: each slot has a
+ * referenced flag that is set on a hit and cleared as the hand passes over it,
+ * the first slot found without the flag is replaced. Frequently used nodes
+ * therefore stay in the cache while nodes used once are evicted.
+ * </p>
+ * <p>
+ * The cache does not lock. Each slot holds an immutable id and node pair that is
+ * replaced as a whole, so a reader never sees the node of one id with another
+ * id. Concurrent updates of the referenced flags and the clock hands may be
+ * lost, which only affects the choice of the node to evict.
+ * </p>
+ */
+public class NodeCache {
+
+    /**
+     * The default number of nodes to cache.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The number of slots in a set.
+     */
+    public static final int WAYS = 4;
+
+    private final AtomicReferenceArray<Entry> slots;
+    private final AtomicIntegerArray referenced;
+    private final AtomicIntegerArray hands;
+    private final int setMask;
+    private final LongAdder hits;
+    private final LongAdder misses;
+
+    /**
+     * Constructor.
+     *
+     * @param capacity the maximum number of nodes to cache, rounded up to a power
+     * of 2 that is at least {@value #WAYS}.
+     */
+    public NodeCache(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be greater than 0");
+        }
+        int sets = Integer.highestOneBit(Math.max(1, (capacity + WAYS - 1) / WAYS) - 1) << 1;
+        if (sets == 0) {
+            sets = 1;
+        }
+        setMask = sets - 1;
+        slots = new AtomicReferenceArray<>(sets * WAYS);
+        referenced = new AtomicIntegerArray(sets * WAYS);
+        hands = new AtomicIntegerArray(sets);
+        hits = new LongAdder();
+        misses = new LongAdder();
+    }
+
+    /**
+     * Gets the first slot of the set for the id.
+     *
+     * @param id the node id.
+     * @return the first slot of the set.
+     */
+    private int setStart(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return ((int) (h >>> 32) & setMask) * WAYS;
+    }
+
+    /**
+     * Gets the node from the cache.
+     *
+     * @param id the node id.
+     * @return the node or {@code null} if it is not cached.
+     */
+    public Node get(long id) {
+        int start = setStart(id);
+        for (int i = start; i < start + WAYS; i++) {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.id == id) {
+                if (referenced.get(i) == 0) {
+                    referenced.lazySet(i, 1);
+                }
+                hits.increment();
+                return entry.node;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Adds the node to the cache, evicting a node if the set is full.
+     *
+     * @param id the node id.
+     * @param node the node.
+     */
+    public void put(long id, Node node) {
+        Entry entry = new Entry(id, node);
+        int start = setStart(id);
+        for (int i = start; i < start + WAYS; i++) {
+            Entry current = slots.get(i);
+            if (current == null ? slots.compareAndSet(i, null, entry)
+                    : current.id == id && slots.compareAndSet(i, current, entry)) {
+                referenced.lazySet(i, 0);
+                return;
+            }
+        }
+        int set = start / WAYS;
+        int hand = hands.get(set);
+        // the flags are cleared as the hand passes so the loop ends.
+        while (referenced.get(start + hand) != 0) {
+            referenced.lazySet(start + hand, 0);
+            hand = (hand + 1) % WAYS;
+        }
+        slots.set(start + hand, entry);
+        hands.lazySet(set, (hand + 1) % WAYS);
+    }
+
+    /**
+     * Removes the node from the cache.
+     *
+     * @param id the node id.
+     */
+    public void invalidate(long id) {
+        int start = setStart(id);
+        for (int i = start; i < start + WAYS; i++) {
+            Entry entry = slots.get(i);
+            if (entry != null && entry.id == id) {
+                slots.compareAndSet(i, entry, null);
+            }
+        }
+    }
+
+    /**
+     * Removes all the nodes from the cache. The hit and miss counters are not
+     * reset.
+     */
+    public void clear() {
+        for (int i = 0; i < slots.length(); i++) {
+            slots.set(i, null);
+            referenced.lazySet(i, 0);
+        }
+    }
+
+    /**
+     * Gets the maximum number of nodes in the cache.
+     *
+     * @return the capacity.
+     */
+    public int capacity() {
+        return slots.length();
+    }
+
+    /**
+     * Gets the number of lookups that found the node in the cache.
+     *
+     * @return the number of hits.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Gets the number of lookups that did not find the node in the cache.
+     *
+     * @return the number of misses.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * A cached node and its id.
+     */
+    private static final class Entry {
+        final long id;
+        final Node node;
+
+        Entry(long id, Node node) {
+            this.id = id;
+            this.node = node;
+        }
+    }
+}
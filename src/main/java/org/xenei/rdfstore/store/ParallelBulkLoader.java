@@ -0,0 +1,523 @@
+package org.xenei.rdfstore.store;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.JenaTransactionException;
+import org.apache.jena.sparql.core.Quad;
+
+/**
+ * Loads quads in a single write transaction using several threads.
+ * <p>
+ * The load is a pipeline:
+ * </p>
+ * <ol>
+ * <li>Each parser runs on its own thread and passes batches of quads to the
+ * encoders.</li>
+ * <li>The encoder threads look up the node ids of the quads in a concurrent
+ * dictionary of the nodes seen so far.</li>
+ * <li>The loading thread registers the nodes that were not in the dictionary
+ * and the encoded quads.</li>
+ * <li>The node id and quad id pairs of the new quads are split into disjoint
+ * sets of node ids. Builder threads sort each set and build the bitmaps of its
+ * nodes, which the loading thread merges into the stored bitmaps.</li>
+ * </ol>
+ * <p>
+ * The stores are only changed by the loading thread because they belong to
+ * its write transaction, the other stages do not touch the stores.
+ * </p>
+ */
+public class ParallelBulkLoader {
+
+    /**
+     * The default number of quads in a batch passed between the stages.
+     */
+    public static final int DEFAULT_BATCH_SIZE = 4096;
+    /**
+     * The default number of new quads collected before the bitmaps are built.
+     */
+    public static final int DEFAULT_BUILD_SIZE = 1 << 20;
+    /**
+     * The default number of nodes in the dictionary before it is cleared.
+     */
+    public static final int DEFAULT_DICTIONARY_CAPACITY = 1 << 20;
+
+    private static final Idx[] INDEXES = Idx.values();
+    private static final int WIDTH = INDEXES.length;
+    private static final long UNKNOWN = Store.NO_INDEX;
+
+    private final AbstractQuads quads;
+    private final int threads;
+    private final int batchSize;
+    private final int buildSize;
+    private final int dictionaryCapacity;
+
+    /**
+     * A batch of quads and their node ids, {@code UNKNOWN} if the node was not in
+     * the dictionary. A batch without quads marks the end of a stage.
+     */
+    private static class Batch {
+        static final Batch END = new Batch(new Quad[0], 0);
+
+        final Quad[] quads;
+        final int count;
+        long[] ids;
+
+        Batch(Quad[] quads, int count) {
+            this.quads = quads;
+            this.count = count;
+        }
+    }
+
+    /**
+     * The bitmaps built for a set of node ids.
+     */
+    private static class Built {
+        final long[] nodeIds;
+        final Bitmap[] bitmaps;
+        int count;
+
+        Built(int size) {
+            nodeIds = new long[size];
+            bitmaps = new Bitmap[size];
+        }
+
+        void add(Bitmap bitmap, long nodeId) {
+            nodeIds[count] = nodeId;
+            bitmaps[count++] = bitmap;
+        }
+    }
+
+    /**
+     * Constructor using the number of available processors and the default
+     * sizes.
+     *
+     * @param quads the quads to load into.
+     */
+    public ParallelBulkLoader(AbstractQuads quads) {
+        this(quads, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE, DEFAULT_BUILD_SIZE,
+                DEFAULT_DICTIONARY_CAPACITY);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param quads the quads to load into.
+     * @param threads the number of encoder threads and of builder threads.
+     * @param batchSize the number of quads in a batch passed between the stages.
+     * @param buildSize the number of new quads collected before the bitmaps are
+     * built.
+     * @param dictionaryCapacity the number of nodes in the dictionary before it is
+     * cleared.
+     */
+    public ParallelBulkLoader(AbstractQuads quads, int threads, int batchSize, int buildSize,
+            int dictionaryCapacity) {
+        if (threads <= 0 || batchSize <= 0 || buildSize <= 0 || dictionaryCapacity <= 0) {
+            throw new IllegalArgumentException("Threads and sizes must be greater than 0");
+        }
+        this.quads = quads;
+        this.threads = threads;
+        this.batchSize = batchSize;
+        this.buildSize = buildSize;
+        this.dictionaryCapacity = dictionaryCapacity;
+    }
+
+    /**
+     * Loads the quads, each iterator is read by its own thread.
+     *
+     * @param sources the quads to load.
+     * @return the number of quads that were added.
+     */
+    public long load(Collection<Iterator<Quad>> sources) {
+        List<Consumer<StreamRDF>> parsers = new ArrayList<>();
+        for (Iterator<Quad> source : sources) {
+            parsers.add(stream -> {
+                stream.start();
+                source.forEachRemaining(stream::quad);
+                stream.finish();
+            });
+        }
+        return parse(parsers);
+    }
+
+    /**
+     * Loads the quads sent by the parsers. Each parser is run on its own thread
+     * and sends its quads to the {@code StreamRDF}, for example
+     * {@code stream -> RDFParser.source(path).parse(stream)}.
+     * <p>
+     * If the loader is called outside of a transaction it begins a write
+     * transaction and commits it, the transaction is aborted if a parser throws
+     * an exception. If it is called in a write transaction the caller commits.
+     * </p>
+     *
+     * @param parsers the parsers.
+     * @return the number of quads that were added.
+     */
+    public long parse(Collection<Consumer<StreamRDF>> parsers) {
+        boolean ownTxn = false;
+        if (!quads.isInTransaction()) {
+            quads.begin(TxnType.WRITE);
+            ownTxn = true;
+        } else if (quads.transactionMode() != ReadWrite.WRITE) {
+            throw new JenaTransactionException("WRITE mode transaction required");
+        }
+        long result;
+        try {
+            result = new Run(parsers).execute();
+        } catch (RuntimeException | Error e) {
+            if (ownTxn) {
+                quads.abort();
+                quads.end();
+            }
+            throw e;
+        }
+        if (ownTxn) {
+            quads.commit();
+            quads.end();
+        }
+        return result;
+    }
+
+    /**
+     * The state of one load.
+     */
+    private class Run {
+        private final Collection<Consumer<StreamRDF>> parsers;
+        private final BlockingQueue<Batch> parsed;
+        private final BlockingQueue<Batch> encoded;
+        private final ConcurrentHashMap<Node, Long> dictionary;
+        private final AtomicReference<Throwable> failure;
+        private final List<Thread> parserThreads;
+        private final ExecutorService encoders;
+        private final ExecutorService builders;
+        /**
+         * The node id and quad id pairs of the new quads for each index.
+         */
+        private final long[][] pairs;
+        private int pairCount;
+        private long loaded;
+
+        Run(Collection<Consumer<StreamRDF>> parsers) {
+            this.parsers = parsers;
+            this.parsed = new ArrayBlockingQueue<>(2 * threads);
+            this.encoded = new ArrayBlockingQueue<>(2 * threads);
+            this.dictionary = new ConcurrentHashMap<>();
+            this.failure = new AtomicReference<>();
+            this.parserThreads = new ArrayList<>();
+            this.encoders = Executors.newFixedThreadPool(threads, daemon("encoder"));
+            this.builders = Executors.newFixedThreadPool(threads, daemon("builder"));
+            this.pairs = new long[WIDTH][2 * buildSize];
+        }
+
+        private ThreadFactory daemon(String name) {
+            return r -> {
+                Thread thread = new Thread(r, "ParallelBulkLoader " + name);
+                thread.setDaemon(true);
+                return thread;
+            };
+        }
+
+        private void fail(Throwable t) {
+            failure.compareAndSet(null, t);
+        }
+
+        long execute() {
+            try {
+                startParsers();
+                for (int i = 0; i < threads; i++) {
+                    encoders.execute(this::encode);
+                }
+                int running = threads;
+                while (running > 0) {
+                    checkFailure();
+                    Batch batch = take(encoded);
+                    if (batch == Batch.END) {
+                        running--;
+                    } else {
+                        register(batch);
+                    }
+                }
+                build();
+                checkFailure();
+                return loaded;
+            } finally {
+                parserThreads.forEach(Thread::interrupt);
+                encoders.shutdownNow();
+                builders.shutdownNow();
+            }
+        }
+
+        private void checkFailure() {
+            Throwable t = failure.get();
+            if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            }
+            if (t instanceof Error) {
+                throw (Error) t;
+            }
+            if (t != null) {
+                throw new IllegalStateException(t);
+            }
+        }
+
+        private Batch take(BlockingQueue<Batch> queue) {
+            try {
+                return queue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JenaTransactionException("Interrupted while loading", e);
+            }
+        }
+
+        // ** PARSE STAGE
+
+        private void startParsers() {
+            List<Thread> started = new ArrayList<>();
+            for (Consumer<StreamRDF> parser : parsers) {
+                Thread thread = new Thread(() -> {
+                    try {
+                        parser.accept(new BatchStream());
+                    } catch (Throwable t) {
+                        fail(t);
+                    }
+                }, "ParallelBulkLoader parser");
+                thread.setDaemon(true);
+                started.add(thread);
+            }
+            parserThreads.addAll(started);
+            // when the parsers are done the encoders are told to stop.
+            Thread closer = new Thread(() -> {
+                try {
+                    for (Thread thread : started) {
+                        thread.join();
+                    }
+                    for (int i = 0; i < threads; i++) {
+                        parsed.put(Batch.END);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, "ParallelBulkLoader closer");
+            closer.setDaemon(true);
+            parserThreads.add(closer);
+            parserThreads.forEach(Thread::start);
+        }
+
+        /**
+         * The stream that the parsers write to, one per parser thread.
+         */
+        private class BatchStream implements StreamRDF {
+            private Quad[] batch = new Quad[batchSize];
+            private int count;
+
+            @Override
+            public void start() {
+                // not used
+            }
+
+            @Override
+            public void triple(Triple triple) {
+                quad(Quad.create(Quad.defaultGraphNodeGenerated, triple));
+            }
+
+            @Override
+            public void quad(Quad quad) {
+                batch[count++] = quad.isTriple() ? Quad.create(Quad.defaultGraphNodeGenerated, quad.asTriple()) : quad;
+                if (count == batchSize) {
+                    send();
+                }
+            }
+
+            private void send() {
+                try {
+                    parsed.put(new Batch(batch, count));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new JenaTransactionException("Interrupted while loading", e);
+                }
+                batch = new Quad[batchSize];
+                count = 0;
+            }
+
+            @Override
+            public void base(String base) {
+                // not used
+            }
+
+            @Override
+            public void prefix(String prefix, String iri) {
+                // not used
+            }
+
+            @Override
+            public void finish() {
+                if (count > 0) {
+                    send();
+                }
+            }
+        }
+
+        // ** ENCODE STAGE
+
+        private void encode() {
+            try {
+                for (Batch batch = parsed.take(); batch != Batch.END; batch = parsed.take()) {
+                    long[] ids = new long[WIDTH * batch.count];
+                    for (int i = 0; i < batch.count; i++) {
+                        for (Idx idx : INDEXES) {
+                            Long id = dictionary.get(idx.from(batch.quads[i]));
+                            ids[WIDTH * i + idx.ordinal()] = id == null ? UNKNOWN : id;
+                        }
+                    }
+                    batch.ids = ids;
+                    encoded.put(batch);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Throwable t) {
+                fail(t);
+            }
+            // the loading thread waits for every encoder to end.
+            try {
+                encoded.put(Batch.END);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        // ** REGISTER STAGE
+
+        private long registerNode(Node node) {
+            Long id = dictionary.get(node);
+            if (id == null) {
+                if (dictionary.size() >= dictionaryCapacity) {
+                    dictionary.clear();
+                }
+                id = quads.registerNode(node);
+                dictionary.put(node, id);
+            }
+            return id;
+        }
+
+        private void register(Batch batch) {
+            for (int i = 0; i < batch.count; i++) {
+                Quad quad = batch.quads[i];
+                for (Idx idx : INDEXES) {
+                    int pos = WIDTH * i + idx.ordinal();
+                    if (batch.ids[pos] == UNKNOWN) {
+                        batch.ids[pos] = registerNode(idx.from(quad));
+                    }
+                }
+                Store.Result result = quads.registerEncoded(quad, batch.ids, WIDTH * i);
+                if (!result.existed) {
+                    for (Idx idx : INDEXES) {
+                        pairs[idx.ordinal()][2 * pairCount] = batch.ids[WIDTH * i + idx.ordinal()];
+                        pairs[idx.ordinal()][2 * pairCount + 1] = result.index;
+                    }
+                    pairCount++;
+                    if (pairCount == buildSize) {
+                        build();
+                    }
+                }
+            }
+        }
+
+        // ** BUILD STAGE
+
+        /**
+         * Builds the bitmaps of the collected pairs on the builder threads and
+         * merges them into the stored bitmaps.
+         */
+        private void build() {
+            if (pairCount == 0) {
+                return;
+            }
+            List<Future<Built>> futures = new ArrayList<>();
+            List<Idx> futureIdx = new ArrayList<>();
+            for (Idx idx : INDEXES) {
+                for (long[] set : split(pairs[idx.ordinal()], pairCount)) {
+                    futures.add(builders.submit(() -> {
+                        int count = set.length / 2;
+                        BulkLoader.sortPairs(set, count);
+                        Built built = new Built(count);
+                        BulkLoader.buildBitmaps(set, count, quads::newBitmap, built::add);
+                        return built;
+                    }));
+                    futureIdx.add(idx);
+                }
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                Built built = get(futures.get(i));
+                Idx idx = futureIdx.get(i);
+                for (int j = 0; j < built.count; j++) {
+                    quads.addToBitmap(idx, built.nodeIds[j], built.bitmaps[j]);
+                }
+            }
+            loaded += pairCount;
+            pairCount = 0;
+        }
+
+        /**
+         * Splits the pairs into disjoint sets of node ids, one for each builder.
+         *
+         * @param pairs the pairs.
+         * @param count the number of pairs.
+         * @return the pairs of each set.
+         */
+        private long[][] split(long[] pairs, int count) {
+            int[] sizes = new int[threads];
+            for (int i = 0; i < count; i++) {
+                sizes[(int) (pairs[2 * i] % threads)]++;
+            }
+            long[][] result = new long[threads][];
+            for (int set = 0; set < threads; set++) {
+                result[set] = new long[2 * sizes[set]];
+            }
+            Arrays.fill(sizes, 0);
+            for (int i = 0; i < count; i++) {
+                int set = (int) (pairs[2 * i] % threads);
+                int pos = 2 * sizes[set]++;
+                result[set][pos] = pairs[2 * i];
+                result[set][pos + 1] = pairs[2 * i + 1];
+            }
+            return result;
+        }
+
+        private Built get(Future<Built> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new JenaTransactionException("Interrupted while loading", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
+            }
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.xenei.rdfstore.store;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A store of quads that can read the node ids of a stored quad without creating
+ * a buffer for it.
+ */
+public interface QuadStore extends Store<ByteBuffer> {
+
+    /**
+     * Determines if there is a quad with the index in the store.
+     *
+     * @param idx the index of the quad.
+     * @return {@code true} if the quad exists.
+     */
+    boolean contains(long idx);
+
+    /**
+     * Gets a node id of the quad.
+     *
+     * @param idx the index of the quad.
+     * @param position the position in the quad.
+     * @return the node id.
+     */
+    long get(long idx, Idx position);
+
+    /**
+     * Copies the node ids of the quad. The ids are read together so they always
+     * belong to the same quad, even if the index is reused while they are read.
+     *
+     * @param idx the index of the quad.
+     * @param ids the array to copy the node ids into, in {@link Idx} order.
+     * @return {@code true} if the quad exists and the ids were copied.
+     */
+    boolean get(long idx, long[] ids);
+}
@@ -2,6 +2,7 @@ package org.xenei.rdfstore.store;
 
 import java.nio.ByteBuffer;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 import java.util.PrimitiveIterator;
 import java.util.function.Function;
 
@@ -11,6 +12,7 @@ import org.apache.jena.graph.Triple;
 import org.apache.jena.sparql.core.Quad;
 import org.apache.jena.sparql.core.Transactional;
 import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
 
 public interface Quads extends Transactional, AutoCloseable {
 
@@ -20,41 +22,251 @@ public interface Quads extends Transactional, AutoCloseable {
 
     long size();
 
+    /**
+     * Gets the number of quads in a graph. The count is kept as quads are
+     * registered and deleted so no quads are read.
+     *
+     * @param graph the graph name, {@code null} or {@code Node.ANY} for all the
+     * graphs.
+     * @return the number of quads in the graph.
+     */
+    long size(Node graph);
+
     Triple asTriple(IdxQuad idx);
 
     Quad asQuad(IdxQuad idx);
 
+    /**
+     * Does the work of committing the write transaction of the current thread that
+     * can fail, such as writing the log, without publishing the changes. A store
+     * that commits several quads prepares all of them before it publishes any. The
+     * transaction must then be committed with {@link #publish()} or
+     * {@link #commit()}, or aborted. The default does nothing.
+     */
+    default void prepareCommit() {
+    }
+
+    /**
+     * Commits the write transaction of the current thread without waiting for it
+     * to reach the disk. {@link #awaitDurable()} must be called afterwards, outside
+     * of any lock, before the commit is reported as complete. The default commits.
+     */
+    default void publish() {
+        commit();
+    }
+
+    /**
+     * Waits until the last write transaction published by this thread is on disk.
+     * The default does nothing.
+     */
+    default void awaitDurable() {
+    }
+
+    /**
+     * Closes the quads, aborting the write transaction of the current thread if
+     * there is one. Failures are reported with unchecked exceptions.
+     */
+    @Override
+    void close();
+
+    /**
+     * Creates a triple from the current position of the cursor.
+     *
+     * @param cursor the cursor positioned on a quad.
+     * @return the triple.
+     */
+    Triple asTriple(QuadCursor cursor);
+
+    /**
+     * Creates a quad from the current position of the cursor.
+     *
+     * @param cursor the cursor positioned on a quad.
+     * @return the quad.
+     */
+    Quad asQuad(QuadCursor cursor);
+
     <T> ExtendedIterator<T> find(Quad quad, Function<IdxQuad, T> mapper);
 
+    /**
+     * Counts the quads that match the pattern. The quads are not read, the count
+     * is taken from the bitmaps of the bound positions.
+     *
+     * @param quad the quad pattern.
+     * @return the number of matching quads.
+     */
+    long count(Quad quad);
+
+    /**
+     * Creates a cursor over the quads that match the pattern. The cursor reads the
+     * node ids directly from the store so no object is created per quad.
+     * <p>
+     * Outside of a transaction the quads are read as the cursor advances. The node
+     * ids of a quad are copied together when the cursor advances onto it, so they
+     * always belong to one quad. A quad deleted by a later commit is skipped, and
+     * every quad returned matches the pattern even if its id has been reused.
+     * </p>
+     *
+     * @param quad the quad pattern.
+     * @return a cursor positioned before the first matching quad.
+     */
+    QuadCursor cursor(Quad quad);
+
     Iterator<Node> listNodes(Idx idx);
 
     IdxQuad getIdxQuad(long quadId);
 
-    class IdxQuadIterator implements Iterator<IdxQuad> {
+    /**
+     * An iterator over the quads of a sequence of quad ids. Ids of quads that no
+     * longer exist are skipped. Closing the iterator stops the reading of ids so
+     * an iterator over a lazily calculated sequence does no further work.
+     */
+    class IdxQuadIterator extends NiceIterator<IdxQuad> {
         private final Quads quads;
-        private final PrimitiveIterator.OfLong longIter;
+        private PrimitiveIterator.OfLong longIter;
         private IdxQuad next;
 
         public IdxQuadIterator(Quads quads, Bitmap bitmap) {
+            this(quads, bitmap.iterator());
+        }
+
+        public IdxQuadIterator(Quads quads, PrimitiveIterator.OfLong ids) {
             this.quads = quads;
-            longIter = bitmap.iterator();
+            longIter = ids;
             next = null;
         }
 
         @Override
         public boolean hasNext() {
-            while (next == null && longIter.hasNext()) {
-                next = quads.getIdxQuad(longIter.next());
+            while (next == null && longIter != null && longIter.hasNext()) {
+                next = quads.getIdxQuad(longIter.nextLong());
             }
             return next != null;
         }
 
         @Override
         public IdxQuad next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
             IdxQuad result = next;
             next = null;
             return result;
         }
+
+        @Override
+        public void close() {
+            longIter = null;
+            next = null;
+        }
+    }
+
+    /**
+     * A reusable cursor over quads. The cursor is positioned before the first quad
+     * and {@link #advance()} must be called before reading the node ids. The values
+     * are only valid until the next call to {@code advance()}.
+     */
+    interface QuadCursor {
+        /**
+         * A cursor without any quads.
+         */
+        QuadCursor EMPTY = new QuadCursor() {
+            @Override
+            public boolean advance() {
+                return false;
+            }
+
+            @Override
+            public long id() {
+                return Store.NO_INDEX;
+            }
+
+            @Override
+            public long get(Idx idx) {
+                return Store.NO_INDEX;
+            }
+        };
+
+        /**
+         * Moves to the next quad.
+         *
+         * @return {@code true} if the cursor is positioned on a quad, {@code false}
+         * if there are no more quads.
+         */
+        boolean advance();
+
+        /**
+         * Gets the id of the current quad.
+         *
+         * @return the quad id.
+         */
+        long id();
+
+        /**
+         * Gets the node id of the current quad.
+         *
+         * @param idx the position in the quad.
+         * @return the node id.
+         */
+        long get(Idx idx);
+
+        default long g() {
+            return get(Idx.G);
+        }
+
+        default long s() {
+            return get(Idx.S);
+        }
+
+        default long p() {
+            return get(Idx.P);
+        }
+
+        default long o() {
+            return get(Idx.O);
+        }
+    }
+
+    /**
+     * An iterator that maps each position of a cursor to an object. Only the
+     * mapped objects are created.
+     *
+     * @param <T> the type of object returned.
+     */
+    class QuadCursorIterator<T> extends NiceIterator<T> {
+        private final QuadCursor cursor;
+        private final Function<QuadCursor, T> mapper;
+        private boolean ready;
+        private boolean hasNext;
+
+        public QuadCursorIterator(QuadCursor cursor, Function<QuadCursor, T> mapper) {
+            this.cursor = cursor;
+            this.mapper = mapper;
+            ready = false;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (!ready) {
+                hasNext = cursor.advance();
+                ready = true;
+            }
+            return hasNext;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            ready = false;
+            return mapper.apply(cursor);
+        }
+
+        @Override
+        public void close() {
+            ready = true;
+            hasNext = false;
+        }
     }
 
     class IdxQuad implements Comparable<IdxQuad> {
@@ -81,7 +293,7 @@ public interface Quads extends Transactional, AutoCloseable {
         }
 
         public ByteBuffer getBuffer(Idx idx) {
-            ByteBuffer result = buffer.position(idx.bufferPos).slice();
+            ByteBuffer result = buffer.duplicate().position(idx.bufferPos).slice();
             result.limit(Long.BYTES);
             return result;
         }
@@ -77,6 +77,16 @@ public interface Store<T> extends TransactionalComponent, TxnIdHolder {
      */
     public Iterator<IdxData<T>> iterator();
 
+    /**
+     * Loads items with known ids into an empty store. This is used to restore a
+     * checkpoint without registering each item. The items are committed with the
+     * write transaction.
+     *
+     * @param items the items in ascending id order.
+     * @throws IllegalStateException if the store is not empty.
+     */
+    void load(Iterator<IdxData<T>> items);
+
     /**
      * An interface that defines the Page operations for a paged store.
      *
@@ -0,0 +1,569 @@
+package org.xenei.rdfstore.store;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+
+import java.nio.ByteBuffer;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.JenaTransactionException;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.apache.jena.util.iterator.NiceIterator;
+import org.apache.jena.util.iterator.WrappedIterator;
+import org.xenei.rdfstore.mem.MemQuads;
+
+/**
+ * Quads partitioned by graph over several stripes so that write transactions
+ * that change graphs in different stripes run at the same time.
+ * <p>
+ * Each stripe is a complete {@link Quads} with its own transactions, node
+ * dictionary and write-ahead log, and each graph is stored in the stripe
+ * selected by the hash of the graph node. A write transaction joins a stripe,
+ * taking the lock of the stripe, the first time it changes a graph in the
+ * stripe. The stripes joined by the transaction are its write set. A writer
+ * that reads a stripe it has not joined sees the last commit of that stripe.
+ * </p>
+ * <p>
+ * Stripes are locked in increasing order. A writer that needs a stripe below
+ * one it already holds only takes the lock if it is free, otherwise the write
+ * fails with a {@link JenaTransactionException} and the transaction should be
+ * aborted. Two writers can therefore never wait for each other.
+ * </p>
+ * <p>
+ * A read transaction begins on every stripe. A write transaction is committed
+ * in two steps. First every stripe it wrote is prepared, so a failure, such as
+ * a failed log write, aborts all of them before any is published. Then the
+ * stripes are published while readers are prevented from beginning, so a
+ * reader sees all or none of a commit that spans stripes. The commit waits for
+ * the logs to reach the disk after readers are allowed to begin again.
+ * </p>
+ * <p>
+ * Node and quad ids are the ids of the stripe multiplied by the number of
+ * stripes plus the stripe number, so ids from different stripes do not
+ * collide.
+ * </p>
+ */
+public class StripedQuads implements Quads {
+
+    /**
+     * The default number of stripes.
+     */
+    public static final int DEFAULT_STRIPES = 16;
+
+    private final Quads[] stripes;
+    private final ReentrantLock[] locks;
+    /**
+     * Readers begin in the read lock and writers commit in the write lock.
+     */
+    private final ReentrantReadWriteLock commitLock = new ReentrantReadWriteLock();
+    private final ThreadLocal<StripedTxn> txn = new ThreadLocal<>();
+
+    /**
+     * The transaction of a thread.
+     */
+    private static final class StripedTxn {
+        final TxnType type;
+        ReadWrite mode;
+        Promote promote;
+        /**
+         * The stripes that are in the transaction.
+         */
+        final boolean[] joined;
+        /**
+         * The stripes that are locked for writing.
+         */
+        final boolean[] writing;
+        int highest = -1;
+
+        StripedTxn(TxnType type, int stripes) {
+            this.type = type;
+            this.mode = TxnType.initial(type);
+            this.joined = new boolean[stripes];
+            this.writing = new boolean[stripes];
+        }
+    }
+
+    /**
+     * Constructor. Creates {@link #DEFAULT_STRIPES} memory stripes.
+     */
+    public StripedQuads() {
+        this(DEFAULT_STRIPES, MemQuads::new);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param stripes the number of stripes.
+     * @param factory creates the quads for each stripe.
+     */
+    public StripedQuads(int stripes, Supplier<? extends Quads> factory) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("There must be at least one stripe");
+        }
+        this.stripes = new Quads[stripes];
+        this.locks = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = factory.get();
+            this.locks[i] = new ReentrantLock();
+        }
+    }
+
+    /**
+     * Gets the stripe of a graph.
+     *
+     * @param graph the graph node.
+     * @return the stripe number.
+     */
+    int stripe(Node graph) {
+        return Math.floorMod(graph.hashCode(), stripes.length);
+    }
+
+    private static Node graph(Quad quad) {
+        return quad.isTriple() ? Quad.defaultGraphNodeGenerated : quad.getGraph();
+    }
+
+    /**
+     * Gets the stripes that may hold quads that match the pattern.
+     *
+     * @param quad the pattern.
+     * @return the stripe numbers.
+     */
+    private int[] stripes(Quad quad) {
+        Node graph = graph(quad);
+        if (graph != null && graph.isConcrete()) {
+            return new int[] { stripe(graph) };
+        }
+        int[] result = new int[stripes.length];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = i;
+        }
+        return result;
+    }
+
+    /**
+     * Encodes the id of a stripe as an id of the striped quads.
+     *
+     * @param id the id in the stripe.
+     * @param stripe the stripe number.
+     * @return the encoded id.
+     * @throws ArithmeticException if the encoded id does not fit in a long.
+     */
+    private long encode(long id, int stripe) {
+        return id < 0 ? id : Math.addExact(Math.multiplyExact(id, stripes.length), stripe);
+    }
+
+    private long decode(long id) {
+        return id < 0 ? id : id / stripes.length;
+    }
+
+    private int stripeOf(long id) {
+        return (int) (id % stripes.length);
+    }
+
+    private IdxQuad encode(IdxQuad idxQuad, int stripe) {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 4);
+        for (Idx idx : Idx.values()) {
+            buffer.putLong(idx.bufferPos, encode(idxQuad.get(idx), stripe));
+        }
+        return new IdxQuad(buffer);
+    }
+
+    private IdxQuad decode(IdxQuad idxQuad) {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 4);
+        for (Idx idx : Idx.values()) {
+            buffer.putLong(idx.bufferPos, decode(idxQuad.get(idx)));
+        }
+        return new IdxQuad(buffer);
+    }
+
+    /**
+     * Gets the stripe to write a graph to, joining the stripe to the write
+     * transaction of the current thread if necessary.
+     *
+     * @param graph the graph node.
+     * @return the stripe.
+     */
+    private Quads writable(Node graph) {
+        int stripe = stripe(graph);
+        StripedTxn current = txn.get();
+        if (current == null) {
+            // the stripe commits the change by itself.
+            return stripes[stripe];
+        }
+        if (current.mode != WRITE) {
+            throw new JenaTransactionException("WRITE mode transaction required");
+        }
+        if (!current.writing[stripe]) {
+            lock(current, stripe);
+            try {
+                if (current.joined[stripe]) {
+                    if (!stripes[stripe].promote(current.promote)) {
+                        throw new JenaTransactionException("Graph stripe " + stripe + " changed - can't promote");
+                    }
+                } else {
+                    stripes[stripe].begin(TxnType.WRITE);
+                }
+            } catch (RuntimeException e) {
+                locks[stripe].unlock();
+                throw e;
+            }
+            current.joined[stripe] = true;
+            current.writing[stripe] = true;
+            current.highest = Math.max(current.highest, stripe);
+        }
+        return stripes[stripe];
+    }
+
+    private void lock(StripedTxn current, int stripe) {
+        if (stripe > current.highest) {
+            locks[stripe].lock();
+        } else if (!locks[stripe].tryLock()) {
+            throw new JenaTransactionException("Write conflict on graph stripe " + stripe);
+        }
+    }
+
+    /**
+     * Ends the transaction of the current thread. Any stripe that is still in
+     * the transaction is aborted.
+     *
+     * @param current the transaction.
+     */
+    private void finish(StripedTxn current) {
+        RuntimeException error = null;
+        for (int i = 0; i < stripes.length; i++) {
+            if (current.joined[i] && stripes[i].isInTransaction()) {
+                try {
+                    stripes[i].abort();
+                } catch (RuntimeException e) {
+                    error = e;
+                }
+            }
+            if (current.writing[i]) {
+                locks[i].unlock();
+            }
+        }
+        current.mode = null;
+        txn.remove();
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    // ** TRANSACTIONS
+
+    @Override
+    public void begin(TxnType type) {
+        if (txn.get() != null) {
+            throw new JenaTransactionException("Transactions cannot be nested!");
+        }
+        StripedTxn current = new StripedTxn(type, stripes.length);
+        txn.set(current);
+        if (current.mode == READ) {
+            commitLock.readLock().lock();
+            try {
+                for (int i = 0; i < stripes.length; i++) {
+                    stripes[i].begin(type);
+                    current.joined[i] = true;
+                }
+            } catch (RuntimeException e) {
+                finish(current);
+                throw e;
+            } finally {
+                commitLock.readLock().unlock();
+            }
+        }
+    }
+
+    @Override
+    public boolean promote(Promote mode) {
+        StripedTxn current = txn.get();
+        if (current == null) {
+            throw new JenaTransactionException("Tried to promote outside a transaction!");
+        }
+        if (current.mode == WRITE) {
+            return true;
+        }
+        if (current.type == TxnType.READ) {
+            return false;
+        }
+        // each stripe is promoted when it is first written.
+        current.mode = WRITE;
+        current.promote = mode;
+        return true;
+    }
+
+    @Override
+    public void commit() {
+        StripedTxn current = txn.get();
+        if (current == null) {
+            throw new JenaTransactionException("Tried to commit outside a transaction!");
+        }
+        try {
+            if (current.mode == WRITE) {
+                for (int i = 0; i < stripes.length; i++) {
+                    if (current.writing[i]) {
+                        stripes[i].prepareCommit();
+                    }
+                }
+                commitLock.writeLock().lock();
+                try {
+                    for (int i = 0; i < stripes.length; i++) {
+                        if (current.writing[i]) {
+                            stripes[i].publish();
+                        }
+                    }
+                } finally {
+                    commitLock.writeLock().unlock();
+                }
+            }
+            endReaders(current);
+        } finally {
+            finish(current);
+        }
+        // the stripe locks have been released so other writers join the group
+        // commit.
+        for (int i = 0; i < stripes.length; i++) {
+            if (current.writing[i]) {
+                stripes[i].awaitDurable();
+            }
+        }
+    }
+
+    @Override
+    public void abort() {
+        StripedTxn current = txn.get();
+        if (current == null) {
+            throw new JenaTransactionException("Tried to abort outside a transaction!");
+        }
+        finish(current);
+    }
+
+    @Override
+    public void end() {
+        StripedTxn current = txn.get();
+        if (current == null) {
+            return;
+        }
+        if (current.mode == WRITE) {
+            finish(current);
+            throw new JenaTransactionException(
+                    "end() called for WRITE transaction without commit or abort having been called. This causes a forced abort.");
+        }
+        try {
+            endReaders(current);
+        } finally {
+            finish(current);
+        }
+    }
+
+    /**
+     * Ends the stripes that were only read.
+     *
+     * @param current the transaction.
+     */
+    private void endReaders(StripedTxn current) {
+        for (int i = 0; i < stripes.length; i++) {
+            if (current.joined[i] && !current.writing[i]) {
+                stripes[i].end();
+            }
+        }
+    }
+
+    @Override
+    public boolean isInTransaction() {
+        return txn.get() != null;
+    }
+
+    @Override
+    public ReadWrite transactionMode() {
+        StripedTxn current = txn.get();
+        return current == null ? null : current.mode;
+    }
+
+    @Override
+    public TxnType transactionType() {
+        StripedTxn current = txn.get();
+        return current == null ? null : current.type;
+    }
+
+    // ** STANDARD CODE
+
+    @Override
+    public long register(Quad quad) {
+        Node graph = graph(quad);
+        return encode(writable(graph).register(quad), stripe(graph));
+    }
+
+    @Override
+    public void delete(Quad quad) {
+        writable(graph(quad)).delete(quad);
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Quads stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    @Override
+    public long size(Node graph) {
+        if (graph == null || graph == Node.ANY) {
+            return size();
+        }
+        return stripes[stripe(graph)].size(graph);
+    }
+
+    @Override
+    public Triple asTriple(IdxQuad idx) {
+        return stripes[stripeOf(idx.get(Idx.G))].asTriple(decode(idx));
+    }
+
+    @Override
+    public Quad asQuad(IdxQuad idx) {
+        return stripes[stripeOf(idx.get(Idx.G))].asQuad(decode(idx));
+    }
+
+    @Override
+    public Triple asTriple(QuadCursor cursor) {
+        StripedCursor striped = striped(cursor);
+        return stripes[striped.stripe].asTriple(striped.cursor);
+    }
+
+    @Override
+    public Quad asQuad(QuadCursor cursor) {
+        StripedCursor striped = striped(cursor);
+        return stripes[striped.stripe].asQuad(striped.cursor);
+    }
+
+    private StripedCursor striped(QuadCursor cursor) {
+        if (cursor instanceof StripedCursor) {
+            return (StripedCursor) cursor;
+        }
+        throw new IllegalArgumentException("Not a cursor of this store");
+    }
+
+    @Override
+    public <T> ExtendedIterator<T> find(Quad quad, Function<IdxQuad, T> mapper) {
+        ExtendedIterator<T> result = NiceIterator.emptyIterator();
+        for (int stripe : stripes(quad)) {
+            result = result.andThen(stripes[stripe].find(quad, idx -> mapper.apply(encode(idx, stripe))));
+        }
+        return result;
+    }
+
+    @Override
+    public long count(Quad quad) {
+        long count = 0;
+        for (int stripe : stripes(quad)) {
+            count += stripes[stripe].count(quad);
+        }
+        return count;
+    }
+
+    @Override
+    public QuadCursor cursor(Quad quad) {
+        return new StripedCursor(quad, stripes(quad));
+    }
+
+    @Override
+    public Iterator<Node> listNodes(Idx idx) {
+        ExtendedIterator<Node> result = NiceIterator.emptyIterator();
+        for (Quads stripe : stripes) {
+            result = result.andThen(stripe.listNodes(idx));
+        }
+        if (idx == Idx.G) {
+            // a graph is only in one stripe.
+            return result;
+        }
+        Set<Node> seen = new HashSet<>();
+        return WrappedIterator.create(result).filterKeep(seen::add);
+    }
+
+    @Override
+    public IdxQuad getIdxQuad(long quadId) {
+        int stripe = stripeOf(quadId);
+        IdxQuad idxQuad = stripes[stripe].getIdxQuad(decode(quadId));
+        return idxQuad == null ? null : encode(idxQuad, stripe);
+    }
+
+    /**
+     * Closes every stripe, even if closing one of them fails. The first failure
+     * is thrown with the others suppressed.
+     */
+    @Override
+    public void close() {
+        if (isInTransaction()) {
+            abort();
+        }
+        RuntimeException failure = null;
+        for (Quads stripe : stripes) {
+            try {
+                stripe.close();
+            } catch (RuntimeException e) {
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * A cursor over the cursors of several stripes.
+     */
+    private class StripedCursor implements QuadCursor {
+        private final Quad pattern;
+        private final int[] order;
+        private int position;
+        int stripe;
+        QuadCursor cursor;
+
+        StripedCursor(Quad pattern, int[] order) {
+            this.pattern = pattern;
+            this.order = order;
+            this.position = -1;
+            this.cursor = QuadCursor.EMPTY;
+        }
+
+        @Override
+        public boolean advance() {
+            while (!cursor.advance()) {
+                if (++position >= order.length) {
+                    cursor = QuadCursor.EMPTY;
+                    return false;
+                }
+                stripe = order[position];
+                cursor = stripes[stripe].cursor(pattern);
+            }
+            return true;
+        }
+
+        @Override
+        public long id() {
+            return encode(cursor.id(), stripe);
+        }
+
+        @Override
+        public long get(Idx idx) {
+            return encode(cursor.get(idx), stripe);
+        }
+    }
+}
@@ -30,12 +30,37 @@ public interface UriStore extends TransactionalComponent, TxnIdHolder {
 
     long register(Node node);
 
+    /**
+     * Deletes a node from the store. The id of the node may be reused by a node
+     * registered later.
+     *
+     * @param node the node to delete.
+     * @return the id of the node or {@link Store#NO_INDEX} if it was not in the
+     * store.
+     */
+    long delete(Node node);
+
     long get(Node node);
 
     Node get(long idx);
 
     Iterator<Node> iterator(PrimitiveIterator.OfLong iter);
 
+    /**
+     * An iterator over the committed nodes and their ids.
+     *
+     * @return An IdxData object for each node in the store.
+     */
+    Iterator<IdxData<Node>> nodes();
+
+    /**
+     * Loads nodes with known ids into an empty store.
+     *
+     * @param nodes the nodes in ascending id order.
+     * @see Store#load(Iterator)
+     */
+    void load(Iterator<IdxData<Node>> nodes);
+
     static class Result {
 
         private final Bitmap[] bitmap = new Bitmap[3];
@@ -0,0 +1,50 @@
+package org.xenei.rdfstore.txn;
+
+import java.util.TreeMap;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * Counts the read transactions that have pinned each committed generation of a
+ * component. A component that keeps the state of old generations for the
+ * readers that can still see them releases that state once the oldest pinned
+ * generation has passed it.
+ */
+public final class ReaderPins {
+
+    private final TreeMap<Long, Integer> pins = new TreeMap<>();
+
+    /**
+     * Pins the generation of the current version. The version is read while the
+     * pins are locked so a writer that checks {@link #oldest()} can not miss a
+     * reader that is beginning.
+     *
+     * @param <V> the type of the version.
+     * @param current supplies the current version.
+     * @param generation gets the generation of the version.
+     * @return the pinned version.
+     */
+    public synchronized <V> V pin(Supplier<V> current, ToLongFunction<V> generation) {
+        V version = current.get();
+        pins.merge(generation.applyAsLong(version), 1, Integer::sum);
+        return version;
+    }
+
+    /**
+     * Releases a pin.
+     *
+     * @param generation the generation that was pinned.
+     */
+    public synchronized void unpin(long generation) {
+        pins.computeIfPresent(generation, (k, v) -> v == 1 ? null : v - 1);
+    }
+
+    /**
+     * Gets the oldest pinned generation.
+     *
+     * @return the oldest generation, or {@code Long.MAX_VALUE} if none is pinned.
+     */
+    public synchronized long oldest() {
+        return pins.isEmpty() ? Long.MAX_VALUE : pins.firstKey();
+    }
+}
@@ -0,0 +1,41 @@
+package org.xenei.rdfstore.txn;
+
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.query.TxnType;
+
+/**
+ * The state of the transaction of one thread on a {@link TxnExecutor}.
+ * <p>
+ * All the per thread state of a transaction is kept in one object so that it
+ * is found with a single lookup. The fields are only read and written by the
+ * thread that owns the transaction.
+ * </p>
+ */
+final class TxnContext {
+    /**
+     * The mode of the transaction, {@code null} once the transaction has
+     * finished.
+     */
+    ReadWrite mode;
+    /**
+     * The type of the transaction, only set by {@link TxnController}.
+     */
+    TxnType type;
+    /**
+     * The generation the transaction started at, only set by
+     * {@link TxnController}.
+     */
+    long version;
+    /**
+     * The start time of the transaction, only set when a listener is active.
+     */
+    long startTime;
+    /**
+     * The committed state the component pinned for the transaction.
+     */
+    Object snapshot;
+
+    TxnContext(ReadWrite mode) {
+        this.mode = mode;
+    }
+}
@@ -1,6 +1,5 @@
 package org.xenei.rdfstore.txn;
 
-import static java.lang.ThreadLocal.withInitial;
 import static org.apache.jena.query.ReadWrite.WRITE;
 
 import java.util.concurrent.atomic.AtomicLong;
@@ -21,9 +20,6 @@ public class TxnController extends TxnExecutor implements Transactional {
      * Dataset version. A write transaction increments this in commit.
      */
     private final AtomicLong generation = new AtomicLong(0);
-    private final ThreadLocal<Long> version = withInitial(() -> 0L);
-
-    private final ThreadLocal<TxnType> transactionType = withInitial(() -> null);
 
     /**
      * Transaction lifecycle operations must be atomic, especially
@@ -43,29 +39,60 @@ public class TxnController extends TxnExecutor implements Transactional {
     private final TxnExec endF;
 
     public TxnController(TxnId txnId, Consumer<ReadWrite> prepareBegin, TxnExec commitF, TxnExec abortF, TxnExec endF) {
+        this(txnId, prepareBegin, () -> {
+        }, commitF, abortF, endF);
+    }
+
+    /**
+     * Constructor.
+     * <p>
+     * Readers begin and end in the system lock so the commit function, which also
+     * runs in the lock, should only publish the changes. Slow work that must
+     * complete before the changes are published, such as forcing a log to disk,
+     * belongs in the prepare commit function which runs before the lock is taken
+     * so that readers do not wait for it.
+     * </p>
+     *
+     * @param txnId the transaction id.
+     * @param prepareBegin called when a transaction begins.
+     * @param prepareCommit called when a write transaction commits, before the
+     * system lock is taken.
+     * @param commitF called in the system lock when a write transaction commits.
+     * @param abortF called when a write transaction aborts.
+     * @param endF called when a read transaction ends.
+     */
+    public TxnController(TxnId txnId, Consumer<ReadWrite> prepareBegin, TxnExec prepareCommit, TxnExec commitF,
+            TxnExec abortF, TxnExec endF) {
         super(txnId);
         this.prepareBegin = prepareBegin;
-        this.commitF = execInLock(commitF.andThen(() -> {
+        this.commitF = prepareCommit.andThen(execInLock(commitF.andThen(() -> {
             if (transactionMode().equals(WRITE)) {
-                if (version.get() != generation.get()) {
+                long version = context().version;
+                if (version != generation.get()) {
                     throw new InternalErrorException(
-                            String.format("Version=%d, Generation=%d", version.get(), generation.get()));
+                            String.format("Version=%d, Generation=%d", version, generation.get()));
                 }
                 generation.incrementAndGet();
             }
-        }));
+        })));
         this.abortF = execInLock(abortF);
         this.endF = execInLock(endF);
-        this.finishTransaction = finishTransaction.andThen(() -> {
-            transactionType.remove();
-            version.remove();
-        });
     }
 
-    @Override
-    protected void logState(String action, ReadWrite readWrite) {
-        System.out.println(String.format("%s %s %s Txn:%s mode:%s ver:%s gen:%s", action, txnId(), readWrite,
-                isInTransaction(), transactionMode(), version.get(), generation.get()));
+    /**
+     * Gets the number of write transactions committed. Waits for a commit that is
+     * in progress so the stores are not part way through a commit when the
+     * generation is read.
+     *
+     * @return the generation of the dataset.
+     */
+    public long generation() {
+        systemLock.lock();
+        try {
+            return generation.get();
+        } finally {
+            systemLock.unlock();
+        }
     }
 
     private static void withLock(java.util.concurrent.locks.Lock lock, Runnable action) {
@@ -104,7 +131,7 @@ public class TxnController extends TxnExecutor implements Transactional {
 
     private void _promote(boolean readCommited) {
         // Outside lock.
-        if (!readCommited && version.get() != generation.get()) {
+        if (!readCommited && context().version != generation.get()) {
             // This tests for any committed writers since this transaction started.
             // This does not catch the case of a currently active writer
             // that has not gone to commit or abort yet.
@@ -115,7 +142,7 @@ public class TxnController extends TxnExecutor implements Transactional {
         // Blocking on other writers.
         enterCriticalSection(Lock.WRITE);
         // Check again now we are inside the lock.
-        if (!readCommited && version.get() != generation.get()) {
+        if (!readCommited && context().version != generation.get()) {
             // Can't promote - release the lock.
             leaveCriticalSection();
             throw new JenaTransactionException("Concurrent writer changed the dataset : can't promote");
@@ -125,7 +152,7 @@ public class TxnController extends TxnExecutor implements Transactional {
         isInTransaction(true);
         transactionMode(ReadWrite.WRITE);
         prepareBegin.accept(ReadWrite.WRITE);
-        version.set(generation.get());
+        context().version = generation.get();
     }
 
     private TxnExec execInLock(TxnExec func) {
@@ -159,15 +186,16 @@ public class TxnController extends TxnExecutor implements Transactional {
 
     @Override
     public TxnType transactionType() {
-        return transactionType.get();
+        TxnContext ctx = context();
+        return ctx == null ? null : ctx.type;
     }
 
     private class BeginConsumer implements Consumer<ReadWrite> {
         Consumer<ReadWrite> inner;
 
         BeginConsumer(TxnType type) {
-            inner = (readWrite) -> transactionType.set(type);
-            inner = inner.andThen(prepareBegin).andThen((rw) -> version.set(generation.get()));
+            inner = (readWrite) -> context().type = type;
+            inner = inner.andThen(prepareBegin).andThen((rw) -> context().version = generation.get());
         }
 
         @Override
@@ -175,7 +203,6 @@ public class TxnController extends TxnExecutor implements Transactional {
             systemLock.lock();
             try {
                 inner.accept(arg0);
-                logState("after begin", arg0);
             } finally {
                 systemLock.unlock();
             }
@@ -1,6 +1,5 @@
 package org.xenei.rdfstore.txn;
 
-import static java.lang.ThreadLocal.withInitial;
 import static org.apache.jena.query.ReadWrite.READ;
 import static org.apache.jena.query.ReadWrite.WRITE;
 
@@ -20,16 +19,16 @@ public class TxnExecutor implements TxnId {
      */
     private final Lock transactionLock = new LockMRPlusSW();
 
-    private final ThreadLocal<Boolean> isInTransaction = withInitial(() -> false);
-    private final ThreadLocal<ReadWrite> transactionMode = withInitial(() -> null);
+    /**
+     * The transaction of each thread. This is the only thread local read to find
+     * the state of a transaction, and it is read once for each call. The context
+     * found is passed to the methods that need it.
+     */
+    private final ThreadLocal<TxnContext> context = new ThreadLocal<>();
 
-    private TxnId txnId;
+    private static volatile TxnListener listener = TxnListener.NONE;
 
-    protected TxnExec finishTransaction = () -> {
-        isInTransaction.remove();
-        transactionMode.remove();
-        transactionLock.leaveCriticalSection();
-    };
+    private TxnId txnId;
 
     public TxnExecutor(TxnId txnId) {
         this.txnId = txnId;
@@ -44,114 +43,257 @@ public class TxnExecutor implements TxnId {
         return txnId.txnId();
     }
 
+    /**
+     * Gets the transaction of the current thread.
+     *
+     * @return the transaction or {@code null} if the thread is not in a
+     * transaction.
+     */
+    final TxnContext context() {
+        return context.get();
+    }
+
+    /**
+     * Finishes the transaction of the current thread and releases the lock.
+     *
+     * @param ctx the transaction.
+     */
+    private void finishTransaction(TxnContext ctx) {
+        ctx.mode = null;
+        context.remove();
+        transactionLock.leaveCriticalSection();
+    }
+
     public boolean isInTransaction() {
-        return isInTransaction.get();
+        return context() != null;
     }
 
     protected void isInTransaction(boolean state) {
-        isInTransaction.set(state);
+        if (state) {
+            if (context() == null) {
+                TxnContext ctx = new TxnContext(null);
+                context.set(ctx);
+            }
+        } else {
+            context.remove();
+        }
     }
 
     public ReadWrite transactionMode() {
-        return transactionMode.get();
+        TxnContext ctx = context();
+        return ctx == null ? null : ctx.mode;
     }
 
     protected void transactionMode(ReadWrite mode) {
-        transactionMode.set(mode);
+        TxnContext ctx = context();
+        if (ctx == null) {
+            throw new JenaTransactionException("Not in a transaction");
+        }
+        ctx.mode = mode;
+    }
+
+    /**
+     * Gets the committed state pinned for the transaction of the current thread.
+     *
+     * @param <S> the type of the state.
+     * @return the state or {@code null} if none was pinned.
+     * @see #snapshot(Object)
+     */
+    @SuppressWarnings("unchecked")
+    public <S> S snapshot() {
+        TxnContext ctx = context();
+        return ctx == null ? null : (S) ctx.snapshot;
+    }
+
+    /**
+     * Pins the committed state of a component for the transaction of the current
+     * thread. A component that publishes its committed state as immutable
+     * versions pins the current version when a read transaction begins so that
+     * the reader sees the same state until it ends, whatever the writer commits.
+     * The state is released when the transaction finishes.
+     *
+     * @param snapshot the state.
+     */
+    public void snapshot(Object snapshot) {
+        TxnContext ctx = context();
+        if (ctx == null) {
+            throw new JenaTransactionException("Not in a transaction");
+        }
+        ctx.snapshot = snapshot;
+    }
+
+    /**
+     * Sets the listener for the transaction events of all executors.
+     *
+     * @param txnListener the listener, {@code null} or {@link TxnListener#NONE}
+     * disables tracing.
+     */
+    public static void setListener(TxnListener txnListener) {
+        listener = txnListener == null ? TxnListener.NONE : txnListener;
     }
 
-    protected void logState(String action, ReadWrite readWrite) {
-        System.out.println(String.format("%s %s %s Txn:%s mode:%s", action, txnId.txnId(), readWrite,
-                isInTransaction.get(), transactionMode.get()));
+    /**
+     * Gets the listener for the transaction events of all executors.
+     *
+     * @return the listener.
+     */
+    public static TxnListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Gets the time since the transaction began.
+     *
+     * @param ctx the transaction.
+     * @return the duration of the transaction in nanoseconds, 0 if the start
+     * time was not recorded.
+     */
+    private static long duration(TxnContext ctx) {
+        return ctx.startTime == 0 ? 0 : System.nanoTime() - ctx.startTime;
     }
 
-    public void log(String str) {
-        System.out.println(String.format("%s %s ", txnId.txnId(), str));
+    private void lock(boolean readLockRequested, TxnListener txnListener) {
+        if (txnListener == TxnListener.NONE) {
+            transactionLock.enterCriticalSection(readLockRequested);
+        } else {
+            long start = System.nanoTime();
+            transactionLock.enterCriticalSection(readLockRequested);
+            txnListener.lockWait(this, readLockRequested, System.nanoTime() - start);
+        }
     }
 
     public void begin(ReadWrite readWrite, Consumer<ReadWrite> func) {
-        logState("begin", readWrite);
-        if (isInTransaction.get())
+        if (context() != null)
             throw new JenaTransactionException("Transactions cannot be nested!");
-        isInTransaction.set(true);
-        transactionLock.enterCriticalSection(readWrite.equals(READ)); // get the dataset write lock, if
-                                                                      // needed.
-        transactionMode.set(readWrite);
+        start(readWrite, func);
+    }
+
+    /**
+     * Begins a transaction for a thread that is not in one.
+     *
+     * @param readWrite the mode of the transaction.
+     * @param func called once the transaction has begun.
+     * @return the transaction.
+     */
+    private TxnContext start(ReadWrite readWrite, Consumer<ReadWrite> func) {
+        TxnListener txnListener = listener;
+        lock(readWrite.equals(READ), txnListener); // get the dataset write lock, if needed.
+        TxnContext ctx = new TxnContext(readWrite);
+        context.set(ctx);
+        if (txnListener != TxnListener.NONE) {
+            ctx.startTime = System.nanoTime();
+        }
         func.accept(readWrite);
+        if (txnListener != TxnListener.NONE) {
+            txnListener.begin(this, readWrite);
+        }
+        return ctx;
     }
 
     public void commit(TxnExec commitF, TxnExec endF) {
-        logState("commit", null);
-        if (!isInTransaction.get())
+        TxnContext ctx = context();
+        if (ctx == null)
             throw new JenaTransactionException("Tried to commit outside a transaction!");
-        if (transactionMode().equals(WRITE)) {
+        commit(ctx, commitF, endF);
+    }
+
+    private void commit(TxnContext ctx, TxnExec commitF, TxnExec endF) {
+        ReadWrite mode = ctx.mode;
+        if (mode.equals(WRITE)) {
             commitF.run();
         } else {
             endF.run();
         }
-        finishTransaction.run();
+        finishTransaction(ctx);
+        TxnListener txnListener = listener;
+        if (txnListener != TxnListener.NONE) {
+            txnListener.commit(this, mode, duration(ctx));
+        }
     }
 
     public void abort(TxnExec abortFunc, TxnExec endFunc) {
-        logState("abort", null);
-        if (!isInTransaction())
+        TxnContext ctx = context();
+        if (ctx == null)
             throw new JenaTransactionException("Tried to abort outside a transaction!");
-        if (transactionMode().equals(WRITE)) {
+        abort(ctx, abortFunc, endFunc);
+    }
+
+    private void abort(TxnContext ctx, TxnExec abortFunc, TxnExec endFunc) {
+        ReadWrite mode = ctx.mode;
+        if (mode.equals(WRITE)) {
             abortFunc.run();
         } else {
             endFunc.run();
         }
-        finishTransaction.run();
+        finishTransaction(ctx);
+        TxnListener txnListener = listener;
+        if (txnListener != TxnListener.NONE) {
+            txnListener.abort(this, mode, duration(ctx));
+        }
     }
 
     public void end(TxnExec abortFunc, TxnExec endFunc) {
-        logState("end", null);
-        if (isInTransaction()) {
-            if (transactionMode().equals(WRITE)) {
-                String msg = "end() called for WRITE transaction without commit or abort having been called. This causes a forced abort.";
-                // _abort does _end actions inside the lock.
-                abortFunc.run();
-                finishTransaction.run();
-                throw new JenaTransactionException(msg);
-            }
-            endFunc.run();
-            finishTransaction.run();
+        TxnContext ctx = context();
+        if (ctx != null) {
+            end(ctx, abortFunc, endFunc);
         }
     }
 
-    private boolean startTxnIfNeeded(ReadWrite readWrite, Consumer<ReadWrite> beginF) {
-        if (!isInTransaction()) {
-            begin(readWrite, beginF);
-            return true;
-        } else if (readWrite.equals(WRITE) && !transactionMode().equals(WRITE)) {
-            throw new JenaTransactionException("WRITE mode transaction required");
+    private void end(TxnContext ctx, TxnExec abortFunc, TxnExec endFunc) {
+        TxnListener txnListener = listener;
+        if (ctx.mode.equals(WRITE)) {
+            String msg = "end() called for WRITE transaction without commit or abort having been called. This causes a forced abort.";
+            // _abort does _end actions inside the lock.
+            abortFunc.run();
+            finishTransaction(ctx);
+            if (txnListener != TxnListener.NONE) {
+                txnListener.abort(this, WRITE, duration(ctx));
+            }
+            throw new JenaTransactionException(msg);
+        }
+        endFunc.run();
+        finishTransaction(ctx);
+        if (txnListener != TxnListener.NONE) {
+            txnListener.end(this, READ, duration(ctx));
         }
-        return false;
     }
 
     protected <T> T doInTxn(ReadWrite readWrite, Supplier<T> supplier, Consumer<ReadWrite> beginF, TxnExec commitF,
             TxnExec abortF, TxnExec endF) {
-        boolean started = startTxnIfNeeded(readWrite, beginF);
+        TxnContext ctx = context();
+        if (ctx != null) {
+            // fast path: run in the active transaction.
+            if (readWrite == WRITE && ctx.mode != WRITE) {
+                throw new JenaTransactionException("WRITE mode transaction required");
+            }
+            return supplier.get();
+        }
+        ctx = start(readWrite, beginF);
         try {
             T result = supplier.get();
-            if (started) {
-                if (readWrite.equals(WRITE)) {
-                    commit(commitF, endF);
-                } else {
-                    end(abortF, endF);
-                }
+            if (readWrite.equals(WRITE)) {
+                commit(ctx, commitF, endF);
+            } else {
+                end(ctx, abortF, endF);
             }
             return result;
         } catch (Exception e) {
-            if (started) {
-                abort(abortF, endF);
-            }
+            abort(ctx, abortF, endF);
             throw e;
         }
     }
 
     protected void doInTxn(ReadWrite readWrite, TxnExec exec, Consumer<ReadWrite> beginF, TxnExec commitF,
             TxnExec abortF, TxnExec endF) {
+        TxnContext ctx = context();
+        if (ctx != null) {
+            // fast path: run in the active transaction.
+            if (readWrite == WRITE && ctx.mode != WRITE) {
+                throw new JenaTransactionException("WRITE mode transaction required");
+            }
+            exec.run();
+            return;
+        }
         doInTxn(readWrite, () -> {
             exec.run();
             return null;
@@ -159,7 +301,7 @@ public class TxnExecutor implements TxnId {
     }
 
     public void enterCriticalSection(boolean readLockRequested) {
-        transactionLock.enterCriticalSection(readLockRequested);
+        lock(readLockRequested, listener);
     }
 
     public void leaveCriticalSection() {
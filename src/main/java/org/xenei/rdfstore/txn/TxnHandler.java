@@ -13,6 +13,18 @@ public class TxnHandler extends TxnExecutor implements TransactionalComponent {
     private final TxnExec abortF;
     private final TxnExec endF;
 
+    /**
+     * Constructor. A write transaction is finished by the commit or abort
+     * function, the end function is only called when a read transaction ends. As
+     * readers end while the writer is active the end function must not change
+     * the state of the writer.
+     *
+     * @param txnId the transaction id.
+     * @param prepareBegin called when a transaction begins.
+     * @param commitF called when the write transaction commits.
+     * @param abortF called when the write transaction aborts.
+     * @param endF called when a read transaction ends.
+     */
     public TxnHandler(TxnId txnId, Consumer<ReadWrite> prepareBegin, TxnExec commitF, TxnExec abortF, TxnExec endF) {
         super(txnId);
         this.prepareBegin = prepareBegin;
@@ -0,0 +1,70 @@
+package org.xenei.rdfstore.txn;
+
+import org.apache.jena.query.ReadWrite;
+
+/**
+ * Receives the transaction lifecycle events of every {@link TxnExecutor}.
+ * <p>
+ * The listener is set with {@link TxnExecutor#setListener(TxnListener)}. When
+ * it is {@link #NONE} the executors do not read the clock or call the
+ * listener, so tracing costs nothing when it is disabled. Listeners are
+ * called on the thread of the transaction and must be thread safe.
+ * </p>
+ */
+public interface TxnListener {
+
+    /**
+     * The listener that ignores all events.
+     */
+    TxnListener NONE = new TxnListener() {
+    };
+
+    /**
+     * Called when a transaction has entered the transaction lock.
+     *
+     * @param id the id of the executor.
+     * @param readLock true if a read lock was requested.
+     * @param waitNanos the time spent waiting for the lock.
+     */
+    default void lockWait(TxnId id, boolean readLock, long waitNanos) {
+    }
+
+    /**
+     * Called when a transaction has begun.
+     *
+     * @param id the id of the executor.
+     * @param mode the mode of the transaction.
+     */
+    default void begin(TxnId id, ReadWrite mode) {
+    }
+
+    /**
+     * Called when a transaction has been committed.
+     *
+     * @param id the id of the executor.
+     * @param mode the mode of the transaction.
+     * @param durationNanos the time since the transaction began.
+     */
+    default void commit(TxnId id, ReadWrite mode, long durationNanos) {
+    }
+
+    /**
+     * Called when a transaction has been aborted.
+     *
+     * @param id the id of the executor.
+     * @param mode the mode of the transaction.
+     * @param durationNanos the time since the transaction began.
+     */
+    default void abort(TxnId id, ReadWrite mode, long durationNanos) {
+    }
+
+    /**
+     * Called when a transaction has been ended without a commit or abort.
+     *
+     * @param id the id of the executor.
+     * @param mode the mode of the transaction.
+     * @param durationNanos the time since the transaction began.
+     */
+    default void end(TxnId id, ReadWrite mode, long durationNanos) {
+    }
+}
@@ -0,0 +1,187 @@
+package org.xenei.rdfstore.txn;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.jena.query.ReadWrite;
+
+/**
+ * A {@link TxnListener} that counts the transaction events of each executor,
+ * the transaction durations and the transaction lock waits. The metrics can
+ * be exported through JMX with {@link #register(String)}.
+ */
+public class TxnMetrics implements TxnListener, TxnMetricsMBean {
+
+    /**
+     * The number of buckets in the duration histogram.
+     */
+    public static final int BUCKETS = 32;
+
+    private static final int BEGIN = 0;
+    private static final int COMMIT = 1;
+    private static final int ABORT = 2;
+    private static final int END = 3;
+
+    private final Map<String, LongAdder[]> counters = new ConcurrentHashMap<>();
+    private final LongAdder[] totals = newCounters(4);
+    private final LongAdder[] histogram = newCounters(BUCKETS);
+    private final LongAdder lockWait = new LongAdder();
+    private final LongAdder lockCount = new LongAdder();
+    private final LongAccumulator maxLockWait = new LongAccumulator(Math::max, 0);
+
+    private static LongAdder[] newCounters(int count) {
+        LongAdder[] result = new LongAdder[count];
+        for (int i = 0; i < count; i++) {
+            result[i] = new LongAdder();
+        }
+        return result;
+    }
+
+    /**
+     * Gets the histogram bucket of a duration.
+     *
+     * @param durationNanos the duration.
+     * @return the index of the bucket.
+     */
+    static int bucket(long durationNanos) {
+        long micros = durationNanos / 1000;
+        return Math.min(BUCKETS - 1, Long.SIZE - Long.numberOfLeadingZeros(micros));
+    }
+
+    private void count(TxnId id, int event) {
+        counters.computeIfAbsent(id.txnId(), k -> newCounters(4))[event].increment();
+        totals[event].increment();
+    }
+
+    private void count(TxnId id, int event, long durationNanos) {
+        count(id, event);
+        histogram[bucket(durationNanos)].increment();
+    }
+
+    /**
+     * Registers the metrics with the platform MBean server.
+     *
+     * @param name the object name, for example
+     * {@code org.xenei.rdfstore:type=TxnMetrics}.
+     * @return the object name.
+     * @throws JMException on error.
+     */
+    public ObjectName register(String name) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        if (server.isRegistered(objectName)) {
+            server.unregisterMBean(objectName);
+        }
+        server.registerMBean(this, objectName);
+        return objectName;
+    }
+
+    @Override
+    public void lockWait(TxnId id, boolean readLock, long waitNanos) {
+        lockWait.add(waitNanos);
+        lockCount.increment();
+        maxLockWait.accumulate(waitNanos);
+    }
+
+    @Override
+    public void begin(TxnId id, ReadWrite mode) {
+        count(id, BEGIN);
+    }
+
+    @Override
+    public void commit(TxnId id, ReadWrite mode, long durationNanos) {
+        count(id, COMMIT, durationNanos);
+    }
+
+    @Override
+    public void abort(TxnId id, ReadWrite mode, long durationNanos) {
+        count(id, ABORT, durationNanos);
+    }
+
+    @Override
+    public void end(TxnId id, ReadWrite mode, long durationNanos) {
+        count(id, END, durationNanos);
+    }
+
+    @Override
+    public String[] getTxnIds() {
+        return counters.keySet().toArray(new String[0]);
+    }
+
+    @Override
+    public long[] counts(String txnId) {
+        long[] result = new long[4];
+        LongAdder[] adders = counters.get(txnId);
+        if (adders != null) {
+            for (int i = 0; i < result.length; i++) {
+                result[i] = adders[i].sum();
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public long getBegins() {
+        return totals[BEGIN].sum();
+    }
+
+    @Override
+    public long getCommits() {
+        return totals[COMMIT].sum();
+    }
+
+    @Override
+    public long getAborts() {
+        return totals[ABORT].sum();
+    }
+
+    @Override
+    public long getEnds() {
+        return totals[END].sum();
+    }
+
+    @Override
+    public long[] getDurationHistogram() {
+        long[] result = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            result[i] = histogram[i].sum();
+        }
+        return result;
+    }
+
+    @Override
+    public long getLockWaitNanos() {
+        return lockWait.sum();
+    }
+
+    @Override
+    public long getMaxLockWaitNanos() {
+        return maxLockWait.get();
+    }
+
+    @Override
+    public long getLockCount() {
+        return lockCount.sum();
+    }
+
+    @Override
+    public void reset() {
+        counters.clear();
+        for (LongAdder adder : totals) {
+            adder.reset();
+        }
+        for (LongAdder adder : histogram) {
+            adder.reset();
+        }
+        lockWait.reset();
+        lockCount.reset();
+        maxLockWait.reset();
+    }
+}
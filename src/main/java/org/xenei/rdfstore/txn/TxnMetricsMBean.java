@@ -0,0 +1,86 @@
+package org.xenei.rdfstore.txn;
+
+/**
+ * The JMX interface of {@link TxnMetrics}.
+ */
+public interface TxnMetricsMBean {
+
+    /**
+     * Gets the ids of the executors that have events.
+     *
+     * @return the executor ids.
+     */
+    String[] getTxnIds();
+
+    /**
+     * Gets the counts of the events for an executor.
+     *
+     * @param txnId the id of the executor.
+     * @return the begin, commit, abort and end counts.
+     */
+    long[] counts(String txnId);
+
+    /**
+     * Gets the number of transactions that have begun.
+     *
+     * @return the number of transactions that have begun.
+     */
+    long getBegins();
+
+    /**
+     * Gets the number of transactions that have been committed.
+     *
+     * @return the number of transactions that have been committed.
+     */
+    long getCommits();
+
+    /**
+     * Gets the number of transactions that have been aborted.
+     *
+     * @return the number of transactions that have been aborted.
+     */
+    long getAborts();
+
+    /**
+     * Gets the number of transactions that have been ended without a commit or
+     * abort.
+     *
+     * @return the number of transactions that have been ended.
+     */
+    long getEnds();
+
+    /**
+     * Gets the histogram of transaction durations. Bucket {@code i} counts the
+     * transactions that took less than {@code 2^i} microseconds and at least
+     * {@code 2^(i-1)} microseconds.
+     *
+     * @return the counts of the buckets.
+     */
+    long[] getDurationHistogram();
+
+    /**
+     * Gets the total time spent waiting for transaction locks.
+     *
+     * @return the wait time in nanoseconds.
+     */
+    long getLockWaitNanos();
+
+    /**
+     * Gets the longest time spent waiting for a transaction lock.
+     *
+     * @return the wait time in nanoseconds.
+     */
+    long getMaxLockWaitNanos();
+
+    /**
+     * Gets the number of times a transaction lock was entered.
+     *
+     * @return the number of lock entries.
+     */
+    long getLockCount();
+
+    /**
+     * Resets all the metrics.
+     */
+    void reset();
+}
@@ -0,0 +1,262 @@
+package org.xenei.rdfstore.disk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.CountDownLatch;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.ReadWrite;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.mem.ContainerBitmap;
+import org.xenei.rdfstore.mem.MemUriStore;
+import org.xenei.rdfstore.mem.QuadHashStore;
+import org.xenei.rdfstore.store.AbstractQuads;
+import org.xenei.rdfstore.store.Bitmap;
+import org.xenei.rdfstore.store.IdxData;
+
+public class DiskBitmapListTest {
+
+    private static Path tempDir() throws IOException {
+        Path dir = Files.createTempDirectory("bitmaplist");
+        dir.toFile().deleteOnExit();
+        return dir;
+    }
+
+    private static Bitmap bitmap(long... bits) {
+        Bitmap result = new ContainerBitmap();
+        for (long bit : bits) {
+            result.set(bit);
+        }
+        return result;
+    }
+
+    private static List<Long> bits(Bitmap bitmap) {
+        List<Long> result = new ArrayList<>();
+        PrimitiveIterator.OfLong iter = bitmap.iterator();
+        while (iter.hasNext()) {
+            result.add(iter.nextLong());
+        }
+        return result;
+    }
+
+    @Test
+    public void mappedBitmapTest() {
+        Bitmap bitmap = bitmap(1, 63, 64, 1000, 70000, 0xFFFFFFFFL * Bitmap.PAGE_SIZE + 5);
+        ByteBuffer buffer = ByteBuffer.allocate(MappedBitmap.byteSize(bitmap) + 3);
+        assertEquals(MappedBitmap.byteSize(bitmap), MappedBitmap.write(buffer, 3, bitmap));
+        MappedBitmap mapped = new MappedBitmap(buffer, 3);
+        assertEquals(bits(bitmap), bits(mapped));
+        assertEquals(bitmap.cardinality(), mapped.cardinality());
+        assertEquals(bitmap.getWord(1), mapped.getWord(1));
+        assertEquals(0L, mapped.getWord(2));
+        assertEquals(bitmap.ceilingKey(2), mapped.ceilingKey(2));
+        assertEquals(1L, mapped.lowest());
+        assertEquals(Arrays.asList(64L, 70000L),
+                bits(Bitmap.intersection(ContainerBitmap::new, mapped, bitmap(64, 65, 70000))));
+        assertThrows(UnsupportedOperationException.class, () -> mapped.set(2));
+    }
+
+    @Test
+    public void setGetTest() throws IOException {
+        try (DiskBitmapList lst = new DiskBitmapList(tempDir(), 1024, 0.5)) {
+            lst.set(new IdxData<>(5, bitmap(1, 2, 3)));
+            IdxData<Bitmap> added = lst.add(bitmap(100));
+            assertEquals(6, added.idx);
+            assertEquals(7, lst.size());
+            assertEquals(Arrays.asList(1L, 2L, 3L), bits(lst.get(5)));
+            assertEquals(Arrays.asList(100L), bits(lst.get(6)));
+            assertTrue(lst.get(5) instanceof MappedBitmap);
+            assertNull(lst.get(0));
+            assertNull(lst.get(10));
+            lst.remove(5);
+            assertNull(lst.get(5));
+            assertEquals(1, lst.iterator().toList().size());
+        }
+    }
+
+    @Test
+    public void abortTest() throws IOException {
+        try (DiskBitmapList lst = new DiskBitmapList(tempDir(), 1024, 0.5)) {
+            lst.set(new IdxData<>(0, bitmap(1)));
+            lst.begin(ReadWrite.WRITE);
+            lst.set(new IdxData<>(0, bitmap(2)));
+            lst.set(new IdxData<>(1, bitmap(3)));
+            assertEquals(Arrays.asList(2L), bits(lst.get(0)));
+            lst.abort();
+            lst.end();
+            assertEquals(Arrays.asList(1L), bits(lst.get(0)));
+            assertNull(lst.get(1));
+            assertEquals(1, lst.size());
+        }
+    }
+
+    @Test
+    public void reopenTest() throws IOException {
+        Path dir = tempDir();
+        try (DiskBitmapList lst = new DiskBitmapList(dir, 256, 0)) {
+            for (int i = 0; i < 50; i++) {
+                lst.add(bitmap(i, i * 1000));
+            }
+            lst.remove(10);
+        }
+        try (DiskBitmapList lst = new DiskBitmapList(dir, 256, 0)) {
+            assertEquals(50, lst.size());
+            assertNull(lst.get(10));
+            assertEquals(Arrays.asList(49L, 49000L), bits(lst.get(49)));
+            assertEquals(49, lst.iterator().toList().size());
+            lst.add(bitmap(7));
+            assertEquals(Arrays.asList(7L), bits(lst.get(50)));
+        }
+    }
+
+    @Test
+    public void compactTest() throws IOException {
+        Path dir = tempDir();
+        try (DiskBitmapList lst = new DiskBitmapList(dir, 256, 0.5)) {
+            lst.begin(ReadWrite.WRITE);
+            for (int i = 0; i < 40; i++) {
+                lst.set(new IdxData<>(i, bitmap(i)));
+            }
+            lst.commit();
+            lst.end();
+            int segments = lst.segmentCount();
+            assertTrue(segments > 1);
+            // replace most of the records so the old segments are mostly garbage.
+            lst.begin(ReadWrite.WRITE);
+            for (int i = 0; i < 40; i++) {
+                if (i % 10 != 0) {
+                    lst.set(new IdxData<>(i, bitmap(i, i + 100)));
+                }
+            }
+            lst.commit();
+            lst.end();
+            lst.compact();
+            for (int i = 0; i < 40; i++) {
+                List<Long> expected = i % 10 == 0 ? Arrays.asList((long) i) : Arrays.asList((long) i, i + 100L);
+                assertEquals(expected, bits(lst.get(i)));
+            }
+        }
+        // the compacted segments have been deleted.
+        try (DiskBitmapList lst = new DiskBitmapList(dir, 256, 0.5)) {
+            assertEquals(0, lst.compact());
+            assertEquals(40, lst.iterator().toList().size());
+            assertEquals(Arrays.asList(30L), bits(lst.get(30)));
+            assertEquals(Arrays.asList(31L, 131L), bits(lst.get(31)));
+        }
+    }
+
+    @Test
+    public void readerKeepsCompactedSegmentTest() throws Exception {
+        try (DiskBitmapList lst = new DiskBitmapList(tempDir(), 256, 0.5)) {
+            lst.begin(ReadWrite.WRITE);
+            for (int i = 0; i < 40; i++) {
+                lst.set(new IdxData<>(i, bitmap(i)));
+            }
+            lst.commit();
+            lst.end();
+            lst.begin(ReadWrite.WRITE);
+            for (int i = 0; i < 40; i++) {
+                if (i % 10 != 0) {
+                    lst.set(new IdxData<>(i, bitmap(i, i + 100)));
+                }
+            }
+            lst.commit();
+            lst.end();
+            int segments = lst.segmentCount();
+
+            CountDownLatch begun = new CountDownLatch(1);
+            CountDownLatch compacted = new CountDownLatch(1);
+            List<List<Long>> read = new ArrayList<>();
+            Thread reader = new Thread(() -> {
+                lst.begin(ReadWrite.READ);
+                try {
+                    Bitmap before = lst.get(0);
+                    begun.countDown();
+                    compacted.await();
+                    read.add(bits(before));
+                    read.add(bits(lst.get(30)));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    lst.end();
+                }
+            });
+            reader.start();
+            begun.await();
+            assertTrue(lst.compact() > 0);
+            // the reader still sees the compacted segments.
+            assertTrue(lst.segmentCount() >= segments);
+            compacted.countDown();
+            reader.join();
+            assertEquals(Arrays.asList(Arrays.asList(0L), Arrays.asList(30L)), read);
+            // the next writer deletes the segments the reader has released.
+            lst.set(new IdxData<>(40, bitmap(40)));
+            assertTrue(lst.segmentCount() < segments);
+            assertEquals(Arrays.asList(30L), bits(lst.get(30)));
+        }
+    }
+
+    @Test
+    public void quadsTest() throws IOException {
+        Node g = NodeFactory.createURI("http://example.com/g");
+        Node p = NodeFactory.createURI("http://example.com/p");
+        try (DiskQuadMaps maps = DiskQuadMaps.open(tempDir(), 4096, 0.5)) {
+            AbstractQuads quads = new AbstractQuads(new MemUriStore(), new QuadHashStore(), maps,
+                    ContainerBitmap::new);
+            for (int i = 0; i < 100; i++) {
+                quads.register(Quad.create(g, NodeFactory.createURI("http://example.com/s" + i), p,
+                        NodeFactory.createLiteral("o" + (i % 10))));
+            }
+            assertEquals(100, quads.size());
+            assertEquals(10, quads.find(Quad.create(g, Node.ANY, p, NodeFactory.createLiteral("o3")), quads::asQuad)
+                    .toList().size());
+            quads.delete(Quad.create(g, NodeFactory.createURI("http://example.com/s3"), p,
+                    NodeFactory.createLiteral("o3")));
+            assertEquals(9, quads.find(Quad.create(Node.ANY, Node.ANY, Node.ANY, NodeFactory.createLiteral("o3")),
+                    quads::asQuad).toList().size());
+            maps.compact();
+            quads.delete(Quad.create(g, NodeFactory.createURI("http://example.com/s4"), p,
+                    NodeFactory.createLiteral("o4")));
+            assertEquals(98, quads.find(Quad.create(g, Node.ANY, p, Node.ANY), quads::asQuad).toList().size());
+        }
+    }
+
+    @Test
+    public void reopenQuadsTest() throws IOException {
+        Node g = NodeFactory.createURI("http://example.com/g");
+        Node p = NodeFactory.createURI("http://example.com/p");
+        Path dir = tempDir();
+        Path checkpoint = dir.resolve("checkpoint");
+        try (DiskQuadMaps maps = DiskQuadMaps.open(dir.resolve("maps"), 4096, 0.5)) {
+            AbstractQuads quads = new AbstractQuads(new MemUriStore(), new QuadHashStore(), maps,
+                    ContainerBitmap::new);
+            for (int i = 0; i < 100; i++) {
+                quads.register(Quad.create(g, NodeFactory.createURI("http://example.com/s" + i), p,
+                        NodeFactory.createLiteral("o" + (i % 10))));
+            }
+            quads.checkpoint(checkpoint);
+        }
+        // the maps are useless without the dictionary and quad store.
+        assertThrows(IllegalStateException.class, () -> DiskQuadMaps.open(dir.resolve("maps"), 4096, 0.5));
+        try (DiskQuadMaps maps = DiskQuadMaps.rebuild(dir.resolve("maps"), 4096, 0.5)) {
+            AbstractQuads quads = new AbstractQuads(new MemUriStore(), new QuadHashStore(), maps,
+                    ContainerBitmap::new, checkpoint, null);
+            assertEquals(100, quads.size());
+            assertEquals(10, quads.find(Quad.create(g, Node.ANY, p, NodeFactory.createLiteral("o3")), quads::asQuad)
+                    .toList().size());
+        }
+    }
+}
@@ -0,0 +1,192 @@
+package org.xenei.rdfstore.disk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+import org.apache.jena.query.ReadWrite;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.AbstractLongListTest;
+import org.xenei.rdfstore.store.LongList;
+
+public class MappedLongListTest extends AbstractLongListTest {
+
+    /**
+     * Stores strings of up to 16 bytes.
+     */
+    private static final MappedLongList.Codec<String> CODEC = new MappedLongList.Codec<String>() {
+        @Override
+        public int width() {
+            return 16;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int pos, String item) {
+            byte[] bytes = item.getBytes(StandardCharsets.UTF_8);
+            for (int i = 0; i < width(); i++) {
+                buffer.put(pos + i, i < bytes.length ? bytes[i] : 0);
+            }
+        }
+
+        @Override
+        public String read(ByteBuffer buffer, int pos) {
+            byte[] bytes = new byte[width()];
+            int length = 0;
+            while (length < width() && buffer.get(pos + length) != 0) {
+                bytes[length] = buffer.get(pos + length);
+                length++;
+            }
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    };
+
+    private static Path tempFile() {
+        try {
+            Path path = Files.createTempFile("longlist", ".dat");
+            path.toFile().deleteOnExit();
+            path.resolveSibling(path.getFileName() + ".journal").toFile().deleteOnExit();
+            Files.delete(path);
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    protected Supplier<LongList<String>> getSupplier() {
+        return () -> {
+            try {
+                return new MappedLongList<String>(tempFile(), CODEC, 8);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+    }
+
+    @Test
+    public void reopenTest() throws IOException {
+        Path path = tempFile();
+        try (MappedLongList<String> lst = new MappedLongList<>(path, CODEC, 4)) {
+            for (int i = 0; i < 100; i++) {
+                lst.add("item" + i);
+            }
+            lst.remove(50);
+        }
+        // the segment size is read from the file.
+        try (MappedLongList<String> lst = new MappedLongList<>(path, CODEC)) {
+            assertEquals(100, lst.size());
+            assertEquals(99, lst.itemCount());
+            assertEquals("item0", lst.get(0));
+            assertNull(lst.get(50));
+            assertEquals("item99", lst.get(99));
+            assertEquals("item100", lst.add("item100").data);
+            assertEquals(100, lst.iterator().toList().size());
+        }
+    }
+
+    @Test
+    public void wrongWidthTest() throws IOException {
+        Path path = tempFile();
+        new MappedLongList<>(path, CODEC).close();
+        assertThrows(IOException.class, () -> new MappedLongList<>(path, MappedLongList.Codec.LONG));
+    }
+
+    @Test
+    public void readerIsolationTest() throws Exception {
+        Path path = tempFile();
+        try (MappedLongList<String> lst = new MappedLongList<>(path, CODEC, 4)) {
+            lst.add("one");
+            lst.add("two");
+            CountDownLatch begun = new CountDownLatch(1);
+            CountDownLatch committed = new CountDownLatch(1);
+            AtomicReference<Throwable> error = new AtomicReference<>();
+            Thread reader = new Thread(() -> {
+                try {
+                    lst.begin(ReadWrite.READ);
+                    begun.countDown();
+                    committed.await();
+                    assertEquals("one", lst.get(0));
+                    assertEquals("two", lst.get(1));
+                    assertNull(lst.get(2));
+                    assertEquals(2, lst.size());
+                    assertEquals(2, lst.iterator().toList().size());
+                    lst.end();
+                } catch (Throwable e) {
+                    error.set(e);
+                }
+            });
+            reader.start();
+            begun.await();
+            lst.begin(ReadWrite.WRITE);
+            lst.set(new IdxData<>(0, "uno"));
+            lst.remove(1);
+            lst.add("three");
+            lst.commit();
+            committed.countDown();
+            reader.join();
+            assertNull(error.get());
+            assertEquals("uno", lst.get(0));
+            assertNull(lst.get(1));
+            assertEquals("three", lst.get(2));
+        }
+    }
+
+    /**
+     * Writes a journal as a commit does before it changes the records.
+     */
+    private static void writeJournal(Path path, long nextIdx, long itemCount, long[] idx, long[] values)
+            throws IOException {
+        int entry = Long.BYTES + 1 + Long.BYTES;
+        int length = 3 * Long.BYTES + Integer.BYTES + idx.length * entry;
+        ByteBuffer buffer = ByteBuffer.allocate(length + Long.BYTES);
+        buffer.putLong(0x52444653544c4a31L).putInt(idx.length).putLong(nextIdx).putLong(itemCount);
+        for (int i = 0; i < idx.length; i++) {
+            buffer.putLong(idx[i]).put((byte) 1).putLong(values[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, length);
+        buffer.putLong(crc.getValue());
+        Files.write(path.resolveSibling(path.getFileName() + ".journal"), buffer.array());
+    }
+
+    @Test
+    public void journalTest() throws IOException {
+        Path path = tempFile();
+        try (MappedLongList<Long> lst = new MappedLongList<>(path, MappedLongList.Codec.LONG, 4)) {
+            lst.add(1L);
+            lst.add(2L);
+        }
+        // a crash after the journal was forced, the commit is completed on open.
+        writeJournal(path, 3, 3, new long[] { 0, 2 }, new long[] { 10, 30 });
+        try (MappedLongList<Long> lst = new MappedLongList<>(path, MappedLongList.Codec.LONG, 4)) {
+            assertEquals(3, lst.size());
+            assertEquals(3, lst.itemCount());
+            assertEquals(10L, lst.get(0));
+            assertEquals(2L, lst.get(1));
+            assertEquals(30L, lst.get(2));
+        }
+        // a crash while the journal was written, the commit is discarded.
+        writeJournal(path, 4, 4, new long[] { 3 }, new long[] { 40 });
+        Path journal = path.resolveSibling(path.getFileName() + ".journal");
+        byte[] torn = Files.readAllBytes(journal);
+        Files.write(journal, Arrays.copyOf(torn, torn.length - 3));
+        try (MappedLongList<Long> lst = new MappedLongList<>(path, MappedLongList.Codec.LONG, 4)) {
+            assertEquals(3, lst.size());
+            assertNull(lst.get(3));
+            assertEquals(0, Files.size(journal));
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package org.xenei.rdfstore.disk;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.mem.MemQuads;
+
+public class WriteAheadLogTest {
+
+    private static final Node G = NodeFactory.createURI("http://example.com/g");
+    private static final Node P = NodeFactory.createURI("http://example.com/p");
+
+    private static Path tempFile() {
+        try {
+            Path path = Files.createTempFile("wal", ".log");
+            path.toFile().deleteOnExit();
+            Files.delete(path);
+            return path;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Quad quad(int i) {
+        return Quad.create(G, NodeFactory.createURI("http://example.com/s" + i), P,
+                NodeFactory.createLiteral("o" + i, "en"));
+    }
+
+    private static List<String> replay(WriteAheadLog wal) {
+        List<String> result = new ArrayList<>();
+        wal.replay((op, quad) -> result.add(op + " " + quad));
+        return result;
+    }
+
+    @Test
+    public void replayTest() throws IOException {
+        Path path = tempFile();
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            wal.log(WriteAheadLog.Op.REGISTER, quad(1));
+            wal.log(WriteAheadLog.Op.REGISTER, quad(2));
+            wal.commit();
+            wal.published();
+            wal.awaitDurable();
+            wal.log(WriteAheadLog.Op.REGISTER, quad(3));
+            wal.abort();
+            wal.log(WriteAheadLog.Op.DELETE, quad(1));
+            wal.commit();
+            wal.published();
+            wal.awaitDurable();
+            assertEquals(2, wal.commitCount());
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            List<String> ops = replay(wal);
+            assertEquals(3, ops.size());
+            assertEquals("REGISTER " + quad(1), ops.get(0));
+            assertEquals("REGISTER " + quad(2), ops.get(1));
+            assertEquals("DELETE " + quad(1), ops.get(2));
+        }
+    }
+
+    @Test
+    public void tornFrameTest() throws IOException {
+        Path path = tempFile();
+        long size;
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            wal.log(WriteAheadLog.Op.REGISTER, quad(1));
+            wal.commit();
+            wal.awaitDurable();
+            size = wal.size();
+            wal.log(WriteAheadLog.Op.REGISTER, quad(2));
+            wal.commit();
+            wal.awaitDurable();
+        }
+        // simulate a crash part way through writing the second frame.
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 3);
+            channel.write(ByteBuffer.wrap(new byte[] { 1, 2, 3 }), channel.size());
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            assertEquals(size, wal.size());
+            assertEquals(1, replay(wal).size());
+        }
+    }
+
+    @Test
+    public void groupCommitTest() throws Exception {
+        Path path = tempFile();
+        int threads = 8;
+        int commits = 20;
+        try (WriteAheadLog wal = new WriteAheadLog(path, 5_000_000)) {
+            MemQuads quads = new MemQuads(wal);
+            List<Thread> workers = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int base = t * commits;
+                workers.add(new Thread(() -> {
+                    for (int i = 0; i < commits; i++) {
+                        quads.register(quad(base + i));
+                    }
+                }));
+            }
+            workers.forEach(Thread::start);
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            assertEquals(threads * commits, wal.commitCount());
+            assertTrue(wal.syncCount() < wal.commitCount(),
+                    () -> String.format("%s syncs for %s commits", wal.syncCount(), wal.commitCount()));
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(path)) {
+            MemQuads quads = new MemQuads(wal);
+            assertEquals(threads * commits, quads.size());
+        }
+    }
+
+    @Test
+    public void quadsTest() throws IOException {
+        Path path = tempFile();
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            MemQuads quads = new MemQuads(wal);
+            quads.begin(TxnType.WRITE);
+            for (int i = 0; i < 10; i++) {
+                quads.register(quad(i));
+            }
+            quads.commit();
+            quads.end();
+            quads.delete(quad(3));
+            // registering an existing quad is not logged.
+            quads.register(quad(4));
+            quads.begin(TxnType.WRITE);
+            quads.register(quad(100));
+            quads.abort();
+            quads.end();
+            assertEquals(2, wal.commitCount());
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            MemQuads quads = new MemQuads(wal);
+            assertEquals(9, quads.size());
+            assertEquals(0, quads.find(quad(3), quads::asQuad).toList().size());
+            assertEquals(1, quads.find(quad(4), quads::asQuad).toList().size());
+            assertEquals(0, quads.find(quad(100), quads::asQuad).toList().size());
+            assertEquals(0, wal.commitCount());
+        }
+    }
+
+    @Test
+    public void abortAfterCommitTest() throws IOException {
+        Path path = tempFile();
+        long size;
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            wal.log(WriteAheadLog.Op.REGISTER, quad(1));
+            wal.commit();
+            wal.published();
+            wal.awaitDurable();
+            size = wal.size();
+            // publishing the second transaction fails.
+            wal.log(WriteAheadLog.Op.REGISTER, quad(2));
+            wal.commit();
+            wal.abort();
+            wal.awaitDurable();
+            assertEquals(size, wal.size());
+            assertEquals(1, wal.commitCount());
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            assertEquals(1, replay(wal).size());
+        }
+    }
+
+    @Test
+    public void positionTest() throws IOException {
+        Path path = tempFile();
+        long position;
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            for (int i = 0; i < 3; i++) {
+                wal.log(WriteAheadLog.Op.REGISTER, quad(i));
+                wal.commit();
+                wal.published();
+                wal.awaitDurable();
+            }
+            wal.truncate(wal.position());
+            wal.log(WriteAheadLog.Op.REGISTER, quad(3));
+            wal.commit();
+            wal.published();
+            wal.awaitDurable();
+            position = wal.position();
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(path, 0)) {
+            assertEquals(position, wal.position());
+            List<String> ops = replay(wal);
+            assertEquals(1, ops.size());
+            assertEquals("REGISTER " + quad(3), ops.get(0));
+        }
+    }
+}
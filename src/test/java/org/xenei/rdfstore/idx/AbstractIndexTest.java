@@ -54,6 +54,23 @@ public abstract class AbstractIndexTest<T> {
         assertEquals(1 << 3, idx.get(three).firstEntry().bitmap());
     }
 
+    @Test
+    public void deleteSharedTest() {
+        Index<T> idx = supplier().get();
+
+        T one = get();
+        idx.register(one, 1);
+        idx.register(one, 2);
+
+        idx.delete(one, 1);
+        assertEquals(1 << 2, idx.get(one).firstEntry().bitmap());
+        assertEquals(1, idx.size());
+
+        idx.delete(one, 2);
+        assertTrue(idx.get(one).isEmpty());
+        assertEquals(0, idx.size());
+    }
+
     @Test
     public void getTest() {
         Index<T> idx = supplier().get();
@@ -0,0 +1,110 @@
+package org.xenei.rdfstore.jena;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Iterator;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
+import org.apache.jena.query.DatasetFactory;
+import org.apache.jena.query.QueryExecution;
+import org.apache.jena.query.QueryExecutionFactory;
+import org.apache.jena.query.QueryFactory;
+import org.apache.jena.sparql.algebra.Algebra;
+import org.apache.jena.sparql.algebra.Op;
+import org.apache.jena.sparql.algebra.op.OpExtend;
+import org.apache.jena.sparql.algebra.op.OpGroup;
+import org.apache.jena.sparql.algebra.op.OpProject;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.Test;
+
+public class DatasetTest {
+    private static final Node G = NodeFactory.createURI("http://example.com/g");
+    private static final Node S = NodeFactory.createURI("http://example.com/s");
+    private static final Node P = NodeFactory.createURI("http://example.com/p");
+    private static final Node O = NodeFactory.createLiteral("o");
+
+    @Test
+    public void defaultGraphTest() {
+        Dataset dataset = new Dataset();
+        dataset.add(Quad.defaultGraphNodeGenerated, S, P, O);
+        Iterator<Quad> iter = dataset.find(Quad.defaultGraphNodeGenerated, Node.ANY, Node.ANY, Node.ANY);
+        assertTrue(iter.hasNext());
+        assertEquals(Quad.create(Quad.defaultGraphNodeGenerated, S, P, O), iter.next());
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void namedGraphTest() {
+        Dataset dataset = new Dataset();
+        dataset.add(G, S, P, O);
+        assertTrue(dataset.contains(G, S, P, O));
+        Iterator<Quad> iter = dataset.find(G, S, Node.ANY, Node.ANY);
+        assertTrue(iter.hasNext());
+        assertEquals(Quad.create(G, S, P, O), iter.next());
+        assertFalse(iter.hasNext());
+        dataset.delete(G, S, P, O);
+        assertFalse(dataset.contains(G, S, P, O));
+    }
+
+    @Test
+    public void sizeTest() {
+        Dataset dataset = new Dataset();
+        dataset.add(Quad.defaultGraphNodeGenerated, S, P, O);
+        assertEquals(0, dataset.size());
+        dataset.add(G, S, P, O);
+        dataset.add(G, S, P, S);
+        assertEquals(1, dataset.size());
+        assertEquals(2, dataset.size(G));
+        assertEquals(3, dataset.size(null));
+        assertEquals(2, dataset.getGraph(G).size());
+        assertEquals(1, dataset.getDefaultGraph().size());
+        dataset.delete(G, S, P, O);
+        assertEquals(1, dataset.getGraph(G).size());
+    }
+
+    private static long count(Dataset dataset, String query) {
+        try (QueryExecution exec = QueryExecutionFactory.create(query, DatasetFactory.wrap(dataset))) {
+            return exec.execSelect().next().getLiteral("count").getLong();
+        }
+    }
+
+    @Test
+    public void countTest() {
+        Dataset dataset = new Dataset();
+        for (int i = 0; i < 10; i++) {
+            Node s = NodeFactory.createURI("http://example.com/s" + i);
+            dataset.add(Quad.defaultGraphNodeGenerated, s, P, O);
+            dataset.add(Quad.defaultGraphNodeGenerated, s, P, s);
+            dataset.add(G, s, P, O);
+        }
+        assertEquals(20, dataset.getDefaultGraph().size());
+        assertEquals(10, dataset.getGraph(G).size());
+        assertEquals(10, ((Graph) dataset.getGraph(G)).count(Triple.create(Node.ANY, P, O)));
+
+        String prefix = "PREFIX ex: <http://example.com/> ";
+        assertEquals(20, count(dataset, "SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?o }"));
+        assertEquals(20, count(dataset, prefix + "SELECT (COUNT(?s) AS ?count) WHERE { ?s ex:p ?o }"));
+        assertEquals(10, count(dataset, prefix + "SELECT (COUNT(?s) AS ?count) WHERE { ?s ex:p 'o' }"));
+        assertEquals(10, count(dataset, prefix + "SELECT (COUNT(*) AS ?count) WHERE { GRAPH ex:g { ?s ?p ?o } }"));
+        assertEquals(0, count(dataset, prefix + "SELECT (COUNT(*) AS ?count) WHERE { ?s ex:q ?o }"));
+        // executed by the standard executor.
+        assertEquals(10, count(dataset, "SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?s }"));
+        assertEquals(1, count(dataset, "SELECT (COUNT(DISTINCT ?p) AS ?count) WHERE { ?s ?p ?o }"));
+        assertEquals(0, count(dataset, "SELECT (COUNT(?x) AS ?count) WHERE { ?s ?p ?o }"));
+    }
+
+    @Test
+    public void countPatternTest() {
+        Op op = Algebra.compile(QueryFactory.create("SELECT (COUNT(*) AS ?count) WHERE { ?s ?p 'o' }"));
+        OpGroup group = (OpGroup) ((OpExtend) ((OpProject) op).getSubOp()).getSubOp();
+        assertEquals(Triple.create(Node.ANY, Node.ANY, O), OpExecutorCount.countPattern(group));
+        op = Algebra.compile(QueryFactory.create("SELECT (COUNT(*) AS ?count) WHERE { ?s ?p ?o } GROUP BY ?p"));
+        group = (OpGroup) ((OpExtend) ((OpProject) op).getSubOp()).getSubOp();
+        assertNull(OpExecutorCount.countPattern(group));
+    }
+}
@@ -4,6 +4,9 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.graph.Triple;
 import org.apache.jena.rdf.model.Model;
 import org.apache.jena.rdf.model.ModelFactory;
 import org.apache.jena.rdf.model.Resource;
@@ -41,4 +44,27 @@ public class GraphTest {
         System.out.println("done");
     }
 
+    @Test
+    public void distinctTriplesTest() {
+        Graph g = new org.xenei.rdfstore.jena.Graph();
+        Node p = NodeFactory.createURI("http://example.com/p");
+        g.add(Triple.create(NodeFactory.createURI("http://example.com/s1"), p, NodeFactory.createLiteral("one")));
+        g.add(Triple.create(NodeFactory.createURI("http://example.com/s2"), p, NodeFactory.createLiteral("two")));
+        assertEquals(2, g.size());
+    }
+
+    @Test
+    public void sharedNodeTest() {
+        Graph g = new org.xenei.rdfstore.jena.Graph();
+        Node p = NodeFactory.createURI("http://example.com/p");
+        Triple one = Triple.create(NodeFactory.createURI("http://example.com/s1"), p, NodeFactory.createLiteral("one"));
+        Triple two = Triple.create(NodeFactory.createURI("http://example.com/s2"), p, NodeFactory.createLiteral("two"));
+        g.add(one);
+        g.add(two);
+        assertEquals(2, g.find(Node.ANY, p, Node.ANY).toList().size());
+        g.delete(one);
+        assertEquals(1, g.find(Node.ANY, p, Node.ANY).toList().size());
+        assertTrue(g.contains(two));
+    }
+
 }
@@ -0,0 +1,54 @@
+package org.xenei.rdfstore.mem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import org.apache.jena.query.ReadWrite;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.AbstractLongListTest;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.LongList;
+
+public class ChunkedLongListTest extends AbstractLongListTest {
+
+    @Override
+    protected Supplier<LongList<String>> getSupplier() {
+        return () -> new ChunkedLongList<String>();
+    }
+
+    @Test
+    public void sparseTrieTest() throws Exception {
+        ChunkedLongList<String> lst = new ChunkedLongList<>();
+        List<Long> indexes = Arrays.asList(3L, 64L, 4095L, 1L << 20, ChunkedLongList.MAX_ITEM_INDEX);
+        for (long idx : indexes) {
+            lst.set(new IdxData<>(idx, "v" + idx));
+        }
+        assertEquals(5, lst.itemCount());
+        assertEquals(indexes, lst.iterator().mapWith(data -> data.idx).toList());
+        assertEquals("v" + (1L << 20), lst.get(1L << 20));
+        assertNull(lst.get((1L << 20) + 1));
+
+        lst.begin(ReadWrite.WRITE);
+        lst.remove(64);
+        lst.set(new IdxData<>(65, "new"));
+        // a reader sees the committed list while the writer changes it.
+        assertEquals("v64", CompletableFuture.supplyAsync(() -> lst.get(64)).get());
+        assertNull(lst.get(64));
+        lst.commit();
+        lst.end();
+
+        assertNull(lst.get(64));
+        assertEquals("new", lst.get(65));
+        assertEquals(5, lst.itemCount());
+        for (long idx : indexes) {
+            lst.remove(idx);
+        }
+        assertEquals(Arrays.asList(65L), lst.iterator().mapWith(data -> data.idx).toList());
+        assertEquals(1, lst.itemCount());
+    }
+}
@@ -0,0 +1,123 @@
+package org.xenei.rdfstore.mem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.PrimitiveIterator;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.AbstractBitmapTest;
+import org.xenei.rdfstore.store.Bitmap;
+
+public class ContainerBitmapTest extends AbstractBitmapTest {
+
+    @Override
+    protected Supplier<Bitmap> getSupplier() {
+        return () -> new ContainerBitmap();
+    }
+
+    private void assertSequence(Bitmap bitmap, long start, long end, long step) {
+        PrimitiveIterator.OfLong iter = bitmap.iterator();
+        for (long l = start; l < end; l += step) {
+            assertTrue(iter.hasNext());
+            assertEquals(l, iter.nextLong());
+        }
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void denseRunTest() {
+        Bitmap bitmap = getSupplier().get();
+        // spans more than one container and is converted to runs.
+        for (long l = 0; l < 70000; l++) {
+            bitmap.set(l);
+        }
+        assertSequence(bitmap, 0, 70000, 1);
+        assertEquals((70000 + 63) / 64, bitmap.pageCount());
+        assertEquals(-1L, bitmap.get(0).bitmap());
+
+        bitmap.clear(100);
+        assertFalse(bitmap.contains(100));
+        assertTrue(bitmap.contains(99));
+        assertTrue(bitmap.contains(101));
+        assertEquals(~(1L << (100 - 64)), bitmap.get(1).bitmap());
+    }
+
+    @Test
+    public void denseBitsetTest() {
+        Bitmap bitmap = getSupplier().get();
+        // every other bit, too many runs for a run container.
+        for (long l = 0; l < 20000; l += 2) {
+            bitmap.set(l);
+        }
+        assertSequence(bitmap, 0, 20000, 2);
+        assertEquals(0x5555555555555555L, bitmap.get(0).bitmap());
+
+        // back down to an array
+        for (long l = 0; l < 20000; l += 4) {
+            bitmap.clear(l);
+        }
+        assertSequence(bitmap, 2, 20000, 4);
+        assertEquals(0x4444444444444444L, bitmap.get(0).bitmap());
+    }
+
+    @Test
+    public void putTest() {
+        Bitmap bitmap = getSupplier().get();
+        for (long l = 0; l < 10000; l++) {
+            bitmap.set(l);
+        }
+        bitmap.put(1, new Bitmap.Entry(1, 0xFL));
+        assertEquals(0xFL, bitmap.get(1).bitmap());
+        assertTrue(bitmap.contains(64 + 3));
+        assertFalse(bitmap.contains(64 + 4));
+        assertTrue(bitmap.contains(128));
+        bitmap.remove(0);
+        assertEquals(64, bitmap.lowest());
+    }
+
+    @Test
+    public void runOptimizeTest() {
+        ContainerBitmap bitmap = new ContainerBitmap();
+        for (long l = 0; l < 3000; l++) {
+            bitmap.set(l);
+        }
+        bitmap.runOptimize();
+        assertSequence(bitmap, 0, 3000, 1);
+        bitmap.set(5000);
+        assertTrue(bitmap.contains(5000));
+        assertFalse(bitmap.contains(4999));
+    }
+
+    @Test
+    public void copySharedContainersTest() {
+        ContainerBitmap bitmap = new ContainerBitmap();
+        // an array, a bitset and a run container.
+        bitmap.set(7);
+        for (long l = 0; l < 65536; l += 2) {
+            bitmap.set(65536 + l);
+        }
+        for (long l = 0; l < 3000; l++) {
+            bitmap.set(2 * 65536 + l);
+        }
+        bitmap.runOptimize();
+        long cardinality = bitmap.cardinality();
+
+        Bitmap copy = bitmap.copy(ContainerBitmap::new);
+        copy.clear(7);
+        copy.set(65536 + 1);
+        copy.clear(2 * 65536 + 10);
+        assertTrue(bitmap.contains(7));
+        assertFalse(bitmap.contains(65536 + 1));
+        assertTrue(bitmap.contains(2 * 65536 + 10));
+        assertEquals(cardinality, bitmap.cardinality());
+        assertEquals(cardinality - 1, copy.cardinality());
+
+        // the original is also protected from the copy.
+        bitmap.set(8);
+        assertFalse(copy.contains(8));
+        assertFalse(copy.contains(7));
+    }
+}
@@ -0,0 +1,39 @@
+package org.xenei.rdfstore.mem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.AbstractLongListTest;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.LongList;
+
+public class MemLongListTest extends AbstractLongListTest {
+
+    @Override
+    protected Supplier<LongList<String>> getSupplier() {
+        return () -> new MemLongList<String>();
+    }
+
+    @Test
+    public void setReplacesTest() {
+        MemLongList<String> list = new MemLongList<>();
+        list.add("a");
+        list.add("b");
+        list.set(new IdxData<>(1, "B"));
+        assertEquals("B", list.get(1));
+    }
+
+    @Test
+    public void removeDoesNotReuseIdTest() {
+        MemLongList<String> list = new MemLongList<>();
+        list.add("a");
+        list.add("b");
+        list.add("c");
+        list.remove(0);
+        assertEquals(3, list.add("d").idx);
+        assertEquals("c", list.get(2));
+        assertEquals("d", list.get(3));
+    }
+}
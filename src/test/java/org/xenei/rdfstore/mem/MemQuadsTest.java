@@ -0,0 +1,309 @@
+package org.xenei.rdfstore.mem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.core.Quad;
+import org.apache.jena.util.iterator.ExtendedIterator;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.disk.WriteAheadLog;
+import org.xenei.rdfstore.store.Quads.QuadCursor;
+
+public class MemQuadsTest {
+
+    private static final Node G1 = NodeFactory.createURI("http://example.com/g1");
+    private static final Node G2 = NodeFactory.createURI("http://example.com/g2");
+    private static final Node TYPE = NodeFactory.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type");
+    private static final Node NAME = NodeFactory.createURI("http://example.com/name");
+    private static final Node THING = NodeFactory.createURI("http://example.com/Thing");
+
+    private MemQuads quads;
+    private List<Quad> data;
+
+    private static Node subject(int i) {
+        return NodeFactory.createURI("http://example.com/s" + i);
+    }
+
+    @BeforeEach
+    public void setup() {
+        quads = new MemQuads();
+        data = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Node g = i % 2 == 0 ? G1 : G2;
+            data.add(Quad.create(g, subject(i), TYPE, THING));
+            data.add(Quad.create(g, subject(i), NAME, NodeFactory.createLiteral("name" + i)));
+        }
+        data.forEach(quads::register);
+    }
+
+    private static boolean matches(Quad pattern, Quad quad) {
+        return quad.matches(pattern.getGraph(), pattern.getSubject(), pattern.getPredicate(), pattern.getObject());
+    }
+
+    private long expected(Quad pattern) {
+        return data.stream().filter(q -> matches(pattern, q)).count();
+    }
+
+    private void assertFind(Quad pattern) {
+        List<Quad> found = quads.find(pattern, quads::asQuad).toList();
+        assertEquals(expected(pattern), found.size(), () -> pattern.toString());
+        found.forEach(q -> assertTrue(matches(pattern, q), () -> q + " does not match " + pattern));
+
+        QuadCursor cursor = quads.cursor(pattern);
+        int count = 0;
+        while (cursor.advance()) {
+            count++;
+            Quad q = quads.asQuad(cursor);
+            assertTrue(matches(pattern, q), () -> q + " does not match " + pattern);
+            assertEquals(q, quads.asQuad(quads.getIdxQuad(cursor.id())));
+        }
+        assertEquals(found.size(), count, () -> pattern.toString());
+    }
+
+    private void assertGraphSizes() {
+        assertEquals(expected(Quad.create(G1, Node.ANY, Node.ANY, Node.ANY)), quads.size(G1));
+        assertEquals(expected(Quad.create(G2, Node.ANY, Node.ANY, Node.ANY)), quads.size(G2));
+        assertEquals(data.size(), quads.size(null));
+    }
+
+    @Test
+    public void findTest() {
+        assertFind(Quad.create(G1, Node.ANY, Node.ANY, Node.ANY));
+        assertFind(Quad.create(G1, subject(4), Node.ANY, Node.ANY));
+        assertFind(Quad.create(G1, subject(5), Node.ANY, Node.ANY));
+        assertFind(Quad.create(G2, Node.ANY, TYPE, THING));
+        assertFind(Quad.create(Node.ANY, subject(7), TYPE, Node.ANY));
+        assertFind(Quad.create(Node.ANY, Node.ANY, NAME, NodeFactory.createLiteral("name9")));
+        assertFind(Quad.create(Node.ANY, Node.ANY, TYPE, NodeFactory.createLiteral("name9")));
+        assertFind(Quad.create(Node.ANY, subject(500), Node.ANY, Node.ANY));
+    }
+
+    @Test
+    public void probeTest() {
+        // always probe
+        quads.setProbeRatio(1.0);
+        findTest();
+        // never probe
+        quads.setProbeRatio(Double.POSITIVE_INFINITY);
+        findTest();
+    }
+
+    @Test
+    public void countTest() {
+        quads.setProbeRatio(1.0);
+        Quad[] patterns = { Quad.create(Node.ANY, Node.ANY, Node.ANY, Node.ANY),
+                Quad.create(G1, Node.ANY, Node.ANY, Node.ANY), Quad.create(G2, Node.ANY, TYPE, THING),
+                Quad.create(Node.ANY, subject(7), TYPE, Node.ANY),
+                Quad.create(Node.ANY, Node.ANY, TYPE, NodeFactory.createLiteral("name9")),
+                Quad.create(Node.ANY, subject(500), Node.ANY, Node.ANY) };
+        for (Quad pattern : patterns) {
+            assertEquals(expected(pattern), quads.count(pattern), () -> pattern.toString());
+        }
+        quads.delete(data.remove(4));
+        for (Quad pattern : patterns) {
+            assertEquals(expected(pattern), quads.count(pattern), () -> pattern.toString());
+        }
+    }
+
+    @Test
+    public void graphSizeTest() {
+        assertGraphSizes();
+        quads.delete(data.remove(0));
+        quads.delete(Quad.create(G1, subject(1000), TYPE, THING));
+        assertGraphSizes();
+        assertEquals(0, quads.size(NodeFactory.createURI("http://example.com/g3")));
+
+        quads.begin(TxnType.WRITE);
+        quads.register(Quad.create(G1, subject(1000), TYPE, THING));
+        assertEquals(expected(Quad.create(G1, Node.ANY, Node.ANY, Node.ANY)) + 1, quads.size(G1));
+        quads.abort();
+        quads.end();
+        assertGraphSizes();
+
+        quads.register(Quad.create(Quad.defaultGraphNodeGenerated, subject(1000), TYPE, THING));
+        assertEquals(1, quads.size(Quad.defaultGraphNodeGenerated));
+        assertEquals(1, quads.count(Quad.create(Quad.defaultGraphNodeGenerated, Node.ANY, Node.ANY, Node.ANY)));
+        assertEquals(data.size() + 1, quads.size(Node.ANY));
+    }
+
+    @Test
+    public void closeTest() {
+        quads.setProbeRatio(Double.POSITIVE_INFINITY);
+        ExtendedIterator<Quad> iter = quads.find(Quad.create(G1, Node.ANY, TYPE, THING), quads::asQuad);
+        assertTrue(iter.hasNext());
+        iter.next();
+        iter.close();
+        assertFalse(iter.hasNext());
+    }
+
+    @Test
+    public void deleteTest() {
+        Quad quad = Quad.create(G1, subject(4), TYPE, THING);
+        quads.delete(quad);
+        data.remove(quad);
+        assertFind(Quad.create(G1, subject(4), Node.ANY, Node.ANY));
+        assertFind(Quad.create(Node.ANY, Node.ANY, TYPE, THING));
+        assertEquals(data.size(), quads.size());
+    }
+
+    @Test
+    public void duplicateTest() {
+        long size = quads.size();
+        assertEquals(quads.register(data.get(3)), quads.register(data.get(3)));
+        assertEquals(size, quads.size());
+    }
+
+    @Test
+    public void checkpointTest() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        dir.toFile().deleteOnExit();
+        Path checkpoint = dir.resolve("quads.ckpt");
+        // leave gaps in the node and quad ids.
+        for (int i = 0; i < 10; i++) {
+            Quad quad = data.get(i * 7);
+            quads.delete(quad);
+            data.remove(quad);
+        }
+        quads.checkpoint(checkpoint);
+        assertTrue(Files.exists(checkpoint));
+
+        quads = new MemQuads(checkpoint, null);
+        assertEquals(data.size(), quads.size());
+        assertGraphSizes();
+        findTest();
+        Quad quad = Quad.create(G2, subject(1000), TYPE, THING);
+        quads.register(quad);
+        data.add(quad);
+        assertFind(Quad.create(Node.ANY, Node.ANY, TYPE, THING));
+    }
+
+    @Test
+    public void checkpointLogTest() throws IOException {
+        Path dir = Files.createTempDirectory("checkpoint");
+        dir.toFile().deleteOnExit();
+        Path checkpoint = dir.resolve("quads.ckpt");
+        Path log = dir.resolve("quads.log");
+        try (WriteAheadLog wal = new WriteAheadLog(log, 0)) {
+            quads = new MemQuads(checkpoint, wal);
+            data.forEach(quads::register);
+            long logSize = wal.size();
+            quads.checkpoint(checkpoint);
+            assertTrue(wal.size() < logSize);
+            for (int i = 0; i < 5; i++) {
+                Quad quad = Quad.create(G1, subject(1000 + i), TYPE, THING);
+                quads.register(quad);
+                data.add(quad);
+            }
+            quads.delete(data.get(0));
+            data.remove(0);
+        }
+        try (WriteAheadLog wal = new WriteAheadLog(log, 0)) {
+            quads = new MemQuads(checkpoint, wal);
+            assertEquals(data.size(), quads.size());
+            assertGraphSizes();
+            findTest();
+            assertFind(Quad.create(G1, Node.ANY, TYPE, THING));
+        }
+    }
+
+    @Test
+    public void snapshotTest() throws InterruptedException {
+        Quad g1 = Quad.create(G1, Node.ANY, Node.ANY, Node.ANY);
+        Quad things = Quad.create(Node.ANY, Node.ANY, TYPE, THING);
+        CountDownLatch pinned = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                quads.begin(TxnType.READ);
+                pinned.countDown();
+                committed.await();
+                // the reader sees the version committed when it began.
+                assertEquals(data.size(), quads.size());
+                assertEquals(expected(things), quads.find(things, quads::asQuad).toList().size());
+                assertEquals(expected(g1), quads.find(g1, quads::asQuad).toList().size());
+                assertEquals(expected(g1), quads.size(G1));
+                quads.end();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        reader.start();
+        pinned.await();
+        quads.begin(TxnType.WRITE);
+        for (int i = 0; i < 50; i++) {
+            quads.delete(data.get(2 * i));
+            quads.register(Quad.create(G1, subject(1000 + i), TYPE, THING));
+        }
+        quads.register(Quad.create(G2, subject(2000), NAME, NodeFactory.createLiteral("new", "en")));
+        quads.commit();
+        quads.end();
+        committed.countDown();
+        reader.join();
+        assertNull(error.get());
+        // a new reader sees the commit.
+        assertEquals(data.size() + 1, quads.size());
+        assertEquals(expected(things), quads.find(things, quads::asQuad).toList().size());
+        assertEquals(expected(g1) + 25, quads.find(g1, quads::asQuad).toList().size());
+        assertEquals(expected(g1) + 25, quads.size(G1));
+    }
+
+    @Test
+    public void concurrentWriterTest() throws InterruptedException {
+        Quad g1 = Quad.create(G1, Node.ANY, Node.ANY, Node.ANY);
+        Quad things = Quad.create(Node.ANY, Node.ANY, TYPE, THING);
+        ExtendedIterator<Quad> g1Iter = quads.find(g1, quads::asQuad);
+        ExtendedIterator<Quad> thingsIter = quads.find(things, quads::asQuad);
+        QuadCursor g1Cursor = quads.cursor(g1);
+        QuadCursor thingsCursor = quads.cursor(things);
+
+        // the writer deletes the quads and registers quads that do not match
+        // the patterns, which reuse the ids of the deleted quads.
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                quads.begin(TxnType.WRITE);
+                for (int i = 0; i < 100; i++) {
+                    quads.delete(data.get(4 * i));
+                    quads.delete(data.get(4 * i + 1));
+                }
+                quads.commit();
+                quads.begin(TxnType.WRITE);
+                for (int i = 0; i < 200; i++) {
+                    quads.register(Quad.create(G2, subject(1000 + i), NAME, NodeFactory.createLiteral("new" + i)));
+                }
+                quads.commit();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        writer.start();
+        writer.join();
+        assertNull(error.get());
+
+        g1Iter.forEachRemaining(q -> assertTrue(matches(g1, q), () -> q + " does not match " + g1));
+        thingsIter.forEachRemaining(q -> assertTrue(matches(things, q), () -> q + " does not match " + things));
+        while (g1Cursor.advance()) {
+            Quad q = quads.asQuad(g1Cursor);
+            assertTrue(matches(g1, q), () -> q + " does not match " + g1);
+        }
+        while (thingsCursor.advance()) {
+            Quad q = quads.asQuad(thingsCursor);
+            assertTrue(matches(things, q), () -> q + " does not match " + things);
+        }
+    }
+}
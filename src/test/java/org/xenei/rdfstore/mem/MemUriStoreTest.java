@@ -0,0 +1,73 @@
+package org.xenei.rdfstore.mem;
+
+import static org.apache.jena.query.ReadWrite.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.NodeCache;
+import org.xenei.rdfstore.store.Store;
+
+public class MemUriStoreTest {
+
+    @Test
+    public void nodeCacheTest() {
+        MemUriStore uris = new MemUriStore();
+        NodeCache cache = uris.getNodeCache();
+        Node n = NodeFactory.createURI("http://example.com/a");
+        long id = uris.register(n);
+
+        assertEquals(n, uris.get(id));
+        assertEquals(0, cache.hits());
+        assertEquals(n, uris.get(id));
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    public void abortedNodeNotCachedTest() {
+        MemUriStore uris = new MemUriStore();
+        Node a = NodeFactory.createURI("http://example.com/a");
+        Node b = NodeFactory.createURI("http://example.com/b");
+        uris.begin(WRITE);
+        long id = uris.register(a);
+        assertEquals(a, uris.get(id));
+        uris.abort();
+
+        long id2 = uris.register(b);
+        assertEquals(id, id2);
+        assertEquals(b, uris.get(id2));
+        assertEquals(b, uris.get(id2));
+    }
+
+    @Test
+    public void deletedNodeInvalidatedTest() {
+        MemUriStore uris = new MemUriStore();
+        NodeCache cache = uris.getNodeCache();
+        Node a = NodeFactory.createURI("http://example.com/a");
+        long id = uris.register(a);
+        assertEquals(a, uris.get(id));
+        assertEquals(a, uris.get(id));
+        assertEquals(1, cache.hits());
+
+        assertEquals(id, uris.delete(a));
+        assertEquals(Store.NO_INDEX, uris.delete(a));
+        assertNull(cache.get(id));
+        assertEquals(Store.NO_INDEX, uris.get(a));
+    }
+
+    @Test
+    public void abortedDeleteTest() {
+        MemUriStore uris = new MemUriStore();
+        Node a = NodeFactory.createURI("http://example.com/a");
+        long id = uris.register(a);
+        assertEquals(a, uris.get(id));
+        uris.begin(WRITE);
+        uris.delete(a);
+        uris.abort();
+
+        assertEquals(a, uris.get(id));
+        assertEquals(id, uris.get(a));
+    }
+}
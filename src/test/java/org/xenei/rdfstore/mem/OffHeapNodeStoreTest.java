@@ -0,0 +1,90 @@
+package org.xenei.rdfstore.mem;
+
+import static org.apache.jena.query.ReadWrite.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.jena.datatypes.xsd.XSDDatatype;
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.sparql.core.Var;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.Store;
+
+public class OffHeapNodeStoreTest {
+
+    private static final List<Node> NODES = Arrays.asList(NodeFactory.createURI("http://example.com/a"),
+            NodeFactory.createBlankNode("b0"), NodeFactory.createLiteral("plain"),
+            NodeFactory.createLiteral("chat", "fr"), NodeFactory.createLiteral("1", XSDDatatype.XSDint),
+            NodeFactory.createLiteral("1"), NodeFactory.createLiteral("\u00e9t\u00e9 \u2603", "fr"),
+            Var.alloc("x"));
+
+    @Test
+    public void roundTripTest() {
+        OffHeapNodeStore store = new OffHeapNodeStore();
+        for (int i = 0; i < NODES.size(); i++) {
+            Store.Result result = store.register(NODES.get(i));
+            assertFalse(result.existed, NODES.get(i).toString());
+            assertEquals(i, result.index);
+        }
+        assertEquals(NODES.size(), store.size());
+        for (int i = 0; i < NODES.size(); i++) {
+            assertEquals(NODES.get(i), store.get(i));
+            assertEquals(i, store.get(NODES.get(i)));
+            assertTrue(store.register(NODES.get(i)).existed);
+        }
+    }
+
+    @Test
+    public void typedLiteralsAreDistinctTest() {
+        OffHeapNodeStore store = new OffHeapNodeStore();
+        long plain = store.register(NodeFactory.createLiteral("1")).index;
+        long typed = store.register(NodeFactory.createLiteral("1", XSDDatatype.XSDint)).index;
+        assertNotEquals(plain, typed);
+    }
+
+    @Test
+    public void arenaTest() {
+        OffHeapNodeStore store = new OffHeapNodeStore(64);
+        StringBuilder sb = new StringBuilder("http://example.com/");
+        for (int i = 0; i < 100; i++) {
+            sb.append('x');
+        }
+        Node big = NodeFactory.createURI(sb.toString());
+        for (int i = 0; i < 500; i++) {
+            store.register(NodeFactory.createURI("http://example.com/" + i));
+        }
+        long idx = store.register(big).index;
+        assertEquals(big, store.get(idx));
+        for (int i = 0; i < 500; i++) {
+            assertEquals(i, store.get(NodeFactory.createURI("http://example.com/" + i)));
+        }
+        assertTrue(store.arenaBytes() > 64 * 100);
+    }
+
+    @Test
+    public void deleteAndAbortTest() {
+        OffHeapNodeStore store = new OffHeapNodeStore();
+        Node a = NODES.get(0);
+        Node b = NODES.get(1);
+        store.register(a);
+        store.begin(WRITE);
+        store.register(b);
+        assertTrue(store.delete(a).existed);
+        assertFalse(store.contains(a));
+        store.abort();
+        assertTrue(store.contains(a));
+        assertFalse(store.contains(b));
+
+        store.delete(a);
+        assertFalse(store.contains(a));
+        assertNull(store.get(0));
+        assertEquals(0, store.size());
+    }
+}
@@ -0,0 +1,172 @@
+package org.xenei.rdfstore.mem;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.Idx;
+import org.xenei.rdfstore.store.Store;
+
+public class QuadHashStoreTest {
+
+    private static ByteBuffer quad(long g, long s, long p, long o) {
+        ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES * 4);
+        buffer.putLong(g).putLong(s).putLong(p).putLong(o).flip();
+        return buffer;
+    }
+
+    @Test
+    public void registerTest() {
+        QuadHashStore store = new QuadHashStore();
+        for (int i = 0; i < 5000; i++) {
+            Store.Result result = store.register(quad(1, i, 2, i * 3));
+            assertFalse(result.existed);
+            assertEquals(i, result.index);
+        }
+        assertEquals(5000, store.size());
+        for (int i = 0; i < 5000; i++) {
+            ByteBuffer q = quad(1, i, 2, i * 3);
+            assertTrue(store.register(q).existed);
+            assertEquals(i, store.get(q));
+            assertEquals(q, store.get(i));
+            assertEquals(i * 3, store.get(i, Idx.O));
+        }
+        assertEquals(Store.NO_INDEX, store.get(quad(1, 1, 2, 4)));
+    }
+
+    @Test
+    public void deleteTest() {
+        QuadHashStore store = new QuadHashStore();
+        for (int i = 0; i < 100; i++) {
+            store.register(quad(0, i, i, i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            Store.Result result = store.delete(quad(0, i, i, i));
+            assertTrue(result.existed);
+            assertEquals(i, result.index);
+        }
+        assertFalse(store.delete(quad(0, 0, 0, 0)).existed);
+        assertEquals(50, store.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i % 2 == 1, store.contains(quad(0, i, i, i)));
+            assertEquals(i % 2 == 1, store.contains(i));
+        }
+        // deleted ids are reused
+        long idx = store.register(quad(9, 9, 9, 9)).index;
+        assertEquals(0, idx % 2);
+        assertEquals(51, store.size());
+    }
+
+    @Test
+    public void abortTest() {
+        QuadHashStore store = new QuadHashStore();
+        store.register(quad(1, 1, 1, 1));
+        store.begin(WRITE);
+        store.register(quad(2, 2, 2, 2));
+        store.delete(quad(1, 1, 1, 1));
+        assertFalse(store.contains(quad(1, 1, 1, 1)));
+        assertTrue(store.contains(quad(2, 2, 2, 2)));
+        assertEquals(1, store.size());
+        store.abort();
+
+        assertTrue(store.contains(quad(1, 1, 1, 1)));
+        assertFalse(store.contains(quad(2, 2, 2, 2)));
+        assertEquals(1, store.size());
+    }
+
+    @Test
+    public void deleteAndRegisterTest() {
+        QuadHashStore store = new QuadHashStore();
+        store.register(quad(1, 1, 1, 1));
+        store.begin(WRITE);
+        store.delete(quad(1, 1, 1, 1));
+        Store.Result result = store.register(quad(1, 1, 1, 1));
+        assertFalse(result.existed);
+        assertEquals(0, result.index);
+        store.commit();
+        assertTrue(store.contains(quad(1, 1, 1, 1)));
+        assertEquals(1, store.size());
+        assertNull(store.get(1));
+    }
+
+    @Test
+    public void snapshotTest() throws InterruptedException {
+        QuadHashStore store = new QuadHashStore();
+        store.register(quad(1, 1, 1, 1));
+        store.register(quad(2, 2, 2, 2));
+        CountDownLatch pinned = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                store.begin(READ);
+                pinned.countDown();
+                committed.await();
+                assertEquals(2, store.size());
+                assertTrue(store.contains(quad(1, 1, 1, 1)));
+                assertEquals(quad(1, 1, 1, 1), store.get(0));
+                assertFalse(store.contains(quad(3, 3, 3, 3)));
+                store.end();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        reader.start();
+        pinned.await();
+        store.delete(quad(1, 1, 1, 1));
+        // the reader can still see id 0 so it is not reused.
+        assertEquals(2, store.register(quad(3, 3, 3, 3)).index);
+        assertEquals(2, store.size());
+        assertFalse(store.contains(quad(1, 1, 1, 1)));
+        committed.countDown();
+        reader.join();
+        assertNull(error.get());
+        // once the reader has ended the id is reused.
+        assertEquals(0, store.register(quad(4, 4, 4, 4)).index);
+        assertEquals(quad(4, 4, 4, 4), store.get(0));
+    }
+
+    @Test
+    public void readIdsTest() throws InterruptedException {
+        QuadHashStore store = new QuadHashStore();
+        store.register(quad(1, 2, 3, 4));
+        long[] ids = new long[4];
+        assertTrue(store.get(0, ids));
+        assertEquals(1, ids[Idx.G.ordinal()]);
+        assertEquals(4, ids[Idx.O.ordinal()]);
+        assertFalse(store.get(1, ids));
+        assertFalse(store.get(Store.NO_INDEX, ids));
+
+        // id 0 is deleted and reused while it is read, the ids read must always
+        // belong to one quad.
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                for (long i = 1; i < 20000; i++) {
+                    store.delete(quad(i, i + 1, i + 2, i + 3));
+                    store.register(quad(i + 1, i + 2, i + 3, i + 4));
+                }
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        writer.start();
+        long[] read = new long[4];
+        while (writer.isAlive()) {
+            if (store.get(0, read)) {
+                assertEquals(read[0] + 3, read[3]);
+                assertEquals(read[0] + 1, read[1]);
+            }
+        }
+        writer.join();
+        assertNull(error.get());
+    }
+}
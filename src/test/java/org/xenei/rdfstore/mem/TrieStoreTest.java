@@ -0,0 +1,37 @@
+package org.xenei.rdfstore.mem;
+
+import static org.apache.jena.query.ReadWrite.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.store.IdxData;
+import org.xenei.rdfstore.store.Store;
+
+public class TrieStoreTest {
+
+    @Test
+    public void loadTest() {
+        TrieStore<String> store = new TrieStore<>();
+        store.load(Arrays.asList(new IdxData<>(0, "a"), new IdxData<>(2, "c")).iterator());
+
+        assertEquals(2, store.size());
+        assertEquals("a", store.get(0));
+        assertNull(store.get(1));
+        assertEquals("c", store.get(2));
+        assertEquals(2, store.get("c"));
+
+        // the gap is reused.
+        store.begin(WRITE);
+        Store.Result result = store.register("b");
+        store.commit();
+        assertEquals(1, result.index);
+        assertEquals("b", store.get(1));
+
+        assertThrows(IllegalStateException.class,
+                () -> store.load(Arrays.asList(new IdxData<>(0, "x")).iterator()));
+    }
+}
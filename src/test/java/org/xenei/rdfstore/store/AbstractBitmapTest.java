@@ -134,6 +134,56 @@ public abstract class AbstractBitmapTest {
         assertThrows(AssertionError.class, () -> bitmap.set(Bitmap.MAX_INDEX + 1));
     }
 
+    @Test
+    public void wordTest() {
+        Bitmap bitmap = getSupplier().get();
+        bitmap.set(1);
+        bitmap.set(64);
+        bitmap.set(FIRST_INDEX_ON_LAST_PAGE);
+        assertEquals(0x2L, bitmap.getWord(0));
+        assertEquals(0x1L, bitmap.getWord(1));
+        assertEquals(0L, bitmap.getWord(2));
+        assertEquals(0x1L, bitmap.getWord((int) Bitmap.MAX_UNSIGNED_INT));
+
+        assertEquals(0, bitmap.ceilingKey(0));
+        assertEquals(1, bitmap.ceilingKey(1));
+        assertEquals(Bitmap.MAX_UNSIGNED_INT, bitmap.ceilingKey(2));
+        assertEquals(Bitmap.NO_INDEX, bitmap.ceilingKey(Bitmap.MAX_UNSIGNED_INT + 1));
+
+        bitmap.setWord(2, 0xF0L);
+        assertEquals(4, bitmap.pageCount());
+        assertTrue(bitmap.contains(128 + 4));
+        assertFalse(bitmap.contains(128 + 3));
+        bitmap.setWord(1, 0L);
+        assertEquals(3, bitmap.pageCount());
+        assertFalse(bitmap.contains(64));
+        assertEquals(2, bitmap.ceilingKey(1));
+    }
+
+    @Test
+    public void cardinalityTest() {
+        Bitmap bitmap = getSupplier().get();
+        assertEquals(0, bitmap.cardinality());
+        bitmap.set(1);
+        bitmap.set(1);
+        bitmap.set(64);
+        bitmap.set(FIRST_INDEX_ON_LAST_PAGE);
+        assertEquals(3, bitmap.cardinality());
+        bitmap.setWord(0, 0xFL);
+        assertEquals(6, bitmap.cardinality());
+        bitmap.clear(64);
+        bitmap.clear(64);
+        assertEquals(5, bitmap.cardinality());
+        bitmap.xor(bitmap);
+        assertEquals(0, bitmap.cardinality());
+        for (long l = 0; l < 10000; l++) {
+            bitmap.set(l);
+        }
+        assertEquals(10000, bitmap.cardinality());
+        bitmap.clear();
+        assertEquals(0, bitmap.cardinality());
+    }
+
     @Test
     public void clearTest() {
         Bitmap bitmap = getSupplier().get();
@@ -344,4 +394,23 @@ public abstract class AbstractBitmapTest {
         bitmap1.xor(bitmap1);
         assertTrue(bitmap1.isEmpty());
     }
+
+    @Test
+    public void copyTest() {
+        Bitmap bitmap = getSupplier().get();
+        bitmap.set(1);
+        bitmap.set(64);
+        Bitmap copy = bitmap.copy(getSupplier());
+        assertTrue(copy.contains(1));
+        assertTrue(copy.contains(64));
+
+        copy.set(2);
+        copy.clear(64);
+        bitmap.set(3);
+        assertTrue(bitmap.contains(64));
+        assertFalse(bitmap.contains(2));
+        assertFalse(copy.contains(3));
+        assertEquals(3, bitmap.cardinality());
+        assertEquals(2, copy.cardinality());
+    }
 }
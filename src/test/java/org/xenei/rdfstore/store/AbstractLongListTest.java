@@ -0,0 +1,111 @@
+package org.xenei.rdfstore.store;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+
+public abstract class AbstractLongListTest {
+
+    abstract protected Supplier<LongList<String>> getSupplier();
+
+    @Test
+    public void addGetTest() {
+        LongList<String> lst = getSupplier().get();
+        for (int i = 0; i < 10000; i++) {
+            assertEquals(i, lst.add("item" + i).idx);
+        }
+        assertEquals(10000, lst.size());
+        for (int i = 0; i < 10000; i++) {
+            assertEquals("item" + i, lst.get(i));
+        }
+        assertNull(lst.get(10000));
+    }
+
+    @Test
+    public void setRemoveTest() {
+        LongList<String> lst = getSupplier().get();
+        lst.set(new IdxData<>(5, "five"));
+        assertEquals(6, lst.size());
+        assertNull(lst.get(4));
+        assertEquals("five", lst.get(5));
+        lst.set(new IdxData<>(5, "cinq"));
+        assertEquals("cinq", lst.get(5));
+        lst.remove(5);
+        assertNull(lst.get(5));
+        assertEquals(6, lst.size());
+    }
+
+    @Test
+    public void largeIndexTest() {
+        LongList<String> lst = getSupplier().get();
+        long idx = 3L * Integer.MAX_VALUE + 7;
+        lst.set(new IdxData<>(idx, "large"));
+        assertEquals("large", lst.get(idx));
+        assertNull(lst.get(idx - 1));
+        assertNull(lst.get(7));
+        assertEquals(idx + 1, lst.size());
+    }
+
+    @Test
+    public void abortTest() {
+        LongList<String> lst = getSupplier().get();
+        lst.add("zero");
+        lst.begin(WRITE);
+        lst.add("one");
+        lst.set(new IdxData<>(0, "changed"));
+        assertEquals("changed", lst.get(0));
+        assertEquals("one", lst.get(1));
+        lst.abort();
+
+        assertEquals("zero", lst.get(0));
+        assertNull(lst.get(1));
+        assertEquals(1, lst.size());
+    }
+
+    @Test
+    public void iteratorTest() {
+        LongList<String> lst = getSupplier().get();
+        lst.begin(WRITE);
+        lst.set(new IdxData<>(3, "three"));
+        lst.set(new IdxData<>(1, "one"));
+        lst.set(new IdxData<>(100000, "big"));
+        lst.commit();
+        lst.remove(3);
+
+        lst.begin(READ);
+        List<Long> found = new ArrayList<>();
+        lst.iterator().forEachRemaining(d -> found.add(d.idx));
+        lst.end();
+        assertEquals(Arrays.asList(1L, 100000L), found);
+    }
+
+    @Test
+    public void writerIteratorTest() {
+        LongList<String> lst = getSupplier().get();
+        lst.begin(WRITE);
+        lst.set(new IdxData<>(1, "one"));
+        lst.set(new IdxData<>(3, "three"));
+        lst.commit();
+
+        lst.begin(WRITE);
+        lst.set(new IdxData<>(2, "two"));
+        lst.remove(3);
+        lst.set(new IdxData<>(100000, "big"));
+        List<Long> found = new ArrayList<>();
+        lst.iterator().forEachRemaining(d -> found.add(d.idx));
+        lst.abort();
+        assertEquals(Arrays.asList(1L, 2L, 100000L), found);
+
+        found.clear();
+        lst.iterator().forEachRemaining(d -> found.add(d.idx));
+        assertEquals(Arrays.asList(1L, 3L), found);
+    }
+}
@@ -0,0 +1,159 @@
+package org.xenei.rdfstore.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.mem.ContainerBitmap;
+import org.xenei.rdfstore.mem.MemBitmap;
+
+public class BitmapMergeTest {
+
+    private static final List<Supplier<Bitmap>> SUPPLIERS = new ArrayList<>();
+    static {
+        SUPPLIERS.add(MemBitmap::new);
+        SUPPLIERS.add(ContainerBitmap::new);
+    }
+
+    private static TreeSet<Long> randomSet(Random rnd, int count, long range) {
+        TreeSet<Long> result = new TreeSet<>();
+        while (result.size() < count) {
+            result.add((long) rnd.nextInt((int) range));
+        }
+        return result;
+    }
+
+    private static Bitmap fill(Supplier<Bitmap> supplier, TreeSet<Long> values) {
+        Bitmap bitmap = supplier.get();
+        values.forEach(bitmap::set);
+        return bitmap;
+    }
+
+    private static void assertBitmap(TreeSet<Long> expected, Bitmap actual) {
+        PrimitiveIterator.OfLong iter = actual.iterator();
+        for (Long l : expected) {
+            assertTrue(iter.hasNext(), () -> "missing " + l);
+            assertEquals(l.longValue(), iter.nextLong());
+        }
+        assertFalse(iter.hasNext(), "extra values");
+    }
+
+    @Test
+    public void randomTest() {
+        Random rnd = new Random(42);
+        for (Supplier<Bitmap> supplier : SUPPLIERS) {
+            for (int round = 0; round < 20; round++) {
+                TreeSet<Long> a = randomSet(rnd, 5000, 200000);
+                TreeSet<Long> b = randomSet(rnd, 20000, 200000);
+                TreeSet<Long> c = randomSet(rnd, 100, 200000);
+                c.addAll(a.headSet(1000L));
+                Bitmap ba = fill(supplier, a);
+                Bitmap bb = fill(supplier, b);
+                Bitmap bc = fill(supplier, c);
+
+                TreeSet<Long> and = new TreeSet<>(a);
+                and.retainAll(b);
+                assertBitmap(and, BitmapMerge.intersection(supplier, ba, bb));
+                TreeSet<Long> and3 = new TreeSet<>(and);
+                and3.retainAll(c);
+                assertBitmap(and3, BitmapMerge.intersection(supplier, bc, ba, bb));
+
+                TreeSet<Long> or = new TreeSet<>(a);
+                or.addAll(b);
+                or.addAll(c);
+                assertBitmap(or, BitmapMerge.union(supplier, ba, bb, bc));
+
+                TreeSet<Long> xor = new TreeSet<>(a);
+                xor.addAll(b);
+                xor.removeAll(and);
+                assertBitmap(xor, BitmapMerge.xor(supplier, ba, bb));
+
+                // inputs are not changed
+                assertBitmap(a, ba);
+                assertBitmap(b, bb);
+                assertBitmap(c, bc);
+            }
+        }
+    }
+
+    @Test
+    public void emptyAndNullTest() {
+        for (Supplier<Bitmap> supplier : SUPPLIERS) {
+            Bitmap bitmap = supplier.get();
+            bitmap.set(5);
+            assertTrue(BitmapMerge.intersection(supplier).isEmpty());
+            assertTrue(BitmapMerge.intersection(supplier, bitmap, null).isEmpty());
+            assertTrue(BitmapMerge.intersection(supplier, bitmap, supplier.get()).isEmpty());
+            assertTrue(BitmapMerge.union(supplier, null, bitmap).contains(5));
+            assertTrue(BitmapMerge.xor(supplier, bitmap, null).contains(5));
+            assertTrue(BitmapMerge.intersection(supplier, bitmap).contains(5));
+        }
+    }
+
+    @Test
+    public void cursorTest() {
+        for (Supplier<Bitmap> supplier : SUPPLIERS) {
+            Bitmap bitmap = supplier.get();
+            bitmap.set(1);
+            bitmap.set(64 * 5);
+            bitmap.set(64 * 70000L);
+            bitmap.set(Bitmap.MAX_INDEX);
+            Bitmap.Cursor cursor = bitmap.cursor();
+            assertEquals(0, cursor.key());
+            assertEquals(0x2L, cursor.word());
+            assertTrue(cursor.advanceTo(3));
+            assertEquals(5, cursor.key());
+            assertTrue(cursor.advanceTo(5));
+            assertEquals(5, cursor.key());
+            assertTrue(cursor.advance());
+            assertEquals(70000, cursor.key());
+            assertTrue(cursor.advanceTo(70001));
+            assertEquals(Bitmap.MAX_UNSIGNED_INT, cursor.key());
+            assertEquals(0x8000000000000000L, cursor.word());
+            assertFalse(cursor.advance());
+            assertEquals(Bitmap.NO_INDEX, cursor.key());
+        }
+    }
+
+    @Test
+    public void intersectionCursorTest() {
+        Random rnd = new Random(42);
+        for (Supplier<Bitmap> supplier : SUPPLIERS) {
+            TreeSet<Long> a = randomSet(rnd, 2000, 100000);
+            TreeSet<Long> b = randomSet(rnd, 8000, 100000);
+            Bitmap ba = fill(supplier, a);
+            Bitmap bb = fill(supplier, b);
+            TreeSet<Long> and = new TreeSet<>(a);
+            and.retainAll(b);
+
+            PrimitiveIterator.OfLong iter = BitmapMerge.iterator(BitmapMerge.intersectionCursor(ba, bb));
+            for (Long l : and) {
+                assertTrue(iter.hasNext(), () -> "missing " + l);
+                assertEquals(l.longValue(), iter.nextLong());
+            }
+            assertFalse(iter.hasNext(), "extra values");
+
+            long target = and.ceiling(50000L) / Long.SIZE;
+            Bitmap.Cursor cursor = BitmapMerge.intersectionCursor(ba, bb);
+            assertTrue(cursor.advanceTo(target));
+            assertEquals(target, cursor.key());
+            assertTrue(cursor.advanceTo(target - 1));
+            assertEquals(target, cursor.key());
+            assertFalse(cursor.advanceTo(Bitmap.MAX_UNSIGNED_INT));
+            assertEquals(Bitmap.NO_INDEX, cursor.key());
+            assertFalse(cursor.advance());
+
+            assertEquals(Bitmap.NO_INDEX, BitmapMerge.intersectionCursor().key());
+            assertEquals(Bitmap.NO_INDEX, BitmapMerge.intersectionCursor(ba, null).key());
+            assertFalse(BitmapMerge.iterator(BitmapMerge.intersectionCursor(ba, supplier.get())).hasNext());
+        }
+    }
+}
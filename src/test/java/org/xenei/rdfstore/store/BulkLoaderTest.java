@@ -0,0 +1,151 @@
+package org.xenei.rdfstore.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.mem.MemQuads;
+
+public class BulkLoaderTest {
+
+    private static final Node G1 = NodeFactory.createURI("http://example.com/g1");
+    private static final Node G2 = NodeFactory.createURI("http://example.com/g2");
+    private static final Node P = NodeFactory.createURI("http://example.com/p");
+
+    private static List<Quad> data(int count) {
+        Random random = new Random(42);
+        List<Quad> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(Quad.create(random.nextBoolean() ? G1 : G2,
+                    NodeFactory.createURI("http://example.com/s" + random.nextInt(100)), P,
+                    NodeFactory.createLiteral("o" + random.nextInt(50))));
+        }
+        return result;
+    }
+
+    private static void assertSame(Quads expected, Quads actual, Quad pattern) {
+        assertEquals(expected.find(pattern, expected::asQuad).toSet(), actual.find(pattern, actual::asQuad).toSet(),
+                () -> pattern.toString());
+    }
+
+    private static void assertSame(Quads expected, Quads actual) {
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.size(G1), actual.size(G1));
+        assertEquals(expected.size(G2), actual.size(G2));
+        assertSame(expected, actual, Quad.create(Node.ANY, Node.ANY, Node.ANY, Node.ANY));
+        assertSame(expected, actual, Quad.create(G1, Node.ANY, Node.ANY, Node.ANY));
+        assertSame(expected, actual, Quad.create(Node.ANY, NodeFactory.createURI("http://example.com/s7"), P,
+                Node.ANY));
+        assertSame(expected, actual, Quad.create(G2, Node.ANY, Node.ANY, NodeFactory.createLiteral("o3")));
+    }
+
+    @Test
+    public void loadTest() {
+        List<Quad> data = data(3000);
+        MemQuads expected = new MemQuads();
+        data.forEach(expected::register);
+
+        MemQuads quads = new MemQuads();
+        // duplicates in the data are not counted.
+        assertEquals(expected.size(), new BulkLoader(quads, 128).load(data.iterator()));
+        assertSame(expected, quads);
+        assertFalse(quads.isInTransaction());
+    }
+
+    @Test
+    public void loadExistingTest() {
+        List<Quad> data = data(2000);
+        MemQuads expected = new MemQuads();
+        data.forEach(expected::register);
+
+        MemQuads quads = new MemQuads();
+        data.subList(0, 500).forEach(quads::register);
+        quads.delete(data.get(10));
+        new BulkLoader(quads, 100).load(data.subList(400, 2000).iterator());
+        // the deleted quad is in the bulk loaded data if it was repeated.
+        if (!data.subList(400, 2000).contains(data.get(10))) {
+            quads.register(data.get(10));
+        }
+        assertSame(expected, quads);
+    }
+
+    @Test
+    public void streamTest() {
+        String nquads = "<http://example.com/s> <http://example.com/p> \"one\" <http://example.com/g1> .\n"
+                + "<http://example.com/s> <http://example.com/p> \"two\"@en <http://example.com/g1> .\n"
+                + "<http://example.com/s> <http://example.com/p> <http://example.com/o> .\n";
+        MemQuads quads = new MemQuads();
+        BulkLoader loader = new BulkLoader(quads);
+        RDFParser.fromString(nquads).lang(Lang.NQUADS).parse(loader);
+        assertEquals(3, loader.loaded());
+        assertEquals(3, quads.size());
+        assertEquals(2, quads.find(Quad.create(G1, Node.ANY, Node.ANY, Node.ANY), quads::asQuad).toList().size());
+        assertEquals(1, quads.find(Quad.create(Quad.defaultGraphNodeGenerated, Node.ANY, Node.ANY, Node.ANY),
+                quads::asQuad).toList().size());
+    }
+
+    @Test
+    public void callerTransactionTest() {
+        List<Quad> data = data(300);
+        MemQuads quads = new MemQuads();
+        quads.begin(TxnType.WRITE);
+        new BulkLoader(quads, 64).load(data.iterator());
+        quads.abort();
+        quads.end();
+        assertEquals(0, quads.size());
+    }
+
+    @Test
+    public void abortTest() {
+        List<Quad> data = data(300);
+        MemQuads quads = new MemQuads();
+        Iterator<Quad> iter = data.iterator();
+        Iterator<Quad> failing = new Iterator<Quad>() {
+            int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                return iter.hasNext();
+            }
+
+            @Override
+            public Quad next() {
+                if (++count == 200) {
+                    throw new IllegalStateException("Parse error");
+                }
+                return iter.next();
+            }
+        };
+        assertThrows(IllegalStateException.class, () -> new BulkLoader(quads, 64).load(failing));
+        assertFalse(quads.isInTransaction());
+        assertEquals(0, quads.size());
+    }
+
+    @Test
+    public void sortPairsTest() {
+        Random random = new Random(7);
+        long[] pairs = new long[2000];
+        for (int i = 0; i < pairs.length; i++) {
+            pairs[i] = random.nextInt(20);
+        }
+        BulkLoader.sortPairs(pairs, pairs.length / 2);
+        for (int i = 1; i < pairs.length / 2; i++) {
+            long prevNode = pairs[2 * i - 2];
+            long node = pairs[2 * i];
+            boolean ordered = prevNode < node || (prevNode == node && pairs[2 * i - 1] <= pairs[2 * i + 1]);
+            assertEquals(true, ordered, "pair " + i);
+        }
+    }
+}
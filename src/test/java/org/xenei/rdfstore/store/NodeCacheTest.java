@@ -0,0 +1,62 @@
+package org.xenei.rdfstore.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.junit.jupiter.api.Test;
+
+public class NodeCacheTest {
+
+    private static Node node(int i) {
+        return NodeFactory.createURI("http://example.com/" + i);
+    }
+
+    @Test
+    public void capacityTest() {
+        assertEquals(NodeCache.WAYS, new NodeCache(1).capacity());
+        assertEquals(8, new NodeCache(5).capacity());
+        assertEquals(4096, new NodeCache(4096).capacity());
+    }
+
+    @Test
+    public void hitMissTest() {
+        NodeCache cache = new NodeCache(16);
+        Node n = node(1);
+        assertNull(cache.get(1));
+        cache.put(1, n);
+        assertSame(n, cache.get(1));
+        assertSame(n, cache.get(1));
+        assertEquals(2, cache.hits());
+        assertEquals(1, cache.misses());
+
+        cache.invalidate(1);
+        assertNull(cache.get(1));
+        cache.put(1, n);
+        cache.clear();
+        assertNull(cache.get(1));
+        assertEquals(2, cache.hits());
+        assertEquals(3, cache.misses());
+    }
+
+    @Test
+    public void evictionTest() {
+        // a single set so every id competes for the same slots.
+        NodeCache cache = new NodeCache(NodeCache.WAYS);
+        for (int i = 0; i < NodeCache.WAYS; i++) {
+            cache.put(i, node(i));
+        }
+        // reference all but the last node
+        for (int i = 0; i < NodeCache.WAYS - 1; i++) {
+            assertEquals(node(i), cache.get(i));
+        }
+        cache.put(100, node(100));
+        assertNull(cache.get(NodeCache.WAYS - 1));
+        assertEquals(node(100), cache.get(100));
+        for (int i = 0; i < NodeCache.WAYS - 1; i++) {
+            assertEquals(node(i), cache.get(i));
+        }
+    }
+}
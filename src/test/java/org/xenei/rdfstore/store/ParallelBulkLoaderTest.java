@@ -0,0 +1,109 @@
+package org.xenei.rdfstore.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Consumer;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFParser;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.mem.MemQuads;
+
+public class ParallelBulkLoaderTest {
+
+    private static final Node P = NodeFactory.createURI("http://example.com/p");
+
+    private static List<Quad> data(int seed, int count) {
+        Random random = new Random(seed);
+        List<Quad> result = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            result.add(Quad.create(NodeFactory.createURI("http://example.com/g" + random.nextInt(3)),
+                    NodeFactory.createURI("http://example.com/s" + random.nextInt(200)), P,
+                    NodeFactory.createLiteral("o" + random.nextInt(100))));
+        }
+        return result;
+    }
+
+    private static void assertSame(Quads expected, Quads actual, Quad pattern) {
+        assertEquals(expected.find(pattern, expected::asQuad).toSet(), actual.find(pattern, actual::asQuad).toSet(),
+                () -> pattern.toString());
+    }
+
+    @Test
+    public void loadTest() {
+        List<List<Quad>> sources = Arrays.asList(data(1, 3000), data(2, 2000), data(3, 2500));
+        MemQuads expected = new MemQuads();
+        sources.forEach(lst -> lst.forEach(expected::register));
+
+        MemQuads quads = new MemQuads();
+        List<Iterator<Quad>> iters = new ArrayList<>();
+        sources.forEach(lst -> iters.add(lst.iterator()));
+        // small sizes so that batches, builds and dictionary clears all happen.
+        long loaded = new ParallelBulkLoader(quads, 4, 100, 1000, 50).load(iters);
+        assertEquals(expected.size(), loaded);
+        assertEquals(expected.size(), quads.size());
+        assertFalse(quads.isInTransaction());
+        assertSame(expected, quads, Quad.create(Node.ANY, Node.ANY, Node.ANY, Node.ANY));
+        assertSame(expected, quads, Quad.create(NodeFactory.createURI("http://example.com/g1"), Node.ANY, Node.ANY,
+                Node.ANY));
+        assertSame(expected, quads, Quad.create(Node.ANY, NodeFactory.createURI("http://example.com/s5"), Node.ANY,
+                Node.ANY));
+        assertSame(expected, quads, Quad.create(Node.ANY, Node.ANY, P, NodeFactory.createLiteral("o7")));
+    }
+
+    @Test
+    public void parseTest() {
+        String nquads = "<http://example.com/s> <http://example.com/p> \"one\" <http://example.com/g1> .\n"
+                + "<http://example.com/s> <http://example.com/p> <http://example.com/o> .\n";
+        String ntriples = "<http://example.com/s> <http://example.com/p> <http://example.com/o> .\n"
+                + "<http://example.com/s> <http://example.com/p> \"two\" .\n";
+        List<Consumer<StreamRDF>> parsers = Arrays.asList(
+                stream -> RDFParser.fromString(nquads).lang(Lang.NQUADS).parse(stream),
+                stream -> RDFParser.fromString(ntriples).lang(Lang.NTRIPLES).parse(stream));
+        MemQuads quads = new MemQuads();
+        assertEquals(3, new ParallelBulkLoader(quads).parse(parsers));
+        assertEquals(2, quads.find(Quad.create(Quad.defaultGraphNodeGenerated, Node.ANY, Node.ANY, Node.ANY),
+                quads::asQuad).toList().size());
+    }
+
+    @Test
+    public void failureTest() {
+        MemQuads quads = new MemQuads();
+        Iterator<Quad> good = data(4, 1000).iterator();
+        Iterator<Quad> bad = new Iterator<Quad>() {
+            int count = 0;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Quad next() {
+                if (++count == 500) {
+                    throw new IllegalStateException("Parse error");
+                }
+                return Quad.create(Quad.defaultGraphIRI, P, P, NodeFactory.createLiteral("x" + count));
+            }
+        };
+        ParallelBulkLoader loader = new ParallelBulkLoader(quads, 2, 64, 256, 1000);
+        assertThrows(IllegalStateException.class, () -> loader.load(Arrays.asList(good, bad)));
+        assertFalse(quads.isInTransaction());
+        assertEquals(0, quads.size());
+        // the loader can be used again.
+        assertEquals(1, loader.load(Collections.singletonList(Collections
+                .singletonList(Quad.create(Quad.defaultGraphIRI, P, P, P)).iterator())));
+    }
+}
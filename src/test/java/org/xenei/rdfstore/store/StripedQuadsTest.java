@@ -0,0 +1,244 @@
+package org.xenei.rdfstore.store;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.jena.graph.Node;
+import org.apache.jena.graph.NodeFactory;
+import org.apache.jena.query.TxnType;
+import org.apache.jena.sparql.JenaTransactionException;
+import org.apache.jena.sparql.core.Quad;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.xenei.rdfstore.mem.MemQuads;
+import org.xenei.rdfstore.store.Quads.QuadCursor;
+
+public class StripedQuadsTest {
+
+    private static final Node P = NodeFactory.createURI("http://example.com/p");
+
+    private StripedQuads quads;
+
+    @BeforeEach
+    public void setup() {
+        quads = new StripedQuads(4, MemQuads::new);
+    }
+
+    private static Node graph(int i) {
+        return NodeFactory.createURI("http://example.com/g" + i);
+    }
+
+    private static Quad quad(Node g, int i) {
+        return Quad.create(g, NodeFactory.createURI("http://example.com/s" + i), P, NodeFactory.createLiteral("o" + i));
+    }
+
+    /**
+     * Finds a graph in the stripe.
+     */
+    private Node graphIn(int stripe) {
+        for (int i = 0;; i++) {
+            if (quads.stripe(graph(i)) == stripe) {
+                return graph(i);
+            }
+        }
+    }
+
+    @Test
+    public void findTest() {
+        Set<Quad> expected = new HashSet<>();
+        for (int g = 0; g < 8; g++) {
+            for (int i = 0; i < 10; i++) {
+                Quad q = quad(graph(g), i);
+                expected.add(q);
+                quads.register(q);
+            }
+        }
+        assertEquals(expected.size(), quads.size());
+
+        Quad all = Quad.create(Node.ANY, Node.ANY, P, Node.ANY);
+        assertEquals(expected, quads.find(all, quads::asQuad).toSet());
+        assertEquals(10, quads.find(Quad.create(graph(3), Node.ANY, P, Node.ANY), quads::asQuad).toList().size());
+        assertEquals(expected.size(), quads.count(all));
+        assertEquals(10, quads.count(Quad.create(graph(3), Node.ANY, P, Node.ANY)));
+
+        QuadCursor cursor = quads.cursor(all);
+        Set<Quad> found = new HashSet<>();
+        while (cursor.advance()) {
+            Quad q = quads.asQuad(cursor);
+            found.add(q);
+            assertEquals(q, quads.asQuad(quads.getIdxQuad(cursor.id())));
+        }
+        assertEquals(expected, found);
+
+        Set<Node> graphs = new HashSet<>();
+        quads.listNodes(Idx.G).forEachRemaining(graphs::add);
+        assertEquals(8, graphs.size());
+        Set<Node> predicates = new HashSet<>();
+        quads.listNodes(Idx.P).forEachRemaining(n -> assertTrue(predicates.add(n)));
+        assertEquals(1, predicates.size());
+
+        quads.delete(quad(graph(3), 0));
+        assertEquals(expected.size() - 1, quads.size());
+        assertEquals(9, quads.count(Quad.create(graph(3), Node.ANY, Node.ANY, Node.ANY)));
+    }
+
+    @Test
+    public void concurrentWritersTest() throws InterruptedException {
+        Node g0 = graphIn(0);
+        Node g1 = graphIn(1);
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                quads.begin(TxnType.WRITE);
+                quads.register(quad(g0, 1));
+                written.countDown();
+                assertTrue(committed.await(10, TimeUnit.SECONDS));
+                quads.commit();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        writer.start();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+
+        // the other writer holds stripe 0 but stripe 1 is free.
+        quads.begin(TxnType.WRITE);
+        quads.register(quad(g1, 1));
+        quads.commit();
+        assertEquals(1, quads.size());
+
+        committed.countDown();
+        writer.join();
+        assertNull(error.get());
+        assertEquals(2, quads.size());
+    }
+
+    @Test
+    public void conflictTest() throws InterruptedException {
+        Node g0 = graphIn(0);
+        Node g1 = graphIn(1);
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread writer = new Thread(() -> {
+            try {
+                quads.begin(TxnType.WRITE);
+                quads.register(quad(g0, 1));
+                written.countDown();
+                assertTrue(done.await(10, TimeUnit.SECONDS));
+                quads.abort();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        writer.start();
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+
+        quads.begin(TxnType.WRITE);
+        quads.register(quad(g1, 1));
+        // stripe 0 is below stripe 1 and is held by the other writer.
+        assertThrows(JenaTransactionException.class, () -> quads.register(quad(g0, 2)));
+        quads.abort();
+
+        done.countDown();
+        writer.join();
+        assertNull(error.get());
+        assertEquals(0, quads.size());
+    }
+
+    @Test
+    public void readerTest() throws InterruptedException {
+        Node g0 = graphIn(0);
+        Node g1 = graphIn(1);
+        quads.register(quad(g0, 1));
+
+        CountDownLatch pinned = new CountDownLatch(1);
+        CountDownLatch committed = new CountDownLatch(1);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        Thread reader = new Thread(() -> {
+            try {
+                quads.begin(TxnType.READ);
+                pinned.countDown();
+                assertTrue(committed.await(10, TimeUnit.SECONDS));
+                assertEquals(1, quads.size());
+                quads.end();
+            } catch (Throwable e) {
+                error.set(e);
+            }
+        });
+        reader.start();
+        assertTrue(pinned.await(10, TimeUnit.SECONDS));
+
+        quads.begin(TxnType.WRITE);
+        quads.register(quad(g0, 2));
+        quads.register(quad(g1, 2));
+        quads.commit();
+        committed.countDown();
+        reader.join();
+        assertNull(error.get());
+        assertEquals(3, quads.size());
+    }
+
+    @Test
+    public void promoteTest() {
+        quads.begin(TxnType.READ);
+        assertThrows(JenaTransactionException.class, () -> quads.register(quad(graph(0), 1)));
+        assertFalse(quads.promote());
+        quads.end();
+
+        quads.begin(TxnType.READ_PROMOTE);
+        assertTrue(quads.promote());
+        long id = quads.register(quad(graph(0), 1));
+        assertNotEquals(Store.NO_INDEX, id);
+        quads.commit();
+        assertFalse(quads.isInTransaction());
+        assertEquals(1, quads.size());
+
+        quads.begin(TxnType.WRITE);
+        quads.register(quad(graph(1), 1));
+        assertThrows(JenaTransactionException.class, quads::end);
+        assertEquals(1, quads.size());
+    }
+
+    @Test
+    public void failedPrepareTest() {
+        AtomicReference<Quads> failing = new AtomicReference<>();
+        quads = new StripedQuads(4, () -> {
+            MemQuads stripe = new MemQuads() {
+                @Override
+                public void prepareCommit() {
+                    if (failing.get() == this) {
+                        throw new JenaTransactionException("prepare failed");
+                    }
+                    super.prepareCommit();
+                }
+            };
+            failing.set(stripe);
+            return stripe;
+        });
+        // the last stripe created fails.
+        Node g0 = graphIn(0);
+        Node g3 = graphIn(3);
+        quads.begin(TxnType.WRITE);
+        quads.register(quad(g0, 1));
+        quads.register(quad(g3, 1));
+        assertThrows(JenaTransactionException.class, quads::commit);
+        assertFalse(quads.isInTransaction());
+        assertEquals(0, quads.size());
+
+        quads.register(quad(g0, 2));
+        assertEquals(1, quads.size());
+    }
+}
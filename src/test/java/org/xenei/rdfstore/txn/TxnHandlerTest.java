@@ -55,6 +55,21 @@ public class TxnHandlerTest {
         assertEquals(end, endCount, "End");
     }
 
+    @Test
+    public void endOnlyForReadersTest() {
+        handler.begin(READ);
+        handler.end();
+        assertCounts(1, 0, 0, 1);
+        handler.begin(WRITE);
+        handler.commit();
+        handler.end();
+        handler.begin(WRITE);
+        handler.abort();
+        handler.end();
+        // the writer is finished by commit and abort.
+        assertCounts(3, 1, 1, 1);
+    }
+
     @Test
     public void isInTransactionTest() {
         assertFalse(handler.isInTransaction());
@@ -181,4 +196,38 @@ public class TxnHandlerTest {
         handler.abort();
         assertNull(handler.transactionMode());
     }
+
+    @Test
+    public void nestedTest() {
+        handler.begin(READ);
+        assertEquals(1, (int) handler.doInTxn(READ, () -> 1));
+        assertThrows(JenaTransactionException.class, () -> handler.doInTxn(WRITE, () -> {
+        }));
+        // the failed nested call does not end the transaction.
+        assertTrue(handler.isInTransaction());
+        assertCounts(1, 0, 0, 0);
+        handler.end();
+        assertCounts(1, 0, 0, 1);
+    }
+
+    @Test
+    public void otherThreadTest() throws InterruptedException {
+        handler.begin(READ);
+        boolean[] inTxn = new boolean[2];
+        Thread thread = new Thread(() -> {
+            inTxn[0] = handler.isInTransaction();
+            handler.doInTxn(READ, () -> {
+                inTxn[1] = handler.isInTransaction();
+            });
+        });
+        thread.start();
+        thread.join();
+        assertFalse(inTxn[0]);
+        assertTrue(inTxn[1]);
+        // the transaction of the other thread does not end this one.
+        assertTrue(handler.isInTransaction());
+        assertEquals(READ, handler.transactionMode());
+        handler.end();
+        assertCounts(2, 0, 0, 2);
+    }
 }
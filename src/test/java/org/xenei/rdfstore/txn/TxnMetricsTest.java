@@ -0,0 +1,95 @@
+package org.xenei.rdfstore.txn;
+
+import static org.apache.jena.query.ReadWrite.READ;
+import static org.apache.jena.query.ReadWrite.WRITE;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.ObjectName;
+
+import org.apache.jena.sparql.JenaTransactionException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TxnMetricsTest {
+
+    private TxnMetrics metrics;
+    private TxnHandler handler;
+
+    @BeforeEach
+    public void setup() {
+        metrics = new TxnMetrics();
+        TxnExecutor.setListener(metrics);
+        handler = new TxnHandler(() -> "Testing", rw -> {
+        }, () -> {
+        }, () -> {
+        }, () -> {
+        });
+    }
+
+    @AfterEach
+    public void teardown() {
+        TxnExecutor.setListener(null);
+    }
+
+    @Test
+    public void countTest() {
+        handler.begin(WRITE);
+        handler.commit();
+        handler.begin(WRITE);
+        handler.abort();
+        handler.begin(READ);
+        handler.end();
+        handler.begin(WRITE);
+        assertThrows(JenaTransactionException.class, handler::end);
+        handler.doInTxn(READ, () -> {
+        });
+
+        assertArrayEquals(new long[] { 5, 1, 2, 2 }, metrics.counts("Testing"));
+        assertArrayEquals(new String[] { "Testing" }, metrics.getTxnIds());
+        assertEquals(5, metrics.getBegins());
+        assertEquals(5, metrics.getLockCount());
+        assertEquals(5, Arrays.stream(metrics.getDurationHistogram()).sum());
+
+        metrics.reset();
+        assertEquals(0, metrics.getBegins());
+        assertArrayEquals(new long[4], metrics.counts("Testing"));
+    }
+
+    @Test
+    public void disabledTest() {
+        TxnExecutor.setListener(TxnListener.NONE);
+        handler.begin(WRITE);
+        handler.commit();
+        assertEquals(0, metrics.getBegins());
+        assertEquals(0, metrics.getCommits());
+    }
+
+    @Test
+    public void bucketTest() {
+        assertEquals(0, TxnMetrics.bucket(999));
+        assertEquals(1, TxnMetrics.bucket(1000));
+        assertEquals(2, TxnMetrics.bucket(2000));
+        assertEquals(2, TxnMetrics.bucket(3999));
+        assertEquals(TxnMetrics.BUCKETS - 1, TxnMetrics.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    public void jmxTest() throws Exception {
+        ObjectName name = metrics.register("org.xenei.rdfstore:type=TxnMetrics,name=test");
+        try {
+            handler.begin(WRITE);
+            handler.commit();
+            assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Commits"));
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        } finally {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+    }
+}